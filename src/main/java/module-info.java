@@ -24,11 +24,16 @@ module org.dam2.adp.ecorastro {
     requires java.sql;
     requires jbcrypt;
 
+    // Vector API (incubadora) para los núcleos de agregación de KernelesImpacto
+    requires jdk.incubator.vector;
+
     requires org.kordamp.ikonli.fontawesome5;
 
     // 3. Permite abrir tus paquetes a JavaFX y Hibernate
     opens org.dam2.adp.ecorastro to javafx.fxml;
     opens org.dam2.adp.ecorastro.controller to javafx.fxml;
+    // Gráficos propios sobre Canvas que se declaran en los FXML
+    opens org.dam2.adp.ecorastro.grafico to javafx.fxml;
     exports org.dam2.adp.ecorastro;
 
     // AÑADE ESTO: Abre tus modelos para que Hibernate pueda leer las entidades
@@ -5,6 +5,7 @@ import org.dam2.adp.ecorastro.model.Actividad;
 import org.hibernate.Session;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Clase de Acceso a Datos (DAO) para la entidad {@link Actividad}.
@@ -18,6 +19,25 @@ public class ActividadDAO {
     /** Consulta HQL para obtener todas las actividades cargando su categoría. */
     private final String GET_ALL_HQL = "FROM Actividad a JOIN FETCH a.idCategoria"; // JOIN FETCH carga inmediatamente las entidades relacionadas, inicializándolas en el objeto principal.
 
+    /** Origen de las sesiones: la BBDD principal o la réplica local. */
+    private final Supplier<Connection> conexion;
+
+    /**
+     * Crea el DAO sobre la BBDD principal.
+     */
+    public ActividadDAO() {
+        this(Connection::getInstance);
+    }
+
+    /**
+     * Crea el DAO sobre otra conexión (por ejemplo, la réplica local).
+     *
+     * @param conexion Proveedor de la conexión a usar.
+     */
+    public ActividadDAO(Supplier<Connection> conexion) {
+        this.conexion = conexion;
+    }
+
     /**
      * Recupera todas las actividades registradas en la base de datos.
      * <p>
@@ -26,7 +46,7 @@ public class ActividadDAO {
      * @return Lista de todas las actividades.
      */
     public List<Actividad> getAllActividades() {
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             return session.createQuery(GET_ALL_HQL, Actividad.class).getResultList();
 
         }
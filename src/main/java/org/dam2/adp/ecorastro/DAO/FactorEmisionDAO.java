@@ -0,0 +1,135 @@
+package org.dam2.adp.ecorastro.DAO;
+
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.FactorEmision;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Clase de Acceso a Datos (DAO) para la entidad {@link FactorEmision}.
+ * <p>
+ * Lee las versiones de los factores y registra correcciones manteniendo los periodos sin solapes.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class FactorEmisionDAO {
+
+    /** Todas las versiones con su categoría. */
+    private final String HQL_GET_ALL = "FROM FactorEmision f JOIN FETCH f.idCategoria";
+
+    /** Versiones de una categoría que se solapan con un periodo. */
+    private final String HQL_GET_SOLAPADOS =
+            "FROM FactorEmision f WHERE f.idCategoria.id = :cid " +
+                    "AND f.validoDesde <= :hasta AND (f.validoHasta IS NULL OR f.validoHasta >= :desde)";
+
+    /** Número de versiones de una categoría. */
+    private final String HQL_COUNT_CATEGORIA =
+            "SELECT COUNT(f) FROM FactorEmision f WHERE f.idCategoria.id = :cid";
+
+    /** Primer día cubierto al crear la versión inicial de una categoría. */
+    private static final LocalDate INICIO_HISTORICO = LocalDate.of(1970, 1, 1);
+
+    /** Último día representable en las columnas DATE (sustituye a "sin fin" en las comparaciones). */
+    private static final LocalDate FIN_HISTORICO = LocalDate.of(9999, 12, 31);
+
+    /** Origen de las sesiones. */
+    private final Supplier<Connection> conexion;
+
+    /**
+     * Crea el DAO sobre la BBDD principal.
+     */
+    public FactorEmisionDAO() {
+        this(Connection::getInstance);
+    }
+
+    /**
+     * Crea el DAO sobre otra conexión.
+     *
+     * @param conexion Proveedor de la conexión a usar.
+     */
+    public FactorEmisionDAO(Supplier<Connection> conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Recupera todas las versiones de factores.
+     *
+     * @return Lista de versiones, o lista vacía si hay un error.
+     */
+    public List<FactorEmision> getAllFactores() {
+        try (Session session = conexion.get().getSession()) {
+            return session.createQuery(HQL_GET_ALL, FactorEmision.class).getResultList();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Registra un factor para un periodo, recortando o partiendo las versiones que se solapen.
+     * <p>
+     * Si la categoría aún no tenía versiones, antes se guarda su factor actual como versión inicial,
+     * para que los días fuera del nuevo periodo conserven el valor con el que se calcularon.
+     * Si el periodo no tiene fin y ya ha empezado, el factor pasa a ser también el actual de la categoría.
+     *
+     * @param idCategoria Id de la categoría.
+     * @param desde       Primer día de validez.
+     * @param hasta       Último día de validez, o null si no tiene fin.
+     * @param factor      Valor del factor.
+     * @return true si se guardó.
+     */
+    public boolean registrarFactor(int idCategoria, LocalDate desde, LocalDate hasta, double factor) {
+        boolean registrado = false;
+        Transaction tx = null;
+        try (Session session = conexion.get().getSession()) {
+            tx = session.beginTransaction();
+            Categoria categoria = session.get(Categoria.class, idCategoria);
+            Long versiones = session.createQuery(HQL_COUNT_CATEGORIA, Long.class)
+                    .setParameter("cid", idCategoria)
+                    .getSingleResult();
+            if (versiones == 0) {
+                session.persist(new FactorEmision(categoria, INICIO_HISTORICO, null, categoria.getFactorEmision()));
+            }
+
+            LocalDate finConsulta = (hasta != null) ? hasta : FIN_HISTORICO;
+
+            List<FactorEmision> solapados = session.createQuery(HQL_GET_SOLAPADOS, FactorEmision.class)
+                    .setParameter("cid", idCategoria)
+                    .setParameter("desde", desde)
+                    .setParameter("hasta", finConsulta)
+                    .getResultList();
+
+            for (FactorEmision f : solapados) {
+                boolean empiezaAntes = f.getValidoDesde().isBefore(desde);
+                boolean acabaDespues = hasta != null && (f.getValidoHasta() == null || f.getValidoHasta().isAfter(hasta));
+                if (acabaDespues) {
+                    // La parte posterior al nuevo periodo se conserva como una versión aparte
+                    session.persist(new FactorEmision(categoria, hasta.plusDays(1), f.getValidoHasta(), f.getFactor()));
+                }
+                if (empiezaAntes) {
+                    f.setValidoHasta(desde.minusDays(1));
+                } else {
+                    session.remove(f);
+                }
+            }
+            session.persist(new FactorEmision(categoria, desde, hasta, factor));
+
+            if (hasta == null && !desde.isAfter(LocalDate.now())) {
+                categoria.setFactorEmision(factor);
+            }
+            tx.commit();
+            registrado = true;
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) tx.rollback();
+            e.printStackTrace();
+        }
+        return registrado;
+    }
+}
@@ -7,6 +7,7 @@ import org.hibernate.Session;
 import org.hibernate.Transaction;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Clase de Acceso a Datos (DAO) para la entidad {@link Habito}.
@@ -31,6 +32,25 @@ public class HabitoDAO {
             "WHERE h.idUsuario.id = :uid " +
             "ORDER BY h.frecuencia DESC";
 
+    /** Origen de las sesiones: la BBDD principal o la réplica local. */
+    private final Supplier<Connection> conexion;
+
+    /**
+     * Crea el DAO sobre la BBDD principal.
+     */
+    public HabitoDAO() {
+        this(Connection::getInstance);
+    }
+
+    /**
+     * Crea el DAO sobre otra conexión (por ejemplo, la réplica local).
+     *
+     * @param conexion Proveedor de la conexión a usar.
+     */
+    public HabitoDAO(Supplier<Connection> conexion) {
+        this.conexion = conexion;
+    }
+
     /**
      * Inserta o actualiza un hábito en la base de datos.
      *
@@ -42,7 +62,7 @@ public class HabitoDAO {
         boolean insertado = false;
         Session session = null;
         try {
-            session = Connection.getInstance().getSession();
+            session = conexion.get().getSession();
             tx = session.beginTransaction();
             session.merge(habito);
             tx.commit();
@@ -72,7 +92,7 @@ public class HabitoDAO {
     public boolean deleteHabito(Habito habito) {
         boolean eliminado = false;
         Transaction tx = null;
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             tx = session.beginTransaction();
             session.remove(session.contains(habito) ? habito : session.merge(habito));
             tx.commit();
@@ -94,7 +114,7 @@ public class HabitoDAO {
      * @return El hábito encontrado o null.
      */
     public Habito getHabitoById(HabitoId id) {
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             return session.get(Habito.class, id);
         }
     }
@@ -106,7 +126,7 @@ public class HabitoDAO {
      * @return Lista de hábitos.
      */
     public List<Habito> getHabitosByUsuario(int idUsuario) {
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             return session.createQuery(GET_BY_USER_HQL, Habito.class)
                     .setParameter("idUsuario", idUsuario)
                     .getResultList();
@@ -122,7 +142,7 @@ public class HabitoDAO {
      */
     public Habito getHabitoMasFrecuente(int idUsuario) {
 
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             List<Habito> habitos = session.createQuery(GET_HABITO_MAS_FRECUENTE_HQL, Habito.class)
                     .setParameter("uid", idUsuario)
                     .setMaxResults(1) // Solo queremos el primero (el más frecuente)
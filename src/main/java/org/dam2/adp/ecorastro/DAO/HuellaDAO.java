@@ -1,18 +1,35 @@
 package org.dam2.adp.ecorastro.DAO;
 
+import jakarta.persistence.OptimisticLockException;
 import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
 import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.ArchivoHuellas;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.IndiceFactores;
+import org.dam2.adp.ecorastro.util.Resolucion;
+import org.dam2.adp.ecorastro.util.SegmentoHuellas;
+import org.hibernate.Hibernate;
+import org.hibernate.StaleStateException;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 import org.hibernate.query.Query;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneId;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 
 /**
  * Clase de Acceso a Datos (DAO) para la entidad {@link Huella}.
@@ -20,6 +37,14 @@ import java.util.Map;
  * Gestiona las operaciones CRUD y consultas analíticas.
  * <b>Nomenclatura Explícita:</b> Se distingue claramente entre consultas de ámbito
  * USUARIO (individual) y ámbito COMUNIDAD (global/agregado).
+ * <p>
+ * Todas las consultas agregadas filtran por la clave de día ({@code h.dia}), también las
+ * "históricas" (desde 1970 hasta hoy), comparando enteros en lugar de aplicar funciones de fecha
+ * a cada fila.
+ * <p>
+ * Si se le da un {@link ArchivoHuellas}, las consultas de usuario y las de comunidad (totales, medias,
+ * ranking y usuarios activos) suman a las filas de la BBDD las huellas antiguas movidas al archivo
+ * local, de forma transparente.
  *
  * @author Antonio Delgado Portero
  * @version 3.0 (Renombrado explícito)
@@ -36,101 +61,359 @@ public class HuellaDAO {
                     "JOIN FETCH h.idActividad a " +
                     "JOIN FETCH a.idCategoria " +
                     "WHERE h.idUsuario.id = :uid " +
-                    "AND h.fecha >= :inicio AND h.fecha <= :fin " +
+                    "AND h.dia BETWEEN :diaInicio AND :diaFin " +
                     "ORDER BY h.fecha DESC";
 
     /**
      * [COMUNIDAD] Media global de impacto por categoría (promedio de todos los usuarios).
      */
     private final String HQL_GET_MEDIA_IMPACTO_COMUNIDAD_POR_CATEGORIA =
-            "SELECT c.nombre, AVG(h.valor * c.factorEmision) " +
+            "SELECT c.nombre, SUM(h.impactoKg), COUNT(h.impactoKg) " +
                     "FROM Huella h " +
-                    "JOIN h.idActividad a " +
-                    "JOIN a.idCategoria c " +
-                    "WHERE h.fecha >= :inicio AND h.fecha <= :fin " +
+                    "JOIN h.idCategoria c " +
+                    "WHERE h.dia BETWEEN :diaInicio AND :diaFin " +
                     "GROUP BY c.nombre";
 
     /**
      * [COMUNIDAD] Suma total absoluta de emisiones de todos los usuarios (KPI Global).
      */
     private final String HQL_GET_TOTAL_IMPACTO_COMUNIDAD =
-            "SELECT SUM(h.valor * c.factorEmision) " +
-                    "FROM Huella h JOIN h.idActividad a JOIN a.idCategoria c";
+            "SELECT SUM(h.impactoKg) FROM Huella h WHERE h.dia BETWEEN :diaInicio AND :diaFin";
 
     /**
      * [COMUNIDAD] Cuenta cuántos usuarios distintos tienen huellas registradas.
      */
     private final String HQL_COUNT_USUARIOS_ACTIVOS_COMUNIDAD =
-            "SELECT COUNT(DISTINCT h.idUsuario) FROM Huella h";
+            "SELECT COUNT(DISTINCT h.idUsuario) FROM Huella h WHERE h.dia BETWEEN :diaInicio AND :diaFin";
+
+    /**
+     * [COMUNIDAD] Usuarios con alguna huella en un periodo (para unirlos con los del archivo).
+     */
+    private final String HQL_GET_USUARIOS_ACTIVOS_COMUNIDAD =
+            "SELECT DISTINCT h.idUsuario.id FROM Huella h WHERE h.dia BETWEEN :diaInicio AND :diaFin";
+
+    /**
+     * [COMUNIDAD] Impacto de cada usuario en un periodo (para el ranking con huellas archivadas).
+     */
+    private final String HQL_GET_TOTAL_IMPACTO_POR_USUARIO =
+            "SELECT h.idUsuario.id, SUM(h.impactoKg) FROM Huella h " +
+                    "WHERE h.dia BETWEEN :diaInicio AND :diaFin GROUP BY h.idUsuario.id";
 
     /**
      * [USUARIO] Suma total de emisiones de un usuario específico (KPI Personal).
      */
     private final String HQL_GET_TOTAL_IMPACTO_USUARIO_RANGO_FECHA =
-            "SELECT SUM(h.valor * c.factorEmision) " +
-                    "FROM Huella h JOIN h.idActividad a JOIN a.idCategoria c " +
-                    "WHERE h.idUsuario.id = :uid AND h.fecha >= :inicio AND h.fecha <= :fin";
+            "SELECT SUM(h.impactoKg) FROM Huella h " +
+                    "WHERE h.idUsuario.id = :uid AND h.dia BETWEEN :diaInicio AND :diaFin";
 
     /**
      * [USUARIO] Suma de emisiones de un usuario agrupada por categoría (para Gráficos).
      */
     private final String HQL_GET_IMPACTO_USUARIO_POR_CATEGORIA =
-            "SELECT c.nombre, SUM(h.valor * c.factorEmision) " +
+            "SELECT c.nombre, SUM(h.impactoKg) " +
                     "FROM Huella h " +
-                    "JOIN h.idActividad a " +
-                    "JOIN a.idCategoria c " +
+                    "JOIN h.idCategoria c " +
                     "WHERE h.idUsuario.id = :uid " +
-                    "AND h.fecha >= :inicio AND h.fecha <= :fin " +
+                    "AND h.dia BETWEEN :diaInicio AND :diaFin " +
                     "GROUP BY c.nombre";
 
     /**
-     * [USUARIO] Evolución temporal flexible. Agrupa por Año y Mes dentro de un rango.
+     * [USUARIO] Evolución temporal flexible. Agrupa por la clave de mes dentro de un rango.
      * Esencial para gráficas interanuales (ej: "Últimos 12 meses").
      */
     private final String HQL_GET_EVOLUCION_RANGO_USUARIO =
-            "SELECT YEAR(h.fecha), MONTH(h.fecha), SUM(h.valor * c.factorEmision) " +
+            "SELECT h.mes, SUM(h.impactoKg) " +
                     "FROM Huella h " +
-                    "JOIN h.idActividad a " +
-                    "JOIN a.idCategoria c " +
                     "WHERE h.idUsuario.id = :uid " +
-                    "AND h.fecha >= :inicio AND h.fecha <= :fin " +
-                    "GROUP BY YEAR(h.fecha), MONTH(h.fecha) " +
-                    "ORDER BY YEAR(h.fecha) ASC, MONTH(h.fecha) ASC";
+                    "AND h.dia BETWEEN :diaInicio AND :diaFin " +
+                    "GROUP BY h.mes " +
+                    "ORDER BY h.mes ASC";
+
+    /**
+     * [USUARIO] Serie diaria: impacto de cada día con huellas de un rango.
+     */
+    private final String HQL_GET_SERIE_DIARIA_USUARIO =
+            "SELECT h.dia, SUM(h.impactoKg) FROM Huella h " +
+                    "WHERE h.idUsuario.id = :uid AND h.dia BETWEEN :diaInicio AND :diaFin " +
+                    "GROUP BY h.dia";
+
+    /**
+     * [USUARIO] Serie semanal: impacto por semana de lunes a domingo (el día 0 fue jueves,
+     * así que la semana de un día es (día + 3) / 7 y empieza el día semana * 7 - 3).
+     */
+    private final String HQL_GET_SERIE_SEMANAL_USUARIO =
+            "SELECT FLOOR((h.dia + 3) / 7), SUM(h.impactoKg) FROM Huella h " +
+                    "WHERE h.idUsuario.id = :uid AND h.dia BETWEEN :diaInicio AND :diaFin " +
+                    "GROUP BY FLOOR((h.dia + 3) / 7)";
 
     /**
      * [USUARIO vs COMUNIDAD] Calcula la posición del usuario en el ranking global.
      */
     private final String HQL_GET_RANKING_USUARIO_VS_COMUNIDAD =
             "SELECT COUNT(u) + 1 FROM Usuario u WHERE " +
-                    "(SELECT SUM(h.valor * c.factorEmision) FROM Huella h " +
-                    " JOIN h.idActividad a JOIN a.idCategoria c WHERE h.idUsuario = u) " +
+                    "(SELECT SUM(h.impactoKg) FROM Huella h " +
+                    " WHERE h.idUsuario = u AND h.dia BETWEEN :diaInicio AND :diaFin) " +
                     "< " +
-                    "(SELECT SUM(h2.valor * c2.factorEmision) FROM Huella h2 " +
-                    " JOIN h2.idActividad a2 JOIN a2.idCategoria c2 WHERE h2.idUsuario.id = :uid)";
+                    "(SELECT SUM(h2.impactoKg) FROM Huella h2 " +
+                    " WHERE h2.idUsuario.id = :uid AND h2.dia BETWEEN :diaInicio AND :diaFin)";
+
+    /**
+     * [COMUNIDAD] Impacto y número de huellas por usuario y categoría, para sembrar los acumulados en memoria.
+     */
+    private final String HQL_GET_ACUMULADOS_COMUNIDAD =
+            "SELECT h.idUsuario.id, c.id, c.nombre, SUM(h.impactoKg), COUNT(h.impactoKg), COUNT(h) " +
+                    "FROM Huella h " +
+                    "JOIN h.idCategoria c " +
+                    "GROUP BY h.idUsuario.id, c.id, c.nombre";
+
+    /**
+     * [COMUNIDAD] Impacto de cada usuario por categoría en un rango, para los resúmenes de percentiles.
+     */
+    private final String HQL_GET_TOTALES_USUARIO_CATEGORIA_RANGO =
+            "SELECT h.idUsuario.id, c.id, c.nombre, SUM(h.impactoKg) " +
+                    "FROM Huella h " +
+                    "JOIN h.idCategoria c " +
+                    "WHERE h.dia BETWEEN :diaInicio AND :diaFin " +
+                    "GROUP BY h.idUsuario.id, c.id, c.nombre";
+
+    /** Primer día de las consultas "históricas". */
+    private static final LocalDate INICIO_HISTORICO = LocalDate.of(1970, 1, 1);
+
+    /**
+     * [USUARIO] Huellas de un usuario modificadas desde un instante (sincronización incremental).
+     */
+    private final String HQL_GET_HUELLAS_USUARIO_MODIFICADAS_DESDE =
+            "FROM Huella h " +
+                    "JOIN FETCH h.idActividad a " +
+                    "JOIN FETCH a.idCategoria " +
+                    "WHERE h.idUsuario.id = :uid AND h.modificado >= :desde";
+
+    /**
+     * [USUARIO] Ids de todas las huellas de un usuario (para detectar borrados).
+     */
+    private final String HQL_GET_IDS_HUELLAS_USUARIO =
+            "SELECT h.id FROM Huella h WHERE h.idUsuario.id = :uid";
+
+    /**
+     * Huella por id con su actividad y categoría.
+     */
+    private final String HQL_GET_HUELLA_POR_ID =
+            "FROM Huella h " +
+                    "JOIN FETCH h.idActividad a " +
+                    "JOIN FETCH a.idCategoria " +
+                    "WHERE h.id = :id";
+
+    /**
+     * Fechas distintas de las huellas antiguas que aún no tienen claves de día y mes.
+     */
+    private final String HQL_GET_FECHAS_SIN_CLAVES =
+            "SELECT DISTINCT h.fecha FROM Huella h WHERE h.dia IS NULL AND h.fecha IS NOT NULL";
+
+    /**
+     * Rellena las claves de día y mes de todas las huellas con una misma fecha.
+     * Al ser una actualización masiva no incrementa la versión de las filas.
+     */
+    private final String HQL_RELLENAR_CLAVES_FECHA =
+            "UPDATE Huella h SET h.dia = :dia, h.mes = :mes WHERE h.fecha = :fecha AND h.dia IS NULL";
+
+    /**
+     * Categoría y factor actual de una actividad.
+     */
+    private final String HQL_GET_CATEGORIA_ACTIVIDAD =
+            "SELECT c.id, c.factorEmision FROM Actividad a JOIN a.idCategoria c WHERE a.id = :aid";
+
+    /**
+     * Cambia el factor de las huellas de una categoría en un tramo de días.
+     * Es una actualización versionada y marca la fecha de modificación, para que la réplica local descargue el cambio.
+     */
+    private final String HQL_CAMBIAR_FACTOR_CATEGORIA =
+            "UPDATE VERSIONED Huella h SET h.factorEmision = :factor, h.modificado = :ahora " +
+                    "WHERE h.dia BETWEEN :diaInicio AND :diaFin " +
+                    "AND h.idActividad.id IN (SELECT a.id FROM Actividad a WHERE a.idCategoria.id = :cid)";
+
+    /**
+     * Recalcula el impacto con el factor ya guardado en las mismas huellas.
+     */
+    private final String HQL_RECALCULAR_IMPACTO_CATEGORIA =
+            "UPDATE Huella h SET h.impactoKg = h.valor * h.factorEmision " +
+                    "WHERE h.dia BETWEEN :diaInicio AND :diaFin " +
+                    "AND h.idActividad.id IN (SELECT a.id FROM Actividad a WHERE a.idCategoria.id = :cid)";
+
+    /**
+     * Id máximo de las huellas antiguas que aún no tienen impacto guardado.
+     */
+    private final String HQL_GET_MAX_ID_SIN_IMPACTO =
+            "SELECT MAX(h.id) FROM Huella h WHERE h.impactoKg IS NULL";
+
+    /**
+     * Rellena factor e impacto de un tramo de ids con el factor actual de la categoría de cada huella.
+     */
+    private final String HQL_RELLENAR_IMPACTO =
+            "UPDATE Huella h SET " +
+                    "h.factorEmision = (SELECT c.factorEmision FROM Actividad a JOIN a.idCategoria c WHERE a = h.idActividad), " +
+                    "h.impactoKg = h.valor * (SELECT c.factorEmision FROM Actividad a JOIN a.idCategoria c WHERE a = h.idActividad) " +
+                    "WHERE h.impactoKg IS NULL AND h.id > :desde AND h.id <= :hasta";
+
+    /**
+     * Id máximo de las huellas antiguas que aún no tienen categoría guardada.
+     */
+    private final String HQL_GET_MAX_ID_SIN_CATEGORIA =
+            "SELECT MAX(h.id) FROM Huella h WHERE h.idCategoria IS NULL";
+
+    /**
+     * Rellena la categoría de un tramo de ids con la de la actividad de cada huella.
+     */
+    private final String HQL_RELLENAR_CATEGORIA =
+            "UPDATE Huella h SET " +
+                    "h.idCategoria = (SELECT a.idCategoria FROM Actividad a WHERE a = h.idActividad) " +
+                    "WHERE h.idCategoria IS NULL AND h.id > :desde AND h.id <= :hasta";
+
+    /**
+     * Meses con huellas anteriores a un día (candidatas a archivarse).
+     */
+    private final String HQL_GET_MESES_ARCHIVABLES =
+            "SELECT DISTINCT h.mes FROM Huella h WHERE h.dia < :corte ORDER BY h.mes";
+
+    /**
+     * Huellas de un mes anteriores a un día, con su actividad.
+     */
+    private final String HQL_GET_HUELLAS_ARCHIVABLES_MES =
+            "FROM Huella h JOIN FETCH h.idActividad WHERE h.mes = :mes AND h.dia < :corte";
+
+    /**
+     * Borra huellas por id.
+     */
+    private final String HQL_DELETE_HUELLAS_POR_ID =
+            "DELETE FROM Huella h WHERE h.id IN :ids";
+
+    /**
+     * Catálogo de actividades con su categoría (para reconstruir las huellas archivadas).
+     */
+    private final String HQL_GET_CATALOGO_ACTIVIDADES =
+            "FROM Actividad a JOIN FETCH a.idCategoria";
+
+    /** Ids que se borran en cada sentencia al archivar un mes. */
+    private static final int TAM_LOTE_BORRADO = 1_000;
+
+    /** Tramo de ids que se rellena en cada transacción de {@link #rellenarImpacto()} y {@link #rellenarCategorias()}. */
+    private static final int TAM_TRAMO_IMPACTO = 5_000;
+
+    /** Fechas distintas que se rellenan en cada transacción de {@link #rellenarClavesFecha()}. */
+    private static final int TAM_LOTE_RELLENO = 500;
+
+    private static final System.Logger LOG = System.getLogger(HuellaDAO.class.getName());
+
+    /** Origen de las sesiones: la BBDD principal o la réplica local. */
+    private final Supplier<Connection> conexion;
+
+    /** Archivo local de huellas antiguas, o null si no se usa. */
+    private final ArchivoHuellas archivo;
+
+    /**
+     * Crea el DAO sobre la BBDD principal.
+     */
+    public HuellaDAO() {
+        this(Connection::getInstance);
+    }
+
+    /**
+     * Crea el DAO sobre otra conexión (por ejemplo, la réplica local).
+     *
+     * @param conexion Proveedor de la conexión a usar.
+     */
+    public HuellaDAO(Supplier<Connection> conexion) {
+        this(conexion, null);
+    }
+
+    /**
+     * Crea el DAO sobre una conexión, completando sus consultas con un archivo de huellas antiguas.
+     *
+     * @param conexion Proveedor de la conexión a usar.
+     * @param archivo  Archivo local de huellas (puede ser null).
+     */
+    public HuellaDAO(Supplier<Connection> conexion, ArchivoHuellas archivo) {
+        this.conexion = conexion;
+        this.archivo = archivo;
+    }
+
+    /**
+     * Devuelve el archivo de huellas antiguas que usa este DAO.
+     *
+     * @return El archivo, o null si no tiene.
+     */
+    public ArchivoHuellas getArchivo() {
+        return archivo;
+    }
 
 
     public boolean addHuella(Huella huella) {
         boolean insertada = false;
+        try (Session session = conexion.get().getSession()) {
+            // La transacción se deshace antes de cerrar la sesión; después ya no se puede
+            Transaction tx = session.beginTransaction();
+            try {
+                fijarImpacto(session, huella);
+                session.persist(huella);
+                tx.commit();
+                insertada = true;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                huella.setId(null);
+                throw e;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return insertada;
+    }
+
+    /**
+     * Inserta un lote de huellas en una única transacción.
+     * <p>
+     * Si falla, no se guarda ninguna y se limpian los ids que Hibernate hubiera asignado,
+     * para poder reintentar el lote más tarde.
+     *
+     * @param huellas Huellas a insertar.
+     * @return true si se insertaron todas.
+     */
+    public boolean addHuellas(List<Huella> huellas) {
+        boolean insertadas = false;
         Transaction tx = null;
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             tx = session.beginTransaction();
-            session.persist(huella);
+            for (Huella huella : huellas) {
+                fijarImpacto(session, huella);
+                session.persist(huella);
+            }
             tx.commit();
-            insertada = true;
+            insertadas = true;
         } catch (Exception e) {
             if (tx != null && tx.isActive()) tx.rollback();
+            huellas.forEach(h -> h.setId(null));
             e.printStackTrace();
         }
-        return insertada;
+        return insertadas;
     }
 
     public boolean updateHuella(Huella huella) {
+        if (isArchivada(huella)) {
+            Huella nueva = new Huella(huella.getIdUsuario(), huella.getIdActividad(), huella.getValor(),
+                    huella.getUnidad(), huella.getFecha());
+            if (!sustituirArchivada(huella.getId(), nueva)) return false;
+            huella.setId(nueva.getId());
+            huella.setVersion(nueva.getVersion());
+            return true;
+        }
         boolean actualizada = false;
         Transaction tx = null;
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             tx = session.beginTransaction();
-            session.merge(huella);
+            fijarImpacto(session, huella);
+            Huella guardada = session.merge(huella);
             tx.commit();
+            // Se devuelve la nueva versión al objeto de la vista para que pueda volver a editarse
+            huella.setVersion(guardada.getVersion());
+            huella.setModificado(guardada.getModificado());
             actualizada = true;
         } catch (Exception e) {
             if (tx != null && tx.isActive()) tx.rollback();
@@ -140,9 +423,10 @@ public class HuellaDAO {
     }
 
     public boolean deleteHuella(Huella huella) {
+        if (desarchivar(huella)) return true;
         boolean eliminada = false;
         Transaction tx = null;
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             tx = session.beginTransaction();
             session.remove(huella);
             tx.commit();
@@ -155,6 +439,512 @@ public class HuellaDAO {
     }
 
 
+    /**
+     * Actualiza una huella solo si nadie la ha modificado desde que se leyó (misma versión).
+     * <p>
+     * Si se guarda, la huella recibe la nueva versión y fecha de modificación.
+     *
+     * @param huella Huella editada, con la versión sobre la que se hizo el cambio.
+     * @return Resultado de la escritura.
+     */
+    public ResultadoEscritura actualizarHuellaVersionada(Huella huella) {
+        Transaction tx = null;
+        try (Session session = conexion.get().getSession()) {
+            tx = session.beginTransaction();
+            Huella actual = session.get(Huella.class, huella.getId());
+            if (actual == null) {
+                tx.rollback();
+                return ResultadoEscritura.NO_ENCONTRADO;
+            }
+            if (actual.getVersion() != huella.getVersion()) {
+                tx.rollback();
+                return ResultadoEscritura.CONFLICTO;
+            }
+            actual.setValor(huella.getValor());
+            actual.setUnidad(huella.getUnidad());
+            actual.setFecha(huella.getFecha());
+            actual.setIdActividad(session.getReference(Actividad.class, huella.getIdActividad().getId()));
+            fijarImpacto(session, huella);
+            actual.setIdCategoria(huella.getIdCategoria());
+            actual.aplicarFactorEmision(huella.getFactorEmision());
+            tx.commit(); // El UPDATE incluye "WHERE version = ?", así que también detecta carreras
+
+            huella.setVersion(actual.getVersion());
+            huella.setModificado(actual.getModificado());
+            return ResultadoEscritura.CORRECTO;
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) tx.rollback();
+            if (esConflictoDeVersion(e)) return ResultadoEscritura.CONFLICTO;
+            e.printStackTrace();
+            return ResultadoEscritura.ERROR;
+        }
+    }
+
+    /**
+     * Borra una huella solo si sigue en la versión indicada.
+     *
+     * @param idHuella    Id de la huella.
+     * @param versionBase Versión que se tenía al decidir borrarla.
+     * @return Resultado de la escritura ({@code NO_ENCONTRADO} si ya estaba borrada).
+     */
+    public ResultadoEscritura eliminarHuellaVersionada(int idHuella, long versionBase) {
+        Transaction tx = null;
+        try (Session session = conexion.get().getSession()) {
+            tx = session.beginTransaction();
+            Huella actual = session.get(Huella.class, idHuella);
+            if (actual == null) {
+                tx.rollback();
+                return ResultadoEscritura.NO_ENCONTRADO;
+            }
+            if (actual.getVersion() != versionBase) {
+                tx.rollback();
+                return ResultadoEscritura.CONFLICTO;
+            }
+            session.remove(actual);
+            tx.commit();
+            return ResultadoEscritura.CORRECTO;
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) tx.rollback();
+            if (esConflictoDeVersion(e)) return ResultadoEscritura.CONFLICTO;
+            e.printStackTrace();
+            return ResultadoEscritura.ERROR;
+        }
+    }
+
+    /**
+     * Calcula el impacto de una huella con el factor de emisión vigente en su fecha y le copia la
+     * categoría de su actividad.
+     * <p>
+     * El factor se busca en {@link IndiceFactores}; si ninguna versión cubre ese día se usa el
+     * factor actual de la categoría. Si la categoría no viene cargada (por ejemplo, una actividad
+     * recuperada solo por id), se consulta en la misma sesión.
+     *
+     * @param session Sesión abierta.
+     * @param huella  Huella que se va a guardar.
+     */
+    private void fijarImpacto(Session session, Huella huella) {
+        Actividad actividad = huella.getIdActividad();
+        Categoria categoria = Hibernate.isInitialized(actividad) ? actividad.getIdCategoria() : null;
+        int idCategoria;
+        double factorActual;
+        if (categoria != null && Hibernate.isInitialized(categoria)) {
+            idCategoria = categoria.getId();
+            factorActual = categoria.getFactorEmision();
+        } else {
+            Object[] fila = session.createQuery(HQL_GET_CATEGORIA_ACTIVIDAD, Object[].class)
+                    .setParameter("aid", actividad.getId())
+                    .getSingleResult();
+            idCategoria = (Integer) fila[0];
+            factorActual = (Double) fila[1];
+        }
+        huella.setIdCategoria((categoria != null && Hibernate.isInitialized(categoria))
+                ? categoria : session.getReference(Categoria.class, idCategoria));
+        huella.aplicarFactorEmision(IndiceFactores.getInstance().getFactor(idCategoria, huella.getDia(), factorActual));
+    }
+
+    /**
+     * Recalcula con un nuevo factor el impacto de las huellas de una categoría en un tramo de días.
+     * <p>
+     * Los errores se propagan para que el proceso de recálculo sepa qué tramos reintentar.
+     *
+     * @param idCategoria Id de la categoría.
+     * @param diaInicio   Primer día del tramo (clave de día).
+     * @param diaFin      Último día del tramo (incluido).
+     * @param factor      Factor vigente en todo el tramo.
+     * @return Número de huellas recalculadas.
+     */
+    public int recalcularImpactoCategoria(int idCategoria, int diaInicio, int diaFin, double factor) {
+        try (Session session = conexion.get().getSession()) {
+            Transaction tx = session.beginTransaction();
+            try {
+                int actualizadas = session.createMutationQuery(HQL_CAMBIAR_FACTOR_CATEGORIA)
+                        .setParameter("factor", factor)
+                        .setParameter("ahora", Instant.now())
+                        .setParameter("diaInicio", diaInicio)
+                        .setParameter("diaFin", diaFin)
+                        .setParameter("cid", idCategoria)
+                        .executeUpdate();
+                session.createMutationQuery(HQL_RECALCULAR_IMPACTO_CATEGORIA)
+                        .setParameter("diaInicio", diaInicio)
+                        .setParameter("diaFin", diaFin)
+                        .setParameter("cid", idCategoria)
+                        .executeUpdate();
+                tx.commit();
+                return actualizadas;
+            } catch (RuntimeException e) {
+                if (tx.isActive()) tx.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Indica si una huella está en el archivo de huellas antiguas (y no en la BBDD).
+     *
+     * @param huella Huella a comprobar.
+     * @return true si está archivada.
+     */
+    public boolean isArchivada(Huella huella) {
+        return archivo != null && huella.getId() != null
+                && archivo.contiene(huella.getId(), huella.getIdUsuario().getId());
+    }
+
+    /**
+     * Recupera una huella archivada tal como está en el archivo.
+     *
+     * @param idHuella  Id de la huella.
+     * @param idUsuario Id de su usuario.
+     * @return La huella, o null si no está archivada o no se puede leer.
+     */
+    public Huella getHuellaArchivada(int idHuella, int idUsuario) {
+        if (archivo == null || !archivo.contiene(idHuella, idUsuario)) return null;
+        try (Session session = conexion.get().getSession()) {
+            for (Huella h : getHuellasArchivadas(session, idUsuario, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                if (h.getId() == idHuella) return h;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Sustituye una huella archivada por su versión editada, que vuelve a la BBDD como una huella
+     * nueva (con otro id). Si sigue siendo antigua se archivará otra vez.
+     * <p>
+     * La archivada solo se quita del archivo cuando la nueva ya está confirmada en la BBDD; si no se
+     * puede quitar, se borra la nueva. Así, si algo falla, la huella sigue archivada como estaba.
+     *
+     * @param idArchivada Id de la huella archivada.
+     * @param nueva       Huella editada, sin id; si se guarda, recibe el suyo.
+     * @return true si se ha sustituido.
+     */
+    public boolean sustituirArchivada(int idArchivada, Huella nueva) {
+        if (archivo == null || !addHuella(nueva)) return false;
+        boolean quitada;
+        try {
+            quitada = archivo.eliminar(idArchivada, nueva.getIdUsuario().getId());
+        } catch (IOException e) {
+            e.printStackTrace();
+            quitada = false;
+        }
+        if (!quitada) {
+            // Sin esto la huella estaría dos veces: en la BBDD y en el archivo
+            deleteHuella(nueva);
+            nueva.setId(null);
+        }
+        return quitada;
+    }
+
+    /**
+     * Quita una huella del archivo si estaba archivada.
+     *
+     * @param huella Huella que se va a editar o borrar.
+     * @return true si estaba archivada y se ha quitado.
+     */
+    private boolean desarchivar(Huella huella) {
+        if (!isArchivada(huella)) return false;
+        try {
+            return archivo.eliminar(huella.getId(), huella.getIdUsuario().getId());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Meses que tienen huellas anteriores a un día.
+     *
+     * @param diaCorte Primer día que no se archiva (clave de día).
+     * @return Claves de mes en orden.
+     */
+    public List<Integer> getMesesArchivables(int diaCorte) {
+        try (Session session = conexion.get().getSession()) {
+            return session.createQuery(HQL_GET_MESES_ARCHIVABLES, Integer.class)
+                    .setParameter("corte", diaCorte)
+                    .getResultList();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Mueve al archivo las huellas de un mes anteriores a un día.
+     * <p>
+     * Primero se escribe el segmento y después se borran las filas en la misma transacción que
+     * las leyó. Si el borrado falla, las filas quedan en ambos sitios hasta el siguiente intento,
+     * que vuelve a archivarlas (el segmento sustituye las de mismo id) y las borra.
+     *
+     * @param mes      Clave de mes.
+     * @param diaCorte Primer día que no se archiva.
+     * @return Número de huellas archivadas.
+     */
+    public int archivarMes(int mes, int diaCorte) {
+        if (archivo == null) return 0;
+        Transaction tx = null;
+        try (Session session = conexion.get().getSession()) {
+            tx = session.beginTransaction();
+            List<Huella> huellas = session.createQuery(HQL_GET_HUELLAS_ARCHIVABLES_MES, Huella.class)
+                    .setParameter("mes", mes)
+                    .setParameter("corte", diaCorte)
+                    .getResultList();
+            if (huellas.isEmpty()) {
+                tx.commit();
+                return 0;
+            }
+            List<SegmentoHuellas.Fila> filas = new ArrayList<>(huellas.size());
+            List<Integer> ids = new ArrayList<>(huellas.size());
+            for (Huella h : huellas) {
+                if (h.getImpactoKg() == null) fijarImpacto(session, h);
+                filas.add(SegmentoHuellas.Fila.de(h));
+                ids.add(h.getId());
+            }
+            session.clear();
+            archivo.anadir(mes, filas);
+
+            for (int i = 0; i < ids.size(); i += TAM_LOTE_BORRADO) {
+                session.createMutationQuery(HQL_DELETE_HUELLAS_POR_ID)
+                        .setParameter("ids", ids.subList(i, Math.min(ids.size(), i + TAM_LOTE_BORRADO)))
+                        .executeUpdate();
+            }
+            tx.commit();
+            return ids.size();
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) tx.rollback();
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Huellas archivadas de un usuario en un rango, reconstruidas con su actividad y categoría.
+     */
+    private List<Huella> getHuellasArchivadas(Session session, int idUsuario, int diaInicio, int diaFin) {
+        if (archivo == null) return List.of();
+        List<SegmentoHuellas.Fila> filas = archivo.getFilas(idUsuario, diaInicio, diaFin);
+        if (filas.isEmpty()) return List.of();
+
+        Map<Integer, Actividad> catalogo = getCatalogoActividades(session);
+        Usuario usuario = new Usuario();
+        usuario.setId(idUsuario);
+        List<Huella> huellas = new ArrayList<>(filas.size());
+        int omitidas = 0;
+        for (SegmentoHuellas.Fila f : filas) {
+            Actividad actividad = catalogo.get(f.idActividad());
+            if (actividad == null) {
+                omitidas++;
+                continue;
+            }
+            Huella h = new Huella(usuario, actividad, f.valor(), f.unidad(),
+                    Instant.ofEpochSecond(f.fechaEpochSegundos()));
+            h.setId(f.id());
+            h.setVersion(f.version());
+            if (!Double.isNaN(f.factor())) h.aplicarFactorEmision(f.factor());
+            huellas.add(h);
+        }
+        avisarOmitidas("historial del usuario", omitidas);
+        return huellas;
+    }
+
+    /**
+     * Categoría de una actividad del catálogo.
+     * <p>
+     * Las huellas archivadas no tienen clave ajena a la actividad, así que pueden apuntar a una
+     * que ya se ha borrado de la BBDD.
+     *
+     * @return La categoría, o null si la actividad ya no existe.
+     */
+    private static Categoria getCategoria(Map<Integer, Actividad> catalogo, int idActividad) {
+        Actividad actividad = catalogo.get(idActividad);
+        return (actividad != null) ? actividad.getIdCategoria() : null;
+    }
+
+    /**
+     * Avisa de las huellas archivadas que una consulta ha dejado fuera por tener una actividad desconocida.
+     */
+    private static void avisarOmitidas(String consulta, int omitidas) {
+        if (omitidas > 0) {
+            LOG.log(System.Logger.Level.WARNING,
+                    "{0}: {1} huellas archivadas omitidas por tener una actividad que ya no existe", consulta, omitidas);
+        }
+    }
+
+    private Map<Integer, Actividad> getCatalogoActividades(Session session) {
+        Map<Integer, Actividad> catalogo = new HashMap<>();
+        for (Actividad a : session.createQuery(HQL_GET_CATALOGO_ACTIVIDADES, Actividad.class).getResultList()) {
+            catalogo.put(a.getId(), a);
+        }
+        return catalogo;
+    }
+
+    /**
+     * Indica si una excepción se debe a un fallo del bloqueo optimista.
+     *
+     * @param e Excepción capturada.
+     * @return true si en su cadena de causas hay un conflicto de versión.
+     */
+    private static boolean esConflictoDeVersion(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof OptimisticLockException || t instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Recupera una huella por su id, con su actividad y categoría.
+     *
+     * @param idHuella Id de la huella.
+     * @return La huella, o null si no existe.
+     */
+    public Huella getHuellaById(int idHuella) {
+        try (Session session = conexion.get().getSession()) {
+            return session.createQuery(HQL_GET_HUELLA_POR_ID, Huella.class)
+                    .setParameter("id", idHuella)
+                    .uniqueResult();
+        }
+    }
+
+    /**
+     * Recupera las huellas de un usuario modificadas desde un instante.
+     * <p>
+     * A diferencia de las consultas de lectura, los errores no se ocultan: la sincronización
+     * necesita distinguir "sin cambios" de "sin conexión".
+     *
+     * @param idUsuario Id del usuario.
+     * @param desde     Instante a partir del cual buscar cambios (incluido).
+     * @return Huellas creadas o modificadas desde ese instante.
+     */
+    public List<Huella> getHuellasUsuarioModificadasDesde(int idUsuario, Instant desde) {
+        try (Session session = conexion.get().getSession()) {
+            return session.createQuery(HQL_GET_HUELLAS_USUARIO_MODIFICADAS_DESDE, Huella.class)
+                    .setParameter("uid", idUsuario)
+                    .setParameter("desde", desde)
+                    .getResultList();
+        }
+    }
+
+    /**
+     * Recupera los ids de todas las huellas de un usuario.
+     * <p>
+     * Los errores se propagan, igual que en {@link #getHuellasUsuarioModificadasDesde}.
+     *
+     * @param idUsuario Id del usuario.
+     * @return Ids de sus huellas.
+     */
+    public List<Integer> getIdsHuellasUsuario(int idUsuario) {
+        try (Session session = conexion.get().getSession()) {
+            return session.createQuery(HQL_GET_IDS_HUELLAS_USUARIO, Integer.class)
+                    .setParameter("uid", idUsuario)
+                    .getResultList();
+        }
+    }
+
+    /**
+     * Rellena factor e impacto de las huellas guardadas antes de existir esas columnas.
+     * <p>
+     * Recorre los ids de mayor a menor en tramos de {@value #TAM_TRAMO_IMPACTO}, cada uno en su
+     * propia transacción, para no bloquear la tabla entera. Puede interrumpirse y relanzarse.
+     *
+     * @return Número de huellas actualizadas.
+     */
+    public int rellenarImpacto() {
+        return rellenarPorTramos(HQL_GET_MAX_ID_SIN_IMPACTO, HQL_RELLENAR_IMPACTO);
+    }
+
+    /**
+     * Rellena la categoría de las huellas guardadas antes de existir esa columna.
+     * <p>
+     * Igual que {@link #rellenarImpacto()}, va por tramos de ids en transacciones separadas y puede
+     * relanzarse. Hasta que termina, los agregados por categoría no cuentan las filas sin rellenar.
+     *
+     * @return Número de huellas actualizadas.
+     */
+    public int rellenarCategorias() {
+        return rellenarPorTramos(HQL_GET_MAX_ID_SIN_CATEGORIA, HQL_RELLENAR_CATEGORIA);
+    }
+
+    /**
+     * Aplica una actualización masiva por tramos de {@value #TAM_TRAMO_IMPACTO} ids, de mayor a menor,
+     * cada uno en su propia transacción.
+     *
+     * @param hqlMaxId   Consulta del id máximo pendiente.
+     * @param hqlRelleno Actualización con los parámetros {@code desde} (excluido) y {@code hasta} (incluido).
+     * @return Número de huellas actualizadas.
+     */
+    private int rellenarPorTramos(String hqlMaxId, String hqlRelleno) {
+        int actualizadas = 0;
+        Integer hasta;
+        try (Session session = conexion.get().getSession()) {
+            hasta = session.createQuery(hqlMaxId, Integer.class).uniqueResult();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return 0;
+        }
+        while (hasta != null && hasta > 0) {
+            int desde = Math.max(0, hasta - TAM_TRAMO_IMPACTO);
+            Transaction tx = null;
+            try (Session session = conexion.get().getSession()) {
+                tx = session.beginTransaction();
+                actualizadas += session.createMutationQuery(hqlRelleno)
+                        .setParameter("desde", desde)
+                        .setParameter("hasta", hasta)
+                        .executeUpdate();
+                tx.commit();
+            } catch (Exception e) {
+                if (tx != null && tx.isActive()) tx.rollback();
+                e.printStackTrace();
+                return actualizadas;
+            }
+            hasta = desde;
+        }
+        return actualizadas;
+    }
+
+    /**
+     * Rellena las claves de día y mes de las huellas guardadas antes de existir esas columnas.
+     * <p>
+     * Trabaja por lotes de fechas distintas (cada lote en su propia transacción), así que puede
+     * interrumpirse y volver a lanzarse sin problema. Como la mayoría de huellas se guardan a
+     * medianoche, cada fecha cubre muchas filas con una sola sentencia.
+     * <p>
+     * Esas huellas se grabaron a medianoche UTC, así que sus claves salen de la fecha UTC
+     * ({@link FechaUtil#aFechaHistorica}); {@link FechaUtil#ZONA} solo se aplica a las nuevas.
+     *
+     * @return Número de huellas actualizadas.
+     */
+    public int rellenarClavesFecha() {
+        int actualizadas = 0;
+        while (true) {
+            Transaction tx = null;
+            try (Session session = conexion.get().getSession()) {
+                tx = session.beginTransaction();
+                List<Instant> fechas = session.createQuery(HQL_GET_FECHAS_SIN_CLAVES, Instant.class)
+                        .setMaxResults(TAM_LOTE_RELLENO)
+                        .getResultList();
+                if (fechas.isEmpty()) {
+                    tx.commit();
+                    return actualizadas;
+                }
+                for (Instant fecha : fechas) {
+                    LocalDate dia = FechaUtil.aFechaHistorica(fecha);
+                    actualizadas += session.createMutationQuery(HQL_RELLENAR_CLAVES_FECHA)
+                            .setParameter("dia", FechaUtil.claveDia(dia))
+                            .setParameter("mes", FechaUtil.claveMes(dia))
+                            .setParameter("fecha", fecha)
+                            .executeUpdate();
+                }
+                tx.commit();
+            } catch (Exception e) {
+                if (tx != null && tx.isActive()) tx.rollback();
+                e.printStackTrace();
+                return actualizadas;
+            }
+        }
+    }
+
     /**
      * Recupera el historial completo de un usuario.
      */
@@ -167,15 +957,25 @@ public class HuellaDAO {
      * Recupera las huellas de un usuario filtradas por fecha.
      */
     public List<Huella> getHuellasUsuarioPorRangoFecha(int idUsuario, LocalDate fechaInicio, LocalDate fechaFin) {
-        try (Session session = Connection.getInstance().getSession()) {
-            Instant inicio = fechaInicio.atStartOfDay(ZoneId.systemDefault()).toInstant();
-            Instant fin = fechaFin.plusDays(1).atStartOfDay(ZoneId.systemDefault()).minusNanos(1).toInstant();
-
-            return session.createQuery(HQL_GET_HUELLAS_USUARIO_RANGO_FECHA, Huella.class)
+        int diaInicio = FechaUtil.claveDia(fechaInicio);
+        int diaFin = FechaUtil.claveDia(fechaFin);
+        try (Session session = conexion.get().getSession()) {
+            List<Huella> huellas = session.createQuery(HQL_GET_HUELLAS_USUARIO_RANGO_FECHA, Huella.class)
                     .setParameter("uid", idUsuario)
-                    .setParameter("inicio", inicio)
-                    .setParameter("fin", fin)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
                     .getResultList();
+
+            List<Huella> archivadas = getHuellasArchivadas(session, idUsuario, diaInicio, diaFin);
+            if (archivadas.isEmpty()) return huellas;
+
+            // Si una huella está en ambos sitios (archivado interrumpido) manda la de la BBDD
+            Set<Integer> enBBDD = new HashSet<>();
+            huellas.forEach(h -> enBBDD.add(h.getId()));
+            List<Huella> todas = new ArrayList<>(huellas);
+            archivadas.stream().filter(h -> !enBBDD.contains(h.getId())).forEach(todas::add);
+            todas.sort(Comparator.comparing(Huella::getFecha).reversed());
+            return todas;
         } catch (Exception e) {
             e.printStackTrace();
             return new ArrayList<>();
@@ -186,16 +986,16 @@ public class HuellaDAO {
      * Calcula el impacto total de un usuario en un rango de fechas.
      */
     public double getTotalImpactoUsuarioPorRangoFecha(int idUsuario, LocalDate fechaInicio, LocalDate fechaFin) {
-        try (Session session = Connection.getInstance().getSession()) {
-            Instant inicio = fechaInicio.atStartOfDay(ZoneId.systemDefault()).toInstant();
-            Instant fin = fechaFin.plusDays(1).atStartOfDay(ZoneId.systemDefault()).minusNanos(1).toInstant();
-
+        int diaInicio = FechaUtil.claveDia(fechaInicio);
+        int diaFin = FechaUtil.claveDia(fechaFin);
+        try (Session session = conexion.get().getSession()) {
             Double resultado = session.createQuery(HQL_GET_TOTAL_IMPACTO_USUARIO_RANGO_FECHA, Double.class)
                     .setParameter("uid", idUsuario)
-                    .setParameter("inicio", inicio)
-                    .setParameter("fin", fin)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
                     .getSingleResult();
-            return (resultado != null) ? resultado : 0.0;
+            double archivado = (archivo != null) ? archivo.sumarImpacto(idUsuario, diaInicio, diaFin) : 0.0;
+            return ((resultado != null) ? resultado : 0.0) + archivado;
         } catch (Exception e) {
             e.printStackTrace();
             return 0.0;
@@ -207,48 +1007,145 @@ public class HuellaDAO {
      */
     public Map<String, Double> getImpactoUsuarioPorCategoria(int idUsuario, LocalDate inicio, LocalDate fin) {
         Map<String, Double> resultados = new HashMap<>();
-        try (Session session = Connection.getInstance().getSession()) {
-            Instant inicioInst = inicio.atStartOfDay(ZoneId.systemDefault()).toInstant();
-            Instant finInst = fin.plusDays(1).atStartOfDay(ZoneId.systemDefault()).minusNanos(1).toInstant();
-
+        int diaInicio = FechaUtil.claveDia(inicio);
+        int diaFin = FechaUtil.claveDia(fin);
+        try (Session session = conexion.get().getSession()) {
             List<Object[]> filas = session.createQuery(HQL_GET_IMPACTO_USUARIO_POR_CATEGORIA, Object[].class)
                     .setParameter("uid", idUsuario)
-                    .setParameter("inicio", inicioInst)
-                    .setParameter("fin", finInst)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
                     .getResultList();
 
             for (Object[] fila : filas) {
                 resultados.put((String) fila[0], (Double) fila[1]);
             }
+
+            if (archivo != null) {
+                Map<Integer, Double> archivado = archivo.getImpactoPorActividad(idUsuario, diaInicio, diaFin);
+                if (!archivado.isEmpty()) {
+                    Map<Integer, Actividad> catalogo = getCatalogoActividades(session);
+                    int omitidas = 0;
+                    for (Map.Entry<Integer, Double> e : archivado.entrySet()) {
+                        Categoria c = getCategoria(catalogo, e.getKey());
+                        if (c == null) {
+                            omitidas++;
+                            continue;
+                        }
+                        resultados.merge(c.getNombre(), e.getValue(), Double::sum);
+                    }
+                    avisarOmitidas("impacto del usuario por categoría", omitidas);
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
         return resultados;
     }
 
+    /**
+     * Evolución mensual del impacto de un usuario.
+     *
+     * @return Filas [Año, Mes, Impacto] ordenadas por mes.
+     */
     public List<Object[]> getEvolucionRangoFechaUsuario(int idUsuario, LocalDate fechaInicio, LocalDate fechaFin) {
-        try (Session session = Connection.getInstance().getSession()) {
-            Instant inicio = fechaInicio.atStartOfDay(ZoneId.systemDefault()).toInstant();
-            // Ajustamos el fin para incluir todo el último día
-            Instant fin = fechaFin.plusDays(1).atStartOfDay(ZoneId.systemDefault()).minusNanos(1).toInstant();
-
-            return session.createQuery(HQL_GET_EVOLUCION_RANGO_USUARIO, Object[].class)
+        int diaInicio = FechaUtil.claveDia(fechaInicio);
+        int diaFin = FechaUtil.claveDia(fechaFin);
+        try (Session session = conexion.get().getSession()) {
+            List<Object[]> filas = session.createQuery(HQL_GET_EVOLUCION_RANGO_USUARIO, Object[].class)
                     .setParameter("uid", idUsuario)
-                    .setParameter("inicio", inicio)
-                    .setParameter("fin", fin)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
                     .getResultList();
+
+            Map<Integer, Double> porMes = (archivo != null)
+                    ? new TreeMap<>(archivo.getImpactoPorMes(idUsuario, diaInicio, diaFin))
+                    : new TreeMap<>();
+            for (Object[] fila : filas) {
+                porMes.merge((Integer) fila[0], fila[1] != null ? (Double) fila[1] : 0.0, Double::sum);
+            }
+
+            List<Object[]> evolucion = new ArrayList<>(porMes.size());
+            porMes.forEach((claveMes, impacto) -> {
+                YearMonth mes = FechaUtil.aMes(claveMes);
+                evolucion.add(new Object[]{mes.getYear(), mes.getMonthValue(), impacto});
+            });
+            return evolucion;
         } catch (Exception e) {
             e.printStackTrace();
             return new ArrayList<>();
         }
     }
+    /**
+     * Serie temporal del impacto de un usuario, agrupada en la BBDD por días, semanas o meses.
+     * <p>
+     * Los años se obtienen sumando los meses, que son como mucho doce filas por año.
+     *
+     * @param idUsuario  Id del usuario.
+     * @param resolucion Tamaño de los tramos.
+     * @param diaInicio  Clave del primer día (incluido).
+     * @param diaFin     Clave del último día (incluido).
+     * @return Clave de día del inicio de cada tramo con huellas → impacto, en orden (vacío si hay un error).
+     */
+    public Map<Integer, Double> getSerieUsuario(int idUsuario, Resolucion resolucion, int diaInicio, int diaFin) {
+        String hql = switch (resolucion) {
+            case DIA -> HQL_GET_SERIE_DIARIA_USUARIO;
+            case SEMANA -> HQL_GET_SERIE_SEMANAL_USUARIO;
+            case MES, ANIO -> HQL_GET_EVOLUCION_RANGO_USUARIO;
+        };
+        Map<Integer, Double> serie = new TreeMap<>();
+        try (Session session = conexion.get().getSession()) {
+            List<Object[]> filas = session.createQuery(hql, Object[].class)
+                    .setParameter("uid", idUsuario)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
+                    .getResultList();
+            for (Object[] fila : filas) {
+                int clave = ((Number) fila[0]).intValue();
+                int inicio = switch (resolucion) {
+                    case DIA -> clave;
+                    case SEMANA -> clave * 7 - 3;
+                    case MES, ANIO -> resolucion.inicioTramo((int) FechaUtil.aMes(clave).atDay(1).toEpochDay());
+                };
+                serie.merge(inicio, fila[1] != null ? ((Number) fila[1]).doubleValue() : 0.0, Double::sum);
+            }
+            if (archivo != null) {
+                for (SegmentoHuellas.Fila f : archivo.getFilas(idUsuario, diaInicio, diaFin)) {
+                    if (!Double.isNaN(f.impacto())) serie.merge(resolucion.inicioTramo(f.dia()), f.impacto(), Double::sum);
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            serie.clear();
+        }
+        return serie;
+    }
+
     /**
      * Obtiene la posición del usuario en el ranking global.
      */
     public Long getRankingUsuarioEnComunidad(int idUsuario) {
-        try (Session session = Connection.getInstance().getSession()) {
+        int diaInicio = FechaUtil.claveDia(INICIO_HISTORICO);
+        int diaFin = FechaUtil.claveDia(LocalDate.now());
+        try (Session session = conexion.get().getSession()) {
+            if (hayArchivadas()) {
+                // Con huellas archivadas el total de cada usuario se suma aquí, como en el resto de consultas
+                Map<Integer, Double> totales = new HashMap<>();
+                for (Object[] fila : session.createQuery(HQL_GET_TOTAL_IMPACTO_POR_USUARIO, Object[].class)
+                        .setParameter("diaInicio", diaInicio)
+                        .setParameter("diaFin", diaFin)
+                        .getResultList()) {
+                    if (fila[1] != null) totales.put((Integer) fila[0], ((Number) fila[1]).doubleValue());
+                }
+                archivo.recorrer(diaInicio, diaFin, f -> {
+                    if (!Double.isNaN(f.impacto())) totales.merge(f.idUsuario(), f.impacto(), Double::sum);
+                });
+                Double mio = totales.get(idUsuario);
+                return 1L + ((mio == null) ? 0 : totales.values().stream().filter(t -> t < mio).count());
+            }
             Long ranking = session.createQuery(HQL_GET_RANKING_USUARIO_VS_COMUNIDAD, Long.class)
                     .setParameter("uid", idUsuario)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
                     .uniqueResult();
             return (ranking != null) ? ranking : 0L;
         } catch (Exception e) {
@@ -265,7 +1162,7 @@ public class HuellaDAO {
      * Calcula la media histórica global por categoría.
      */
     public Map<String, Double> getMediaImpactoComunidadPorCategoriaHistorico() {
-        return getMediaImpactoComunidadPorCategoriaRangoFecha(LocalDate.of(1970, 1, 1), LocalDate.now());
+        return getMediaImpactoComunidadPorCategoriaRangoFecha(INICIO_HISTORICO, LocalDate.now());
     }
 
     /**
@@ -273,18 +1170,37 @@ public class HuellaDAO {
      */
     public Map<String, Double> getMediaImpactoComunidadPorCategoriaRangoFecha(LocalDate fechaInicio, LocalDate fechaFin) {
         Map<String, Double> medias = new HashMap<>();
-        try (Session session = Connection.getInstance().getSession()) {
-            Instant inicio = fechaInicio.atStartOfDay(ZoneId.systemDefault()).toInstant();
-            Instant fin = fechaFin.plusDays(1).atStartOfDay(ZoneId.systemDefault()).minusNanos(1).toInstant();
-
+        int diaInicio = FechaUtil.claveDia(fechaInicio);
+        int diaFin = FechaUtil.claveDia(fechaFin);
+        try (Session session = conexion.get().getSession()) {
             List<Object[]> resultados = session.createQuery(HQL_GET_MEDIA_IMPACTO_COMUNIDAD_POR_CATEGORIA, Object[].class)
-                    .setParameter("inicio", inicio)
-                    .setParameter("fin", fin)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
                     .getResultList();
 
+            // Suma y número de huellas con impacto por categoría, de la BBDD y del archivo
+            Map<String, double[]> sumas = new HashMap<>();
             for (Object[] fila : resultados) {
-                medias.put((String) fila[0], (Double) fila[1]);
+                if (fila[1] == null) continue;
+                sumas.put((String) fila[0], new double[]{((Number) fila[1]).doubleValue(), ((Number) fila[2]).doubleValue()});
+            }
+            if (hayArchivadas()) {
+                Map<Integer, Actividad> catalogo = getCatalogoActividades(session);
+                int[] omitidas = {0};
+                archivo.recorrer(diaInicio, diaFin, f -> {
+                    if (Double.isNaN(f.impacto())) return;
+                    Categoria c = getCategoria(catalogo, f.idActividad());
+                    if (c == null) {
+                        omitidas[0]++;
+                        return;
+                    }
+                    double[] suma = sumas.computeIfAbsent(c.getNombre(), k -> new double[2]);
+                    suma[0] += f.impacto();
+                    suma[1]++;
+                });
+                avisarOmitidas("medias de la comunidad por categoría", omitidas[0]);
             }
+            sumas.forEach((categoria, suma) -> medias.put(categoria, suma[0] / suma[1]));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -295,9 +1211,87 @@ public class HuellaDAO {
      * Obtiene el impacto total acumulado de toda la comunidad.
      */
     public double getTotalImpactoComunidad() {
-        try (Session session = Connection.getInstance().getSession()) {
-            Double resultado = session.createQuery(HQL_GET_TOTAL_IMPACTO_COMUNIDAD, Double.class).getSingleResult();
-            return (resultado != null) ? resultado : 0.0;
+        return getTotalImpactoComunidadPorRangoFecha(INICIO_HISTORICO, LocalDate.now());
+    }
+
+    /**
+     * Obtiene el impacto total de la comunidad en un periodo.
+     */
+    public double getTotalImpactoComunidadPorRangoFecha(LocalDate fechaInicio, LocalDate fechaFin) {
+        int diaInicio = FechaUtil.claveDia(fechaInicio);
+        int diaFin = FechaUtil.claveDia(fechaFin);
+        try (Session session = conexion.get().getSession()) {
+            Double resultado = session.createQuery(HQL_GET_TOTAL_IMPACTO_COMUNIDAD, Double.class)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
+                    .getSingleResult();
+            double archivado = (archivo != null) ? archivo.sumarImpacto(null, diaInicio, diaFin) : 0.0;
+            return ((resultado != null) ? resultado : 0.0) + archivado;
+        }
+    }
+
+    /**
+     * Impacto acumulado de toda la comunidad por usuario y categoría, incluidas las huellas archivadas.
+     * <p>
+     * Los errores se propagan, igual que en {@link #getHuellasUsuarioModificadasDesde}: quien
+     * siembra los acumulados debe saber si la lectura ha fallado.
+     *
+     * @return Filas [idUsuario, idCategoria, nombreCategoria, impacto (Double), huellas con impacto (Long), huellas (Long)].
+     */
+    public List<Object[]> getAcumuladosComunidad() {
+        try (Session session = conexion.get().getSession()) {
+            List<Object[]> filas = new ArrayList<>(session.createQuery(HQL_GET_ACUMULADOS_COMUNIDAD, Object[].class)
+                    .getResultList());
+            if (archivo != null && archivo.getNumFilas() > 0) {
+                Map<Integer, Actividad> catalogo = getCatalogoActividades(session);
+                int[] omitidas = {0};
+                archivo.recorrer(f -> {
+                    Categoria c = getCategoria(catalogo, f.idActividad());
+                    if (c == null) {
+                        omitidas[0]++;
+                        return;
+                    }
+                    boolean conImpacto = !Double.isNaN(f.impacto());
+                    filas.add(new Object[]{f.idUsuario(), c.getId(), c.getNombre(),
+                            conImpacto ? f.impacto() : 0.0, conImpacto ? 1L : 0L, 1L});
+                });
+                avisarOmitidas("acumulados de la comunidad", omitidas[0]);
+            }
+            return filas;
+        }
+    }
+
+    /**
+     * Impacto de cada usuario por categoría en un rango de días, incluidas las huellas archivadas.
+     * <p>
+     * Las filas archivadas llegan una por huella, así que un mismo par (usuario, categoría) puede
+     * repetirse. Los errores se propagan, igual que en {@link #getAcumuladosComunidad()}.
+     *
+     * @param diaInicio Clave del primer día (incluido).
+     * @param diaFin    Clave del último día (incluido).
+     * @return Filas {@code [idUsuario, idCategoria, nombreCategoria, impacto]}.
+     */
+    public List<Object[]> getTotalesUsuarioPorCategoria(int diaInicio, int diaFin) {
+        try (Session session = conexion.get().getSession()) {
+            List<Object[]> filas = new ArrayList<>(session.createQuery(HQL_GET_TOTALES_USUARIO_CATEGORIA_RANGO, Object[].class)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
+                    .getResultList());
+            if (archivo != null && archivo.getNumFilas() > 0) {
+                Map<Integer, Actividad> catalogo = getCatalogoActividades(session);
+                int[] omitidas = {0};
+                archivo.recorrer(f -> {
+                    if (f.dia() < diaInicio || f.dia() > diaFin || Double.isNaN(f.impacto())) return;
+                    Categoria c = getCategoria(catalogo, f.idActividad());
+                    if (c == null) {
+                        omitidas[0]++;
+                        return;
+                    }
+                    filas.add(new Object[]{f.idUsuario(), c.getId(), c.getNombre(), f.impacto()});
+                });
+                avisarOmitidas("totales por categoría", omitidas[0]);
+            }
+            return filas;
         }
     }
 
@@ -306,9 +1300,36 @@ public class HuellaDAO {
      * Útil para mostrar "Puesto X de Y".
      */
     public Long countUsuariosActivosComunidad() {
-        try (Session session = Connection.getInstance().getSession()) {
-            Long count = session.createQuery(HQL_COUNT_USUARIOS_ACTIVOS_COMUNIDAD, Long.class).uniqueResult();
+        return countUsuariosActivosComunidadPorRangoFecha(INICIO_HISTORICO, LocalDate.now());
+    }
+
+    /**
+     * Cuenta los usuarios con alguna huella en un periodo.
+     */
+    public Long countUsuariosActivosComunidadPorRangoFecha(LocalDate fechaInicio, LocalDate fechaFin) {
+        int diaInicio = FechaUtil.claveDia(fechaInicio);
+        int diaFin = FechaUtil.claveDia(fechaFin);
+        try (Session session = conexion.get().getSession()) {
+            if (hayArchivadas()) {
+                Set<Integer> usuarios = new HashSet<>(session.createQuery(HQL_GET_USUARIOS_ACTIVOS_COMUNIDAD, Integer.class)
+                        .setParameter("diaInicio", diaInicio)
+                        .setParameter("diaFin", diaFin)
+                        .getResultList());
+                archivo.recorrer(diaInicio, diaFin, f -> usuarios.add(f.idUsuario()));
+                return (long) usuarios.size();
+            }
+            Long count = session.createQuery(HQL_COUNT_USUARIOS_ACTIVOS_COMUNIDAD, Long.class)
+                    .setParameter("diaInicio", diaInicio)
+                    .setParameter("diaFin", diaFin)
+                    .uniqueResult();
             return (count != null) ? count : 0L;
         }
     }
+
+    /**
+     * Indica si hay huellas en el archivo que las consultas de comunidad deban sumar.
+     */
+    private boolean hayArchivadas() {
+        return archivo != null && archivo.getNumFilas() > 0;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,330 @@
+package org.dam2.adp.ecorastro.DAO;
+
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.CambioPendiente;
+import org.dam2.adp.ecorastro.model.EstadoReplica;
+import org.dam2.adp.ecorastro.model.Habito;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Clase de Acceso a Datos (DAO) para las operaciones propias de la réplica local.
+ * <p>
+ * Copia en la BBDD embebida las filas descargadas del servidor conservando sus ids
+ * (por eso usa {@code MERGE INTO ... KEY} de H2 en lugar de {@code persist}, que generaría ids nuevos)
+ * y gestiona las tablas que solo existen en la réplica: {@link EstadoReplica} y {@link CambioPendiente}.
+ * <p>
+ * Las lecturas habituales sobre la réplica se hacen con los DAOs de siempre
+ * ({@link HuellaDAO}, {@link HabitoDAO}, {@link ActividadDAO}) creados sobre esta misma conexión.
+ * Los métodos de escritura propagan los errores para que la sincronización pueda abortar.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class ReplicaDAO {
+
+    private static final String SQL_MERGE_CATEGORIA =
+            "MERGE INTO ecorastro_db.categoria (id_categoria, nombre, factor_emision, unidad) KEY (id_categoria) VALUES (?, ?, ?, ?)";
+
+    private static final String SQL_MERGE_ACTIVIDAD =
+            "MERGE INTO ecorastro_db.actividad (id_actividad, nombre, id_categoria) KEY (id_actividad) VALUES (?, ?, ?)";
+
+    private static final String SQL_MERGE_USUARIO =
+            "MERGE INTO ecorastro_db.usuario (id_usuario, nombre, email, contrasena, fecha_registro) KEY (id_usuario) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SQL_MERGE_HUELLA =
+            "MERGE INTO ecorastro_db.huella (id_registro, id_usuario, id_actividad, id_categoria, valor, unidad, fecha, dia, mes, " +
+                    "factor_emision, impacto_kg, version, modificado) KEY (id_registro) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_MERGE_HABITO =
+            "MERGE INTO ecorastro_db.habito (id_usuario, id_actividad, frecuencia, tipo, ultima_fecha, modificado) " +
+                    "KEY (id_usuario, id_actividad) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String HQL_DELETE_HUELLAS_POR_ID = "DELETE FROM Huella h WHERE h.id IN :ids";
+
+    private static final String HQL_DELETE_HABITOS_USUARIO = "DELETE FROM Habito h WHERE h.idUsuario.id = :uid";
+
+    private static final String HQL_DELETE_HABITO =
+            "DELETE FROM Habito h WHERE h.idUsuario.id = :uid AND h.idActividad.id = :aid";
+
+    private static final String HQL_GET_VERSIONES_HUELLAS_USUARIO =
+            "SELECT h.id, h.version FROM Huella h WHERE h.idUsuario.id = :uid";
+
+    private static final String HQL_GET_CAMBIOS_PENDIENTES = "FROM CambioPendiente c ORDER BY c.modificado";
+
+    /** Conexión con la réplica. */
+    private final Supplier<Connection> conexion;
+
+    /**
+     * Crea el DAO sobre la réplica.
+     *
+     * @param conexion Proveedor de la conexión con la réplica.
+     */
+    public ReplicaDAO(Supplier<Connection> conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Copia el catálogo de actividades (y sus categorías) en la réplica.
+     *
+     * @param actividades Actividades con su categoría cargada.
+     */
+    public void guardarCatalogo(List<Actividad> actividades) {
+        Map<Integer, Actividad> porCategoria = new LinkedHashMap<>();
+        actividades.forEach(a -> porCategoria.putIfAbsent(a.getIdCategoria().getId(), a));
+
+        ejecutarLote(SQL_MERGE_CATEGORIA, porCategoria.values(), (ps, a) -> {
+            ps.setInt(1, a.getIdCategoria().getId());
+            ps.setString(2, a.getIdCategoria().getNombre());
+            ps.setDouble(3, a.getIdCategoria().getFactorEmision());
+            ps.setString(4, a.getIdCategoria().getUnidad());
+        });
+        ejecutarLote(SQL_MERGE_ACTIVIDAD, actividades, (ps, a) -> {
+            ps.setInt(1, a.getId());
+            ps.setString(2, a.getNombre());
+            ps.setInt(3, a.getIdCategoria().getId());
+        });
+    }
+
+    /**
+     * Copia los datos básicos de un usuario en la réplica.
+     * <p>
+     * La contraseña no se guarda en local: el inicio de sesión siempre se valida contra el servidor.
+     *
+     * @param usuario Usuario de la sesión.
+     */
+    public void guardarUsuario(Usuario usuario) {
+        ejecutarLote(SQL_MERGE_USUARIO, List.of(usuario), (ps, u) -> {
+            ps.setInt(1, u.getId());
+            ps.setString(2, u.getNombre());
+            ps.setString(3, u.getEmail());
+            ps.setString(4, "");
+            ps.setObject(5, u.getFechaRegistro());
+        });
+    }
+
+    /**
+     * Inserta o sustituye huellas en la réplica conservando id y versión del servidor.
+     *
+     * @param huellas Huellas a copiar.
+     */
+    public void guardarHuellas(Collection<Huella> huellas) {
+        ejecutarLote(SQL_MERGE_HUELLA, huellas, (ps, h) -> {
+            ps.setInt(1, h.getId());
+            ps.setInt(2, h.getIdUsuario().getId());
+            ps.setInt(3, h.getIdActividad().getId());
+            ps.setObject(4, (h.getIdCategoria() != null) ? h.getIdCategoria().getId() : null);
+            ps.setDouble(5, h.getValor());
+            ps.setString(6, h.getUnidad());
+            ps.setObject(7, h.getFecha());
+            ps.setObject(8, h.getDia());
+            ps.setObject(9, h.getMes());
+            ps.setObject(10, h.getFactorEmision());
+            ps.setObject(11, h.getImpactoKg());
+            ps.setLong(12, h.getVersion());
+            ps.setObject(13, h.getModificado());
+        });
+    }
+
+    /**
+     * Borra huellas de la réplica.
+     *
+     * @param ids Ids de las huellas.
+     */
+    public void borrarHuellas(Collection<Integer> ids) {
+        if (ids.isEmpty()) return;
+        ejecutarEnTransaccion(session -> session.createMutationQuery(HQL_DELETE_HUELLAS_POR_ID)
+                .setParameterList("ids", ids)
+                .executeUpdate());
+    }
+
+    /**
+     * Versión de cada huella de un usuario presente en la réplica.
+     *
+     * @param idUsuario Id del usuario.
+     * @return Mapa id de huella → versión.
+     */
+    public Map<Integer, Long> getVersionesHuellas(int idUsuario) {
+        Map<Integer, Long> versiones = new HashMap<>();
+        try (Session session = conexion.get().getSession()) {
+            for (Object[] fila : session.createQuery(HQL_GET_VERSIONES_HUELLAS_USUARIO, Object[].class)
+                    .setParameter("uid", idUsuario)
+                    .getResultList()) {
+                versiones.put((Integer) fila[0], (Long) fila[1]);
+            }
+        }
+        return versiones;
+    }
+
+    /**
+     * Sustituye todos los hábitos de un usuario en la réplica.
+     *
+     * @param idUsuario Id del usuario.
+     * @param habitos   Hábitos actuales en el servidor.
+     */
+    public void reemplazarHabitos(int idUsuario, List<Habito> habitos) {
+        ejecutarEnTransaccion(session -> session.createMutationQuery(HQL_DELETE_HABITOS_USUARIO)
+                .setParameter("uid", idUsuario)
+                .executeUpdate());
+        guardarHabitos(habitos);
+    }
+
+    /**
+     * Inserta o sustituye hábitos en la réplica.
+     *
+     * @param habitos Hábitos a copiar.
+     */
+    public void guardarHabitos(Collection<Habito> habitos) {
+        ejecutarLote(SQL_MERGE_HABITO, habitos, (ps, h) -> {
+            ps.setInt(1, h.getId().getIdUsuario());
+            ps.setInt(2, h.getId().getIdActividad());
+            ps.setInt(3, h.getFrecuencia());
+            ps.setString(4, h.getTipo());
+            ps.setObject(5, h.getUltimaFecha());
+            ps.setObject(6, h.getModificado() != null ? h.getModificado() : Instant.now());
+        });
+    }
+
+    /**
+     * Borra un hábito de la réplica.
+     *
+     * @param habito Hábito a borrar.
+     */
+    public void borrarHabito(Habito habito) {
+        ejecutarEnTransaccion(session -> session.createMutationQuery(HQL_DELETE_HABITO)
+                .setParameter("uid", habito.getId().getIdUsuario())
+                .setParameter("aid", habito.getId().getIdActividad())
+                .executeUpdate());
+    }
+
+    /**
+     * Estado de sincronización de un usuario.
+     *
+     * @param idUsuario Id del usuario.
+     * @return El estado, o null si sus datos nunca se han descargado.
+     */
+    public EstadoReplica getEstado(int idUsuario) {
+        try (Session session = conexion.get().getSession()) {
+            return session.get(EstadoReplica.class, idUsuario);
+        }
+    }
+
+    /**
+     * Guarda el estado de sincronización de un usuario.
+     *
+     * @param estado Estado a guardar.
+     */
+    public void guardarEstado(EstadoReplica estado) {
+        ejecutarEnTransaccion(session -> session.merge(estado));
+    }
+
+    /**
+     * Cambios hechos sin conexión, del más antiguo al más reciente.
+     *
+     * @return Lista de cambios pendientes.
+     */
+    public List<CambioPendiente> getCambiosPendientes() {
+        try (Session session = conexion.get().getSession()) {
+            return session.createQuery(HQL_GET_CAMBIOS_PENDIENTES, CambioPendiente.class).getResultList();
+        }
+    }
+
+    /**
+     * Cambio pendiente de una huella.
+     *
+     * @param idHuella Id de la huella.
+     * @return El cambio, o null si no hay ninguno.
+     */
+    public CambioPendiente getCambioPendiente(int idHuella) {
+        try (Session session = conexion.get().getSession()) {
+            return session.get(CambioPendiente.class, idHuella);
+        }
+    }
+
+    /**
+     * Guarda (o sustituye) el cambio pendiente de una huella.
+     *
+     * @param cambio Cambio a guardar.
+     */
+    public void guardarCambioPendiente(CambioPendiente cambio) {
+        ejecutarEnTransaccion(session -> session.merge(cambio));
+    }
+
+    /**
+     * Elimina el cambio pendiente de una huella, si existe.
+     *
+     * @param idHuella Id de la huella.
+     */
+    public void borrarCambioPendiente(int idHuella) {
+        ejecutarEnTransaccion(session -> {
+            CambioPendiente cambio = session.get(CambioPendiente.class, idHuella);
+            if (cambio != null) session.remove(cambio);
+            return null;
+        });
+    }
+
+    /**
+     * Asignación de los parámetros de una fila en una sentencia por lotes.
+     *
+     * @param <T> Tipo de la fila.
+     */
+    @FunctionalInterface
+    private interface AsignadorParametros<T> {
+        void asignar(PreparedStatement ps, T fila) throws SQLException;
+    }
+
+    /**
+     * Ejecuta una sentencia SQL por lotes (JDBC batch) en una sola transacción.
+     *
+     * @param sql       Sentencia con parámetros posicionales.
+     * @param filas     Filas a escribir.
+     * @param asignador Asigna los parámetros de cada fila.
+     * @param <T>       Tipo de la fila.
+     */
+    private <T> void ejecutarLote(String sql, Collection<T> filas, AsignadorParametros<T> asignador) {
+        if (filas.isEmpty()) return;
+        ejecutarEnTransaccion(session -> {
+            session.doWork(jdbc -> {
+                try (PreparedStatement ps = jdbc.prepareStatement(sql)) {
+                    for (T fila : filas) {
+                        asignador.asignar(ps, fila);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Ejecuta una operación en una transacción, deshaciéndola y propagando el error si falla.
+     *
+     * @param operacion Operación sobre la sesión.
+     */
+    private void ejecutarEnTransaccion(Function<Session, Object> operacion) {
+        Transaction tx = null;
+        try (Session session = conexion.get().getSession()) {
+            tx = session.beginTransaction();
+            operacion.apply(session);
+            tx.commit();
+        } catch (RuntimeException e) {
+            if (tx != null && tx.isActive()) tx.rollback();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package org.dam2.adp.ecorastro.DAO;
+
+/**
+ * Resultado de una escritura con control de versión (bloqueo optimista).
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public enum ResultadoEscritura {
+    /** El cambio se guardó. */
+    CORRECTO,
+    /** El registro cambió en el servidor desde que se leyó; hay que fusionar. */
+    CONFLICTO,
+    /** El registro ya no existe en el servidor. */
+    NO_ENCONTRADO,
+    /** No se pudo completar la operación (normalmente, sin conexión con la BBDD). */
+    ERROR
+}
@@ -0,0 +1,71 @@
+package org.dam2.adp.ecorastro.DAO;
+
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.model.SketchPercentiles;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.util.function.Supplier;
+
+/**
+ * Clase de Acceso a Datos (DAO) para la entidad {@link SketchPercentiles}.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class SketchPercentilesDAO {
+
+    /** Origen de las sesiones. */
+    private final Supplier<Connection> conexion;
+
+    /**
+     * Crea el DAO sobre la BBDD principal.
+     */
+    public SketchPercentilesDAO() {
+        this(Connection::getInstance);
+    }
+
+    /**
+     * Crea el DAO sobre otra conexión.
+     *
+     * @param conexion Proveedor de la conexión a usar.
+     */
+    public SketchPercentilesDAO(Supplier<Connection> conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Lee los resúmenes de un periodo.
+     *
+     * @param periodo Clave de mes, o 0 para el historial.
+     * @return Los resúmenes, o null si no existen o hay un error.
+     */
+    public SketchPercentiles getSketch(int periodo) {
+        try (Session session = conexion.get().getSession()) {
+            return session.find(SketchPercentiles.class, periodo);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Guarda (o sustituye) los resúmenes de un periodo.
+     *
+     * @param sketch Resúmenes a guardar.
+     * @return false si no se pudo.
+     */
+    public boolean guardar(SketchPercentiles sketch) {
+        Transaction tx = null;
+        try (Session session = conexion.get().getSession()) {
+            tx = session.beginTransaction();
+            session.merge(sketch);
+            tx.commit();
+            return true;
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) tx.rollback();
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
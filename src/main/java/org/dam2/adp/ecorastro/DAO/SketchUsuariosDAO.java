@@ -0,0 +1,134 @@
+package org.dam2.adp.ecorastro.DAO;
+
+import jakarta.persistence.LockModeType;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.model.SketchUsuarios;
+import org.dam2.adp.ecorastro.util.HyperLogLog;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Clase de Acceso a Datos (DAO) para la entidad {@link SketchUsuarios}.
+ * <p>
+ * Lee los sketches de varios periodos a la vez y fusiona los nuevos con los guardados bloqueando
+ * cada fila, para que varios equipos puedan volcar sus cambios sin pisarse.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class SketchUsuariosDAO {
+
+    /** Sketches de una lista de periodos. */
+    private final String HQL_GET_PERIODOS = "FROM SketchUsuarios s WHERE s.periodo IN (:periodos)";
+
+    /** Número de sketches guardados. */
+    private final String HQL_COUNT = "SELECT COUNT(s) FROM SketchUsuarios s";
+
+    /** Pares (día, usuario) distintos de todas las huellas, para reconstruir los sketches. */
+    private final String HQL_GET_DIAS_USUARIOS =
+            "SELECT DISTINCT h.dia, h.idUsuario.id FROM Huella h WHERE h.dia IS NOT NULL";
+
+    /** Origen de las sesiones. */
+    private final Supplier<Connection> conexion;
+
+    /**
+     * Crea el DAO sobre la BBDD principal.
+     */
+    public SketchUsuariosDAO() {
+        this(Connection::getInstance);
+    }
+
+    /**
+     * Crea el DAO sobre otra conexión.
+     *
+     * @param conexion Proveedor de la conexión a usar.
+     */
+    public SketchUsuariosDAO(Supplier<Connection> conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Lee los sketches de varios periodos.
+     *
+     * @param periodos Periodos a leer.
+     * @return Periodo → sketch (los periodos sin sketch no aparecen; vacío si hay un error).
+     */
+    public Map<String, HyperLogLog> getSketches(Collection<String> periodos) {
+        Map<String, HyperLogLog> sketches = new HashMap<>();
+        if (periodos.isEmpty()) return sketches;
+        try (Session session = conexion.get().getSession()) {
+            for (SketchUsuarios s : session.createQuery(HQL_GET_PERIODOS, SketchUsuarios.class)
+                    .setParameterList("periodos", periodos)
+                    .getResultList()) {
+                sketches.put(s.getPeriodo(), HyperLogLog.deBytes(s.getRegistros()));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return sketches;
+    }
+
+    /**
+     * Fusiona sketches con los guardados, en una única transacción.
+     *
+     * @param sketches Periodo → sketch a fusionar.
+     * @return false si no se pudo (no se ha guardado ninguno).
+     */
+    public boolean fusionar(Map<String, HyperLogLog> sketches) {
+        if (sketches.isEmpty()) return true;
+        Transaction tx = null;
+        try (Session session = conexion.get().getSession()) {
+            tx = session.beginTransaction();
+            for (Map.Entry<String, HyperLogLog> e : sketches.entrySet()) {
+                SketchUsuarios guardado = session.find(SketchUsuarios.class, e.getKey(), LockModeType.PESSIMISTIC_WRITE);
+                if (guardado == null) {
+                    session.persist(new SketchUsuarios(e.getKey(), e.getValue().aBytes()));
+                } else {
+                    HyperLogLog fusionado = HyperLogLog.deBytes(guardado.getRegistros());
+                    if (fusionado.fusionar(e.getValue())) {
+                        guardado.setRegistros(fusionado.aBytes());
+                    }
+                }
+            }
+            tx.commit();
+            return true;
+        } catch (Exception e) {
+            if (tx != null && tx.isActive()) tx.rollback();
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Indica si aún no hay ningún sketch guardado.
+     *
+     * @return true si la tabla está vacía.
+     */
+    public boolean isVacio() {
+        try (Session session = conexion.get().getSession()) {
+            Long total = session.createQuery(HQL_COUNT, Long.class).uniqueResult();
+            return total == null || total == 0;
+        }
+    }
+
+    /**
+     * Recorre los pares (día, usuario) distintos de todas las huellas, sin cargarlos a la vez.
+     *
+     * @param accion Acción con la clave de día y el id de usuario.
+     */
+    public void recorrerDiasUsuarios(BiConsumer<Integer, Integer> accion) {
+        try (Session session = conexion.get().getSession();
+             Stream<Object[]> filas = session.createQuery(HQL_GET_DIAS_USUARIOS, Object[].class)
+                     .setFetchSize(10_000)
+                     .getResultStream()) {
+            filas.forEach(f -> accion.accept((Integer) f[0], (Integer) f[1]));
+        }
+    }
+}
@@ -2,10 +2,13 @@ package org.dam2.adp.ecorastro.DAO;
 
 import org.dam2.adp.ecorastro.connection.Connection;
 import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.ArchivoHuellas;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Clase de Acceso a Datos (DAO) para la entidad {@link Usuario}.
@@ -17,8 +20,25 @@ import java.util.List;
  */
 public class UsuarioDAO {
 
+    private final Supplier<Connection> conexion;
 
-    private  final String COUNT_USUARIOS_ACTIVOS = "SELECT COUNT(DISTINCT h.idUsuario) FROM Huella h";
+    /** Archivo local de huellas antiguas, o null si no hay. */
+    private final ArchivoHuellas archivo;
+
+    public UsuarioDAO() {
+        this(Connection::getInstance, null);
+    }
+
+    /**
+     * Crea el DAO sobre una conexión, purgando también del archivo de huellas las del usuario que se elimine.
+     *
+     * @param conexion Proveedor de la conexión a usar.
+     * @param archivo  Archivo local de huellas (puede ser null).
+     */
+    public UsuarioDAO(Supplier<Connection> conexion, ArchivoHuellas archivo) {
+        this.conexion = conexion;
+        this.archivo = archivo;
+    }
 
     /**
      * Inserta un nuevo usuario en la base de datos.
@@ -31,7 +51,7 @@ public class UsuarioDAO {
         boolean insertado = false;
         Transaction tx = null;
 
-        try (Session session = Connection.getInstance().getSession()){
+        try (Session session = conexion.get().getSession()){
             tx = session.beginTransaction();
             session.persist(usuario);
             tx.commit();
@@ -57,7 +77,7 @@ public class UsuarioDAO {
         boolean actualizado = false;
         Transaction tx = null;
 
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             tx = session.beginTransaction();
             session.merge(usuario);
             tx.commit();
@@ -73,6 +93,9 @@ public class UsuarioDAO {
 
     /**
      * Elimina un usuario de la base de datos.
+     * <p>
+     * Sus huellas de la BBDD se borran en cascada; las archivadas, que no tienen clave ajena, se
+     * quitan después del archivo para que dejen de contar en los totales de la comunidad.
      *
      * @param usuario El objeto Usuario a eliminar.
      * @return true si la eliminación fue exitosa, false en caso contrario.
@@ -81,7 +104,7 @@ public class UsuarioDAO {
         boolean eliminado = false;
         Transaction tx = null;
 
-        try (Session session = Connection.getInstance().getSession()) {
+        try (Session session = conexion.get().getSession()) {
             tx = session.beginTransaction();
             session.remove(usuario);
             tx.commit();
@@ -92,6 +115,13 @@ public class UsuarioDAO {
             }
             e.printStackTrace();
         }
+        if (eliminado && archivo != null) {
+            try {
+                archivo.eliminarUsuario(usuario.getId());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         return eliminado;
     }
 
@@ -102,7 +132,7 @@ public class UsuarioDAO {
      * @return El objeto Usuario encontrado o null.
      */
     public Usuario getUsuarioById(int id){
-        try(Session session = Connection.getInstance().getSession()){
+        try(Session session = conexion.get().getSession()){
             return session.get(Usuario.class, id);
         }
     }
@@ -116,17 +146,10 @@ public class UsuarioDAO {
      * @return El objeto Usuario encontrado o null si no existe.
      */
     public Usuario getUsuarioByEmail(String email){
-        try(Session session = Connection.getInstance().getSession()){
+        try(Session session = conexion.get().getSession()){
             return session.createQuery("FROM Usuario WHERE email = :email", Usuario.class)
                     .setParameter("email", email)
                     .uniqueResult();
         }
     }
-
-    public Long countUsuariosActivos() {
-        try (Session session = Connection.getInstance().getSession()) {
-            // Cuenta usuarios que tengan al menos 1 huella
-            return session.createQuery(COUNT_USUARIOS_ACTIVOS, Long.class).uniqueResult();
-        }
-    }
 }
\ No newline at end of file
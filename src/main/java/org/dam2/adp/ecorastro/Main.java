@@ -4,7 +4,9 @@ import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import org.dam2.adp.ecorastro.connection.Connection;
 import org.dam2.adp.ecorastro.util.Navigation;
+import org.dam2.adp.ecorastro.util.RegistroServicios;
 
 import java.io.IOException;
 import java.util.Objects;
@@ -32,7 +34,7 @@ public class Main extends Application {
     public void start(Stage stage) throws IOException {
         Navigation.setStage(stage);
 
-        FXMLLoader loader = new FXMLLoader(Main.class.getResource("view/login.fxml"));
+        FXMLLoader loader = RegistroServicios.getInstance().crearLoader(Main.class.getResource("view/login.fxml"));
         Scene scene = new Scene(loader.load(),400,500);
 
       stage.setTitle("EcoRastro");
@@ -40,4 +42,15 @@ public class Main extends Application {
       stage.show();
 
     }
+
+    /**
+     * Libera los recursos compartidos al cerrar la aplicación.
+     * <p>
+     * Detiene el ejecutor de tareas en segundo plano y cierra la conexión con la base de datos.
+     */
+    @Override
+    public void stop() {
+        RegistroServicios.getInstance().cerrar();
+        Connection.cerrarSiIniciada();
+    }
 }
\ No newline at end of file
@@ -1,31 +1,58 @@
 package org.dam2.adp.ecorastro.connection;
 
+import org.dam2.adp.ecorastro.model.CambioPendiente;
+import org.dam2.adp.ecorastro.model.EstadoReplica;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
 
+import java.nio.file.Path;
+import java.util.Properties;
+
 /**
  * Clase Singleton encargada de gestionar la conexión con la base de datos a través de Hibernate.
  * <p>
  * Proporciona acceso centralizado a la {@link SessionFactory} y permite obtener sesiones
  * individuales para realizar operaciones de base de datos.
+ * <p>
+ * Además de la conexión principal (MySQL), puede abrir la réplica local embebida (H2)
+ * con los mismos mapeos, usada por el modo sin conexión.
  *
  * @author Antonio Delgado Portero
  * @version 1.0
  */
 public class Connection {
     private static Connection instance;
+    private static Connection replica;
     private SessionFactory sessionFactory;
 
+    /** Ubicación por defecto de la réplica local. */
+    private static final Path RUTA_REPLICA = Path.of(System.getProperty("user.home"), ".ecorastro", "replica");
+
     /**
      * Constructor privado para implementar el patrón Singleton.
      * <p>
      * Inicializa la SessionFactory leyendo la configuración del archivo {@code hibernate.cfg.xml}.
      */
     private Connection() {
+        this(new Properties());
+    }
+
+    /**
+     * Inicializa la SessionFactory con {@code hibernate.cfg.xml} sustituyendo algunas propiedades.
+     *
+     * @param ajustes     Propiedades que reemplazan a las del archivo (URL, dialecto...).
+     * @param clasesExtra Entidades adicionales que solo existen en esta BBDD.
+     */
+    private Connection(Properties ajustes, Class<?>... clasesExtra) {
         try {
             // Esto lee automáticamente el archivo "hibernate.cfg.xml" de resources
-            sessionFactory = new Configuration().configure().buildSessionFactory();
+            Configuration configuracion = new Configuration().configure();
+            configuracion.addProperties(ajustes);
+            for (Class<?> clase : clasesExtra) {
+                configuracion.addAnnotatedClass(clase);
+            }
+            sessionFactory = configuracion.buildSessionFactory();
         } catch (Throwable e) {
             e.printStackTrace();
             System.err.println("Error CRÍTICO al iniciar Hibernate: " + e.getMessage());
@@ -39,13 +66,65 @@ public class Connection {
      *
      * @return La instancia Singleton de Connection.
      */
-    public static Connection getInstance() {
+    public static synchronized Connection getInstance() {
         if (instance == null) {
             instance = new Connection();
         }
         return instance;
     }
 
+    /**
+     * Obtiene la conexión con la réplica local embebida, creándola la primera vez.
+     *
+     * @return La conexión con la réplica.
+     */
+    public static synchronized Connection getReplica() {
+        if (replica == null) {
+            replica = crearReplica("jdbc:h2:file:" + RUTA_REPLICA.toAbsolutePath());
+        }
+        return replica;
+    }
+
+    /**
+     * Crea una conexión independiente con otra BBDD, usando los mismos mapeos.
+     * <p>
+     * Se usa para la réplica y para las pruebas con BBDD embebidas.
+     *
+     * @param ajustes     Propiedades que reemplazan a las de {@code hibernate.cfg.xml}.
+     * @param clasesExtra Entidades adicionales.
+     * @return Una nueva conexión (no es el Singleton).
+     */
+    public static Connection crear(Properties ajustes, Class<?>... clasesExtra) {
+        return new Connection(ajustes, clasesExtra);
+    }
+
+    /**
+     * Crea una conexión con una réplica H2, incluyendo las tablas propias de la réplica.
+     *
+     * @param urlH2 URL JDBC de H2 (sin opciones).
+     * @return La conexión con la réplica.
+     */
+    public static Connection crearReplica(String urlH2) {
+        return crear(ajustesH2(urlH2), EstadoReplica.class, CambioPendiente.class);
+    }
+
+    /**
+     * Propiedades para conectar a una BBDD H2 con el esquema de la aplicación.
+     *
+     * @param urlH2 URL JDBC de H2 (sin opciones).
+     * @return Propiedades de conexión.
+     */
+    public static Properties ajustesH2(String urlH2) {
+        Properties ajustes = new Properties();
+        ajustes.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        ajustes.setProperty("hibernate.connection.url", urlH2 + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        ajustes.setProperty("hibernate.connection.username", "sa");
+        ajustes.setProperty("hibernate.connection.password", "");
+        ajustes.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        ajustes.setProperty("hibernate.hbm2ddl.create_namespaces", "true");
+        return ajustes;
+    }
+
     /**
      * Abre y devuelve una nueva sesión de Hibernate.
      *
@@ -69,4 +148,18 @@ public class Connection {
             sessionFactory.close();
         }
     }
+
+    /**
+     * Cierra la conexión principal y la réplica, solo si llegaron a inicializarse.
+     * <p>
+     * Evita arrancar Hibernate únicamente para cerrarlo (por ejemplo, si se sale desde el login).
+     */
+    public static synchronized void cerrarSiIniciada() {
+        if (instance != null) {
+            instance.close();
+        }
+        if (replica != null) {
+            replica.close();
+        }
+    }
 }
\ No newline at end of file
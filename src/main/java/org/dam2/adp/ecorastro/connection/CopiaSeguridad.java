@@ -0,0 +1,368 @@
+package org.dam2.adp.ecorastro.connection;
+
+import org.dam2.adp.ecorastro.util.BloqueColumnar;
+import org.dam2.adp.ecorastro.util.BloqueColumnar.Tipo;
+import org.hibernate.Session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Copia de seguridad completa de la BBDD en un archivo binario por columnas.
+ * <p>
+ * Cada tabla se vuelca en bloques de hasta {@value #FILAS_POR_BLOQUE} filas codificados con
+ * {@link BloqueColumnar} (fechas en diferencias, claves ajenas y textos en diccionario, compresión
+ * por bloque y CRC32). La restauración vacía las tablas y las vuelve a cargar con inserciones por
+ * lotes, confirmando cada bloque, conservando los ids originales.
+ * <p>
+ * Formato: número mágico, versión y número de tablas; por cada tabla, su nombre, sus columnas
+ * (nombre y tipo) y sus bloques hasta la marca de fin.
+ * <p>
+ * Uso desde línea de comandos: {@code CopiaSeguridad exportar|restaurar <archivo>}.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class CopiaSeguridad {
+
+    /** Número mágico del archivo ("ECOB"). */
+    private static final int MAGICO = 0x45434F42;
+    private static final int VERSION = 1;
+
+    private static final int FILAS_POR_BLOQUE = 65_536;
+
+    /** Filas por cada {@code executeBatch} al restaurar. */
+    private static final int TAM_LOTE = 1_000;
+
+    private static final String ESQUEMA = "ecorastro_db.";
+
+    /**
+     * Tabla incluida en la copia.
+     *
+     * @param nombre    Nombre de la tabla.
+     * @param columnas  Columnas, empezando por la clave primaria.
+     * @param tipos     Tipo de cada columna.
+     * @param identidad true si la primera columna es autoincremental.
+     */
+    private record Tabla(String nombre, String[] columnas, Tipo[] tipos, boolean identidad) {
+    }
+
+    /** Tablas en orden de dependencias (se cargan en este orden y se vacían en el inverso). */
+    private static final List<Tabla> TABLAS = List.of(
+            new Tabla("usuario",
+                    new String[]{"id_usuario", "nombre", "email", "contrasena", "fecha_registro"},
+                    new Tipo[]{Tipo.ENTERO, Tipo.TEXTO, Tipo.TEXTO, Tipo.TEXTO, Tipo.INSTANTE}, true),
+            new Tabla("categoria",
+                    new String[]{"id_categoria", "nombre", "factor_emision", "unidad"},
+                    new Tipo[]{Tipo.ENTERO, Tipo.TEXTO, Tipo.DECIMAL, Tipo.TEXTO}, true),
+            new Tabla("actividad",
+                    new String[]{"id_actividad", "nombre", "id_categoria"},
+                    new Tipo[]{Tipo.ENTERO, Tipo.TEXTO, Tipo.CLAVE}, true),
+            new Tabla("recomendacion",
+                    new String[]{"id_recomendacion", "id_categoria", "descripcion", "impacto_estimado"},
+                    new Tipo[]{Tipo.ENTERO, Tipo.CLAVE, Tipo.TEXTO, Tipo.DECIMAL}, true),
+            new Tabla("factor_emision",
+                    new String[]{"id_factor", "id_categoria", "valido_desde", "valido_hasta", "factor"},
+                    new Tipo[]{Tipo.ENTERO, Tipo.CLAVE, Tipo.FECHA, Tipo.FECHA, Tipo.DECIMAL}, true),
+            new Tabla("habito",
+                    new String[]{"id_usuario", "id_actividad", "frecuencia", "tipo", "ultima_fecha", "modificado"},
+                    new Tipo[]{Tipo.ENTERO, Tipo.CLAVE, Tipo.ENTERO, Tipo.TEXTO, Tipo.INSTANTE, Tipo.INSTANTE}, false),
+            new Tabla("huella",
+                    new String[]{"id_registro", "id_usuario", "id_actividad", "valor", "unidad", "fecha",
+                            "factor_emision", "impacto_kg", "dia", "mes", "version", "modificado"},
+                    new Tipo[]{Tipo.ENTERO, Tipo.CLAVE, Tipo.CLAVE, Tipo.DECIMAL, Tipo.TEXTO, Tipo.INSTANTE,
+                            Tipo.DECIMAL, Tipo.DECIMAL, Tipo.ENTERO, Tipo.ENTERO, Tipo.LARGO, Tipo.INSTANTE}, true));
+
+    /** Conexión con la BBDD a copiar o restaurar. */
+    private final Supplier<Connection> conexion;
+
+    /**
+     * Crea la herramienta sobre una conexión.
+     *
+     * @param conexion Proveedor de la conexión.
+     */
+    public CopiaSeguridad(Supplier<Connection> conexion) {
+        this.conexion = conexion;
+    }
+
+    /**
+     * Exporta todas las tablas a un archivo.
+     * <p>
+     * Se escribe en un archivo temporal que se renombra al terminar.
+     *
+     * @param destino Ruta del archivo de copia.
+     * @return Número total de filas exportadas.
+     * @throws IOException Si falla la lectura de la BBDD o la escritura del archivo.
+     */
+    public long exportar(Path destino) throws IOException {
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        long filas;
+        try (Session session = conexion.get().getSession();
+             DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+            salida.writeInt(MAGICO);
+            salida.writeInt(VERSION);
+            salida.writeInt(TABLAS.size());
+            filas = session.doReturningWork(con -> {
+                boolean mysql = con.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+                long total = 0;
+                for (Tabla tabla : TABLAS) {
+                    total += exportarTabla(con, tabla, salida, mysql);
+                }
+                return total;
+            });
+        } catch (UncheckedIOException e) {
+            Files.deleteIfExists(temporal);
+            throw e.getCause();
+        } catch (IOException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(temporal);
+            throw new IOException("No se pudo leer la BBDD: " + e.getMessage(), e);
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return filas;
+    }
+
+    /**
+     * Sustituye el contenido de la BBDD por el de una copia.
+     * <p>
+     * Las tablas se vacían y cargan en orden; cada bloque se confirma por separado, así que
+     * si la restauración falla a medias debe volver a lanzarse.
+     *
+     * @param origen Ruta del archivo de copia.
+     * @return Número total de filas restauradas.
+     * @throws IOException Si el archivo no es válido o falla la escritura en la BBDD.
+     */
+    public long restaurar(Path origen) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(origen)));
+             Session session = conexion.get().getSession()) {
+            if (entrada.readInt() != MAGICO || entrada.readInt() != VERSION) {
+                throw new IOException("No es una copia de seguridad de EcoRastro");
+            }
+            int numTablas = entrada.readInt();
+            return session.doReturningWork(con -> {
+                boolean h2 = con.getMetaData().getDatabaseProductName().toLowerCase().contains("h2");
+                boolean autoCommit = con.getAutoCommit();
+                con.setAutoCommit(false);
+                try (Statement st = con.createStatement()) {
+                    for (int i = TABLAS.size() - 1; i >= 0; i--) {
+                        st.executeUpdate("DELETE FROM " + ESQUEMA + TABLAS.get(i).nombre());
+                    }
+                    con.commit();
+
+                    long total = 0;
+                    for (int t = 0; t < numTablas; t++) {
+                        Tabla tabla = leerCabeceraTabla(entrada);
+                        total += restaurarTabla(con, tabla, entrada);
+                        if (h2 && tabla.identidad()) {
+                            reiniciarIdentidad(st, tabla);
+                        }
+                        con.commit();
+                    }
+                    return total;
+                } catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                } finally {
+                    con.setAutoCommit(autoCommit);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            throw new IOException("No se pudo restaurar la BBDD: " + e.getMessage(), e);
+        }
+    }
+
+    private long exportarTabla(java.sql.Connection con, Tabla tabla, DataOutputStream salida, boolean mysql) throws SQLException {
+        String sql = "SELECT " + String.join(", ", tabla.columnas()) + " FROM " + ESQUEMA + tabla.nombre()
+                + " ORDER BY " + tabla.columnas()[0] + (tabla.identidad() ? "" : ", " + tabla.columnas()[1]);
+        long total = 0;
+        try (PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // En MySQL, Integer.MIN_VALUE hace que el resultado llegue por streaming en lugar de cargarse entero
+            ps.setFetchSize(mysql ? Integer.MIN_VALUE : FILAS_POR_BLOQUE);
+            try (ResultSet rs = ps.executeQuery()) {
+                escribirCabeceraTabla(salida, tabla);
+                List<Object[]> bloque = new ArrayList<>(FILAS_POR_BLOQUE);
+                while (rs.next()) {
+                    Object[] fila = new Object[tabla.columnas().length];
+                    for (int c = 0; c < fila.length; c++) {
+                        fila[c] = leerValor(rs, c + 1, tabla.tipos()[c]);
+                    }
+                    bloque.add(fila);
+                    if (bloque.size() == FILAS_POR_BLOQUE) {
+                        BloqueColumnar.escribir(salida, tabla.tipos(), bloque);
+                        total += bloque.size();
+                        bloque.clear();
+                    }
+                }
+                if (!bloque.isEmpty()) {
+                    BloqueColumnar.escribir(salida, tabla.tipos(), bloque);
+                    total += bloque.size();
+                }
+                BloqueColumnar.escribirFin(salida);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return total;
+    }
+
+    private long restaurarTabla(java.sql.Connection con, Tabla tabla, DataInputStream entrada) throws SQLException {
+        String[] marcadores = new String[tabla.columnas().length];
+        Arrays.fill(marcadores, "?");
+        String sql = "INSERT INTO " + ESQUEMA + tabla.nombre() + " (" + String.join(", ", tabla.columnas())
+                + ") VALUES (" + String.join(", ", marcadores) + ")";
+        long total = 0;
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            List<Object[]> bloque;
+            while ((bloque = BloqueColumnar.leer(entrada, tabla.tipos())) != null) {
+                int enLote = 0;
+                for (Object[] fila : bloque) {
+                    for (int c = 0; c < fila.length; c++) {
+                        fijarValor(ps, c + 1, tabla.tipos()[c], fila[c]);
+                    }
+                    ps.addBatch();
+                    if (++enLote == TAM_LOTE) {
+                        ps.executeBatch();
+                        enLote = 0;
+                    }
+                }
+                if (enLote > 0) ps.executeBatch();
+                con.commit();
+                total += bloque.size();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return total;
+    }
+
+    private static void escribirCabeceraTabla(DataOutputStream salida, Tabla tabla) throws IOException {
+        salida.writeUTF(tabla.nombre());
+        salida.writeInt(tabla.columnas().length);
+        for (int c = 0; c < tabla.columnas().length; c++) {
+            salida.writeUTF(tabla.columnas()[c]);
+            salida.writeByte(tabla.tipos()[c].ordinal());
+        }
+    }
+
+    /**
+     * Lee la cabecera de una tabla y comprueba que coincide con la definición actual.
+     */
+    private static Tabla leerCabeceraTabla(DataInputStream entrada) {
+        try {
+            String nombre = entrada.readUTF();
+            Tabla tabla = TABLAS.stream().filter(t -> t.nombre().equals(nombre)).findFirst()
+                    .orElseThrow(() -> new IOException("Tabla desconocida en la copia: " + nombre));
+            int numColumnas = entrada.readInt();
+            if (numColumnas != tabla.columnas().length) {
+                throw new IOException("La tabla " + nombre + " de la copia tiene otras columnas");
+            }
+            for (int c = 0; c < numColumnas; c++) {
+                if (!entrada.readUTF().equals(tabla.columnas()[c]) || entrada.readByte() != tabla.tipos()[c].ordinal()) {
+                    throw new IOException("La tabla " + nombre + " de la copia tiene otras columnas");
+                }
+            }
+            return tabla;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tras insertar ids explícitos en H2, el contador de identidad no avanza solo (en MySQL sí).
+     */
+    private static void reiniciarIdentidad(Statement st, Tabla tabla) throws SQLException {
+        String id = tabla.columnas()[0];
+        long siguiente = 1;
+        try (ResultSet rs = st.executeQuery("SELECT MAX(" + id + ") FROM " + ESQUEMA + tabla.nombre())) {
+            if (rs.next()) siguiente = rs.getLong(1) + 1;
+        }
+        st.executeUpdate("ALTER TABLE " + ESQUEMA + tabla.nombre() + " ALTER COLUMN " + id + " RESTART WITH " + siguiente);
+    }
+
+    private static Object leerValor(ResultSet rs, int i, Tipo tipo) throws SQLException {
+        Object valor = switch (tipo) {
+            case ENTERO, CLAVE -> rs.getInt(i);
+            case LARGO -> rs.getLong(i);
+            case DECIMAL -> rs.getDouble(i);
+            case TEXTO -> rs.getString(i);
+            case INSTANTE -> {
+                Timestamp t = rs.getTimestamp(i);
+                yield (t != null) ? t.toInstant() : null;
+            }
+            case FECHA -> {
+                java.sql.Date d = rs.getDate(i);
+                yield (d != null) ? d.toLocalDate() : null;
+            }
+        };
+        return rs.wasNull() ? null : valor;
+    }
+
+    private static void fijarValor(PreparedStatement ps, int i, Tipo tipo, Object valor) throws SQLException {
+        if (valor == null) {
+            ps.setNull(i, switch (tipo) {
+                case ENTERO, CLAVE -> Types.INTEGER;
+                case LARGO -> Types.BIGINT;
+                case DECIMAL -> Types.DOUBLE;
+                case TEXTO -> Types.VARCHAR;
+                case INSTANTE -> Types.TIMESTAMP;
+                case FECHA -> Types.DATE;
+            });
+            return;
+        }
+        switch (tipo) {
+            case ENTERO, CLAVE -> ps.setInt(i, (Integer) valor);
+            case LARGO -> ps.setLong(i, (Long) valor);
+            case DECIMAL -> ps.setDouble(i, (Double) valor);
+            case TEXTO -> ps.setString(i, (String) valor);
+            case INSTANTE -> ps.setTimestamp(i, Timestamp.from((Instant) valor));
+            case FECHA -> ps.setDate(i, java.sql.Date.valueOf((LocalDate) valor));
+        }
+    }
+
+    /**
+     * Exporta o restaura la BBDD principal.
+     *
+     * @param args {@code exportar <archivo>} o {@code restaurar <archivo>}.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2 || !(args[0].equals("exportar") || args[0].equals("restaurar"))) {
+            System.err.println("Uso: CopiaSeguridad exportar|restaurar <archivo>");
+            System.exit(2);
+        }
+        CopiaSeguridad copia = new CopiaSeguridad(Connection::getInstance);
+        Path archivo = Path.of(args[1]);
+        try {
+            long inicio = System.nanoTime();
+            long filas = args[0].equals("exportar") ? copia.exportar(archivo) : copia.restaurar(archivo);
+            System.out.printf("%d filas en %d ms%n", filas, (System.nanoTime() - inicio) / 1_000_000);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            Connection.cerrarSiIniciada();
+        }
+    }
+}
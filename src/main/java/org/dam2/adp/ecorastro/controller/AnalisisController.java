@@ -1,18 +1,32 @@
 package org.dam2.adp.ecorastro.controller;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.scene.canvas.Canvas;
 import javafx.scene.chart.*;
 import javafx.scene.control.*;
 import javafx.stage.FileChooser;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.event.HabitoCambiado;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
+import org.dam2.adp.ecorastro.grafico.EnlaceGraficos;
+import org.dam2.adp.ecorastro.grafico.GraficoLineas;
+import org.dam2.adp.ecorastro.grafico.MapaCalorAnual;
 import org.dam2.adp.ecorastro.model.Habito;
 import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.service.CalendarioImpacto;
 import org.dam2.adp.ecorastro.service.HabitoService;
 import org.dam2.adp.ecorastro.service.HuellaService;
+import org.dam2.adp.ecorastro.service.PercentilesComunidad;
+import org.dam2.adp.ecorastro.service.PrecargaPeriodos;
 import org.dam2.adp.ecorastro.service.RecomendacionService;
+import org.dam2.adp.ecorastro.service.SeriesTemporalesService;
 import org.dam2.adp.ecorastro.util.AlertUtils;
+import org.dam2.adp.ecorastro.util.FechaUtil;
 import org.dam2.adp.ecorastro.util.SessionManager;
 
 import java.io.BufferedWriter;
@@ -20,8 +34,8 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.time.Period;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.TemporalAdjusters;
 import java.time.temporal.WeekFields;
 import java.util.*;
 
@@ -34,16 +48,18 @@ import java.util.*;
  * <ul>
  * <li>Filtros temporales (Semana, Mes, Histórico).</li>
  * <li>Gráficos de distribución por categoría (PieChart).</li>
- * <li>Gráficos de evolución temporal (LineChart).</li>
- * <li>Comparativa con la media de la comunidad (BarChart).</li>
+ * <li>Gráficos de evolución temporal con resolución automática (dibujados sobre un Canvas).</li>
+ * <li>Comparativa con la media y la mediana de la comunidad (BarChart).</li>
+ * <li>Posición del usuario en la comunidad ("top X %") en meses completos y en el histórico.</li>
  * <li>Generación de "Insights" o consejos basados en los datos.</li>
+ * <li>Calendario anual de emisiones diarias (mapa de calor sobre un Canvas).</li>
  * <li>Exportación de datos a CSV.</li>
  * </ul>
  *
  * @author Antonio Delgado Portero
  * @version 1.0
  */
-public class AnalisisController {
+public class AnalisisController implements VistaRefrescable {
 
     /** Selector de rango temporal (Mes, Semana, etc.). */
     @FXML private ComboBox<String> cmbRango;
@@ -61,19 +77,48 @@ public class AnalisisController {
     @FXML private CheckBox chkEvolucion;
     /** Gráfico circular de distribución por categorías. */
     @FXML private PieChart pieChart;
-    /** Gráfico de líneas para la evolución temporal. */
-    @FXML private LineChart<String, Number> lineChart;
+    /** Gráfico de líneas (sobre Canvas) para la evolución temporal. */
+    @FXML private GraficoLineas graficoEvolucion;
     /** Gráfico de barras para la comparativa con la comunidad. */
     @FXML private BarChart<String, Number> barChart;
+    /** Lienzo del calendario de emisiones. */
+    @FXML private Canvas canvasCalor;
+    /** Año mostrado en el calendario. */
+    @FXML private Label lblAnioCalor;
 
     /** Servicio para gestión de huellas. */
-    private final HuellaService huellaService = new HuellaService();
+    private final HuellaService huellaService;
     /** Servicio para gestión de hábitos. */
-    private final HabitoService habitoService = new HabitoService();
+    private final HabitoService habitoService;
     /** Servicio para recomendaciones. */
-    private final RecomendacionService recomendacionService = new RecomendacionService();
-
-
+    private final RecomendacionService recomendacionService;
+    /** Bus de eventos de dominio. */
+    private final EventBus eventBus;
+    /** Percentiles y medianas de la comunidad por periodo. */
+    private final PercentilesComunidad percentiles;
+    /** Series de evolución ya agrupadas y reducidas. */
+    private final SeriesTemporalesService seriesService;
+    /** Impacto diario por año, con caché. */
+    private final CalendarioImpacto calendario;
+    /** Datos de los periodos, con precarga de los vecinos. */
+    private final PrecargaPeriodos precarga;
+
+    /** Orden fijo de las categorías en los gráficos; las desconocidas van al final, por nombre. */
+    private static final List<String> CATEGORIAS = List.of("Transporte", "Alimentación", "Energía", "Agua", "Residuos");
+    private static final Comparator<String> ORDEN_CATEGORIAS = Comparator
+            .comparingInt((String c) -> CATEGORIAS.contains(c) ? CATEGORIAS.indexOf(c) : CATEGORIAS.size())
+            .thenComparing(Comparator.naturalOrder());
+
+    /** Suscripciones a cambios de huellas y hábitos. */
+    private List<EventBus.Suscripcion> suscripciones = List.of();
+    /** Indica que ha habido cambios desde la última carga y hay que volver a consultar. */
+    private volatile boolean datosObsoletos = true;
+    /** Día de la última carga, para recalcular los rangos relativos al cambiar de día. */
+    private LocalDate fechaUltimaCarga;
+
+
+    /** Datos del periodo seleccionado. */
+    private PrecargaPeriodos.DatosPeriodo datosPeriodo;
     /** Lista de huellas filtradas según el rango seleccionado. */
     private List<Huella> huellasFiltradas;
     /** Fecha de inicio del filtro actual. */
@@ -81,6 +126,44 @@ public class AnalisisController {
     /** Fecha de fin del filtro actual. */
     private LocalDate fechaFinFiltro;
 
+    /** Series de la comparativa, creadas una vez y actualizadas en el sitio. */
+    private final XYChart.Series<String, Number> serieYo = new XYChart.Series<>();
+    private final XYChart.Series<String, Number> serieMedia = new XYChart.Series<>();
+    private final XYChart.Series<String, Number> serieMediana = new XYChart.Series<>();
+
+    /** Mapa de calor dibujado sobre {@link #canvasCalor}. */
+    private MapaCalorAnual mapaCalor;
+    /** Año del calendario. */
+    private int anioCalor;
+    /** Impacto diario del año del calendario, para los tooltips. */
+    private double[] impactosCalor = new double[0];
+
+    /**
+     * Crea el controlador con los servicios compartidos de la aplicación.
+     *
+     * @param huellaService        Servicio de huellas.
+     * @param habitoService        Servicio de hábitos.
+     * @param recomendacionService Servicio de recomendaciones.
+     * @param eventBus             Bus de eventos de dominio.
+     * @param percentiles          Percentiles y medianas de la comunidad.
+     * @param seriesService        Servicio de series temporales.
+     * @param calendario           Impacto diario por año para el calendario.
+     * @param precarga             Datos de los periodos con precarga de los vecinos.
+     */
+    public AnalisisController(HuellaService huellaService, HabitoService habitoService,
+                              RecomendacionService recomendacionService, EventBus eventBus,
+                              PercentilesComunidad percentiles, SeriesTemporalesService seriesService,
+                              CalendarioImpacto calendario, PrecargaPeriodos precarga) {
+        this.huellaService = huellaService;
+        this.habitoService = habitoService;
+        this.recomendacionService = recomendacionService;
+        this.eventBus = eventBus;
+        this.percentiles = percentiles;
+        this.seriesService = seriesService;
+        this.calendario = calendario;
+        this.precarga = precarga;
+    }
+
     /**
      * Inicializa el controlador de análisis.
      * <p>
@@ -88,13 +171,53 @@ public class AnalisisController {
      */
     @FXML
     public void initialize() {
+        suscripciones = List.of(
+                eventBus.suscribir(HuellaCreada.class, e -> datosObsoletos = true),
+                eventBus.suscribir(HuellaActualizada.class, e -> datosObsoletos = true),
+                eventBus.suscribir(HuellaEliminada.class, e -> datosObsoletos = true),
+                eventBus.suscribir(HabitoCambiado.class, e -> datosObsoletos = true),
+                eventBus.suscribir(ReplicaSincronizada.class, e -> datosObsoletos = true),
+                eventBus.suscribir(FactoresRecalculados.class, e -> datosObsoletos = true));
         configurarFiltros();
         configurarListeners();
-        lineChart.setVisible(false);
+        graficoEvolucion.setVisible(false);
         pieChart.setVisible(true);
+        configurarComparativa();
+        configurarMapaCalor();
         cargarDatos();
     }
 
+    /**
+     * Recarga los datos con los filtros que el usuario dejó seleccionados.
+     * <p>
+     * Solo se consulta la BBDD si ha llegado algún cambio de huellas o hábitos, o si ha cambiado el día.
+     */
+    @Override
+    public void refrescar() {
+        if (datosObsoletos || !LocalDate.now().equals(fechaUltimaCarga)) {
+            cargarDatos();
+        }
+    }
+
+    /**
+     * Cancela las suscripciones al bus de eventos y la precarga pendiente.
+     */
+    @Override
+    public void liberar() {
+        suscripciones.forEach(EventBus.Suscripcion::cancelar);
+        precarga.cancelar();
+    }
+
+    /**
+     * Añade las series de la comparativa en orden fijo, que es el que decide su color en la hoja de estilos.
+     */
+    private void configurarComparativa() {
+        serieYo.setName("Tú");
+        serieMedia.setName("Media");
+        serieMediana.setName("Mediana");
+        barChart.getData().setAll(serieYo, serieMedia);
+    }
+
     /**
      * Configura los valores iniciales de los filtros de fecha.
      */
@@ -114,7 +237,7 @@ public class AnalisisController {
 
         chkEvolucion.selectedProperty().addListener((obs, oldV, isSelected) -> {
             pieChart.setVisible(!isSelected);
-            lineChart.setVisible(isSelected);
+            graficoEvolucion.setVisible(isSelected);
             if (isSelected) actualizarGraficoEvolucion();
             else actualizarGraficoDistribucion();
         });
@@ -126,51 +249,103 @@ public class AnalisisController {
      * Actualiza KPIs, gráficos y consejos.
      */
     private void cargarDatos() {
+        datosObsoletos = false;
+        fechaUltimaCarga = LocalDate.now();
         int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
         calcularFechasFiltro();
 
-        // Carga de huellas en memoria para cálculos rápidos
-        huellasFiltradas = huellaService.getHuellasPorFecha(idUsuario, fechaInicioFiltro, fechaFinFiltro);
+        // Datos del periodo (huellas, totales y medias), precargados si se llega desde un periodo vecino
+        datosPeriodo = precarga.obtener(idUsuario, new PrecargaPeriodos.Periodo(fechaInicioFiltro, fechaFinFiltro));
+        huellasFiltradas = datosPeriodo.huellas();
 
-        actualizarKPIs(idUsuario);
+        actualizarKPIs();
 
         if (chkEvolucion.isSelected()) actualizarGraficoEvolucion();
         else actualizarGraficoDistribucion();
 
         actualizarGraficoComparativo();
         generarInsight(idUsuario);
+
+        anioCalor = fechaReferencia().getYear();
+        actualizarMapaCalor();
+
+        precargarVecinos(idUsuario);
     }
 
     /**
      * Calcula las fechas de inicio y fin según el rango seleccionado.
      */
     private void calcularFechasFiltro() {
-        String rango = cmbRango.getValue();
-        LocalDate ref = dpFecha.getValue() != null ? dpFecha.getValue() : LocalDate.now();
+        PrecargaPeriodos.Periodo periodo = calcularPeriodo(cmbRango.getValue(), fechaReferencia());
+        this.fechaInicioFiltro = periodo.inicio();
+        this.fechaFinFiltro = periodo.fin();
+    }
 
+    /**
+     * Periodo que corresponde a un rango y una fecha de referencia.
+     *
+     * @param rango Rango seleccionado en {@link #cmbRango}.
+     * @param ref   Fecha de referencia.
+     * @return El periodo.
+     */
+    private static PrecargaPeriodos.Periodo calcularPeriodo(String rango, LocalDate ref) {
         if ("Todo el historial".equals(rango)) {
-            this.fechaInicioFiltro = LocalDate.of(1970, 1, 1);
-            this.fechaFinFiltro = LocalDate.of(2100, 1, 1);
+            return new PrecargaPeriodos.Periodo(LocalDate.of(1970, 1, 1), LocalDate.of(2100, 1, 1));
         } else if ("Día Concreto".equals(rango)) {
-            this.fechaInicioFiltro = ref;
-            this.fechaFinFiltro = ref;
+            return new PrecargaPeriodos.Periodo(ref, ref);
         } else if ("Semana Seleccionada".equals(rango)) {
-            this.fechaInicioFiltro = ref.with(WeekFields.of(Locale.getDefault()).dayOfWeek(), 1);
-            this.fechaFinFiltro = ref.with(WeekFields.of(Locale.getDefault()).dayOfWeek(), 7);
+            return new PrecargaPeriodos.Periodo(ref.with(WeekFields.of(Locale.getDefault()).dayOfWeek(), 1),
+                    ref.with(WeekFields.of(Locale.getDefault()).dayOfWeek(), 7));
         } else {
-            this.fechaInicioFiltro = ref.with(TemporalAdjusters.firstDayOfMonth());
-            this.fechaFinFiltro = ref.with(TemporalAdjusters.lastDayOfMonth());
+            return PrecargaPeriodos.Periodo.mesDe(ref);
         }
     }
 
     /**
-     * Actualiza los indicadores clave de rendimiento (KPIs).
+     * Pide precargar el periodo anterior y el siguiente al seleccionado, que son a los que se suele
+     * pasar después. El histórico completo no tiene vecinos.
      *
      * @param idUsuario ID del usuario actual.
      */
-    private void actualizarKPIs(int idUsuario) {
-        double total = huellaService.getTotalImpactoUsuarioFecha(idUsuario, fechaInicioFiltro, fechaFinFiltro);
-        lblTotalPeriodo.setText(String.format("%.2f kg CO₂", total));
+    private void precargarVecinos(int idUsuario) {
+        String rango = cmbRango.getValue();
+        Period paso = switch (rango == null ? "" : rango) {
+            case "Todo el historial" -> null;
+            case "Día Concreto" -> Period.ofDays(1);
+            case "Semana Seleccionada" -> Period.ofWeeks(1);
+            default -> Period.ofMonths(1);
+        };
+        if (paso == null) {
+            precarga.cancelar();
+            return;
+        }
+        LocalDate ref = fechaReferencia();
+        precarga.precargar(idUsuario, List.of(
+                calcularPeriodo(rango, ref.minus(paso)),
+                calcularPeriodo(rango, ref.plus(paso))));
+    }
+
+    private LocalDate fechaReferencia() {
+        return dpFecha.getValue() != null ? dpFecha.getValue() : LocalDate.now();
+    }
+
+    /**
+     * Actualiza los indicadores clave de rendimiento (KPIs).
+     * <p>
+     * En un mes completo o en el histórico se añade la posición en la comunidad ("top X %").
+     */
+    private void actualizarKPIs() {
+        double total = datosPeriodo.total();
+        int periodo = PercentilesComunidad.getPeriodo(fechaInicioFiltro, fechaFinFiltro);
+        Double percentil = (total > 0.001 && periodo != PercentilesComunidad.SIN_PERIODO)
+                ? percentiles.getPercentil(periodo, PercentilesComunidad.TODAS, total)
+                : null;
+        if (percentil != null) {
+            int top = (int) Math.max(1, Math.min(100, Math.ceil(percentil * 100)));
+            lblTotalPeriodo.setText(String.format("%.2f kg CO₂ · Top %d %%", total, top));
+        } else {
+            lblTotalPeriodo.setText(String.format("%.2f kg CO₂", total));
+        }
     }
 
     /**
@@ -194,120 +369,148 @@ public class AnalisisController {
 
     /**
      * Actualiza el gráfico circular de distribución por categorías.
+     * <p>
+     * Los quesitos cambian su valor en el sitio; solo se crean o quitan los de las categorías que
+     * aparecen o desaparecen del rango.
      */
     private void actualizarGraficoDistribucion() {
-        int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
-        Map<String, Double> datos = huellaService.getImpactoPorCategoriaUsuario(idUsuario, fechaInicioFiltro, fechaFinFiltro);
-
-        ObservableList<PieChart.Data> pieData = FXCollections.observableArrayList();
-        datos.forEach((k, v) -> pieData.add(new PieChart.Data(k, v)));
-        pieChart.setData(pieData);
-
-        // 1. Colorear los "quesitos" del gráfico
-        pieData.forEach(data -> {
-            String color = getColorHexPorCategoria(data.getName());
-            if (data.getNode() != null) {
-                data.getNode().setStyle("-fx-pie-color: " + color + ";");
-            }
-        });
+        Map<String, Double> datos = datosPeriodo.porCategoria();
 
-        // 2. Colorear la leyenda
-        javafx.application.Platform.runLater(this::colorearLeyenda);
+        // Se reutilizan los quesitos existentes; el color lo pone la clase CSS de cada categoría
+        EnlaceGraficos.enlazar(pieChart, datos, ORDEN_CATEGORIAS);
     }
 
     /**
-     * Actualiza el gráfico de líneas con la evolución de los últimos 12 meses.
+     * Actualiza el gráfico de líneas con la evolución del rango seleccionado.
+     * <p>
+     * La resolución (días, semanas, meses o años) depende de la longitud del rango y la serie llega
+     * ya reducida a unos cientos de puntos, que se dibujan sobre un lienzo. Para un día concreto se
+     * muestran los 12 meses anteriores.
      */
     private void actualizarGraficoEvolucion() {
         int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
 
-        // Ventana móvil últimos 12 meses
-        List<Object[]> datosBBDD = huellaService.getEvolucionUltimos12Meses(idUsuario);
-        Map<String, Double> mapaValores = new HashMap<>();
-
-        for (Object[] fila : datosBBDD) {
-            mapaValores.put(fila[0] + "-" + fila[1], (Double) fila[2]);
+        LocalDate inicio = fechaInicioFiltro;
+        if (fechaInicioFiltro.equals(fechaFinFiltro)) {
+            inicio = fechaFinFiltro.minusMonths(11).withDayOfMonth(1);
         }
-
-        XYChart.Series<String, Number> series = new XYChart.Series<>();
-        series.setName("Tendencia");
-
-        LocalDate iterador = LocalDate.now().minusMonths(11);
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("MMM yy", new Locale("es", "ES"));
-
-        for (int i = 0; i < 12; i++) {
-            String clave = iterador.getYear() + "-" + iterador.getMonthValue();
-            double valor = mapaValores.getOrDefault(clave, 0.0);
-
-            String etiqueta = iterador.format(fmt);
-            etiqueta = etiqueta.substring(0, 1).toUpperCase() + etiqueta.substring(1);
-
-            series.getData().add(new XYChart.Data<>(etiqueta, valor));
-            iterador = iterador.plusMonths(1);
+        SeriesTemporalesService.Serie serie = seriesService.getSerie(idUsuario, inicio, fechaFinFiltro);
+
+        DateTimeFormatter fmt = switch (serie.resolucion()) {
+            case DIA, SEMANA -> DateTimeFormatter.ofPattern("dd/MM/yy");
+            case MES -> DateTimeFormatter.ofPattern("MMM yy", FechaUtil.LOCALE);
+            case ANIO -> DateTimeFormatter.ofPattern("yyyy");
+        };
+        List<String> etiquetas = new ArrayList<>(serie.puntos().size());
+        double[] valores = new double[serie.puntos().size()];
+        for (int i = 0; i < valores.length; i++) {
+            SeriesTemporalesService.Punto punto = serie.puntos().get(i);
+            String etiqueta = punto.inicio().format(fmt);
+            etiquetas.add(etiqueta.substring(0, 1).toUpperCase() + etiqueta.substring(1));
+            valores[i] = punto.valor();
         }
 
-        lineChart.getData().clear();
-        lineChart.getData().add(series);
-
-        series.getNode().setStyle("-fx-stroke: #E67E22; -fx-stroke-width: 2px;");
+        // Un único lienzo en lugar de un nodo por punto: cientos de puntos no pesan en la escena
+        graficoEvolucion.setDatos(etiquetas, valores);
     }
 
     /**
      * Actualiza el gráfico de barras comparativo (Usuario vs Comunidad).
+     * <p>
+     * En un mes completo o en el histórico se añade la mediana de los totales por usuario,
+     * que no se deja arrastrar por los pocos usuarios que más emiten. Las series se crean una vez y
+     * se actualizan en el sitio.
      */
     private void actualizarGraficoComparativo() {
-        int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
-        Map<String, Double> misDatos = huellaService.getImpactoPorCategoriaUsuario(idUsuario, fechaInicioFiltro, fechaFinFiltro);
-        Map<String, Double> mediaComunidad = huellaService.getMediaImpactoPorCategoriaFechas(fechaInicioFiltro, fechaFinFiltro);
+        Map<String, Double> misDatos = datosPeriodo.porCategoria();
+        Map<String, Double> mediaComunidad = datosPeriodo.mediaComunidad();
 
-        XYChart.Series<String, Number> serieYo = new XYChart.Series<>();
-        serieYo.setName("Tú");
-        XYChart.Series<String, Number> serieMedia = new XYChart.Series<>();
-        serieMedia.setName("Media");
+        int periodo = PercentilesComunidad.getPeriodo(fechaInicioFiltro, fechaFinFiltro);
+        boolean conMediana = periodo != PercentilesComunidad.SIN_PERIODO;
 
+        Map<String, Double> datosYo = new HashMap<>();
+        Map<String, Double> datosMedia = new HashMap<>();
+        Map<String, Double> datosMediana = new HashMap<>();
         if (chkDesglose.isSelected()) {
+            Map<String, Double> medianas = conMediana ? percentiles.getMedianasPorCategoria(periodo) : Map.of();
+            conMediana = !medianas.isEmpty();
             Set<String> categorias = new HashSet<>();
             categorias.addAll(misDatos.keySet());
             categorias.addAll(mediaComunidad.keySet());
 
             for (String cat : categorias) {
-                serieYo.getData().add(new XYChart.Data<>(cat, misDatos.getOrDefault(cat, 0.0)));
-                serieMedia.getData().add(new XYChart.Data<>(cat, mediaComunidad.getOrDefault(cat, 0.0)));
+                datosYo.put(cat, misDatos.getOrDefault(cat, 0.0));
+                datosMedia.put(cat, mediaComunidad.getOrDefault(cat, 0.0));
+                datosMediana.put(cat, medianas.getOrDefault(cat, 0.0));
             }
         } else {
-            double miTotal = misDatos.values().stream().mapToDouble(d -> d).sum();
-            double mediaTotal = mediaComunidad.values().stream().mapToDouble(d -> d).sum();
-            serieYo.getData().add(new XYChart.Data<>("Global", miTotal));
-            serieMedia.getData().add(new XYChart.Data<>("Global", mediaTotal));
+            datosYo.put("Global", misDatos.values().stream().mapToDouble(d -> d).sum());
+            datosMedia.put("Global", mediaComunidad.values().stream().mapToDouble(d -> d).sum());
+            Double mediana = conMediana ? percentiles.getMediana(periodo, PercentilesComunidad.TODAS) : null;
+            conMediana = mediana != null;
+            if (conMediana) datosMediana.put("Global", mediana);
         }
 
-        barChart.getData().clear();
-        barChart.getData().addAll(serieYo, serieMedia);
-
-        for (XYChart.Data<String, Number> d : serieYo.getData()) {
-            if(d.getNode() != null) d.getNode().setStyle("-fx-bar-fill: #936639;"); // Marrón (Tú)
-        }
-        for (XYChart.Data<String, Number> d : serieMedia.getData()) {
-            if(d.getNode() != null) d.getNode().setStyle("-fx-bar-fill: #656D4A;"); // Verde (Media)
+        // Las barras existentes cambian su altura en el sitio; los colores salen de la hoja de estilos
+        EnlaceGraficos.enlazar(serieYo, datosYo, ORDEN_CATEGORIAS);
+        EnlaceGraficos.enlazar(serieMedia, datosMedia, ORDEN_CATEGORIAS);
+        if (conMediana) {
+            EnlaceGraficos.enlazar(serieMediana, datosMediana, ORDEN_CATEGORIAS);
+            if (!barChart.getData().contains(serieMediana)) barChart.getData().add(serieMediana);
+        } else {
+            barChart.getData().remove(serieMediana);
         }
     }
 
     /**
-     * Helper para asignar colores fijos según categoría.
+     * Crea el mapa de calor sobre el lienzo y el tooltip que muestra el impacto del día bajo el ratón.
+     */
+    private void configurarMapaCalor() {
+        mapaCalor = new MapaCalorAnual(canvasCalor);
+        Tooltip tooltip = new Tooltip();
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("EEEE d 'de' MMMM", FechaUtil.LOCALE);
+        canvasCalor.setOnMouseMoved(e -> {
+            LocalDate dia = mapaCalor.diaEn(e.getX(), e.getY());
+            if (dia == null || dia.getDayOfYear() > impactosCalor.length) {
+                tooltip.hide();
+                return;
+            }
+            tooltip.setText(String.format("%s: %.2f kg CO₂", dia.format(fmt), impactosCalor[dia.getDayOfYear() - 1]));
+            tooltip.show(canvasCalor, e.getScreenX() + 12, e.getScreenY() + 12);
+        });
+        canvasCalor.setOnMouseExited(e -> tooltip.hide());
+    }
+
+    /**
+     * Repinta el calendario con el año seleccionado, reutilizando el mismo lienzo.
+     */
+    private void actualizarMapaCalor() {
+        int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
+        impactosCalor = calendario.getImpactoDiario(idUsuario, anioCalor);
+        mapaCalor.dibujar(anioCalor, impactosCalor);
+        lblAnioCalor.setText(String.valueOf(anioCalor));
+    }
+
+    /**
+     * Muestra el calendario del año anterior.
      *
-     * @param categoria Nombre de la categoría.
-     * @return Código hexadecimal del color.
+     * @param event Evento de acción.
      */
-    private String getColorHexPorCategoria(String categoria) {
-        if (categoria == null) return "#7F8C8D";
-        switch (categoria) {
-            case "Transporte":    return "#936639"; // Marrón
-            case "Alimentación":  return "#656D4A"; // Verde Oliva
-            case "Energía":       return "#A68A64"; // Arena
-            case "Agua":          return "#414833"; // Verde Oscuro
-            case "Residuos":      return "#B6AD90"; // Piedra
-            default:              return "#333D29"; // Fondo oscuro
-        }
+    @FXML
+    public void anioAnterior(ActionEvent event) {
+        anioCalor--;
+        actualizarMapaCalor();
+    }
+
+    /**
+     * Muestra el calendario del año siguiente.
+     *
+     * @param event Evento de acción.
+     */
+    @FXML
+    public void anioSiguiente(ActionEvent event) {
+        anioCalor++;
+        actualizarMapaCalor();
     }
 
     /**
@@ -341,30 +544,4 @@ public class AnalisisController {
             }
         }
     }
-
-    /**
-     * Aplica los colores personalizados a los símbolos de la leyenda.
-     * Se debe llamar dentro de Platform.runLater() para asegurar que el gráfico ya se ha renderizado.
-     */
-    private void colorearLeyenda() {
-
-        javafx.scene.Node legend = pieChart.lookup(".chart-legend");
-
-        if (legend != null && legend instanceof javafx.scene.Parent) {
-            ObservableList<javafx.scene.Node> legendItems = ((javafx.scene.Parent) legend).getChildrenUnmodifiable();
-
-            for (javafx.scene.Node item : legendItems) {
-                if (item instanceof Label) {
-                    Label label = (Label) item;
-
-                    String categoria = label.getText();
-                    String colorHex = getColorHexPorCategoria(categoria);
-
-                    if (label.getGraphic() != null) {
-                        label.getGraphic().setStyle("-fx-background-color: " + colorHex + ";");
-                    }
-                }
-            }
-        }
-    }
-}
\ No newline at end of file
+}
@@ -10,9 +10,9 @@ import javafx.stage.Stage;
 import org.dam2.adp.ecorastro.model.Huella;
 import org.dam2.adp.ecorastro.service.HuellaService;
 import org.dam2.adp.ecorastro.util.AlertUtils;
+import org.dam2.adp.ecorastro.util.FechaUtil;
 import org.kordamp.ikonli.javafx.FontIcon;
 
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 /**
@@ -111,7 +111,16 @@ public class DetalleHuellaController {
     /**
      * Servicio para operaciones de persistencia.
      */
-    private final HuellaService huellaService = new HuellaService();
+    private final HuellaService huellaService;
+
+    /**
+     * Crea el controlador con el servicio de huellas compartido.
+     *
+     * @param huellaService Servicio de huellas.
+     */
+    public DetalleHuellaController(HuellaService huellaService) {
+        this.huellaService = huellaService;
+    }
 
     /**
      * Carga los datos iniciales en la vista.
@@ -140,7 +149,7 @@ public class DetalleHuellaController {
 
         // 3. Preparar Modo Edición
         if (h.getFecha() != null) {
-            dpFechaInput.setValue(h.getFecha().atZone(ZoneId.systemDefault()).toLocalDate());
+            dpFechaInput.setValue(FechaUtil.aFecha(h.getFecha()));
         }
         txtValorInput.setText(String.valueOf(h.getValor()));
         lblUnidadInput.setText(h.getUnidad());
@@ -157,13 +166,12 @@ public class DetalleHuellaController {
 
         // Fecha
         if (huellaActual.getFecha() != null) {
-            lblFecha.setText(huellaActual.getFecha().atZone(ZoneId.systemDefault())
+            lblFecha.setText(huellaActual.getFecha().atZone(FechaUtil.ZONA)
                     .format(DateTimeFormatter.ofPattern("dd MMM yyyy")));
         }
 
-        // Recalcular Impacto
-        double factor = huellaActual.getIdActividad().getIdCategoria().getFactorEmision(); // Removed .doubleValue()
-        double impacto = huellaActual.getValor() * factor; // Removed .doubleValue()
+        // Impacto guardado con la huella
+        double impacto = huellaService.calcularImpacto(huellaActual);
 
         lblImpacto.setText(String.format("%.2f kg CO₂", impacto));
 
@@ -212,7 +220,7 @@ public class DetalleHuellaController {
             // 2. Actualizar objeto local
             huellaActual.setValor(nuevoValor);
             if (dpFechaInput.getValue() != null) {
-                huellaActual.setFecha(dpFechaInput.getValue().atStartOfDay(ZoneId.systemDefault()).toInstant());
+                huellaActual.setFecha(FechaUtil.aInstante(dpFechaInput.getValue()));
             }
 
             // 3. Guardar en BBDD
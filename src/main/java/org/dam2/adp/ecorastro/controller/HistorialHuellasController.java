@@ -3,6 +3,7 @@ package org.dam2.adp.ecorastro.controller;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.CheckBox;
@@ -13,16 +14,27 @@ import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
 import org.dam2.adp.ecorastro.model.Huella;
 import org.dam2.adp.ecorastro.service.HuellaService;
 import org.dam2.adp.ecorastro.util.AlertUtils;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.FxUtils;
 import org.dam2.adp.ecorastro.util.Navigation;
+import org.dam2.adp.ecorastro.util.PrecargaNavegacion;
+import org.dam2.adp.ecorastro.util.RegistroServicios;
 import org.dam2.adp.ecorastro.util.SessionManager;
 import org.kordamp.ikonli.javafx.FontIcon;
 
 import java.io.IOException;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 
@@ -39,12 +51,14 @@ import java.util.Objects;
  * <li>Eliminación de registros mediante menú contextual.</li>
  * <li>Apertura de detalles de huella en ventana modal.</li>
  * <li>Navegación al formulario de registro de nuevas huellas.</li>
+ * <li>Actualización incremental: al crear, editar o borrar una huella solo se
+ * modifica la tarjeta afectada (vía {@link EventBus}).</li>
  * </ul>
  *
  * @author Antonio Delgado Portero
  * @version 1.0
  */
-public class HistorialHuellasController {
+public class HistorialHuellasController implements VistaRefrescable {
     /** Filtro para mostrar huellas de transporte. */
     public CheckBox chkTransporte;
     /** Filtro para mostrar huellas de alimentación. */
@@ -63,45 +77,217 @@ public class HistorialHuellasController {
 
 
     /** Servicio para gestionar huellas. */
-    private final HuellaService huellaService = new HuellaService();
+    private final HuellaService huellaService;
+
+    /** Bus de eventos al que se suscribe la vista. */
+    private final EventBus eventBus;
+
+    /** Precarga de navegación con los datos iniciales de la vista. */
+    private final PrecargaNavegacion precarga;
+
+    /** Suscripciones activas, canceladas al liberar la vista. */
+    private final List<EventBus.Suscripcion> suscripciones = new ArrayList<>();
+
+    /** Indica que la réplica o los factores han cambiado con la vista oculta y hay que volver a consultar. */
+    private boolean datosObsoletos;
+
+    /** Huellas del usuario cargadas en memoria, ordenadas de más reciente a más antigua. */
+    private final List<Huella> huellas = new ArrayList<>();
+
+    /** Orden de las tarjetas: fecha descendente. */
+    private static final Comparator<Huella> POR_FECHA_DESC =
+            Comparator.comparing(Huella::getFecha, Comparator.nullsLast(Comparator.reverseOrder()));
+
+    /**
+     * Crea el controlador con el servicio de huellas compartido.
+     *
+     * @param huellaService Servicio de huellas.
+     * @param eventBus      Bus de eventos de dominio.
+     * @param precarga      Precarga de navegación, de la que se recogen las huellas iniciales.
+     */
+    public HistorialHuellasController(HuellaService huellaService, EventBus eventBus, PrecargaNavegacion precarga) {
+        this.huellaService = huellaService;
+        this.eventBus = eventBus;
+        this.precarga = precarga;
+    }
 
 
     /**
      * Inicializa el controlador. Carga las tarjetas al abrir la vista.
      */
     public void initialize() {
+        suscripciones.add(eventBus.suscribir(HuellaCreada.class, e -> FxUtils.ejecutarEnFx(() -> alCrearHuella(e.huella()))));
+        suscripciones.add(eventBus.suscribir(HuellaActualizada.class, e -> FxUtils.ejecutarEnFx(() -> alActualizarHuella(e.huella()))));
+        suscripciones.add(eventBus.suscribir(HuellaEliminada.class, e -> FxUtils.ejecutarEnFx(() -> alEliminarHuella(e.huella()))));
+        suscripciones.add(eventBus.suscribir(ReplicaSincronizada.class, e -> FxUtils.ejecutarEnFx(this::alCambiarDatos)));
+        suscripciones.add(eventBus.suscribir(FactoresRecalculados.class, e -> FxUtils.ejecutarEnFx(this::alCambiarDatos)));
         cargarHuellas();
     }
 
     /**
-     * Obtiene los datos de la BBDD y genera una tarjeta visual por cada registro.
+     * Cancela las suscripciones al bus de eventos.
+     */
+    @Override
+    public void liberar() {
+        suscripciones.forEach(EventBus.Suscripcion::cancelar);
+        suscripciones.clear();
+    }
+
+    /**
+     * Al regresar a la vista solo se consulta de nuevo si la réplica o los factores han cambiado
+     * mientras estaba oculta; las altas, ediciones y bajas ya se han aplicado sobre las tarjetas.
+     */
+    @Override
+    public void refrescar() {
+        if (datosObsoletos) {
+            cargarHuellas();
+        }
+    }
+
+    /**
+     * Tras sincronizar la réplica o recalcular factores: recarga si la vista está en pantalla
+     * y, si no, la marca para recargarla al volver.
+     */
+    private void alCambiarDatos() {
+        if (contenedorHuellas.getScene() != null) {
+            cargarHuellas();
+        } else {
+            datosObsoletos = true;
+        }
+    }
+
+    /**
+     * Obtiene los datos de la BBDD (o los ya precargados al pasar el ratón por el acceso a la vista)
+     * y genera una tarjeta visual por cada registro.
      * <p>
      * Aplica los filtros de categoría seleccionados.
      */
-    @FXML
     public void cargarHuellas() {
-        if (contenedorHuellas != null) {
-            contenedorHuellas.getChildren().clear();
-        }
-
+        datosObsoletos = false;
         int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
-        List<Huella> listaCompleta = huellaService.getHuellasPorUsuario(idUsuario);
+        huellas.clear();
+        huellas.addAll(precarga.recoger("historial_huellas.fxml", idUsuario, () -> huellaService.getHuellasPorUsuario(idUsuario)));
+        huellas.sort(POR_FECHA_DESC);
+        aplicarFiltros();
+    }
 
-        if (listaCompleta.isEmpty()) {
+    /**
+     * Regenera las tarjetas a partir de las huellas ya cargadas, sin consultar la BBDD.
+     * <p>
+     * Se invoca al cambiar los filtros de categoría.
+     */
+    @FXML
+    public void aplicarFiltros() {
+        contenedorHuellas.getChildren().clear();
+
+        if (huellas.isEmpty()) {
             mostrarMensajeVacio();
             return;
         }
 
-        for (Huella h : listaCompleta) {
-            String cat = h.getIdActividad().getIdCategoria().getNombre();
-
-            if (!isCategoriaSeleccionada(cat)) {
-                continue;
+        for (Huella h : huellas) {
+            if (isVisible(h)) {
+                contenedorHuellas.getChildren().add(crearTarjetaHuella(h));
             }
+        }
+    }
 
-            VBox tarjeta = crearTarjetaHuella(h);
-            contenedorHuellas.getChildren().add(tarjeta);
+    /**
+     * Añade la tarjeta de una huella recién creada en su posición cronológica.
+     *
+     * @param h La huella creada.
+     */
+    private void alCrearHuella(Huella h) {
+        if (!esDelUsuarioActual(h)) return;
+
+        if (huellas.isEmpty()) {
+            contenedorHuellas.getChildren().clear(); // Quita el mensaje de "sin registros"
+        }
+        huellas.add(h);
+        huellas.sort(POR_FECHA_DESC);
+        insertarTarjeta(h);
+    }
+
+    /**
+     * Sustituye la tarjeta de una huella editada (y la recoloca si cambió su fecha).
+     *
+     * @param h La huella actualizada.
+     */
+    private void alActualizarHuella(Huella h) {
+        if (!esDelUsuarioActual(h)) return;
+
+        huellas.removeIf(otra -> Objects.equals(otra.getId(), h.getId()));
+        huellas.add(h);
+        huellas.sort(POR_FECHA_DESC);
+        quitarTarjeta(h);
+        insertarTarjeta(h);
+    }
+
+    /**
+     * Elimina la tarjeta de una huella borrada.
+     *
+     * @param h La huella eliminada.
+     */
+    private void alEliminarHuella(Huella h) {
+        if (!esDelUsuarioActual(h)) return;
+
+        huellas.removeIf(otra -> Objects.equals(otra.getId(), h.getId()));
+        quitarTarjeta(h);
+        if (huellas.isEmpty()) {
+            contenedorHuellas.getChildren().clear();
+            mostrarMensajeVacio();
+        }
+    }
+
+    /**
+     * Inserta la tarjeta de una huella antes de la primera tarjeta más antigua.
+     *
+     * @param h La huella a mostrar.
+     */
+    private void insertarTarjeta(Huella h) {
+        if (!isVisible(h)) return;
+
+        List<Node> tarjetas = contenedorHuellas.getChildren();
+        int posicion = tarjetas.size();
+        for (int i = 0; i < tarjetas.size(); i++) {
+            if (tarjetas.get(i).getUserData() instanceof Huella otra && POR_FECHA_DESC.compare(h, otra) < 0) {
+                posicion = i;
+                break;
+            }
         }
+        tarjetas.add(posicion, crearTarjetaHuella(h));
+    }
+
+    /**
+     * Quita la tarjeta asociada a una huella, si se está mostrando.
+     *
+     * @param h La huella cuya tarjeta se elimina.
+     */
+    private void quitarTarjeta(Huella h) {
+        contenedorHuellas.getChildren().removeIf(nodo ->
+                nodo.getUserData() instanceof Huella otra && Objects.equals(otra.getId(), h.getId()));
+    }
+
+    /**
+     * Indica si la huella pertenece al usuario de la sesión.
+     *
+     * @param h La huella a comprobar.
+     * @return true si es del usuario actual.
+     */
+    private boolean esDelUsuarioActual(Huella h) {
+        return SessionManager.getInstance().getUsuarioActual() != null
+                && h.getIdUsuario() != null
+                && Objects.equals(h.getIdUsuario().getId(), SessionManager.getInstance().getUsuarioActual().getId());
+    }
+
+    /**
+     * Indica si la huella pasa los filtros de categoría activos.
+     *
+     * @param h La huella a comprobar.
+     * @return true si debe mostrarse su tarjeta.
+     */
+    private boolean isVisible(Huella h) {
+        return isCategoriaSeleccionada(h.getIdActividad().getIdCategoria().getNombre());
     }
 
     /**
@@ -132,6 +318,7 @@ public class HistorialHuellasController {
         VBox card = new VBox(5);
         card.getStyleClass().add("item-card");
         card.setAlignment(Pos.CENTER);
+        card.setUserData(h);
 
 
         String codigoIcono = getCodigoIconoPorCategoria(h.getIdActividad().getIdCategoria().getNombre());
@@ -148,7 +335,7 @@ public class HistorialHuellasController {
         Label valor = new Label(h.getValor() + " " + h.getUnidad());
         valor.getStyleClass().add("item-card-valor");
 
-        double impacto = h.getValor() * h.getIdActividad().getIdCategoria().getFactorEmision(); // Changed to double
+        double impacto = huellaService.calcularImpacto(h);
 
         String colorImpacto;
         String pesoFuente = "normal"; // Para poner negrita si es grave
@@ -173,7 +360,7 @@ public class HistorialHuellasController {
         String fechaStr = "";
         if (h.getFecha() != null) {
             fechaStr = h.getFecha()
-                    .atZone(ZoneId.systemDefault())
+                    .atZone(FechaUtil.ZONA)
                     .format(DateTimeFormatter.ofPattern("dd MMM yyyy"));
         }
         Label fecha = new Label(fechaStr);
@@ -207,7 +394,7 @@ public class HistorialHuellasController {
      */
     private void abrirDetalleHuella(Huella h) {
        try {
-           FXMLLoader loader = new FXMLLoader(getClass().getResource("/org/dam2/adp/ecorastro/view/detalle_huella.fxml"));
+           FXMLLoader loader = RegistroServicios.getInstance().crearLoader(getClass().getResource("/org/dam2/adp/ecorastro/view/detalle_huella.fxml"));
 
            Parent root = loader.load();
 
@@ -223,8 +410,6 @@ public class HistorialHuellasController {
 
            stage.setScene(scene);
            stage.showAndWait();
-
-           cargarHuellas();
        } catch (Exception e) {
            e.printStackTrace();
            AlertUtils.error("Error al abrir ventana de detalle.");
@@ -241,8 +426,7 @@ public class HistorialHuellasController {
                 "¿Estás seguro de borrar '" + h.getIdActividad().getNombre() + "'?")) {
 
             if (huellaService.deleteHuella(h)) {
-                AlertUtils.info("Registro eliminado.");
-                cargarHuellas(); // Recargamos para que desaparezca la tarjeta
+                AlertUtils.info("Registro eliminado."); // La tarjeta desaparece al recibir el evento
             } else {
                 AlertUtils.error("No se pudo eliminar el registro.");
             }
@@ -292,7 +476,7 @@ public class HistorialHuellasController {
     @FXML
     public void irARegistrar() {
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/org/dam2/adp/ecorastro/view/register_huella.fxml"));
+            FXMLLoader loader = RegistroServicios.getInstance().crearLoader(getClass().getResource("/org/dam2/adp/ecorastro/view/register_huella.fxml"));
             Parent root = loader.load();
 
             Stage stage = new Stage();
@@ -305,9 +489,6 @@ public class HistorialHuellasController {
             stage.setScene(scene);
             stage.showAndWait();
 
-            // Al volver, recargamos las tarjetas
-            cargarHuellas();
-
         } catch (IOException e) {
             e.printStackTrace();
             AlertUtils.error("Error al abrir ventana de registro.");
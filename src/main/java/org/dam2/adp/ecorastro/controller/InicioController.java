@@ -1,31 +1,49 @@
 package org.dam2.adp.ecorastro.controller;
 
 import javafx.fxml.FXML;
+import javafx.scene.Node;
 import javafx.scene.chart.BarChart;
 import javafx.scene.chart.XYChart;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.input.MouseEvent;
-import org.dam2.adp.ecorastro.service.HuellaService;
-import org.dam2.adp.ecorastro.service.RecomendacionService;
-import org.dam2.adp.ecorastro.service.UsuarioService;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
+import org.dam2.adp.ecorastro.grafico.EnlaceGraficos;
+import org.dam2.adp.ecorastro.service.InstantaneasInicio;
+import org.dam2.adp.ecorastro.service.PanelInicio;
+import org.dam2.adp.ecorastro.util.FxUtils;
 import org.dam2.adp.ecorastro.util.Navigation;
 import org.dam2.adp.ecorastro.util.SessionManager;
 import org.kordamp.ikonli.javafx.FontIcon;
 
 import java.time.LocalDate;
-import java.time.temporal.TemporalAdjusters;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Controlador principal para la pantalla de "Inicio" (Dashboard).
  * <p>
  * Gestiona el KPI principal, la gráfica comparativa y la gamificación
  * con ranking contextual (Posición vs Total Usuarios).
+ * <p>
+ * Los datos salen de {@link PanelInicio}, que al iniciar sesión ya los tiene calculados o en camino.
+ * <p>
+ * Al iniciar sesión se muestra primero la instantánea guardada en la sesión anterior
+ * ({@link InstantaneasInicio}), atenuada, y se sustituye por los datos actuales en cuanto llegan.
  *
  * @author Antonio Delgado Portero
  * @version 2.1 (Corrección Gráfico Comparativo)
  */
-public class InicioController {
+public class InicioController implements VistaRefrescable {
 
     @FXML private Label lblHuellaTotal;
     @FXML private Label lblConsejo;
@@ -35,70 +53,193 @@ public class InicioController {
     @FXML private Label lblSiguienteNivel;
     @FXML private Label lblAhorroRestante;
     @FXML private FontIcon iconNivel;
+    @FXML private Label lblActualizando;
+
+    /** Clase CSS de los datos que aún son los de la sesión anterior. */
+    private static final String CLASE_DESACTUALIZADO = "dato-desactualizado";
 
-    private final HuellaService huellaService = new HuellaService();
-    private final RecomendacionService recomendacionService = new RecomendacionService();
-    private final UsuarioService usuarioService = new UsuarioService();
+    private final PanelInicio panelInicio;
+    private final EventBus eventBus;
+    private final InstantaneasInicio instantaneas;
+    private final ExecutorService ejecutor;
 
     private double totalEmisionesMes = 0.0;
+    private double miImpactoHistorico = 0.0;
+
+    /** Series del resumen, reutilizadas entre refrescos. */
+    private final XYChart.Series<String, Number> serieYo = new XYChart.Series<>();
+    private final XYChart.Series<String, Number> serieMedia = new XYChart.Series<>();
+    private final XYChart.Series<String, Number> serieMediana = new XYChart.Series<>();
+
+    /** Se activa al recibir un cambio de huellas; hasta entonces los KPIs mostrados siguen siendo válidos. */
+    private volatile boolean datosObsoletos = true;
+
+    /** Día de la última carga: al cambiar de día (o de mes) hay que recalcular aunque no haya cambios. */
+    private LocalDate fechaUltimaCarga;
+
+    /** Número de cargas lanzadas: una revalidación solo se muestra si sigue siendo la última. */
+    private long cargas;
+
+    private List<EventBus.Suscripcion> suscripciones = List.of();
+
+    /**
+     * Crea el controlador con los servicios compartidos de la aplicación.
+     *
+     * @param panelInicio  Cálculo de los datos del panel.
+     * @param eventBus     Bus de eventos de dominio.
+     * @param instantaneas Últimos datos del panel guardados por usuario.
+     * @param ejecutor     Ejecutor de tareas en segundo plano.
+     */
+    public InicioController(PanelInicio panelInicio, EventBus eventBus,
+                            InstantaneasInicio instantaneas, ExecutorService ejecutor) {
+        this.panelInicio = panelInicio;
+        this.eventBus = eventBus;
+        this.instantaneas = instantaneas;
+        this.ejecutor = ejecutor;
+    }
 
     /**
      * Inicializa el controlador de inicio.
      * <p>
-     * Carga los datos reales, configura los gráficos y calcula el nivel de gamificación.
+     * Se suscribe a los cambios de huellas y carga los datos reales, configura los gráficos
+     * y calcula el nivel de gamificación.
      */
     public void initialize() {
-        cargarDatosReales();
-        configurarGraficoResumen();
-        calcularNivelGamificacion();
-        mostrarConsejoDelDia();
+        suscripciones = List.of(
+                eventBus.suscribir(HuellaCreada.class, e -> datosObsoletos = true),
+                eventBus.suscribir(HuellaActualizada.class, e -> datosObsoletos = true),
+                eventBus.suscribir(HuellaEliminada.class, e -> datosObsoletos = true),
+                eventBus.suscribir(ReplicaSincronizada.class, e -> datosObsoletos = true),
+                eventBus.suscribir(FactoresRecalculados.class, e -> datosObsoletos = true));
+        refrescar();
+    }
+
+    /**
+     * Cancela las suscripciones al bus de eventos.
+     */
+    @Override
+    public void liberar() {
+        cargas++;
+        suscripciones.forEach(EventBus.Suscripcion::cancelar);
     }
 
     /**
-     * Carga el KPI principal: Huella del mes actual.
+     * Recarga los KPIs, el gráfico comparativo, el nivel y el consejo del día
+     * reutilizando los nodos ya creados.
      * <p>
-     * Obtiene el total de emisiones del usuario para el mes en curso y actualiza la etiqueta correspondiente.
+     * Si desde la última carga no se ha recibido ningún cambio de huellas y seguimos en el mismo día,
+     * los datos mostrados siguen vigentes y se evitan las consultas.
+     * <p>
+     * En la primera carga, si hay una instantánea de la sesión anterior, se muestra al momento marcada
+     * como desactualizada y los datos se recalculan en segundo plano; al llegar sustituyen a los guardados.
      */
-    private void cargarDatosReales() {
+    @Override
+    public void refrescar() {
+        LocalDate hoy = LocalDate.now();
+        if (!datosObsoletos && hoy.equals(fechaUltimaCarga)) {
+            return;
+        }
+        boolean primeraCarga = fechaUltimaCarga == null;
+        datosObsoletos = false;
+        fechaUltimaCarga = hoy;
         int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
-        LocalDate inicioMes = LocalDate.now().with(TemporalAdjusters.firstDayOfMonth());
-        LocalDate finMes = LocalDate.now().with(TemporalAdjusters.lastDayOfMonth());
+        long carga = ++cargas;
 
-
-        totalEmisionesMes = huellaService.getTotalImpactoUsuarioFecha(idUsuario, inicioMes, finMes);
-        lblHuellaTotal.setText(String.format("%.2f kg CO₂", totalEmisionesMes));
+        if (primeraCarga) {
+            Optional<InstantaneasInicio.Instantanea> guardada = instantaneas.leer(idUsuario);
+            if (guardada.isPresent()) {
+                mostrar(guardada.get());
+                marcarDesactualizado(true);
+                revalidar(idUsuario, carga);
+                return;
+            }
+        }
+        InstantaneasInicio.Instantanea actual = panelInicio.obtener(idUsuario);
+        mostrar(actual);
+        marcarDesactualizado(false);
+        instantaneas.actualizar(idUsuario, actual);
     }
 
     /**
-     * Configura el gráfico de barras: Tu Histórico vs Media Histórica del Resto.
-     * <p>
-     * Corrección: Ahora usa 'getMediaComunidadSinUsuario' para que la comparación sea justa
-     * (Promedio vs Promedio) y no (Promedio vs Suma Total).
+     * Recalcula el panel en segundo plano y lo muestra si para entonces sigue siendo la última carga.
+     *
+     * @param idUsuario Usuario de la sesión.
+     * @param carga     Número de la carga que lo pide.
      */
-    private void configurarGraficoResumen() {
-        int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
-        barChart.getData().clear();
-        barChart.setAnimated(false);
+    private void revalidar(int idUsuario, long carga) {
+        CompletableFuture.supplyAsync(() -> panelInicio.obtener(idUsuario), ejecutor)
+                .whenComplete((actual, error) -> FxUtils.ejecutarEnFx(() -> {
+                    if (carga != cargas) return;
+                    if (error != null) {
+                        // Se queda la instantánea marcada; el próximo refresco lo vuelve a intentar
+                        error.printStackTrace();
+                        datosObsoletos = true;
+                        return;
+                    }
+                    mostrar(actual);
+                    marcarDesactualizado(false);
+                    instantaneas.actualizar(idUsuario, actual);
+                }));
+    }
 
-        double miImpactoHistorico = huellaService.getTotalImpactoUsuarioFecha(
-                idUsuario,
-                LocalDate.of(1970, 1, 1),
-                LocalDate.now().plusDays(1)
-        );
+    /**
+     * Muestra unos datos del panel: KPI principal, gráfico, nivel y consejo.
+     *
+     * @param datos Datos calculados ahora o guardados de la sesión anterior.
+     */
+    private void mostrar(InstantaneasInicio.Instantanea datos) {
+        totalEmisionesMes = datos.totalMes();
+        miImpactoHistorico = datos.historico();
+        lblHuellaTotal.setText(String.format("%.2f kg CO₂", totalEmisionesMes));
+        configurarGraficoResumen(datos);
+        calcularNivelGamificacion(datos);
+        lblConsejo.setText(datos.consejo());
+    }
 
-        XYChart.Series<String, Number> serieYo = new XYChart.Series<>();
-        serieYo.setName("Tú (Total)");
-        serieYo.getData().add(new XYChart.Data<>("", miImpactoHistorico));
+    /**
+     * Marca (o desmarca) los datos mostrados como procedentes de la sesión anterior.
+     *
+     * @param desactualizado true mientras se muestra una instantánea sin revalidar.
+     */
+    private void marcarDesactualizado(boolean desactualizado) {
+        for (Node nodo : new Node[]{lblHuellaTotal, barChart, lblNivel, pbNivel, lblSiguienteNivel, lblAhorroRestante}) {
+            if (nodo == null) continue;
+            nodo.getStyleClass().remove(CLASE_DESACTUALIZADO);
+            if (desactualizado) nodo.getStyleClass().add(CLASE_DESACTUALIZADO);
+        }
+        if (lblActualizando != null) {
+            lblActualizando.setVisible(desactualizado);
+            lblActualizando.setManaged(desactualizado);
+        }
+    }
 
-        double mediaRestoComunidad = huellaService.getMediaComunidadSinUsuario(idUsuario);
+    /**
+     * Configura el gráfico de barras: Tu Histórico vs Media Histórica del Resto (y su mediana).
+     *
+     * @param datos Datos del panel.
+     */
+    private void configurarGraficoResumen(InstantaneasInicio.Instantanea datos) {
+        double mediaRestoComunidad = datos.mediaComunidad();
 
         if (mediaRestoComunidad <= 0.1) mediaRestoComunidad = 10.0;
 
-        XYChart.Series<String, Number> serieMedia = new XYChart.Series<>();
-        serieMedia.setName("Media Comunidad");
-        serieMedia.getData().add(new XYChart.Data<>("", mediaRestoComunidad));
+        // Las series se crean una vez; en cada refresco solo cambia la altura de sus barras
+        if (barChart.getData().isEmpty()) {
+            barChart.setAnimated(false);
+            serieYo.setName("Tú (Total)");
+            serieMedia.setName("Media Comunidad");
+            serieMediana.setName("Mediana Comunidad");
+            barChart.getData().addAll(serieYo, serieMedia);
+        }
+        EnlaceGraficos.enlazar(serieYo, Map.of("", miImpactoHistorico), Comparator.naturalOrder());
+        EnlaceGraficos.enlazar(serieMedia, Map.of("", mediaRestoComunidad), Comparator.naturalOrder());
 
-        barChart.getData().addAll(serieYo, serieMedia);
+        if (!Double.isNaN(datos.mediana())) {
+            EnlaceGraficos.enlazar(serieMediana, Map.of("", datos.mediana()), Comparator.naturalOrder());
+            if (!barChart.getData().contains(serieMediana)) barChart.getData().add(serieMediana);
+        } else {
+            barChart.getData().remove(serieMediana);
+        }
 
         // Ajustes estéticos
         barChart.setCategoryGap(40);
@@ -106,16 +247,17 @@ public class InicioController {
     }
 
     /**
-     * Calcula el nivel del usuario y su posición en el ranking.
+     * Calcula el nivel del usuario a partir de su posición en el ranking.
      * <p>
      * Determina el nivel (Eco-Héroe, Consumo Consciente, Inicio del Cambio) basado en el ranking
      * y las emisiones del mes. Actualiza la interfaz con el progreso y mensajes motivacionales.
+     *
+     * @param datos Datos del panel.
      */
-    private void calcularNivelGamificacion() {
-        int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
-
-        Long ranking = huellaService.getRankingUsuario(idUsuario);
-        Long totalUsuarios = usuarioService.countUsuariosActivos();
+    private void calcularNivelGamificacion(InstantaneasInicio.Instantanea datos) {
+        long totalUsuarios = datos.totalUsuarios();
+        long ranking = datos.ranking();
+        double percentil = datos.percentil();
 
         String nivelTexto;
         String iconCode;
@@ -129,7 +271,9 @@ public class InicioController {
             nivelTexto = "Eco-Héroe";
             iconCode = "fas-star";
             colorTema = "#656D4A";
-            objetivoTexto = (ranking > 0) ? String.format("Ranking: #%d / %d", ranking, totalUsuarios) : "Ranking: Calculando...";
+            objetivoTexto = !Double.isNaN(percentil)
+                    ? String.format("Top %d %% · #%d / %d", topPorcentaje(percentil), ranking, totalUsuarios)
+                    : String.format("Ranking: #%d / %d", ranking, totalUsuarios);
             faltaTexto = "¡Eres un líder en sostenibilidad!";
             progreso = 1.0;
 
@@ -157,6 +301,16 @@ public class InicioController {
         aplicarEstilosUI(nivelTexto, iconCode, objetivoTexto, faltaTexto, progreso, colorTema);
     }
 
+    /**
+     * Convierte un percentil (fracción de usuarios que emiten menos) en el "top X %" de los que menos emiten.
+     *
+     * @param percentil Fracción entre 0 y 1.
+     * @return Porcentaje entre 1 y 100.
+     */
+    private static int topPorcentaje(double percentil) {
+        return (int) Math.max(1, Math.min(100, Math.ceil(percentil * 100)));
+    }
+
     /**
      * Aplica los estilos visuales a los elementos de la interfaz de gamificación.
      *
@@ -184,15 +338,6 @@ public class InicioController {
         }
     }
 
-    /**
-     * Muestra un consejo aleatorio en la pantalla de inicio.
-     */
-    private void mostrarConsejoDelDia() {
-        String[] categorias = {"Energía", "Transporte", "Agua", "Residuos", "Alimentación"};
-        String categoriaRandom = categorias[(int) (Math.random() * categorias.length)];
-        lblConsejo.setText(recomendacionService.generarConsejo(categoriaRandom));
-    }
-
     // --- NAVEGACIÓN ---
     /**
      * Navega a la vista de registro de huella.
@@ -209,4 +354,21 @@ public class InicioController {
      * @param e Evento del ratón.
      */
     @FXML public void irAAnalisis(MouseEvent e) { Navigation.navigate("analisis.fxml"); }
+
+    // --- PRECARGA AL PASAR EL RATÓN ---
+    /**
+     * Empieza a precargar el historial de huellas.
+     * @param e Evento del ratón.
+     */
+    @FXML public void anticiparHuellas(MouseEvent e) { Navigation.anticipar("historial_huellas.fxml"); }
+    /**
+     * Empieza a precargar los hábitos.
+     * @param e Evento del ratón.
+     */
+    @FXML public void anticiparHabitos(MouseEvent e) { Navigation.anticipar("mis_habitos.fxml"); }
+    /**
+     * Empieza a precargar el análisis del mes actual.
+     * @param e Evento del ratón.
+     */
+    @FXML public void anticiparAnalisis(MouseEvent e) { Navigation.anticipar("analisis.fxml"); }
 }
\ No newline at end of file
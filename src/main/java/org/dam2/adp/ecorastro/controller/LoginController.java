@@ -6,6 +6,7 @@ import javafx.scene.control.Label;
 import javafx.scene.control.PasswordField;
 import javafx.scene.control.TextField;
 import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.service.PrecargaSesion;
 import org.dam2.adp.ecorastro.service.UsuarioService;
 import org.dam2.adp.ecorastro.util.Navigation;
 import org.dam2.adp.ecorastro.util.SessionManager;
@@ -26,7 +27,7 @@ import org.dam2.adp.ecorastro.util.SessionManager;
  * @author Antonio Delgado Portero
  * @version 1.0
  */
-public class LoginController {
+public class LoginController implements VistaRefrescable {
 
 
     /** Campo de texto para introducir el correo electrónico. */
@@ -46,7 +47,19 @@ public class LoginController {
 
 
     /** Servicio encargado de la gestión de usuarios y autenticación. */
-    UsuarioService usuarioService = new UsuarioService();
+    private final UsuarioService usuarioService;
+    private final PrecargaSesion precargaSesion;
+
+    /**
+     * Crea el controlador con los servicios compartidos.
+     *
+     * @param usuarioService Servicio de usuarios.
+     * @param precargaSesion Precarga de los datos del usuario al entrar.
+     */
+    public LoginController(UsuarioService usuarioService, PrecargaSesion precargaSesion) {
+        this.usuarioService = usuarioService;
+        this.precargaSesion = precargaSesion;
+    }
 
     /**
      * Inicializa el controlador de login.
@@ -67,6 +80,18 @@ public class LoginController {
         btnRegister.setOnAction(this::onRegisterClick);
     }
 
+    /**
+     * Restablece el formulario al volver a la pantalla de login (por ejemplo, tras cerrar sesión).
+     * <p>
+     * Vacía las credenciales introducidas previamente y oculta el mensaje de error.
+     */
+    @Override
+    public void refrescar() {
+        txtEmail.clear();
+        txtPassword.clear();
+        lblError.setVisible(false);
+    }
+
     /**
      * Maneja el intento de inicio de sesión.
      * <p>
@@ -101,12 +126,14 @@ public class LoginController {
     /**
      * Configura la sesión del usuario y navega a la pantalla principal.
      * <p>
-     * Guarda el usuario autenticado en {@link SessionManager} y cambia la escena a "main.fxml".
+     * Guarda el usuario autenticado en {@link SessionManager}, empieza a cargar en paralelo sus
+     * datos ({@link PrecargaSesion}) y, mientras tanto, cambia la escena a "main.fxml".
      *
      * @param usuario El usuario autenticado.
      */
     private void realizarLoginExitoso(Usuario usuario) {
         SessionManager.getInstance().setUsuarioActual(usuario);
+        precargaSesion.lanzar(usuario.getId());
         Navigation.switchScene("main.fxml");
     }
 }
\ No newline at end of file
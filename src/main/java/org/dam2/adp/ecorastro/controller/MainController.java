@@ -2,14 +2,17 @@ package org.dam2.adp.ecorastro.controller;
 
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
-import javafx.fxml.FXMLLoader;
-import javafx.scene.Node;
+import javafx.scene.Parent;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.Region;
 import javafx.scene.layout.StackPane;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.CacheVistas;
 import org.dam2.adp.ecorastro.util.Navigation;
+import org.dam2.adp.ecorastro.util.PrecargaNavegacion;
 import org.dam2.adp.ecorastro.util.SessionManager;
 
 import java.io.IOException;
@@ -25,7 +28,8 @@ import java.io.IOException;
  * <li>Navegación entre las secciones principales (Inicio, Huella, Hábitos, Análisis).</li>
  * <li>Visualización del usuario conectado.</li>
  * <li>Gestión del cierre de sesión.</li>
- * <li>Carga dinámica de vistas FXML.</li>
+ * <li>Carga dinámica de vistas FXML, reutilizando las ya cargadas mediante {@link CacheVistas}.</li>
+ * <li>Precarga de la vista sobre cuyo acceso pasa el ratón ({@link PrecargaNavegacion}).</li>
  * </ul>
  *
  * @author Antonio Delgado Portero
@@ -57,6 +61,26 @@ public class MainController {
     /** Panel principal que estructura el layout (menú lateral + contenido). */
     public BorderPane mainPane;
 
+    /**
+     * Caché de vistas de la sesión actual.
+     * <p>
+     * Con la propiedad de sistema {@code ecorastro.vistas.referenciasSuaves=true} las vistas
+     * se guardan con referencias suaves y pueden liberarse bajo presión de memoria.
+     */
+    private final CacheVistas cacheVistas = new CacheVistas(Boolean.getBoolean("ecorastro.vistas.referenciasSuaves"));
+
+    /** Precarga de los datos de la vista sobre cuyo acceso está el ratón. */
+    private final PrecargaNavegacion precargaNavegacion;
+
+    /**
+     * Crea el controlador principal.
+     *
+     * @param precargaNavegacion Precarga por intención de navegación.
+     */
+    public MainController(PrecargaNavegacion precargaNavegacion) {
+        this.precargaNavegacion = precargaNavegacion;
+    }
+
     /**
      * Inicializa el controlador principal.
      * <p>
@@ -94,6 +118,8 @@ public class MainController {
      * @param actionEvent Evento de acción.
      */
     public void cerrarSesion(ActionEvent actionEvent) {
+        precargaNavegacion.descartar();
+        cacheVistas.limpiar();
         SessionManager.getInstance().cerrarSesion();
         Navigation.switchScene("login.fxml");
     }
@@ -101,17 +127,19 @@ public class MainController {
     /**
      * Carga una vista FXML en el área de contenido principal.
      * <p>
-     * Ajusta el tamaño de la vista para que ocupe todo el espacio disponible en el {@code contentPane}.
+     * Si la vista ya se cargó antes en esta sesión se reutiliza su grafo de escena y solo se
+     * refrescan sus datos. Al cargarla por primera vez se ajusta su tamaño para que ocupe todo
+     * el espacio disponible en el {@code contentPane}.
      *
      * @param fxml Nombre del archivo FXML a cargar (sin ruta, solo nombre).
      */
     public void loadView(String fxml) {
+        precargaNavegacion.alNavegar(fxml);
         try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("/org/dam2/adp/ecorastro/view/" + fxml));
-            Node view = loader.load();
+            CacheVistas.VistaCacheada vista = cacheVistas.obtener(fxml);
+            Parent view = vista.raiz();
 
-            if (view instanceof javafx.scene.layout.Region) {
-                javafx.scene.layout.Region region = (javafx.scene.layout.Region) view;
+            if (vista.nueva() && view instanceof Region region) {
                 region.prefWidthProperty().bind(contentPane.widthProperty());
                 region.prefHeightProperty().bind(contentPane.heightProperty());
             }
@@ -123,6 +151,27 @@ public class MainController {
         }
     }
 
+    /**
+     * Empieza a precargar una vista a la que el usuario probablemente va a navegar.
+     * <p>
+     * Los datos iniciales se consultan en segundo plano; cuando llegan, si la vista aún no está en
+     * la caché se carga su FXML (que recoge esos datos) para que el clic solo tenga que mostrarla.
+     *
+     * @param fxml Nombre del archivo FXML de la vista.
+     */
+    public void anticiparVista(String fxml) {
+        Usuario usuario = SessionManager.getInstance().getUsuarioActual();
+        if (usuario == null) return;
+        precargaNavegacion.anticipar(fxml, usuario.getId(), () -> {
+            try {
+                cacheVistas.precargar(fxml);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.err.println("Error precargando vista: " + fxml);
+            }
+        });
+    }
+
     /**
      * Navega a la vista de perfil del usuario.
      *
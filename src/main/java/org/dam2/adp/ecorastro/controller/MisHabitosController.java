@@ -2,20 +2,29 @@ package org.dam2.adp.ecorastro.controller;
 
 import javafx.fxml.FXML;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.layout.VBox;
 import javafx.util.StringConverter;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.HabitoCambiado;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
 import org.dam2.adp.ecorastro.model.Actividad;
 import org.dam2.adp.ecorastro.model.Habito;
 import org.dam2.adp.ecorastro.model.Usuario;
 import org.dam2.adp.ecorastro.service.HabitoService;
+import org.dam2.adp.ecorastro.service.HuellaService;
 import org.dam2.adp.ecorastro.service.RecomendacionService;
 import org.dam2.adp.ecorastro.util.AlertUtils;
+import org.dam2.adp.ecorastro.util.FxUtils;
+import org.dam2.adp.ecorastro.util.PrecargaNavegacion;
 import org.dam2.adp.ecorastro.util.SessionManager;
 import org.kordamp.ikonli.javafx.FontIcon;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Controlador para la gestión de Hábitos del usuario.
@@ -29,12 +38,13 @@ import java.util.List;
  * <li>Filtrado de hábitos por categoría.</li>
  * <li>Eliminación de hábitos existentes mediante menú contextual.</li>
  * <li>Visualización de recomendaciones contextuales al seleccionar un hábito.</li>
+ * <li>Actualización incremental de tarjetas al recibir {@link HabitoCambiado}.</li>
  * </ul>
  *
  * @author Antonio Delgado Portero
  * @version 1.0
  */
-public class MisHabitosController {
+public class MisHabitosController implements VistaRefrescable {
 
     /** Contenedor fluido para mostrar las tarjetas de hábitos. */
     @FXML private FlowPane contenedorHabitos;
@@ -67,12 +77,43 @@ public class MisHabitosController {
     @FXML private Label lblRecomendacionSidebar;
 
     /** Servicio para gestionar hábitos. */
-    private final HabitoService habitoService = new HabitoService();
+    private final HabitoService habitoService;
 
     /** Servicio para gestionar huellas (usado para obtener actividades). */
-    private final org.dam2.adp.ecorastro.service.HuellaService huellaService = new org.dam2.adp.ecorastro.service.HuellaService();
+    private final HuellaService huellaService;
     /** Servicio para generar recomendaciones. */
-    private final RecomendacionService recomendacionService = new RecomendacionService();
+    private final RecomendacionService recomendacionService;
+
+    /** Bus de eventos al que se suscribe la vista. */
+    private final EventBus eventBus;
+
+    /** Precarga de navegación con los datos iniciales de la vista. */
+    private final PrecargaNavegacion precarga;
+
+    /** Suscripciones a los cambios de hábitos y a las sincronizaciones, canceladas al liberar la vista. */
+    private List<EventBus.Suscripcion> suscripciones = List.of();
+
+    /** Hábitos del usuario cargados en memoria. */
+    private final List<Habito> habitos = new ArrayList<>();
+
+    /**
+     * Crea el controlador con los servicios compartidos de la aplicación.
+     *
+     * @param habitoService        Servicio de hábitos.
+     * @param huellaService        Servicio de huellas.
+     * @param recomendacionService Servicio de recomendaciones.
+     * @param eventBus             Bus de eventos de dominio.
+     * @param precarga             Precarga de navegación, de la que se recogen los hábitos iniciales.
+     */
+    public MisHabitosController(HabitoService habitoService, HuellaService huellaService,
+                                RecomendacionService recomendacionService, EventBus eventBus,
+                                PrecargaNavegacion precarga) {
+        this.habitoService = habitoService;
+        this.huellaService = huellaService;
+        this.recomendacionService = recomendacionService;
+        this.eventBus = eventBus;
+        this.precarga = precarga;
+    }
 
     /**
      * Inicializa el controlador de hábitos.
@@ -81,10 +122,31 @@ public class MisHabitosController {
      */
     @FXML
     public void initialize() {
+        suscripciones = List.of(
+                eventBus.suscribir(HabitoCambiado.class, e -> FxUtils.ejecutarEnFx(() -> alCambiarHabito(e))),
+                eventBus.suscribir(ReplicaSincronizada.class, e -> FxUtils.ejecutarEnFx(this::cargarHabitos)));
         cargarComboActividades();
         cargarHabitos();
     }
 
+    /**
+     * Cancela las suscripciones al bus de eventos.
+     */
+    @Override
+    public void liberar() {
+        suscripciones.forEach(EventBus.Suscripcion::cancelar);
+    }
+
+    /**
+     * Vuelve a cargar los hábitos al regresar a la vista.
+     * <p>
+     * El catálogo de actividades del formulario ya está cargado y no se repite la consulta.
+     */
+    @Override
+    public void refrescar() {
+        cargarHabitos();
+    }
+
     /**
      * Carga las actividades disponibles en el ComboBox.
      */
@@ -134,7 +196,6 @@ public class MisHabitosController {
             cmbActividad.getSelectionModel().clearSelection();
             txtCantidad.clear();
             rbDiario.setSelected(true);
-            cargarHabitos();
             AlertUtils.info("¡Hábito añadido correctamente!");
         } else {
             AlertUtils.error("No se pudo guardar. Verifica los datos.");
@@ -146,19 +207,28 @@ public class MisHabitosController {
      * <p>
      * Aplica los filtros de categoría seleccionados.
      */
-    @FXML
     public void cargarHabitos() {
-        if (contenedorHabitos != null) contenedorHabitos.getChildren().clear();
-
         int idUsuario = SessionManager.getInstance().getUsuarioActual().getId();
-        List<Habito> lista = habitoService.getHabitosByUsuario(idUsuario);
+        habitos.clear();
+        habitos.addAll(precarga.recoger("mis_habitos.fxml", idUsuario, () -> habitoService.getHabitosByUsuario(idUsuario)));
+        aplicarFiltros();
+    }
 
-        if (lista.isEmpty()) {
+    /**
+     * Regenera las tarjetas a partir de los hábitos ya cargados, sin consultar la BBDD.
+     * <p>
+     * Se invoca al cambiar los filtros de categoría.
+     */
+    @FXML
+    public void aplicarFiltros() {
+        contenedorHabitos.getChildren().clear();
+
+        if (habitos.isEmpty()) {
             mostrarMensajeVacio();
             return;
         }
 
-        for (Habito h : lista) {
+        for (Habito h : habitos) {
             String cat = h.getIdActividad().getIdCategoria().getNombre();
             if (!isCategoriaSeleccionada(cat)) continue;
 
@@ -166,6 +236,61 @@ public class MisHabitosController {
         }
     }
 
+    /**
+     * Aplica un cambio de hábito sobre la tarjeta afectada.
+     * <p>
+     * Un hábito guardado sustituye a su tarjeta anterior (o se añade si es nuevo);
+     * uno eliminado hace desaparecer su tarjeta.
+     *
+     * @param evento El cambio recibido.
+     */
+    private void alCambiarHabito(HabitoCambiado evento) {
+        Habito habito = evento.habito();
+        Integer idUsuarioActual = SessionManager.getInstance().getUsuarioActual().getId();
+        if (!Objects.equals(habito.getId().getIdUsuario(), idUsuarioActual)) return;
+
+        if (habitos.isEmpty()) {
+            contenedorHabitos.getChildren().clear(); // Quita el mensaje de "sin hábitos"
+        }
+
+        int posicion = -1;
+        for (int i = 0; i < habitos.size(); i++) {
+            if (habitos.get(i).getId().equals(habito.getId())) {
+                posicion = i;
+                break;
+            }
+        }
+
+        Node tarjetaAnterior = contenedorHabitos.getChildren().stream()
+                .filter(nodo -> nodo.getUserData() instanceof Habito h && h.getId().equals(habito.getId()))
+                .findFirst().orElse(null);
+
+        if (evento.eliminado()) {
+            if (posicion >= 0) habitos.remove(posicion);
+            contenedorHabitos.getChildren().remove(tarjetaAnterior);
+            if (habitos.isEmpty()) mostrarMensajeVacio();
+            return;
+        }
+
+        if (posicion >= 0) {
+            habitos.set(posicion, habito);
+        } else {
+            habitos.add(habito);
+        }
+
+        boolean visible = isCategoriaSeleccionada(habito.getIdActividad().getIdCategoria().getNombre());
+        if (tarjetaAnterior != null) {
+            int indice = contenedorHabitos.getChildren().indexOf(tarjetaAnterior);
+            if (visible) {
+                contenedorHabitos.getChildren().set(indice, crearTarjetaHabito(habito));
+            } else {
+                contenedorHabitos.getChildren().remove(indice);
+            }
+        } else if (visible) {
+            contenedorHabitos.getChildren().add(crearTarjetaHabito(habito));
+        }
+    }
+
     /**
      * Verifica si una categoría está seleccionada en los filtros.
      *
@@ -192,6 +317,7 @@ public class MisHabitosController {
         VBox card = new VBox(5);
         card.getStyleClass().add("item-card");
         card.setAlignment(Pos.CENTER);
+        card.setUserData(h);
 
         // A. Icono (FontAwesome)
         String catNombre = h.getIdActividad().getIdCategoria().getNombre();
@@ -244,8 +370,7 @@ public class MisHabitosController {
                 "¿Deseas dejar de seguir el hábito '" + h.getIdActividad().getNombre() + "'?")) {
 
             if (habitoService.deleteHabito(h)) {
-                AlertUtils.info("Hábito eliminado.");
-                cargarHabitos();
+                AlertUtils.info("Hábito eliminado."); // La tarjeta desaparece al recibir el evento
             } else {
                 AlertUtils.error("No se pudo eliminar.");
             }
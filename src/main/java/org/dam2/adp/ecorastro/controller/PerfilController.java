@@ -25,7 +25,7 @@ import org.dam2.adp.ecorastro.util.SessionManager;
  * @author Antonio Delgado Portero
  * @version 1.0
  */
-public class PerfilController {
+public class PerfilController implements VistaRefrescable {
 
     /** Campo de texto para editar el nombre. */
     @FXML private TextField txtNombre;
@@ -37,10 +37,19 @@ public class PerfilController {
     @FXML private PasswordField txtPassConfirm;
 
     /** Servicio para operaciones con usuarios. */
-    private final UsuarioService usuarioService = new UsuarioService();
+    private final UsuarioService usuarioService;
     /** Referencia al usuario actualmente logueado. */
     private Usuario usuarioActual;
 
+    /**
+     * Crea el controlador con el servicio de usuarios compartido.
+     *
+     * @param usuarioService Servicio de usuarios.
+     */
+    public PerfilController(UsuarioService usuarioService) {
+        this.usuarioService = usuarioService;
+    }
+
     /**
      * Inicializa el controlador del perfil.
      * <p>
@@ -48,12 +57,22 @@ public class PerfilController {
      */
     @FXML
     public void initialize() {
+        refrescar();
+    }
+
+    /**
+     * Vuelve a cargar los datos del usuario y vacía los campos de contraseña.
+     */
+    @Override
+    public void refrescar() {
         // 1. Cargar datos del usuario logueado
         usuarioActual = SessionManager.getInstance().getUsuarioActual();
         if (usuarioActual != null) {
             txtNombre.setText(usuarioActual.getNombre());
             txtEmail.setText(usuarioActual.getEmail());
         }
+        txtPassNueva.clear();
+        txtPassConfirm.clear();
     }
 
     /**
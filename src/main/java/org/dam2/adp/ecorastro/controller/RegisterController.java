@@ -26,7 +26,7 @@ import org.dam2.adp.ecorastro.util.Navigation;
  * @author Antonio Delgado Portero
  * @version 1.0
  */
-public class RegisterController {
+public class RegisterController implements VistaRefrescable {
 
 
     /** Campo de texto para el nombre del usuario. */
@@ -46,7 +46,16 @@ public class RegisterController {
 
 
     /** Servicio para la gestión de usuarios. */
-    UsuarioService usuarioService = new UsuarioService();
+    private final UsuarioService usuarioService;
+
+    /**
+     * Crea el controlador con el servicio de usuarios compartido.
+     *
+     * @param usuarioService Servicio de usuarios.
+     */
+    public RegisterController(UsuarioService usuarioService) {
+        this.usuarioService = usuarioService;
+    }
 
     /**
      * Inicializa el controlador de registro.
@@ -57,6 +66,18 @@ public class RegisterController {
         lblMensaje.setVisible(false);
     }
 
+    /**
+     * Restablece el formulario al volver a la pantalla de registro.
+     */
+    @Override
+    public void refrescar() {
+        txtNombre.clear();
+        txtEmail.clear();
+        txtPassword.clear();
+        txtConfirmPassword.clear();
+        lblMensaje.setVisible(false);
+    }
+
     /**
      * Maneja el evento de clic en el botón Registrar.
      * <p>
@@ -49,7 +49,16 @@ public class RegisterHuellaController {
 
 
     /** Servicio encargado de la lógica de negocio y persistencia de huellas. */
-    private final HuellaService huellaService = new HuellaService();
+    private final HuellaService huellaService;
+
+    /**
+     * Crea el controlador con el servicio de huellas compartido.
+     *
+     * @param huellaService Servicio de huellas.
+     */
+    public RegisterHuellaController(HuellaService huellaService) {
+        this.huellaService = huellaService;
+    }
 
     /**
      * Inicializa el controlador.
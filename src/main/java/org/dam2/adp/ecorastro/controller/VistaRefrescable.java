@@ -0,0 +1,28 @@
+package org.dam2.adp.ecorastro.controller;
+
+/**
+ * Contrato para los controladores cuyas vistas pueden reutilizarse entre navegaciones.
+ * <p>
+ * Cuando una vista se recupera de la caché de vistas (ver {@link org.dam2.adp.ecorastro.util.CacheVistas}),
+ * no se vuelve a parsear el FXML ni a crear el controlador: solo se invoca {@link #refrescar()}
+ * para que el controlador recargue sus datos sobre el grafo de escena existente.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public interface VistaRefrescable {
+
+    /**
+     * Recarga los datos mostrados por la vista.
+     * <p>
+     * Se llama cada vez que la vista cacheada vuelve a mostrarse.
+     */
+    void refrescar();
+
+    /**
+     * Libera los recursos de la vista (por ejemplo, suscripciones a eventos) cuando
+     * se descarta de la caché, normalmente al cerrar sesión.
+     */
+    default void liberar() {
+    }
+}
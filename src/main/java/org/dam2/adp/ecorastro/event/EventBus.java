@@ -0,0 +1,71 @@
+package org.dam2.adp.ecorastro.event;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Bus de eventos de dominio en memoria.
+ * <p>
+ * Los servicios publican los cambios confirmados ({@link HuellaCreada}, {@link HuellaActualizada},
+ * {@link HuellaEliminada}, {@link HabitoCambiado}) y las vistas o cachés interesadas se suscriben
+ * por tipo de evento para actualizarse de forma incremental.
+ * <p>
+ * La entrega es síncrona y se realiza en el hilo que publica; los suscriptores que tocan
+ * la interfaz deben pasar al hilo de JavaFX por su cuenta. Un error en un suscriptor no
+ * impide que el resto reciba el evento.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class EventBus {
+
+    /**
+     * Manejador devuelto al suscribirse, que permite darse de baja.
+     */
+    @FunctionalInterface
+    public interface Suscripcion {
+        /** Deja de recibir eventos. */
+        void cancelar();
+    }
+
+    /** Suscriptores registrados por tipo de evento. */
+    private final Map<Class<? extends EventoDominio>, List<Consumer<? super EventoDominio>>> suscriptores = new ConcurrentHashMap<>();
+
+    /**
+     * Registra un suscriptor para un tipo de evento.
+     *
+     * @param tipo   Clase del evento a escuchar.
+     * @param oyente Acción a ejecutar con cada evento.
+     * @param <E>    Tipo del evento.
+     * @return La suscripción, para poder cancelarla.
+     */
+    public <E extends EventoDominio> Suscripcion suscribir(Class<E> tipo, Consumer<? super E> oyente) {
+        Consumer<? super EventoDominio> adaptador = evento -> oyente.accept(tipo.cast(evento));
+        List<Consumer<? super EventoDominio>> lista = suscriptores.computeIfAbsent(tipo, t -> new CopyOnWriteArrayList<>());
+        lista.add(adaptador);
+        return () -> lista.remove(adaptador);
+    }
+
+    /**
+     * Publica un evento a todos los suscriptores de su tipo.
+     *
+     * @param evento El evento a publicar.
+     */
+    public void publicar(EventoDominio evento) {
+        List<Consumer<? super EventoDominio>> lista = suscriptores.get(evento.getClass());
+        if (lista == null) {
+            return;
+        }
+        for (Consumer<? super EventoDominio> oyente : lista) {
+            try {
+                oyente.accept(evento);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.err.println("Error al procesar el evento " + evento.getClass().getSimpleName() + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.dam2.adp.ecorastro.event;
+
+/**
+ * Marca común de los eventos de dominio publicados por los servicios.
+ * <p>
+ * Los eventos describen cambios ya confirmados en la base de datos, de forma que las vistas
+ * abiertas y las cachés puedan actualizarse de forma incremental sin recargar todo.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public sealed interface EventoDominio permits HuellaCreada, HuellaActualizada, HuellaEliminada, HabitoCambiado, ReplicaSincronizada,
+        FactoresRecalculados {
+}
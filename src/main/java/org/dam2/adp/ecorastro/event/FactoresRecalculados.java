@@ -0,0 +1,18 @@
+package org.dam2.adp.ecorastro.event;
+
+import java.time.LocalDate;
+
+/**
+ * Evento publicado cuando se corrige un factor de emisión y se ha recalculado el impacto
+ * de las huellas afectadas.
+ * <p>
+ * Las vistas y cachés con totales que incluyan días del periodo deben volver a calcularlos.
+ *
+ * @param idCategoria Categoría cuyo factor ha cambiado.
+ * @param desde       Primer día afectado.
+ * @param hasta       Último día afectado.
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public record FactoresRecalculados(int idCategoria, LocalDate desde, LocalDate hasta) implements EventoDominio {
+}
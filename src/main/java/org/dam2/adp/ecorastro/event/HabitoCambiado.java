@@ -0,0 +1,14 @@
+package org.dam2.adp.ecorastro.event;
+
+import org.dam2.adp.ecorastro.model.Habito;
+
+/**
+ * Evento publicado cuando un hábito se crea, se modifica o se elimina.
+ *
+ * @param habito    El hábito afectado.
+ * @param eliminado true si el hábito se ha eliminado, false si se ha guardado.
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public record HabitoCambiado(Habito habito, boolean eliminado) implements EventoDominio {
+}
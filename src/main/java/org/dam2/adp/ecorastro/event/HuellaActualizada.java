@@ -0,0 +1,13 @@
+package org.dam2.adp.ecorastro.event;
+
+import org.dam2.adp.ecorastro.model.Huella;
+
+/**
+ * Evento publicado cuando se modifica una huella existente.
+ *
+ * @param huella La huella con sus valores actualizados.
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public record HuellaActualizada(Huella huella) implements EventoDominio {
+}
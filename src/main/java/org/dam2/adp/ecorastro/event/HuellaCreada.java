@@ -0,0 +1,13 @@
+package org.dam2.adp.ecorastro.event;
+
+import org.dam2.adp.ecorastro.model.Huella;
+
+/**
+ * Evento publicado cuando se registra una nueva huella.
+ *
+ * @param huella La huella recién guardada (con su ID asignado).
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public record HuellaCreada(Huella huella) implements EventoDominio {
+}
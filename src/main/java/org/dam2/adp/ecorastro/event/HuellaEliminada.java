@@ -0,0 +1,13 @@
+package org.dam2.adp.ecorastro.event;
+
+import org.dam2.adp.ecorastro.model.Huella;
+
+/**
+ * Evento publicado cuando se elimina una huella.
+ *
+ * @param huella La huella eliminada.
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public record HuellaEliminada(Huella huella) implements EventoDominio {
+}
@@ -0,0 +1,14 @@
+package org.dam2.adp.ecorastro.event;
+
+/**
+ * Evento publicado cuando la sincronización ha descargado cambios en la réplica local
+ * (huellas o hábitos editados desde otro equipo, borrados, etc.).
+ * <p>
+ * Las vistas que leen de la réplica deben volver a cargar sus datos.
+ *
+ * @param idUsuario Usuario cuyos datos han cambiado.
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public record ReplicaSincronizada(int idUsuario) implements EventoDominio {
+}
@@ -0,0 +1,130 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import javafx.scene.Node;
+import javafx.scene.chart.PieChart;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Label;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Enlace entre los agregados por categoría y los gráficos de JavaFX que los muestran.
+ * <p>
+ * En lugar de sustituir los datos del gráfico en cada refresco (lo que destruye y vuelve a crear los
+ * nodos, las etiquetas y la leyenda), compara los valores nuevos con los que ya se muestran: los
+ * {@link PieChart.Data} y {@link XYChart.Data} existentes cambian su valor en el sitio, y solo se
+ * añaden o quitan los de las categorías que aparecen o desaparecen, siempre en el mismo orden.
+ * Los colores vienen de clases CSS ({@link #claseCategoria(String)}) y no de estilos en línea.
+ * <p>
+ * Como cualquier cambio de la escena, se usa desde el hilo de JavaFX.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public final class EnlaceGraficos {
+
+    private EnlaceGraficos() {
+    }
+
+    /**
+     * Actualiza un gráfico circular con el impacto por categoría.
+     * <p>
+     * Cada quesito y su símbolo en la leyenda llevan la clase CSS de su categoría. La leyenda solo
+     * se vuelve a marcar cuando cambia el conjunto de categorías, que es cuando el gráfico la rehace.
+     *
+     * @param grafico Gráfico a actualizar.
+     * @param datos   Valor de cada categoría.
+     * @param orden   Orden estable de las categorías.
+     */
+    public static void enlazar(PieChart grafico, Map<String, Double> datos, Comparator<String> orden) {
+        boolean estructura = sincronizar(grafico.getData(), datos, orden,
+                PieChart.Data::getName, PieChart.Data::setPieValue, PieChart.Data::new);
+        if (!estructura) return;
+
+        for (PieChart.Data d : grafico.getData()) {
+            marcar(d.getNode(), claseCategoria(d.getName()));
+        }
+        for (Node item : grafico.lookupAll(".chart-legend-item")) {
+            if (item instanceof Label etiqueta) marcar(etiqueta.getGraphic(), claseCategoria(etiqueta.getText()));
+        }
+    }
+
+    /**
+     * Actualiza una serie de un gráfico de categorías (barras, líneas...).
+     * <p>
+     * El color de la serie lo decide la hoja de estilos según su posición en el gráfico, así que las
+     * series deben añadirse siempre en el mismo orden.
+     *
+     * @param serie Serie a actualizar.
+     * @param datos Valor de cada categoría.
+     * @param orden Orden estable de las categorías.
+     */
+    public static void enlazar(XYChart.Series<String, Number> serie, Map<String, Double> datos, Comparator<String> orden) {
+        sincronizar(serie.getData(), datos, orden, XYChart.Data::getXValue, XYChart.Data::setYValue, XYChart.Data::new);
+    }
+
+    /**
+     * Ajusta una lista de datos a unos valores nuevos reutilizando los objetos que ya están.
+     *
+     * @param actuales Datos mostrados, que se modifican.
+     * @param datos    Valores nuevos por nombre.
+     * @param orden    Orden de los nombres.
+     * @param nombre   Nombre de un dato.
+     * @param valor    Cambia el valor de un dato.
+     * @param crear    Crea un dato nuevo.
+     * @param <T>      Tipo de dato del gráfico.
+     * @return true si se ha añadido, quitado o reordenado algún dato; false si solo han cambiado valores.
+     */
+    static <T> boolean sincronizar(List<T> actuales, Map<String, Double> datos, Comparator<String> orden,
+                                   Function<T, String> nombre, BiConsumer<T, Double> valor,
+                                   BiFunction<String, Double, T> crear) {
+        List<String> nombres = new ArrayList<>(datos.keySet());
+        nombres.sort(orden);
+
+        Map<String, T> existentes = new HashMap<>();
+        for (T d : actuales) existentes.put(nombre.apply(d), d);
+
+        List<T> deseados = new ArrayList<>(nombres.size());
+        for (String n : nombres) {
+            T d = existentes.get(n);
+            if (d != null) valor.accept(d, datos.get(n));
+            else d = crear.apply(n, datos.get(n));
+            deseados.add(d);
+        }
+
+        if (deseados.equals(actuales)) return false;
+        // Se quitan los que sobran y se insertan los nuevos en su sitio, sin tocar el resto
+        actuales.retainAll(deseados);
+        for (int i = 0; i < deseados.size(); i++) {
+            T d = deseados.get(i);
+            if (i < actuales.size() && actuales.get(i) == d) continue;
+            actuales.remove(d);
+            actuales.add(i, d);
+        }
+        return true;
+    }
+
+    /**
+     * Clase CSS del color de una categoría: "categoria-" y el nombre en minúsculas, sin tildes ni espacios.
+     *
+     * @param categoria Nombre de la categoría.
+     * @return La clase (por ejemplo "categoria-alimentacion").
+     */
+    public static String claseCategoria(String categoria) {
+        String sinTildes = Normalizer.normalize(categoria, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        return "categoria-" + sinTildes.toLowerCase(Locale.ROOT).trim().replaceAll("[^a-z0-9]+", "-");
+    }
+
+    private static void marcar(Node nodo, String clase) {
+        if (nodo != null && !nodo.getStyleClass().contains(clase)) nodo.getStyleClass().add(clase);
+    }
+}
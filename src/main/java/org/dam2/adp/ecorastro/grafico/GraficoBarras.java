@@ -0,0 +1,137 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.util.List;
+
+/**
+ * Gráfico de barras verticales sobre un lienzo, una barra por etiqueta.
+ * <p>
+ * {@link #actualizarValor(int, double)} solo repinta la columna de la barra mientras el valor quepa en
+ * la escala actual. Las etiquetas del eje X se saltan cuando no caben todas.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class GraficoBarras extends GraficoCanvas {
+
+    static final double MARGEN_IZQUIERDO = 48;
+    static final double MARGEN_DERECHO = 8;
+    static final double MARGEN_SUPERIOR = 10;
+    static final double MARGEN_INFERIOR = 24;
+
+    /** Parte de cada columna que ocupa la barra. */
+    private static final double RELLENO = 0.7;
+    private static final double SEPARACION_ETIQUETAS = 60;
+    private static final Color COLOR_POR_DEFECTO = Color.web("#936639");
+
+    private String[] etiquetas = new String[0];
+    private double[] valores = new double[0];
+    private Color[] colores = new Color[0];
+    private double maximo = 1;
+
+    /**
+     * Sustituye las barras, todas del mismo color.
+     *
+     * @param etiquetas Etiqueta de cada barra.
+     * @param valores   Valor de cada barra, en kg CO₂.
+     */
+    public void setDatos(List<String> etiquetas, double[] valores) {
+        setDatos(etiquetas, valores, null);
+    }
+
+    /**
+     * Sustituye las barras.
+     *
+     * @param etiquetas Etiqueta de cada barra.
+     * @param valores   Valor de cada barra, en kg CO₂.
+     * @param colores   Color de cada barra, o null para el color por defecto.
+     * @throws IllegalArgumentException Si los tamaños no coinciden.
+     */
+    public void setDatos(List<String> etiquetas, double[] valores, List<Color> colores) {
+        if (etiquetas.size() != valores.length || (colores != null && colores.size() != valores.length)) {
+            throw new IllegalArgumentException("Etiquetas, valores y colores deben tener el mismo tamaño");
+        }
+        this.etiquetas = etiquetas.toArray(new String[0]);
+        this.valores = valores.clone();
+        this.colores = new Color[valores.length];
+        for (int i = 0; i < valores.length; i++) {
+            this.colores[i] = (colores != null) ? colores.get(i) : COLOR_POR_DEFECTO;
+        }
+        this.maximo = maximoEscala(this.valores, this.valores.length);
+        invalidarTodo();
+    }
+
+    /**
+     * Cambia el valor de una barra en el sitio.
+     *
+     * @param indice Posición de la barra.
+     * @param valor  Valor nuevo.
+     */
+    public void actualizarValor(int indice, double valor) {
+        valores[indice] = valor;
+        if (valor > maximo) {
+            maximo = maximoEscala(valores, valores.length);
+            invalidarTodo();
+            return;
+        }
+        double columna = anchoColumna(getWidth() - MARGEN_IZQUIERDO - MARGEN_DERECHO, valores.length);
+        invalidar(MARGEN_IZQUIERDO + indice * columna, 0, columna, getHeight() - MARGEN_INFERIOR + 1);
+    }
+
+    @Override
+    protected void pintar(GraphicsContext g, double ancho, double alto) {
+        double anchoDatos = ancho - MARGEN_IZQUIERDO - MARGEN_DERECHO;
+        double altoDatos = alto - MARGEN_SUPERIOR - MARGEN_INFERIOR;
+        if (anchoDatos <= 0 || altoDatos <= 0) return;
+        pintarEjeY(g, MARGEN_IZQUIERDO, MARGEN_SUPERIOR, anchoDatos, altoDatos, maximo);
+
+        int n = valores.length;
+        if (n == 0) return;
+        double columna = anchoColumna(anchoDatos, n);
+        double barra = Math.max(1, columna * RELLENO);
+        double base = MARGEN_SUPERIOR + altoDatos;
+        for (int i = 0; i < n; i++) {
+            double h = altoDatos * Math.max(0, valores[i]) / maximo;
+            g.setFill(colores[i]);
+            g.fillRect(MARGEN_IZQUIERDO + i * columna + (columna - barra) / 2, base - h, barra, h);
+        }
+
+        g.setFill(COLOR_TEXTO);
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.TOP);
+        int salto = Math.max(1, (int) Math.ceil(SEPARACION_ETIQUETAS / columna));
+        for (int i = 0; i < n; i += salto) {
+            g.fillText(etiquetas[i], MARGEN_IZQUIERDO + (i + 0.5) * columna, base + 6);
+        }
+    }
+
+    @Override
+    protected String textoEn(double px, double py) {
+        int i = indiceEn(px, getWidth() - MARGEN_IZQUIERDO - MARGEN_DERECHO, valores.length);
+        if (i < 0 || py < MARGEN_SUPERIOR || py > getHeight() - MARGEN_INFERIOR) return null;
+        return String.format("%s: %.2f kg CO₂", etiquetas[i], valores[i]);
+    }
+
+    /**
+     * Barra cuya columna contiene una coordenada.
+     *
+     * @param px         Coordenada x en el lienzo.
+     * @param anchoDatos Ancho del área de datos.
+     * @param n          Número de barras.
+     * @return El índice, o -1 si la coordenada queda fuera de las columnas.
+     */
+    static int indiceEn(double px, double anchoDatos, int n) {
+        if (n == 0 || anchoDatos <= 0) return -1;
+        double relativa = px - MARGEN_IZQUIERDO;
+        if (relativa < 0 || relativa >= anchoDatos) return -1;
+        return Math.min(n - 1, (int) (relativa / anchoColumna(anchoDatos, n)));
+    }
+
+    private static double anchoColumna(double anchoDatos, int n) {
+        return anchoDatos / Math.max(1, n);
+    }
+}
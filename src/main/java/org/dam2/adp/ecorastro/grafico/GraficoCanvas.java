@@ -0,0 +1,187 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import javafx.geometry.Rectangle2D;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Base de los gráficos dibujados sobre un único {@link Canvas}, en lugar de un nodo por dato.
+ * <p>
+ * Las subclases guardan sus datos en arrays, los actualizan en el sitio y marcan como sucia solo la
+ * zona que cambia ({@link #invalidar(double, double, double, double)}); en el siguiente pulso de
+ * layout se borra y repinta únicamente esa zona (recortada), o todo el lienzo si ha cambiado la
+ * escala o el tamaño. El tooltip se resuelve con {@link #textoEn(double, double)}, sin nodos por dato.
+ * <p>
+ * Como cualquier nodo, se usa desde el hilo de JavaFX.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public abstract class GraficoCanvas extends Region {
+
+    /** Color de ejes y textos. */
+    protected static final Color COLOR_TEXTO = Color.web("#7F8C8D");
+
+    /** Color de las líneas de la cuadrícula. */
+    protected static final Color COLOR_CUADRICULA = Color.web("#E5E5E5");
+
+    private final Canvas canvas = new Canvas();
+
+    /** Zona pendiente de repintar, o null si no hay ninguna. */
+    private Rectangle2D sucia;
+
+    /** Tooltip compartido, creado al primer movimiento del ratón. */
+    private Tooltip tooltip;
+
+    protected GraficoCanvas() {
+        getChildren().add(canvas);
+        setMinSize(100, 80);
+        setPrefSize(400, 250);
+        canvas.setOnMouseMoved(e -> {
+            String texto = textoEn(e.getX(), e.getY());
+            if (texto == null) {
+                if (tooltip != null) tooltip.hide();
+                return;
+            }
+            if (tooltip == null) tooltip = new Tooltip();
+            tooltip.setText(texto);
+            tooltip.show(canvas, e.getScreenX() + 12, e.getScreenY() + 12);
+        });
+        canvas.setOnMouseExited(e -> {
+            if (tooltip != null) tooltip.hide();
+        });
+    }
+
+    /**
+     * Ajusta el lienzo al tamaño de la región y repinta la zona sucia.
+     */
+    @Override
+    protected void layoutChildren() {
+        double ancho = snapSizeX(getWidth());
+        double alto = snapSizeY(getHeight());
+        if (canvas.getWidth() != ancho || canvas.getHeight() != alto) {
+            canvas.setWidth(ancho);
+            canvas.setHeight(alto);
+            sucia = new Rectangle2D(0, 0, ancho, alto);
+        }
+        if (sucia == null || ancho <= 0 || alto <= 0) return;
+
+        Rectangle2D zona = sucia;
+        sucia = null;
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.save();
+        g.beginPath();
+        g.rect(zona.getMinX(), zona.getMinY(), zona.getWidth(), zona.getHeight());
+        g.clip();
+        g.clearRect(zona.getMinX(), zona.getMinY(), zona.getWidth(), zona.getHeight());
+        g.setFont(Font.font(11));
+        pintar(g, ancho, alto);
+        g.restore();
+    }
+
+    /**
+     * Marca una zona para repintarla en el siguiente pulso.
+     *
+     * @param x     Izquierda.
+     * @param y     Arriba.
+     * @param ancho Ancho.
+     * @param alto  Alto.
+     */
+    protected final void invalidar(double x, double y, double ancho, double alto) {
+        double minX = Math.max(0, Math.floor(x));
+        double minY = Math.max(0, Math.floor(y));
+        double maxX = Math.min(canvas.getWidth(), Math.ceil(x + ancho));
+        double maxY = Math.min(canvas.getHeight(), Math.ceil(y + alto));
+        if (maxX <= minX || maxY <= minY) return;
+        if (sucia != null) {
+            minX = Math.min(minX, sucia.getMinX());
+            minY = Math.min(minY, sucia.getMinY());
+            maxX = Math.max(maxX, sucia.getMaxX());
+            maxY = Math.max(maxY, sucia.getMaxY());
+        }
+        sucia = new Rectangle2D(minX, minY, maxX - minX, maxY - minY);
+        requestLayout();
+    }
+
+    /**
+     * Marca todo el lienzo para repintarlo (cambio de datos o de escala).
+     */
+    protected final void invalidarTodo() {
+        invalidar(0, 0, canvas.getWidth(), canvas.getHeight());
+    }
+
+    /**
+     * Zona pendiente de repintar (para las pruebas).
+     *
+     * @return La zona, o null si no hay nada pendiente.
+     */
+    Rectangle2D getZonaSucia() {
+        return sucia;
+    }
+
+    /**
+     * Dibuja el gráfico completo; el contexto ya está recortado a la zona sucia.
+     *
+     * @param g     Contexto del lienzo.
+     * @param ancho Ancho del lienzo.
+     * @param alto  Alto del lienzo.
+     */
+    protected abstract void pintar(GraphicsContext g, double ancho, double alto);
+
+    /**
+     * Texto del tooltip en un punto del lienzo.
+     *
+     * @param x Coordenada x.
+     * @param y Coordenada y.
+     * @return El texto, o null si el punto no está sobre ningún dato.
+     */
+    protected abstract String textoEn(double x, double y);
+
+    /**
+     * Dibuja la cuadrícula horizontal y las etiquetas del eje Y (0, ¼, ½, ¾ y el máximo).
+     *
+     * @param g         Contexto del lienzo.
+     * @param izquierda Borde izquierdo del área de datos.
+     * @param arriba    Borde superior del área de datos.
+     * @param ancho     Ancho del área de datos.
+     * @param alto      Alto del área de datos.
+     * @param maximo    Valor del borde superior.
+     */
+    protected static void pintarEjeY(GraphicsContext g, double izquierda, double arriba, double ancho,
+                                     double alto, double maximo) {
+        g.setLineWidth(1);
+        g.setTextAlign(TextAlignment.RIGHT);
+        g.setTextBaseline(VPos.CENTER);
+        for (int i = 0; i <= 4; i++) {
+            double y = Math.round(arriba + alto * (1 - i / 4.0)) + 0.5;
+            g.setStroke(COLOR_CUADRICULA);
+            g.strokeLine(izquierda, y, izquierda + ancho, y);
+            g.setFill(COLOR_TEXTO);
+            g.fillText(formatearEje(maximo * i / 4), izquierda - 6, y);
+        }
+    }
+
+    /**
+     * Valor máximo de una escala con un margen del 10 % (1 si todo es 0).
+     *
+     * @param valores Valores a representar.
+     * @param n       Número de valores usados.
+     * @return El máximo del eje.
+     */
+    protected static double maximoEscala(double[] valores, int n) {
+        double maximo = 0;
+        for (int i = 0; i < n; i++) maximo = Math.max(maximo, valores[i]);
+        return (maximo > 0) ? maximo * 1.1 : 1;
+    }
+
+    private static String formatearEje(double valor) {
+        if (valor >= 1000) return String.format("%.1fk", valor / 1000);
+        return (valor >= 10 || valor == 0) ? String.format("%.0f", valor) : String.format("%.1f", valor);
+    }
+}
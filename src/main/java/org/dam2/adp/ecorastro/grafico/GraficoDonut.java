@@ -0,0 +1,147 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.ArcType;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.text.TextAlignment;
+
+import java.util.List;
+
+/**
+ * Gráfico de anillo (donut) sobre un lienzo, con la leyenda a la derecha.
+ * <p>
+ * Al cambiar un valor cambian los ángulos de todos los sectores, así que
+ * {@link #actualizarValor(int, double)} repinta el anillo pero no la leyenda.
+ * Los sectores empiezan arriba y avanzan en el sentido de las agujas del reloj.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class GraficoDonut extends GraficoCanvas {
+
+    /** Grosor del anillo respecto al radio. */
+    static final double GROSOR = 0.45;
+
+    private static final double MARGEN = 10;
+    private static final double ANCHO_LEYENDA = 140;
+    private static final double ALTO_LINEA_LEYENDA = 18;
+
+    private String[] etiquetas = new String[0];
+    private double[] valores = new double[0];
+    private Color[] colores = new Color[0];
+    private double total;
+
+    /**
+     * Sustituye los sectores.
+     *
+     * @param etiquetas Etiqueta de cada sector.
+     * @param valores   Valor de cada sector, en kg CO₂ (los negativos cuentan como 0).
+     * @param colores   Color de cada sector.
+     * @throws IllegalArgumentException Si los tamaños no coinciden.
+     */
+    public void setDatos(List<String> etiquetas, double[] valores, List<Color> colores) {
+        if (etiquetas.size() != valores.length || colores.size() != valores.length) {
+            throw new IllegalArgumentException("Etiquetas, valores y colores deben tener el mismo tamaño");
+        }
+        this.etiquetas = etiquetas.toArray(new String[0]);
+        this.valores = valores.clone();
+        this.colores = colores.toArray(new Color[0]);
+        this.total = sumar(this.valores);
+        invalidarTodo();
+    }
+
+    /**
+     * Cambia el valor de un sector en el sitio.
+     *
+     * @param indice Posición del sector.
+     * @param valor  Valor nuevo.
+     */
+    public void actualizarValor(int indice, double valor) {
+        valores[indice] = valor;
+        total = sumar(valores);
+        double lado = lado(getWidth(), getHeight());
+        invalidar(MARGEN - 1, MARGEN - 1, lado + 2, lado + 2);
+    }
+
+    @Override
+    protected void pintar(GraphicsContext g, double ancho, double alto) {
+        double lado = lado(ancho, alto);
+        if (lado <= 0) return;
+
+        // El anillo es un arco trazado con el grosor del anillo: el hueco queda transparente
+        double r = lado / 2 * (1 - GROSOR / 2);
+        double cx = MARGEN + lado / 2;
+        double cy = MARGEN + lado / 2;
+        g.setLineWidth(lado / 2 * GROSOR);
+        g.setLineCap(StrokeLineCap.BUTT);
+        if (total <= 0) {
+            g.setStroke(COLOR_CUADRICULA);
+            g.strokeOval(cx - r, cy - r, 2 * r, 2 * r);
+        } else {
+            double inicio = 90;
+            for (int i = 0; i < valores.length; i++) {
+                double barrido = 360 * Math.max(0, valores[i]) / total;
+                g.setStroke(colores[i]);
+                g.strokeArc(cx - r, cy - r, 2 * r, 2 * r, inicio, -barrido, ArcType.OPEN);
+                inicio -= barrido;
+            }
+        }
+
+        // Leyenda
+        double x = MARGEN * 2 + lado;
+        double y = MARGEN + Math.max(0, (lado - valores.length * ALTO_LINEA_LEYENDA) / 2);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.setTextBaseline(VPos.CENTER);
+        for (int i = 0; i < valores.length; i++) {
+            double fila = y + i * ALTO_LINEA_LEYENDA;
+            g.setFill(colores[i]);
+            g.fillRoundRect(x, fila + 4, 10, 10, 3, 3);
+            g.setFill(COLOR_TEXTO);
+            g.fillText(etiquetas[i], x + 16, fila + 9);
+        }
+    }
+
+    @Override
+    protected String textoEn(double px, double py) {
+        double lado = lado(getWidth(), getHeight());
+        int i = indiceEn(px - MARGEN - lado / 2, py - MARGEN - lado / 2, lado / 2, valores, total);
+        if (i < 0) return null;
+        return String.format("%s: %.2f kg CO₂ (%.1f %%)", etiquetas[i], valores[i], valores[i] / total * 100);
+    }
+
+    /**
+     * Sector bajo un punto relativo al centro del anillo.
+     *
+     * @param dx      Desplazamiento horizontal desde el centro.
+     * @param dy      Desplazamiento vertical desde el centro (hacia abajo).
+     * @param radio   Radio exterior.
+     * @param valores Valores de los sectores.
+     * @param total   Suma de los valores positivos.
+     * @return El índice del sector, o -1 si el punto cae fuera del anillo.
+     */
+    static int indiceEn(double dx, double dy, double radio, double[] valores, double total) {
+        double distancia = Math.hypot(dx, dy);
+        if (total <= 0 || distancia > radio || distancia < radio * (1 - GROSOR)) return -1;
+        // Ángulo desde las 12 en punto, en el sentido de las agujas del reloj
+        double angulo = Math.toDegrees(Math.atan2(dx, -dy));
+        if (angulo < 0) angulo += 360;
+        double acumulado = 0;
+        for (int i = 0; i < valores.length; i++) {
+            acumulado += 360 * Math.max(0, valores[i]) / total;
+            if (angulo < acumulado) return i;
+        }
+        return valores.length - 1;
+    }
+
+    private static double lado(double ancho, double alto) {
+        return Math.min(ancho - ANCHO_LEYENDA - MARGEN * 3, alto - MARGEN * 2);
+    }
+
+    private static double sumar(double[] valores) {
+        double suma = 0;
+        for (double v : valores) suma += Math.max(0, v);
+        return suma;
+    }
+}
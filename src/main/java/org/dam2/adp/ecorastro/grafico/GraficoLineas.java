@@ -0,0 +1,163 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.util.List;
+
+/**
+ * Gráfico de líneas sobre un lienzo, pensado para series de cientos de puntos.
+ * <p>
+ * Los datos se guardan en arrays y se reutilizan: {@link #setDatos(List, double[])} repinta todo y
+ * {@link #actualizarValor(int, double)} solo la franja entre los vecinos del punto, salvo que el valor
+ * nuevo se salga de la escala. Los símbolos de los puntos solo se dibujan si la serie es corta.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class GraficoLineas extends GraficoCanvas {
+
+    /** Máximo de puntos con símbolo; por encima solo tapan la línea. */
+    public static final int MAX_SIMBOLOS = 60;
+
+    static final double MARGEN_IZQUIERDO = 48;
+    static final double MARGEN_DERECHO = 14;
+    static final double MARGEN_SUPERIOR = 10;
+    static final double MARGEN_INFERIOR = 24;
+
+    /** Separación mínima entre etiquetas del eje X. */
+    private static final double SEPARACION_ETIQUETAS = 70;
+    private static final double RADIO_SIMBOLO = 3.5;
+
+    private String[] etiquetas = new String[0];
+    private double[] valores = new double[0];
+    private double maximo = 1;
+    private Color color = Color.web("#E67E22");
+
+    /**
+     * Sustituye la serie.
+     *
+     * @param etiquetas Etiqueta de cada punto (eje X y tooltip).
+     * @param valores   Valor de cada punto, en kg CO₂.
+     * @throws IllegalArgumentException Si los tamaños no coinciden.
+     */
+    public void setDatos(List<String> etiquetas, double[] valores) {
+        if (etiquetas.size() != valores.length) {
+            throw new IllegalArgumentException("Hay " + etiquetas.size() + " etiquetas para " + valores.length + " valores");
+        }
+        this.etiquetas = etiquetas.toArray(new String[0]);
+        this.valores = valores.clone();
+        this.maximo = maximoEscala(this.valores, this.valores.length);
+        invalidarTodo();
+    }
+
+    /**
+     * Cambia el valor de un punto en el sitio.
+     *
+     * @param indice Posición del punto.
+     * @param valor  Valor nuevo.
+     */
+    public void actualizarValor(int indice, double valor) {
+        valores[indice] = valor;
+        if (valor > maximo) {
+            maximo = maximoEscala(valores, valores.length);
+            invalidarTodo();
+            return;
+        }
+        // Cambian los dos segmentos que tocan el punto: de su vecino izquierdo al derecho
+        double desde = x(Math.max(0, indice - 1)) - RADIO_SIMBOLO - 1;
+        double hasta = x(Math.min(valores.length - 1, indice + 1)) + RADIO_SIMBOLO + 1;
+        invalidar(desde, 0, hasta - desde, getHeight() - MARGEN_INFERIOR + 1);
+    }
+
+    /**
+     * Número de puntos de la serie.
+     *
+     * @return Puntos.
+     */
+    public int getNumPuntos() {
+        return valores.length;
+    }
+
+    /**
+     * Cambia el color de la línea.
+     *
+     * @param color Color nuevo.
+     */
+    public void setColor(Color color) {
+        this.color = color;
+        invalidarTodo();
+    }
+
+    @Override
+    protected void pintar(GraphicsContext g, double ancho, double alto) {
+        double anchoDatos = ancho - MARGEN_IZQUIERDO - MARGEN_DERECHO;
+        double altoDatos = alto - MARGEN_SUPERIOR - MARGEN_INFERIOR;
+        if (anchoDatos <= 0 || altoDatos <= 0) return;
+        pintarEjeY(g, MARGEN_IZQUIERDO, MARGEN_SUPERIOR, anchoDatos, altoDatos, maximo);
+
+        int n = valores.length;
+        if (n == 0) return;
+
+        g.setStroke(color);
+        g.setLineWidth(2);
+        g.beginPath();
+        g.moveTo(x(0), y(valores[0]));
+        for (int i = 1; i < n; i++) g.lineTo(x(i), y(valores[i]));
+        g.stroke();
+
+        if (n <= MAX_SIMBOLOS) {
+            g.setFill(Color.WHITE);
+            for (int i = 0; i < n; i++) {
+                g.fillOval(x(i) - RADIO_SIMBOLO, y(valores[i]) - RADIO_SIMBOLO, 2 * RADIO_SIMBOLO, 2 * RADIO_SIMBOLO);
+                g.strokeOval(x(i) - RADIO_SIMBOLO, y(valores[i]) - RADIO_SIMBOLO, 2 * RADIO_SIMBOLO, 2 * RADIO_SIMBOLO);
+            }
+        }
+
+        // Etiquetas del eje X espaciadas para que no se solapen
+        g.setFill(COLOR_TEXTO);
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.TOP);
+        int salto = Math.max(1, (int) Math.ceil(n / Math.max(1, anchoDatos / SEPARACION_ETIQUETAS)));
+        for (int i = 0; i < n; i += salto) {
+            g.fillText(etiquetas[i], x(i), alto - MARGEN_INFERIOR + 6);
+        }
+    }
+
+    @Override
+    protected String textoEn(double px, double py) {
+        int i = indiceEn(px, getWidth() - MARGEN_IZQUIERDO - MARGEN_DERECHO, valores.length);
+        if (i < 0 || py < MARGEN_SUPERIOR || py > getHeight() - MARGEN_INFERIOR) return null;
+        return String.format("%s: %.2f kg CO₂", etiquetas[i], valores[i]);
+    }
+
+    /**
+     * Punto más cercano en horizontal a una coordenada.
+     *
+     * @param px         Coordenada x en el lienzo.
+     * @param anchoDatos Ancho del área de datos.
+     * @param n          Número de puntos.
+     * @return El índice, o -1 si no hay puntos o la coordenada queda fuera del área de datos.
+     */
+    static int indiceEn(double px, double anchoDatos, int n) {
+        if (n == 0 || anchoDatos <= 0) return -1;
+        double relativa = px - MARGEN_IZQUIERDO;
+        if (relativa < -RADIO_SIMBOLO || relativa > anchoDatos + RADIO_SIMBOLO) return -1;
+        if (n == 1) return 0;
+        int i = (int) Math.round(relativa / (anchoDatos / (n - 1)));
+        return Math.max(0, Math.min(n - 1, i));
+    }
+
+    private double x(int i) {
+        double anchoDatos = getWidth() - MARGEN_IZQUIERDO - MARGEN_DERECHO;
+        int n = valores.length;
+        return MARGEN_IZQUIERDO + ((n == 1) ? anchoDatos / 2 : anchoDatos * i / (n - 1));
+    }
+
+    private double y(double valor) {
+        double altoDatos = getHeight() - MARGEN_SUPERIOR - MARGEN_INFERIOR;
+        return MARGEN_SUPERIOR + altoDatos * (1 - valor / maximo);
+    }
+}
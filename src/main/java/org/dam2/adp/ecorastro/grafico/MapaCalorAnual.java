@@ -0,0 +1,154 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+
+import java.time.LocalDate;
+import java.time.format.TextStyle;
+
+/**
+ * Mapa de calor de un año (una celda por día, una columna por semana) dibujado sobre un {@link Canvas}.
+ * <p>
+ * Sustituye a 365 nodos de la escena por un único lienzo que se reutiliza al cambiar de año: cada
+ * {@link #dibujar(int, double[])} borra y repinta las celdas. El color de cada día depende de su
+ * impacto relativo al día de más impacto del año, en {@value #NIVELES} niveles.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public final class MapaCalorAnual {
+
+    /** Niveles de color de los días con huellas. */
+    public static final int NIVELES = 4;
+
+    /** Lado de una celda y separación entre celdas, en píxeles. */
+    private static final double CELDA = 12;
+    private static final double HUECO = 2;
+    private static final double PASO = CELDA + HUECO;
+
+    /** Márgenes para las iniciales de los días y los nombres de los meses. */
+    private static final double MARGEN_IZQUIERDO = 26;
+    private static final double MARGEN_SUPERIOR = 16;
+
+    /** Ancho y alto que necesita el lienzo (53 semanas completas o parciales, 7 días). */
+    public static final double ANCHO = MARGEN_IZQUIERDO + 54 * PASO;
+    public static final double ALTO = MARGEN_SUPERIOR + 7 * PASO;
+
+    private static final Color SIN_HUELLAS = Color.web("#EDEDE9");
+    private static final Color[] COLORES = {
+            Color.web("#CCD5AE"), Color.web("#DDA15E"), Color.web("#BC6C25"), Color.web("#BC4749")
+    };
+    private static final Color TEXTO = Color.web("#7F8C8D");
+    private static final String[] INICIALES_DIA = {"L", "", "X", "", "V", "", "D"};
+
+    private final Canvas canvas;
+
+    /** Año dibujado, para el hit-testing. */
+    private int anio;
+
+    /**
+     * Crea el mapa sobre un lienzo y le da el tamaño necesario.
+     *
+     * @param canvas Lienzo donde dibujar.
+     */
+    public MapaCalorAnual(Canvas canvas) {
+        this.canvas = canvas;
+        canvas.setWidth(ANCHO);
+        canvas.setHeight(ALTO);
+    }
+
+    /**
+     * Repinta el mapa con el impacto diario de un año.
+     *
+     * @param anio      Año a dibujar.
+     * @param impactos  Impacto de cada día del año (posición 0 = 1 de enero), en kg CO₂.
+     */
+    public void dibujar(int anio, double[] impactos) {
+        this.anio = anio;
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+
+        double maximo = 0;
+        for (double v : impactos) maximo = Math.max(maximo, v);
+
+        LocalDate dia = LocalDate.of(anio, 1, 1);
+        for (double impacto : impactos) {
+            int nivel = nivel(impacto, maximo);
+            g.setFill(nivel == 0 ? SIN_HUELLAS : COLORES[nivel - 1]);
+            g.fillRoundRect(x(dia), y(dia), CELDA, CELDA, 3, 3);
+            dia = dia.plusDays(1);
+        }
+
+        g.setFill(TEXTO);
+        g.setFont(Font.font(10));
+        g.setTextBaseline(VPos.CENTER);
+        g.setTextAlign(TextAlignment.LEFT);
+        for (int fila = 0; fila < 7; fila++) {
+            g.fillText(INICIALES_DIA[fila], 4, MARGEN_SUPERIOR + fila * PASO + CELDA / 2);
+        }
+        for (int mes = 1; mes <= 12; mes++) {
+            LocalDate primero = LocalDate.of(anio, mes, 1);
+            g.fillText(primero.getMonth().getDisplayName(TextStyle.SHORT, FechaUtil.LOCALE), x(primero), MARGEN_SUPERIOR / 2);
+        }
+    }
+
+    /**
+     * Día dibujado en un punto del lienzo.
+     *
+     * @param px Coordenada x.
+     * @param py Coordenada y.
+     * @return El día de la celda, o null si el punto no cae en ninguna.
+     */
+    public LocalDate diaEn(double px, double py) {
+        return diaEn(anio, px, py);
+    }
+
+    /**
+     * Día de un año dibujado en un punto del lienzo.
+     *
+     * @param anio Año dibujado.
+     * @param px   Coordenada x.
+     * @param py   Coordenada y.
+     * @return El día de la celda, o null si el punto no cae en ninguna (incluidos los huecos).
+     */
+    static LocalDate diaEn(int anio, double px, double py) {
+        double cx = px - MARGEN_IZQUIERDO;
+        double cy = py - MARGEN_SUPERIOR;
+        if (cx < 0 || cy < 0 || cx % PASO >= CELDA || cy % PASO >= CELDA) return null;
+        int columna = (int) (cx / PASO);
+        int fila = (int) (cy / PASO);
+        if (fila > 6) return null;
+        LocalDate primero = LocalDate.of(anio, 1, 1);
+        long desplazamiento = columna * 7L + fila - (primero.getDayOfWeek().getValue() - 1);
+        if (desplazamiento < 0 || desplazamiento >= primero.lengthOfYear()) return null;
+        return primero.plusDays(desplazamiento);
+    }
+
+    /**
+     * Nivel de color de un día: 0 sin huellas, de 1 a {@value #NIVELES} según su parte del máximo.
+     *
+     * @param impacto Impacto del día.
+     * @param maximo  Impacto del día con más impacto del año.
+     * @return El nivel.
+     */
+    static int nivel(double impacto, double maximo) {
+        if (impacto <= 0 || maximo <= 0) return 0;
+        return (int) Math.max(1, Math.min(NIVELES, Math.ceil(impacto / maximo * NIVELES)));
+    }
+
+    /** Columna de un día: semanas (de lunes a domingo) desde la del 1 de enero. */
+    private static double x(LocalDate dia) {
+        LocalDate primero = dia.withDayOfYear(1);
+        int columna = (dia.getDayOfYear() - 1 + primero.getDayOfWeek().getValue() - 1) / 7;
+        return MARGEN_IZQUIERDO + columna * PASO;
+    }
+
+    private static double y(LocalDate dia) {
+        return MARGEN_SUPERIOR + (dia.getDayOfWeek().getValue() - 1) * PASO;
+    }
+}
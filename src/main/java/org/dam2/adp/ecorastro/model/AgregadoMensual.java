@@ -0,0 +1,70 @@
+package org.dam2.adp.ecorastro.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Impacto precalculado de un usuario en un mes y una categoría.
+ * <p>
+ * Mapea la tabla 'agregado_mensual' del esquema 'ecorastro_db'. La rellena por lotes
+ * {@link org.dam2.adp.ecorastro.service.RecalculoAgregados}, no la aplicación.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+@Entity
+@Table(name = "agregado_mensual", schema = "ecorastro_db")
+public class AgregadoMensual {
+
+    /** Clave primaria compuesta (Usuario + Mes + Categoría). */
+    @EmbeddedId
+    private AgregadoMensualId id;
+
+    /** Impacto total en kg de CO2. */
+    @Column(name = "impacto_kg", nullable = false)
+    private double impactoKg;
+
+    /** Número de huellas sumadas. */
+    @Column(name = "num_huellas", nullable = false)
+    private int numHuellas;
+
+    /** Momento en que se calculó. */
+    @Column(name = "calculado", nullable = false)
+    private Instant calculado;
+
+    public AgregadoMensualId getId() {
+        return id;
+    }
+
+    public void setId(AgregadoMensualId id) {
+        this.id = id;
+    }
+
+    public double getImpactoKg() {
+        return impactoKg;
+    }
+
+    public void setImpactoKg(double impactoKg) {
+        this.impactoKg = impactoKg;
+    }
+
+    public int getNumHuellas() {
+        return numHuellas;
+    }
+
+    public void setNumHuellas(int numHuellas) {
+        this.numHuellas = numHuellas;
+    }
+
+    public Instant getCalculado() {
+        return calculado;
+    }
+
+    public void setCalculado(Instant calculado) {
+        this.calculado = calculado;
+    }
+}
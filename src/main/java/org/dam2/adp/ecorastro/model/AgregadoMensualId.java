@@ -0,0 +1,69 @@
+package org.dam2.adp.ecorastro.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Clave primaria compuesta de {@link AgregadoMensual}: usuario, mes y categoría.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+@Embeddable
+public class AgregadoMensualId implements Serializable {
+    private static final long serialVersionUID = 4127713361944052195L;
+
+    /** ID del usuario. */
+    @Column(name = "id_usuario", nullable = false)
+    private Integer idUsuario;
+
+    /** Clave del mes (año * 100 + mes). */
+    @Column(name = "mes", nullable = false)
+    private Integer mes;
+
+    /** ID de la categoría. */
+    @Column(name = "id_categoria", nullable = false)
+    private Integer idCategoria;
+
+    public Integer getIdUsuario() {
+        return idUsuario;
+    }
+
+    public void setIdUsuario(Integer idUsuario) {
+        this.idUsuario = idUsuario;
+    }
+
+    public Integer getMes() {
+        return mes;
+    }
+
+    public void setMes(Integer mes) {
+        this.mes = mes;
+    }
+
+    public Integer getIdCategoria() {
+        return idCategoria;
+    }
+
+    public void setIdCategoria(Integer idCategoria) {
+        this.idCategoria = idCategoria;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AgregadoMensualId entity = (AgregadoMensualId) o;
+        return Objects.equals(this.idUsuario, entity.idUsuario) &&
+                Objects.equals(this.mes, entity.mes) &&
+                Objects.equals(this.idCategoria, entity.idCategoria);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(idUsuario, mes, idCategoria);
+    }
+}
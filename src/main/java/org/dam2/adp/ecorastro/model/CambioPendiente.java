@@ -0,0 +1,112 @@
+package org.dam2.adp.ecorastro.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Cambio sobre una huella hecho sin conexión que aún no se ha subido al servidor.
+ * <p>
+ * Solo existe en la BBDD embebida de la réplica. Guarda la versión y los datos de la huella
+ * tal como estaban antes del primer cambio local (la "base"), necesarios para fusionar
+ * con las ediciones que otro equipo haya hecho mientras tanto.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+@Entity
+@Table(name = "cambio_pendiente", schema = "ecorastro_db")
+public class CambioPendiente {
+
+    /** Tipo de cambio: edición de una huella existente. */
+    public static final String ACTUALIZACION = "ACTUALIZACION";
+    /** Tipo de cambio: borrado de una huella. */
+    public static final String BORRADO = "BORRADO";
+
+    /** Id de la huella afectada (un único cambio pendiente por huella). */
+    @Id
+    @Column(name = "id_registro", nullable = false)
+    private Integer idRegistro;
+
+    /** {@link #ACTUALIZACION} o {@link #BORRADO}. */
+    @Column(name = "tipo", nullable = false, length = 20)
+    private String tipo;
+
+    /** Versión del servidor sobre la que se hizo el cambio. */
+    @Column(name = "version_base", nullable = false)
+    private long versionBase;
+
+    /** Valor de la huella antes del cambio. */
+    @Column(name = "valor_base", nullable = false)
+    private double valorBase;
+
+    /** Fecha de la huella antes del cambio. */
+    @Column(name = "fecha_base")
+    private Instant fechaBase;
+
+    /** Actividad de la huella antes del cambio. */
+    @Column(name = "id_actividad_base", nullable = false)
+    private Integer idActividadBase;
+
+    /** Momento del último cambio local, para desempatar conflictos. */
+    @Column(name = "modificado", nullable = false)
+    private Instant modificado;
+
+    /**
+     * Constructor vacío requerido por JPA.
+     */
+    public CambioPendiente() {
+    }
+
+    /**
+     * Crea un cambio pendiente tomando como base el estado de la huella en la réplica.
+     *
+     * @param tipo Tipo de cambio.
+     * @param base Huella tal como estaba antes del cambio.
+     */
+    public CambioPendiente(String tipo, Huella base) {
+        this.idRegistro = base.getId();
+        this.tipo = tipo;
+        this.versionBase = base.getVersion();
+        this.valorBase = base.getValor();
+        this.fechaBase = base.getFecha();
+        this.idActividadBase = base.getIdActividad().getId();
+        this.modificado = Instant.now();
+    }
+
+    public Integer getIdRegistro() {
+        return idRegistro;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    public void setTipo(String tipo) {
+        this.tipo = tipo;
+    }
+
+    public long getVersionBase() {
+        return versionBase;
+    }
+
+    public double getValorBase() {
+        return valorBase;
+    }
+
+    public Instant getFechaBase() {
+        return fechaBase;
+    }
+
+    public Integer getIdActividadBase() {
+        return idActividadBase;
+    }
+
+    public Instant getModificado() {
+        return modificado;
+    }
+
+    public void setModificado(Instant modificado) {
+        this.modificado = modificado;
+    }
+}
@@ -0,0 +1,61 @@
+package org.dam2.adp.ecorastro.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Estado de sincronización de la réplica local para un usuario.
+ * <p>
+ * Solo existe en la BBDD embebida de la réplica (no se registra en {@code hibernate.cfg.xml}).
+ * Su presencia indica que los datos del usuario ya se han descargado al menos una vez.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+@Entity
+@Table(name = "estado_replica", schema = "ecorastro_db")
+public class EstadoReplica {
+
+    /** Usuario cuyos datos contiene la réplica. */
+    @Id
+    @Column(name = "id_usuario", nullable = false)
+    private Integer idUsuario;
+
+    /** Momento (según el reloj local) en que empezó la última sincronización completada. */
+    @Column(name = "ultima_sincronizacion", nullable = false)
+    private Instant ultimaSincronizacion;
+
+    /**
+     * Constructor vacío requerido por JPA.
+     */
+    public EstadoReplica() {
+    }
+
+    /**
+     * Crea el estado de un usuario.
+     *
+     * @param idUsuario            Id del usuario.
+     * @param ultimaSincronizacion Momento de la última sincronización.
+     */
+    public EstadoReplica(Integer idUsuario, Instant ultimaSincronizacion) {
+        this.idUsuario = idUsuario;
+        this.ultimaSincronizacion = ultimaSincronizacion;
+    }
+
+    public Integer getIdUsuario() {
+        return idUsuario;
+    }
+
+    public void setIdUsuario(Integer idUsuario) {
+        this.idUsuario = idUsuario;
+    }
+
+    public Instant getUltimaSincronizacion() {
+        return ultimaSincronizacion;
+    }
+
+    public void setUltimaSincronizacion(Instant ultimaSincronizacion) {
+        this.ultimaSincronizacion = ultimaSincronizacion;
+    }
+}
@@ -0,0 +1,115 @@
+package org.dam2.adp.ecorastro.model;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDate;
+
+/**
+ * Versión de un factor de emisión con su periodo de validez.
+ * <p>
+ * Mapea la tabla 'factor_emision' del esquema 'ecorastro_db'. Cada categoría puede tener varias
+ * versiones que no se solapan; el impacto de una huella se calcula con la versión vigente en su fecha.
+ * Los días que no cubre ninguna versión usan {@link Categoria#getFactorEmision()}, que guarda el factor actual.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+@Entity
+@Table(name = "factor_emision", schema = "ecorastro_db",
+        indexes = @Index(name = "idx_factor_categoria_desde", columnList = "id_categoria, valido_desde"))
+public class FactorEmision {
+
+    /** Identificador único de la versión. */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id_factor", nullable = false)
+    private Integer id;
+
+    /** Categoría a la que se aplica el factor. */
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "id_categoria", nullable = false)
+    private Categoria idCategoria;
+
+    /** Primer día de validez (incluido). */
+    @Column(name = "valido_desde", nullable = false)
+    private LocalDate validoDesde;
+
+    /** Último día de validez (incluido), o null si sigue vigente. */
+    @Column(name = "valido_hasta")
+    private LocalDate validoHasta;
+
+    /** Factor de emisión de CO2 por unidad de medida. */
+    @Column(name = "factor", nullable = false)
+    private double factor;
+
+    /**
+     * Constructor vacío requerido por JPA.
+     */
+    public FactorEmision() {
+    }
+
+    /**
+     * Crea una versión de factor.
+     *
+     * @param idCategoria Categoría del factor.
+     * @param validoDesde Primer día de validez.
+     * @param validoHasta Último día de validez, o null si no tiene fin.
+     * @param factor      Valor del factor.
+     */
+    public FactorEmision(Categoria idCategoria, LocalDate validoDesde, LocalDate validoHasta, double factor) {
+        this.idCategoria = idCategoria;
+        this.validoDesde = validoDesde;
+        this.validoHasta = validoHasta;
+        this.factor = factor;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    public Categoria getIdCategoria() {
+        return idCategoria;
+    }
+
+    public void setIdCategoria(Categoria idCategoria) {
+        this.idCategoria = idCategoria;
+    }
+
+    public LocalDate getValidoDesde() {
+        return validoDesde;
+    }
+
+    public void setValidoDesde(LocalDate validoDesde) {
+        this.validoDesde = validoDesde;
+    }
+
+    public LocalDate getValidoHasta() {
+        return validoHasta;
+    }
+
+    public void setValidoHasta(LocalDate validoHasta) {
+        this.validoHasta = validoHasta;
+    }
+
+    public double getFactor() {
+        return factor;
+    }
+
+    public void setFactor(double factor) {
+        this.factor = factor;
+    }
+
+    @Override
+    public String toString() {
+        return "FactorEmision{" +
+                "id=" + id +
+                ", validoDesde=" + validoDesde +
+                ", validoHasta=" + validoHasta +
+                ", factor=" + factor +
+                '}';
+    }
+}
@@ -1,8 +1,10 @@
 package org.dam2.adp.ecorastro.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.Instant;
 
@@ -11,6 +13,7 @@ import java.time.Instant;
  * <p>
  * Mapea la tabla 'habito' del esquema 'ecorastro_db'.
  * Utiliza una clave compuesta {@link HabitoId} formada por el ID del usuario y el ID de la actividad.
+ * La columna {@code modificado} permite a la réplica local detectar los cambios.
  *
  * @author Antonio Delgado Portero
  * @version 1.0
@@ -48,6 +51,12 @@ public class Habito {
     @Column(name = "ultima_fecha")
     private Instant ultimaFecha;
 
+    /** Momento de la última modificación, usado para la sincronización incremental. */
+    @UpdateTimestamp
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    @Column(name = "modificado")
+    private Instant modificado;
+
     /**
      * Constructor vacío requerido por JPA.
      */
@@ -122,4 +131,12 @@ public class Habito {
     public void setUltimaFecha(Instant ultimaFecha) {
         this.ultimaFecha = ultimaFecha;
     }
+
+    public Instant getModificado() {
+        return modificado;
+    }
+
+    public void setModificado(Instant modificado) {
+        this.modificado = modificado;
+    }
 }
\ No newline at end of file
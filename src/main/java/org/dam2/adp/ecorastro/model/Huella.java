@@ -1,9 +1,11 @@
 package org.dam2.adp.ecorastro.model;
 
 import jakarta.persistence.*;
+import org.dam2.adp.ecorastro.util.FechaUtil;
 import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import java.time.Instant;
 
@@ -13,12 +15,26 @@ import java.time.Instant;
  * Mapea la tabla 'huella' del esquema 'ecorastro_db'.
  * Almacena la información de una actividad realizada por un usuario en una fecha concreta,
  * incluyendo el valor consumido y la unidad de medida.
+ * <p>
+ * Las columnas {@code version} y {@code modificado} permiten a la réplica local descargar solo
+ * los cambios y detectar ediciones concurrentes (bloqueo optimista).
+ * <p>
+ * Las columnas {@code dia} y {@code mes} guardan el día y el mes de {@code fecha} como enteros
+ * (ver {@link FechaUtil}); se calculan al asignar la fecha y permiten filtrar y agrupar por rangos
+ * con el índice {@code (id_usuario, dia)} sin aplicar funciones de fecha a cada fila.
+ * <p>
+ * {@code impacto_kg} guarda el impacto (valor * factor de emisión) calculado al escribir la huella,
+ * junto con el factor usado, para que los totales se sumen sin unir con actividad y categoría.
+ * <p>
+ * {@code id_categoria} copia la categoría de la actividad al escribir la huella, para que los
+ * agregados por categoría agrupen directamente sobre la huella sin pasar por actividad.
  *
  * @author Antonio Delgado Portero
  * @version 1.0
  */
 @Entity
-@Table(name = "huella", schema = "ecorastro_db")
+@Table(name = "huella", schema = "ecorastro_db",
+        indexes = @Index(name = "idx_huella_usuario_dia", columnList = "id_usuario, dia"))
 public class Huella {
 
     /** Identificador único del registro de huella. */
@@ -38,6 +54,11 @@ public class Huella {
     @JoinColumn(name = "id_actividad", nullable = false)
     private Actividad idActividad;
 
+    /** Categoría de la actividad. Null solo en filas antiguas sin rellenar. */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "id_categoria")
+    private Categoria idCategoria;
+
     /** Valor numérico del consumo o actividad (ej: 100). */
     @Column(name = "valor", nullable = false) // Removed precision and scale for double
     private double valor;
@@ -51,6 +72,34 @@ public class Huella {
     @Column(name = "fecha")
     private Instant fecha;
 
+    /** Factor de emisión (kg CO2 por unidad) con el que se calculó el impacto. */
+    @Column(name = "factor_emision")
+    private Double factorEmision;
+
+    /** Impacto de la huella en kg de CO2. Null solo en filas antiguas sin rellenar. */
+    @Column(name = "impacto_kg")
+    private Double impactoKg;
+
+    /** Día de la huella (días desde epoch en {@link FechaUtil#ZONA}). Null solo en filas antiguas sin rellenar. */
+    @Column(name = "dia")
+    private Integer dia;
+
+    /** Mes de la huella (año * 100 + mes). */
+    @Column(name = "mes")
+    private Integer mes;
+
+    /** Versión del registro; Hibernate la incrementa en cada actualización y rechaza escrituras obsoletas. */
+    @Version
+    @ColumnDefault("0")
+    @Column(name = "version", nullable = false)
+    private long version;
+
+    /** Momento de la última modificación, usado para la sincronización incremental. */
+    @UpdateTimestamp
+    @ColumnDefault("CURRENT_TIMESTAMP")
+    @Column(name = "modificado")
+    private Instant modificado;
+
     /**
      * Constructor vacío requerido por JPA/Hibernate.
      */
@@ -71,7 +120,7 @@ public class Huella {
         this.idActividad = idActividad;
         this.valor = valor;
         this.unidad = unidad;
-        this.fecha = fecha;
+        setFecha(fecha);
     }
 
     public Integer getId() {
@@ -98,12 +147,28 @@ public class Huella {
         this.idActividad = idActividad;
     }
 
+    public Categoria getIdCategoria() {
+        return idCategoria;
+    }
+
+    public void setIdCategoria(Categoria idCategoria) {
+        this.idCategoria = idCategoria;
+    }
+
     public double getValor() {
         return valor;
     }
 
+    /**
+     * Asigna el valor y, si ya se conoce el factor de emisión, recalcula el impacto.
+     *
+     * @param valor Valor del consumo.
+     */
     public void setValor(double valor) {
         this.valor = valor;
+        if (factorEmision != null) {
+            this.impactoKg = valor * factorEmision;
+        }
     }
 
     public String getUnidad() {
@@ -118,8 +183,57 @@ public class Huella {
         return fecha;
     }
 
+    /**
+     * Asigna la fecha y recalcula las claves de día y mes.
+     *
+     * @param fecha Fecha de la huella.
+     */
     public void setFecha(Instant fecha) {
         this.fecha = fecha;
+        this.dia = (fecha != null) ? FechaUtil.claveDia(fecha) : null;
+        this.mes = (fecha != null) ? FechaUtil.claveMes(fecha) : null;
+    }
+
+    public Double getFactorEmision() {
+        return factorEmision;
+    }
+
+    public Double getImpactoKg() {
+        return impactoKg;
+    }
+
+    /**
+     * Fija el factor de emisión y recalcula el impacto con el valor actual.
+     *
+     * @param factorEmision Factor de la categoría de la actividad.
+     */
+    public void aplicarFactorEmision(double factorEmision) {
+        this.factorEmision = factorEmision;
+        this.impactoKg = valor * factorEmision;
+    }
+
+    public Integer getDia() {
+        return dia;
+    }
+
+    public Integer getMes() {
+        return mes;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Instant getModificado() {
+        return modificado;
+    }
+
+    public void setModificado(Instant modificado) {
+        this.modificado = modificado;
     }
 
     @Override
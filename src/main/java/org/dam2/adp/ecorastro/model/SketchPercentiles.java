@@ -0,0 +1,69 @@
+package org.dam2.adp.ecorastro.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Resúmenes t-digest de los totales por usuario de un periodo, global y por categoría.
+ * <p>
+ * Mapea la tabla 'sketch_percentiles' del esquema 'ecorastro_db'. El periodo es la clave de mes
+ * ({@code yyyyMM}) o 0 para todo el historial; los datos los serializa
+ * {@link org.dam2.adp.ecorastro.service.PercentilesComunidad}.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+@Entity
+@Table(name = "sketch_percentiles", schema = "ecorastro_db")
+public class SketchPercentiles {
+
+    /** Clave de mes, o 0 para el historial completo. */
+    @Id
+    @Column(name = "periodo", nullable = false)
+    private Integer periodo;
+
+    /** Resúmenes serializados. */
+    @Column(name = "datos", nullable = false, length = 1_048_576)
+    private byte[] datos;
+
+    /** Momento en que se calcularon. */
+    @Column(name = "calculado", nullable = false)
+    private Instant calculado;
+
+    public SketchPercentiles() {
+    }
+
+    public SketchPercentiles(Integer periodo, byte[] datos, Instant calculado) {
+        this.periodo = periodo;
+        this.datos = datos;
+        this.calculado = calculado;
+    }
+
+    public Integer getPeriodo() {
+        return periodo;
+    }
+
+    public void setPeriodo(Integer periodo) {
+        this.periodo = periodo;
+    }
+
+    public byte[] getDatos() {
+        return datos;
+    }
+
+    public void setDatos(byte[] datos) {
+        this.datos = datos;
+    }
+
+    public Instant getCalculado() {
+        return calculado;
+    }
+
+    public void setCalculado(Instant calculado) {
+        this.calculado = calculado;
+    }
+}
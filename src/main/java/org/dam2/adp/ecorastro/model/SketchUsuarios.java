@@ -0,0 +1,53 @@
+package org.dam2.adp.ecorastro.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Sketch HyperLogLog de los usuarios con alguna huella en un periodo.
+ * <p>
+ * Mapea la tabla 'sketch_usuarios' del esquema 'ecorastro_db'. El periodo es {@code D<clave de día>}
+ * o {@code M<clave de mes>}; los registros son los de {@link org.dam2.adp.ecorastro.util.HyperLogLog}.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+@Entity
+@Table(name = "sketch_usuarios", schema = "ecorastro_db")
+public class SketchUsuarios {
+
+    /** Periodo ("D20089", "M202401"...). */
+    @Id
+    @Column(name = "periodo", nullable = false, length = 12)
+    private String periodo;
+
+    /** Registros del sketch. */
+    @Column(name = "registros", nullable = false, length = 4096)
+    private byte[] registros;
+
+    public SketchUsuarios() {
+    }
+
+    public SketchUsuarios(String periodo, byte[] registros) {
+        this.periodo = periodo;
+        this.registros = registros;
+    }
+
+    public String getPeriodo() {
+        return periodo;
+    }
+
+    public void setPeriodo(String periodo) {
+        this.periodo = periodo;
+    }
+
+    public byte[] getRegistros() {
+        return registros;
+    }
+
+    public void setRegistros(byte[] registros) {
+        this.registros = registros;
+    }
+}
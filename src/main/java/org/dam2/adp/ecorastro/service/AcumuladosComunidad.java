@@ -0,0 +1,226 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Acumulados en memoria de toda la comunidad: impacto total, usuarios activos, total de cada
+ * usuario y media por categoría.
+ * <p>
+ * Se siembran con una única consulta agregada y después {@link HuellaService} les suma o resta
+ * cada alta, edición y borrado, así que las estadísticas de comunidad del panel se leen sin ir a
+ * la BBDD. Los totales usan {@link DoubleAdder}/{@link LongAdder} (repartidos entre celdas para que
+ * las escrituras concurrentes no compitan) y los datos por usuario un {@link ConcurrentHashMap}.
+ * <p>
+ * Los cambios hechos desde otros equipos o los recálculos de factores no pasan por aquí, así que
+ * cada {@code -Decorastro.comunidad.reconciliarMinutos} minutos (15 por defecto), y tras cada
+ * recálculo de factores, se vuelven a sembrar desde la BBDD para corregir la deriva.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class AcumuladosComunidad implements AutoCloseable {
+
+    private static final long PERIODO_MINUTOS = Long.getLong("ecorastro.comunidad.reconciliarMinutos", 15);
+
+    /** Huellas e impacto de un usuario. Solo se modifica dentro de {@code compute} de su entrada. */
+    private static final class AcumuladoUsuario {
+        volatile long huellas;
+        volatile double impacto;
+    }
+
+    /** Impacto de una categoría. */
+    private static final class AcumuladoCategoria {
+        final String nombre;
+        final DoubleAdder impacto = new DoubleAdder();
+        final LongAdder huellas = new LongAdder();
+
+        AcumuladoCategoria(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    /** Conjunto de acumulados; se sustituye entero en cada reconciliación. */
+    private static final class Estado {
+        final DoubleAdder total = new DoubleAdder();
+        final LongAdder activos = new LongAdder();
+        final ConcurrentHashMap<Integer, AcumuladoUsuario> usuarios = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Integer, AcumuladoCategoria> categorias = new ConcurrentHashMap<>();
+
+        void sumar(int idUsuario, int idCategoria, String nombreCategoria,
+                   double impacto, long huellasConImpacto, long huellas) {
+            total.add(impacto);
+            usuarios.compute(idUsuario, (id, acumulado) -> {
+                if (acumulado == null) acumulado = new AcumuladoUsuario();
+                boolean eraActivo = acumulado.huellas > 0;
+                acumulado.huellas += huellas;
+                acumulado.impacto += impacto;
+                boolean esActivo = acumulado.huellas > 0;
+                if (esActivo != eraActivo) activos.add(esActivo ? 1 : -1);
+                return esActivo ? acumulado : null;
+            });
+            AcumuladoCategoria categoria = categorias.computeIfAbsent(idCategoria, id -> new AcumuladoCategoria(nombreCategoria));
+            categoria.impacto.add(impacto);
+            categoria.huellas.add(huellasConImpacto);
+        }
+    }
+
+    private final HuellaDAO huellaDAO;
+    private final ScheduledExecutorService planificador;
+
+    /** Acumulados actuales, o null si aún no se han sembrado. */
+    private volatile Estado estado;
+
+    /**
+     * Crea los acumulados (vacíos hasta llamar a {@link #iniciar()} o {@link #reconciliar()}).
+     *
+     * @param huellaDAO DAO de huellas del servidor.
+     * @param eventBus  Bus de eventos; se escucha para reconciliar tras recalcular factores.
+     */
+    public AcumuladosComunidad(HuellaDAO huellaDAO, EventBus eventBus) {
+        this.huellaDAO = huellaDAO;
+        this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "ecorastro-comunidad");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        eventBus.suscribir(FactoresRecalculados.class, e -> {
+            if (!planificador.isShutdown()) planificador.execute(this::reconciliar);
+        });
+    }
+
+    /**
+     * Siembra los acumulados en segundo plano y programa la reconciliación periódica.
+     */
+    public void iniciar() {
+        planificador.scheduleWithFixedDelay(this::reconciliar, 0, PERIODO_MINUTOS, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Vuelve a calcular los acumulados desde la BBDD y sustituye los actuales.
+     * <p>
+     * Las escrituras que coincidan con la lectura pueden quedar contadas de más o de menos hasta
+     * la siguiente reconciliación.
+     *
+     * @return false si la BBDD no respondió (se conservan los acumulados anteriores).
+     */
+    public boolean reconciliar() {
+        try {
+            List<Object[]> filas = huellaDAO.getAcumuladosComunidad();
+            Estado nuevo = new Estado();
+            for (Object[] f : filas) {
+                nuevo.sumar((Integer) f[0], (Integer) f[1], (String) f[2],
+                        (f[3] != null) ? (Double) f[3] : 0.0, (Long) f[4], (Long) f[5]);
+            }
+            estado = nuevo;
+            return true;
+        } catch (Exception e) {
+            System.err.println("No se pudieron calcular los acumulados de la comunidad: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Indica si los acumulados ya se han sembrado.
+     *
+     * @return false mientras haya que consultar la BBDD.
+     */
+    public boolean isListo() {
+        return estado != null;
+    }
+
+    /**
+     * Suma una huella nueva.
+     *
+     * @param h       La huella.
+     * @param impacto Su impacto.
+     */
+    public void sumar(Huella h, double impacto) {
+        aplicar(h, impacto, 1);
+    }
+
+    /**
+     * Resta una huella borrada (o la versión anterior de una editada).
+     *
+     * @param h       La huella.
+     * @param impacto Su impacto.
+     */
+    public void restar(Huella h, double impacto) {
+        aplicar(h, -impacto, -1);
+    }
+
+    private void aplicar(Huella h, double impacto, int huellas) {
+        Estado actual = estado;
+        if (actual == null || h.getIdUsuario() == null || h.getIdActividad() == null) return;
+        Categoria categoria = h.getIdActividad().getIdCategoria();
+        if (categoria == null || categoria.getId() == null) return;
+        actual.sumar(h.getIdUsuario().getId(), categoria.getId(), categoria.getNombre(), impacto, huellas, huellas);
+    }
+
+    /**
+     * Impacto total de la comunidad.
+     *
+     * @return kg de CO2 (0 si aún no se han sembrado).
+     */
+    public double getTotal() {
+        Estado actual = estado;
+        return (actual != null) ? actual.total.sum() : 0.0;
+    }
+
+    /**
+     * Número de usuarios con alguna huella.
+     *
+     * @return Usuarios activos (0 si aún no se han sembrado).
+     */
+    public long getUsuariosActivos() {
+        Estado actual = estado;
+        return (actual != null) ? actual.activos.sum() : 0L;
+    }
+
+    /**
+     * Impacto total de un usuario.
+     *
+     * @param idUsuario Id del usuario.
+     * @return kg de CO2 (0 si no tiene huellas).
+     */
+    public double getTotalUsuario(int idUsuario) {
+        Estado actual = estado;
+        if (actual == null) return 0.0;
+        AcumuladoUsuario acumulado = actual.usuarios.get(idUsuario);
+        return (acumulado != null) ? acumulado.impacto : 0.0;
+    }
+
+    /**
+     * Impacto medio por huella de cada categoría.
+     *
+     * @return Nombre de la categoría → media (solo las que tienen huellas).
+     */
+    public Map<String, Double> getMediaPorCategoria() {
+        Map<String, Double> medias = new HashMap<>();
+        Estado actual = estado;
+        if (actual == null) return medias;
+        for (AcumuladoCategoria c : actual.categorias.values()) {
+            long huellas = c.huellas.sum();
+            if (huellas > 0) medias.put(c.nombre, c.impacto.sum() / huellas);
+        }
+        return medias;
+    }
+
+    @Override
+    public void close() {
+        planificador.shutdownNow();
+    }
+}
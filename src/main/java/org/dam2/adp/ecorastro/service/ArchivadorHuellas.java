@@ -0,0 +1,52 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+
+import java.time.YearMonth;
+
+/**
+ * Servicio que mueve las huellas antiguas de la BBDD al archivo local de segmentos mensuales.
+ * <p>
+ * Se archivan por meses completos las huellas anteriores al horizonte (los últimos N meses
+ * siempre se quedan en la BBDD). Las consultas de {@link HuellaDAO} siguen viéndolas a través
+ * del {@link org.dam2.adp.ecorastro.util.ArchivoHuellas} del DAO.
+ * <p>
+ * Solo vale para una BBDD con un único cliente: las huellas se borran de la BBDD compartida y pasan
+ * al archivo local de quien archiva, así que cualquier otro cliente dejaría de verlas. Por eso
+ * {@link org.dam2.adp.ecorastro.util.RegistroServicios} solo lo lanza si se declara expresamente.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class ArchivadorHuellas {
+
+    private final HuellaDAO huellaDAO;
+
+    /**
+     * Crea el archivador.
+     *
+     * @param huellaDAO DAO de huellas del servidor, con su archivo configurado.
+     */
+    public ArchivadorHuellas(HuellaDAO huellaDAO) {
+        this.huellaDAO = huellaDAO;
+    }
+
+    /**
+     * Archiva las huellas anteriores al horizonte.
+     *
+     * @param horizonteMeses Meses (además del actual) que se conservan en la BBDD.
+     * @return Número de huellas archivadas.
+     */
+    public int archivar(int horizonteMeses) {
+        if (huellaDAO.getArchivo() == null || horizonteMeses <= 0) {
+            return 0;
+        }
+        int diaCorte = FechaUtil.claveDia(YearMonth.now(FechaUtil.ZONA).minusMonths(horizonteMeses).atDay(1));
+        int archivadas = 0;
+        for (int mes : huellaDAO.getMesesArchivables(diaCorte)) {
+            archivadas += huellaDAO.archivarMes(mes, diaCorte);
+        }
+        return archivadas;
+    }
+}
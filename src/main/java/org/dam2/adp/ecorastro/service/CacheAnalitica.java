@@ -0,0 +1,188 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.util.ColumnasHuellas;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Caché analítica del historial del usuario de la sesión.
+ * <p>
+ * Guarda todas sus huellas en una {@link ColumnasHuellas} para responder totales, desgloses y
+ * evoluciones sin ir a la BBDD. Se carga una vez tras el inicio de sesión y se mantiene al día con
+ * los eventos de alta, edición y borrado; ante cambios que no puede aplicar uno a uno (sincronización,
+ * recálculo de factores, huellas sin id) descarta las columnas y las recarga en la siguiente consulta.
+ * <p>
+ * Solo guarda un usuario y como máximo {@code -Decorastro.analitica.maxHuellas} huellas
+ * (1.000.000 por defecto); por encima de ese límite las consultas van siempre a la BBDD.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class CacheAnalitica {
+
+    private static final int MAX_HUELLAS = Integer.getInteger("ecorastro.analitica.maxHuellas", 1_000_000);
+
+    /** Lee el historial completo de un usuario. */
+    private final IntFunction<List<Huella>> cargador;
+
+    /** Impacto de cada huella. */
+    private final ToDoubleFunction<Huella> impacto;
+
+    /** Usuario de la sesión, o null si no hay ninguno activado. */
+    private Integer idUsuario;
+
+    /** Columnas cargadas, o null si hay que (re)cargarlas. */
+    private ColumnasHuellas columnas;
+
+    /** Número de invalidaciones, para descartar cargas que se solapan con un cambio. */
+    private long generacion;
+
+    /**
+     * Crea la caché y la suscribe a los cambios de huellas.
+     *
+     * @param eventBus Bus de eventos.
+     * @param cargador Lector del historial completo de un usuario.
+     * @param impacto  Cálculo del impacto de una huella.
+     */
+    public CacheAnalitica(EventBus eventBus, IntFunction<List<Huella>> cargador, ToDoubleFunction<Huella> impacto) {
+        this.cargador = cargador;
+        this.impacto = impacto;
+
+        eventBus.suscribir(HuellaCreada.class, e -> aplicar(e.huella(), false, true));
+        eventBus.suscribir(HuellaActualizada.class, e -> aplicar(e.huella(), true, true));
+        eventBus.suscribir(HuellaEliminada.class, e -> aplicar(e.huella(), true, false));
+        eventBus.suscribir(ReplicaSincronizada.class, e -> invalidar());
+        eventBus.suscribir(FactoresRecalculados.class, e -> invalidar());
+    }
+
+    /**
+     * Activa la caché para un usuario y carga su historial.
+     *
+     * @param idUsuario Id del usuario de la sesión.
+     */
+    public void activar(int idUsuario) {
+        synchronized (this) {
+            if (this.idUsuario == null || this.idUsuario != idUsuario) {
+                this.idUsuario = idUsuario;
+                invalidar();
+            }
+        }
+        cargarSiHaceFalta(idUsuario);
+    }
+
+    /**
+     * Vacía la caché (al cerrar sesión).
+     */
+    public synchronized void vaciar() {
+        idUsuario = null;
+        invalidar();
+    }
+
+    /**
+     * Responde una consulta con las columnas del usuario, cargándolas si hace falta.
+     *
+     * @param idUsuario Id del usuario.
+     * @param consulta  Consulta sobre las columnas; se ejecuta con la caché bloqueada.
+     * @param <T>       Tipo del resultado.
+     * @return El resultado, o null si el usuario no está en caché (hay que ir a la BBDD).
+     */
+    public <T> T consultar(int idUsuario, Function<ColumnasHuellas, T> consulta) {
+        synchronized (this) {
+            if (this.idUsuario == null || this.idUsuario != idUsuario) return null;
+            if (columnas != null) return consulta.apply(columnas);
+        }
+        if (!cargarSiHaceFalta(idUsuario)) return null;
+        synchronized (this) {
+            return (columnas != null && this.idUsuario == idUsuario) ? consulta.apply(columnas) : null;
+        }
+    }
+
+    /**
+     * Carga las columnas del usuario fuera del bloqueo, para no frenar los eventos.
+     * Si mientras tanto llega un cambio, la carga se descarta.
+     *
+     * @return true si al terminar las columnas están cargadas.
+     */
+    private boolean cargarSiHaceFalta(int idUsuario) {
+        long generacionInicial;
+        synchronized (this) {
+            if (columnas != null) return true;
+            generacionInicial = generacion;
+        }
+
+        List<Huella> historial = cargador.apply(idUsuario);
+        if (historial.size() > MAX_HUELLAS) return false;
+        ColumnasHuellas nuevas = new ColumnasHuellas(historial.size());
+        for (Huella h : historial) {
+            if (!cabe(h)) return false;
+            nuevas.anadir(idOCero(h), h.getDia(), (short) (int) h.getIdActividad().getId(), h.getValor(), impacto.applyAsDouble(h));
+        }
+
+        synchronized (this) {
+            if (generacion != generacionInicial || this.idUsuario == null || this.idUsuario != idUsuario) return false;
+            columnas = nuevas;
+            return true;
+        }
+    }
+
+    /**
+     * Aplica un cambio de una huella a las columnas.
+     *
+     * @param h      Huella cambiada.
+     * @param quitar true si hay que quitar la versión anterior (edición o borrado).
+     * @param poner  true si hay que añadir la versión nueva (alta o edición).
+     */
+    private synchronized void aplicar(Huella h, boolean quitar, boolean poner) {
+        if (idUsuario == null || h.getIdUsuario() == null || !idUsuario.equals(h.getIdUsuario().getId())) return;
+        if (columnas == null) {
+            generacion++; // Hay una carga en curso: debe repetirse para incluir este cambio
+            return;
+        }
+        boolean aplicable = (!quitar || quitarAnterior(h))
+                && (!poner || (cabe(h) && columnas.size() < MAX_HUELLAS));
+        if (!aplicable) {
+            invalidar();
+            return;
+        }
+        if (poner) {
+            columnas.anadir(idOCero(h), h.getDia(), (short) (int) h.getIdActividad().getId(), h.getValor(), impacto.applyAsDouble(h));
+        }
+    }
+
+    /**
+     * Quita la versión guardada de una huella. Las que se añadieron pendientes de guardar
+     * (sin id) se buscan por sus datos, que no cambian al volcarlas a la BBDD.
+     */
+    private boolean quitarAnterior(Huella h) {
+        if (h.getId() == null) return false;
+        return columnas.eliminar(h.getId())
+                || (cabe(h) && columnas.eliminarSinId(h.getDia(), (short) (int) h.getIdActividad().getId(), h.getValor()));
+    }
+
+    private synchronized void invalidar() {
+        columnas = null;
+        generacion++;
+    }
+
+    /**
+     * Indica si una huella puede guardarse en las columnas (actividad representable en un short).
+     */
+    private static boolean cabe(Huella h) {
+        return h.getDia() != null && h.getIdActividad() != null && h.getIdActividad().getId() != null
+                && h.getIdActividad().getId() <= Short.MAX_VALUE;
+    }
+
+    private static int idOCero(Huella h) {
+        return (h.getId() != null) ? h.getId() : 0;
+    }
+}
@@ -0,0 +1,110 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.util.Resolucion;
+
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Impacto diario de un usuario durante un año, para el mapa de calor del calendario.
+ * <p>
+ * Cada año se obtiene con una sola consulta agrupada por día ({@link HuellaService#getSerieUsuario})
+ * y se guarda en una caché LRU de {@value #ANIOS_EN_CACHE} años, así que volver a un año ya visto no
+ * consulta nada. Las altas y borrados invalidan su año; las ediciones (que pueden cambiar la fecha),
+ * todos los del usuario; la sincronización y el recálculo de factores, toda la caché.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class CalendarioImpacto {
+
+    private static final int ANIOS_EN_CACHE = 4;
+
+    private final HuellaService huellaService;
+
+    /** Impacto diario por (usuario, año), en orden de último acceso. */
+    private final Map<Long, double[]> anios = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, double[]> mayor) {
+            return size() > ANIOS_EN_CACHE;
+        }
+    };
+
+    /** Número de invalidaciones, para descartar cargas que se solapan con un cambio. */
+    private long generacion;
+
+    /**
+     * Crea el calendario y lo suscribe a los cambios de huellas.
+     *
+     * @param huellaService Servicio de huellas.
+     * @param eventBus      Bus de eventos.
+     */
+    public CalendarioImpacto(HuellaService huellaService, EventBus eventBus) {
+        this.huellaService = huellaService;
+        eventBus.suscribir(HuellaCreada.class, e -> invalidar(e.huella(), false));
+        eventBus.suscribir(HuellaEliminada.class, e -> invalidar(e.huella(), false));
+        eventBus.suscribir(HuellaActualizada.class, e -> invalidar(e.huella(), true));
+        eventBus.suscribir(ReplicaSincronizada.class, e -> vaciar());
+        eventBus.suscribir(FactoresRecalculados.class, e -> vaciar());
+    }
+
+    /**
+     * Impacto de cada día de un año.
+     *
+     * @param idUsuario Id del usuario.
+     * @param anio      Año.
+     * @return Copia con 365 o 366 posiciones (la 0 es el 1 de enero), en kg CO₂.
+     */
+    public double[] getImpactoDiario(int idUsuario, int anio) {
+        long clave = clave(idUsuario, anio);
+        long generacionInicial;
+        synchronized (this) {
+            double[] guardado = anios.get(clave);
+            if (guardado != null) return guardado.clone();
+            generacionInicial = generacion;
+        }
+
+        LocalDate inicio = LocalDate.of(anio, 1, 1);
+        double[] impactos = new double[Year.of(anio).length()];
+        int diaInicio = (int) inicio.toEpochDay();
+        huellaService.getSerieUsuario(idUsuario, Resolucion.DIA, inicio, inicio.withDayOfYear(impactos.length))
+                .forEach((dia, impacto) -> impactos[dia - diaInicio] = impacto);
+
+        synchronized (this) {
+            if (generacion == generacionInicial) anios.put(clave, impactos);
+        }
+        return impactos.clone();
+    }
+
+    /**
+     * Descarta todos los años guardados.
+     */
+    public synchronized void vaciar() {
+        anios.clear();
+        generacion++;
+    }
+
+    private synchronized void invalidar(Huella h, boolean todosLosAnios) {
+        if (h.getIdUsuario() == null || h.getIdUsuario().getId() == null) return;
+        int idUsuario = h.getIdUsuario().getId();
+        if (todosLosAnios || h.getDia() == null) {
+            anios.keySet().removeIf(clave -> (int) (clave >> 32) == idUsuario);
+        } else {
+            anios.remove(clave(idUsuario, LocalDate.ofEpochDay(h.getDia()).getYear()));
+        }
+        generacion++;
+    }
+
+    private static long clave(int idUsuario, int anio) {
+        return ((long) idUsuario << 32) | (anio & 0xFFFFFFFFL);
+    }
+}
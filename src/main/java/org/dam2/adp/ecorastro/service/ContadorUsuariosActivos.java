@@ -0,0 +1,207 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.DAO.SketchUsuariosDAO;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.HyperLogLog;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cuenta los usuarios activos (con alguna huella) en cualquier rango de fechas sin recorrer la
+ * tabla {@code huella}.
+ * <p>
+ * Guarda un {@link HyperLogLog} de los usuarios de cada día y de cada mes. Un rango se responde
+ * fusionando los sketches de sus meses completos y de los días sueltos de los extremos, con un
+ * error típico del 1,6 %. Para auditorías sigue disponible el conteo exacto ({@link #contarExacto}).
+ * <p>
+ * Cada huella nueva (o editada, por si cambia de día) se anota en sketches en memoria que se
+ * fusionan con los guardados cada {@value #PERIODO_VOLCADO_SEGUNDOS} segundos y al cerrar. Los
+ * borrados no se descuentan: un usuario que borra todas sus huellas de un día sigue contando en él.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class ContadorUsuariosActivos implements AutoCloseable {
+
+    private static final long PERIODO_VOLCADO_SEGUNDOS = 30;
+
+    private final SketchUsuariosDAO sketchDAO;
+    private final HuellaDAO huellaDAO;
+    private final ScheduledExecutorService planificador;
+
+    /** Sketches con usuarios aún no volcados, por periodo. */
+    private final Map<String, HyperLogLog> pendientes = new HashMap<>();
+
+    /** Si los sketches guardados ya cubren todas las huellas (tras {@link #reconstruirSiVacio}). */
+    private volatile boolean listo;
+
+    /**
+     * Crea el contador y lo suscribe a las altas y ediciones de huellas.
+     *
+     * @param sketchDAO DAO de los sketches.
+     * @param huellaDAO DAO de huellas del servidor (para el conteo exacto).
+     * @param eventBus  Bus de eventos.
+     */
+    public ContadorUsuariosActivos(SketchUsuariosDAO sketchDAO, HuellaDAO huellaDAO, EventBus eventBus) {
+        this.sketchDAO = sketchDAO;
+        this.huellaDAO = huellaDAO;
+        this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "ecorastro-sketches");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        eventBus.suscribir(HuellaCreada.class, e -> anotar(e.huella()));
+        eventBus.suscribir(HuellaActualizada.class, e -> anotar(e.huella()));
+    }
+
+    /**
+     * Programa el volcado periódico de los sketches pendientes.
+     * <p>
+     * Debe llamarse después de {@link #reconstruirSiVacio}: un volcado previo dejaría la tabla con
+     * solo las altas recientes y la reconstrucción ya no se haría.
+     */
+    public void iniciar() {
+        planificador.scheduleWithFixedDelay(this::volcar, PERIODO_VOLCADO_SEGUNDOS, PERIODO_VOLCADO_SEGUNDOS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Crea los sketches a partir de las huellas existentes si aún no hay ninguno guardado.
+     * <p>
+     * Debe ejecutarse antes de archivar huellas, que dejan de estar en la BBDD.
+     *
+     * @return Número de sketches creados.
+     */
+    public int reconstruirSiVacio() {
+        try {
+            if (!sketchDAO.isVacio()) {
+                listo = true;
+                return 0;
+            }
+            Map<String, HyperLogLog> sketches = new HashMap<>();
+            sketchDAO.recorrerDiasUsuarios((dia, idUsuario) -> anotar(sketches, dia, idUsuario));
+            listo = sketchDAO.fusionar(sketches);
+            return listo ? sketches.size() : 0;
+        } catch (Exception e) {
+            System.err.println("No se pudieron reconstruir los sketches de usuarios activos: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Indica si ya se puede usar {@link #contar}.
+     *
+     * @return false hasta que los sketches se han comprobado o reconstruido.
+     */
+    public boolean isListo() {
+        return listo;
+    }
+
+    /**
+     * Estima los usuarios con alguna huella en un rango de fechas.
+     *
+     * @param inicio Primer día (incluido).
+     * @param fin    Último día (incluido).
+     * @return Número aproximado de usuarios activos.
+     */
+    public long contar(LocalDate inicio, LocalDate fin) {
+        List<String> periodos = getPeriodos(inicio, fin);
+        HyperLogLog total = new HyperLogLog();
+        sketchDAO.getSketches(periodos).values().forEach(total::fusionar);
+        synchronized (pendientes) {
+            for (String periodo : periodos) {
+                HyperLogLog pendiente = pendientes.get(periodo);
+                if (pendiente != null) total.fusionar(pendiente);
+            }
+        }
+        return total.estimar();
+    }
+
+    /**
+     * Cuenta exactamente los usuarios con alguna huella en un rango de fechas (recorre las huellas).
+     *
+     * @param inicio Primer día (incluido).
+     * @param fin    Último día (incluido).
+     * @return Número de usuarios activos.
+     */
+    public long contarExacto(LocalDate inicio, LocalDate fin) {
+        return huellaDAO.countUsuariosActivosComunidadPorRangoFecha(inicio, fin);
+    }
+
+    /**
+     * Fusiona los sketches pendientes con los guardados. Si falla, se conservan para el siguiente intento.
+     * <p>
+     * Mientras no se hayan reconstruido no se vuelca nada: la reconstrucción ya incluirá esas huellas.
+     *
+     * @return false si no se pudieron guardar.
+     */
+    public boolean volcar() {
+        if (!listo) return false;
+        Map<String, HyperLogLog> lote;
+        synchronized (pendientes) {
+            if (pendientes.isEmpty()) return true;
+            lote = new HashMap<>(pendientes);
+            pendientes.clear();
+        }
+        if (sketchDAO.fusionar(lote)) return true;
+        synchronized (pendientes) {
+            lote.forEach((periodo, sketch) -> pendientes.merge(periodo, sketch, (a, b) -> {
+                a.fusionar(b);
+                return a;
+            }));
+        }
+        return false;
+    }
+
+    /**
+     * Descompone un rango en meses completos ({@code M<clave de mes>}) y días sueltos ({@code D<clave de día>}).
+     *
+     * @param inicio Primer día (incluido).
+     * @param fin    Último día (incluido).
+     * @return Los periodos que cubren el rango.
+     */
+    static List<String> getPeriodos(LocalDate inicio, LocalDate fin) {
+        List<String> periodos = new ArrayList<>();
+        LocalDate dia = inicio;
+        while (!dia.isAfter(fin)) {
+            LocalDate finMes = dia.withDayOfMonth(dia.lengthOfMonth());
+            if (dia.getDayOfMonth() == 1 && !finMes.isAfter(fin)) {
+                periodos.add("M" + FechaUtil.claveMes(dia));
+                dia = finMes.plusDays(1);
+            } else {
+                periodos.add("D" + FechaUtil.claveDia(dia));
+                dia = dia.plusDays(1);
+            }
+        }
+        return periodos;
+    }
+
+    @Override
+    public void close() {
+        planificador.shutdownNow();
+        volcar();
+    }
+
+    private void anotar(Huella h) {
+        if (h.getDia() == null || h.getIdUsuario() == null || h.getIdUsuario().getId() == null) return;
+        synchronized (pendientes) {
+            anotar(pendientes, h.getDia(), h.getIdUsuario().getId());
+        }
+    }
+
+    private static void anotar(Map<String, HyperLogLog> sketches, int dia, int idUsuario) {
+        sketches.computeIfAbsent("D" + dia, p -> new HyperLogLog()).anadir(idUsuario);
+        sketches.computeIfAbsent("M" + FechaUtil.claveMes(LocalDate.ofEpochDay(dia)), p -> new HyperLogLog()).anadir(idUsuario);
+    }
+}
@@ -0,0 +1,394 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.DiarioHuellas;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escritura diferida (write-behind) de nuevas huellas.
+ * <p>
+ * Cada huella se anota primero en el {@link DiarioHuellas} local, forzado a disco, y se da por
+ * guardada al instante. Un hilo en segundo plano agrupa las entradas pendientes y las inserta en
+ * la BBDD por lotes; si la BBDD no responde, reintenta con espera creciente. Las entradas que
+ * quedaron sin volcar en una ejecución anterior se recuperan del diario al arrancar; si su
+ * actividad ya no existe en el catálogo se mueven a un archivo de descartes junto al diario
+ * ({@code huellas.diario.descartadas}) en lugar de reintentarlas.
+ * <p>
+ * Cuando un lote se guarda, las huellas reciben su id y se publica {@link HuellaActualizada}
+ * para que las vistas y cachés vuelvan a leer los datos ya consolidados.
+ * <p>
+ * La entrega es «al menos una vez»: el lote se confirma en la BBDD y después se marca en el
+ * diario, así que si la aplicación se corta justo entre ambos pasos ese lote se vuelve a insertar
+ * al arrancar y sus huellas quedan duplicadas. Las entradas del diario no llevan una clave que
+ * permita distinguir ese caso de dos huellas iguales registradas a propósito, por lo que no se
+ * intenta deduplicar: el usuario puede borrar la copia desde el historial.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class EscrituraDiferidaHuellas implements AutoCloseable {
+
+    /** Espera antes de volcar, para agrupar varias huellas en el mismo lote. */
+    private static final long ESPERA_LOTE_MS = 500;
+    /** Primera espera tras un fallo de la BBDD. */
+    private static final long ESPERA_REINTENTO_INICIAL_MS = 1_000;
+    /** Espera máxima entre reintentos. */
+    private static final long ESPERA_REINTENTO_MAX_MS = 60_000;
+    /** Máximo de huellas por transacción. */
+    private static final int TAM_LOTE = 100;
+
+    private static final System.Logger LOG = System.getLogger(EscrituraDiferidaHuellas.class.getName());
+
+    private final DiarioHuellas diario;
+    /** Archivo CSV donde se mueven las entradas que no se pueden volcar. */
+    private final Path descartes;
+    private final HuellaDAO huellaDAO;
+    private final ActividadDAO actividadDAO;
+    private final EventBus eventBus;
+    private final ScheduledExecutorService planificador;
+
+    /** Huellas pendientes indexadas por su posición en el diario. Protegido por {@code this}. */
+    private final Map<Integer, Huella> pendientes = new LinkedHashMap<>();
+
+    /** Las mismas huellas que {@link #pendientes}, por identidad, para {@link #isPendiente}. Protegido por {@code this}. */
+    private final Set<Huella> enCola = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** Evita ejecutar dos volcados a la vez (hilo de fondo y {@link #vaciar()}). */
+    private final Object cerrojoVolcado = new Object();
+
+    /** Catálogo de actividades por id, leído una vez para completar las huellas recuperadas. */
+    private volatile Map<Integer, Actividad> catalogo;
+
+    private boolean volcadoProgramado;
+    private long esperaReintentoMs = ESPERA_REINTENTO_INICIAL_MS;
+
+    /**
+     * Crea la escritura diferida y programa el volcado de lo que hubiera quedado pendiente en el diario.
+     *
+     * @param diario       Diario local ya abierto.
+     * @param huellaDAO    DAO con el que se insertan los lotes.
+     * @param actividadDAO DAO para completar las actividades de las huellas recuperadas del diario.
+     * @param eventBus     Bus donde se publican las huellas ya consolidadas.
+     */
+    public EscrituraDiferidaHuellas(DiarioHuellas diario, HuellaDAO huellaDAO, ActividadDAO actividadDAO, EventBus eventBus) {
+        this.diario = diario;
+        this.descartes = diario.getRuta().resolveSibling(diario.getRuta().getFileName() + ".descartadas");
+        this.huellaDAO = huellaDAO;
+        this.actividadDAO = actividadDAO;
+        this.eventBus = eventBus;
+        this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "ecorastro-volcado-huellas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+
+        synchronized (this) {
+            for (DiarioHuellas.Entrada entrada : diario.getPendientes()) {
+                Huella huella = reconstruir(entrada);
+                pendientes.put(entrada.posicion(), huella);
+                enCola.add(huella);
+            }
+            if (!pendientes.isEmpty()) {
+                programarVolcado(0);
+            }
+        }
+    }
+
+    /**
+     * Anota una huella en el diario y programa su volcado.
+     *
+     * @param huella Huella nueva (sin id).
+     * @return true si quedó anotada en disco; false si el diario no pudo escribirse.
+     */
+    public synchronized boolean encolar(Huella huella) {
+        try {
+            DiarioHuellas.Entrada entrada = diario.anadir(
+                    huella.getIdUsuario().getId(),
+                    huella.getIdActividad().getId(),
+                    huella.getValor(),
+                    huella.getFecha().getEpochSecond());
+            pendientes.put(entrada.posicion(), huella);
+            enCola.add(huella);
+            programarVolcado(ESPERA_LOTE_MS);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Devuelve las huellas de un usuario que todavía no están en la BBDD.
+     * <p>
+     * Las recuperadas del diario solo se incluyen una vez se ha podido completar su actividad.
+     * El catálogo se consulta fuera del cerrojo para no bloquear {@link #encolar}.
+     *
+     * @param idUsuario Id del usuario.
+     * @return Copia de las huellas pendientes del usuario.
+     */
+    public List<Huella> getPendientes(int idUsuario) {
+        List<Huella> delUsuario = new ArrayList<>();
+        synchronized (this) {
+            for (Huella h : pendientes.values()) {
+                if (Objects.equals(h.getIdUsuario().getId(), idUsuario)) delUsuario.add(h);
+            }
+        }
+        Map<Integer, Actividad> actividades = getCatalogo(delUsuario);
+        delUsuario.removeIf(h -> !completar(h, actividades));
+        return delUsuario;
+    }
+
+    /**
+     * Indica si una huella concreta sigue pendiente de volcar.
+     *
+     * @param huella La huella a comprobar.
+     * @return true si está en la cola.
+     */
+    public synchronized boolean isPendiente(Huella huella) {
+        return enCola.contains(huella);
+    }
+
+    /**
+     * Vuelca ahora mismo todo lo pendiente, en el hilo que llama.
+     * <p>
+     * Se usa antes de editar o borrar una huella que aún no tiene id.
+     *
+     * @return true si no queda nada pendiente.
+     */
+    public boolean vaciar() {
+        while (true) {
+            int restantes = volcarLote();
+            if (restantes == 0) return true;
+            if (restantes < 0) return false;
+        }
+    }
+
+    /**
+     * Detiene el hilo de volcado. Lo que quede pendiente sigue en el diario y se volcará en el próximo arranque.
+     */
+    @Override
+    public void close() {
+        planificador.shutdownNow();
+        synchronized (cerrojoVolcado) {
+            try {
+                diario.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Programa un volcado si no hay ya uno en espera.
+     *
+     * @param esperaMs Milisegundos hasta el volcado.
+     */
+    private synchronized void programarVolcado(long esperaMs) {
+        if (volcadoProgramado || planificador.isShutdown()) return;
+        volcadoProgramado = true;
+        planificador.schedule(this::volcarEnSegundoPlano, esperaMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tarea del hilo de fondo: vuelca un lote y se reprograma según el resultado.
+     */
+    private void volcarEnSegundoPlano() {
+        synchronized (this) {
+            volcadoProgramado = false;
+        }
+        int restantes = volcarLote();
+        if (restantes > 0) {
+            programarVolcado(0);
+        } else if (restantes < 0) {
+            long espera;
+            synchronized (this) {
+                espera = esperaReintentoMs;
+                esperaReintentoMs = Math.min(esperaReintentoMs * 2, ESPERA_REINTENTO_MAX_MS);
+            }
+            programarVolcado(espera);
+        }
+    }
+
+    /**
+     * Inserta en la BBDD un lote de hasta {@value #TAM_LOTE} huellas pendientes.
+     *
+     * @return Huellas que siguen pendientes tras el lote, o -1 si la inserción falló.
+     */
+    private int volcarLote() {
+        synchronized (cerrojoVolcado) {
+            Map<Integer, Huella> lote = new LinkedHashMap<>();
+            synchronized (this) {
+                for (Map.Entry<Integer, Huella> e : pendientes.entrySet()) {
+                    if (lote.size() == TAM_LOTE) break;
+                    lote.put(e.getKey(), e.getValue());
+                }
+            }
+            if (lote.isEmpty()) return 0;
+
+            Map<Integer, Actividad> actividades = getCatalogo(lote.values());
+            if (actividades == null && lote.values().stream().anyMatch(h -> h.getUnidad() == null)) {
+                return -1;
+            }
+            Map<Integer, Huella> descartadas = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Huella> e : lote.entrySet()) {
+                if (!completar(e.getValue(), actividades)) descartadas.put(e.getKey(), e.getValue());
+            }
+            lote.keySet().removeAll(descartadas.keySet());
+            if (!descartadas.isEmpty() && !descartar(descartadas)) {
+                return -1;
+            }
+
+            if (!lote.isEmpty() && !huellaDAO.addHuellas(new ArrayList<>(lote.values()))) {
+                return -1;
+            }
+
+            // Un corte aquí, con el lote ya confirmado y sin marcar, lo repetiría en el próximo arranque
+            int restantes;
+            synchronized (this) {
+                // Marcar y quitar juntos: tras compactar, el diario reutiliza las posiciones
+                diario.marcarVolcadas(lote.keySet());
+                quitar(lote);
+                esperaReintentoMs = ESPERA_REINTENTO_INICIAL_MS;
+                restantes = pendientes.size();
+            }
+            lote.values().forEach(h -> eventBus.publicar(new HuellaActualizada(h)));
+            return restantes;
+        }
+    }
+
+    /**
+     * Mueve al archivo de descartes las huellas recuperadas cuya actividad ya no existe: reintentarlas
+     * no serviría de nada y bloquearían el resto de la cola. El archivo guarda todos sus datos, uno
+     * por línea, para poder darlas de alta a mano.
+     * <p>
+     * Solo se marcan en el diario después de forzar el archivo a disco; si no se puede escribir,
+     * siguen pendientes y se reintenta con el resto del lote.
+     *
+     * @param descartadas Huellas por su posición en el diario.
+     * @return true si se han movido.
+     */
+    private boolean descartar(Map<Integer, Huella> descartadas) {
+        List<String> lineas = new ArrayList<>();
+        if (!Files.exists(descartes)) lineas.add("id_usuario;id_actividad;valor;fecha");
+        for (Huella h : descartadas.values()) {
+            lineas.add(h.getIdUsuario().getId() + ";" + h.getIdActividad().getId() + ";" + h.getValor() + ";" + h.getFecha());
+        }
+        try {
+            Files.write(descartes, lineas, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.ERROR, "No se pudieron mover al archivo de descartes "
+                    + descartadas.size() + " huellas del diario; siguen pendientes", e);
+            return false;
+        }
+        synchronized (this) {
+            diario.marcarVolcadas(descartadas.keySet());
+            quitar(descartadas);
+        }
+        LOG.log(System.Logger.Level.WARNING, "{0} huellas del diario con actividad desconocida movidas a {1}",
+                descartadas.size(), descartes);
+        return true;
+    }
+
+    /**
+     * Quita unas huellas de la cola en memoria. Debe llamarse con el cerrojo de {@code this}.
+     *
+     * @param huellas Huellas por su posición en el diario.
+     */
+    private void quitar(Map<Integer, Huella> huellas) {
+        for (Map.Entry<Integer, Huella> e : huellas.entrySet()) {
+            pendientes.remove(e.getKey());
+            enCola.remove(e.getValue());
+        }
+    }
+
+    /**
+     * Catálogo de actividades necesario para completar unas huellas.
+     * <p>
+     * Se lee de la BBDD solo si alguna huella está sin completar y el catálogo aún no se tiene
+     * (o no incluye su actividad), y se guarda para las siguientes llamadas.
+     *
+     * @param huellas Huellas que se van a completar.
+     * @return El catálogo por id, o null si no se pudo leer.
+     */
+    private Map<Integer, Actividad> getCatalogo(Iterable<Huella> huellas) {
+        Map<Integer, Actividad> actual = catalogo;
+        boolean leer = false;
+        for (Huella h : huellas) {
+            if (h.getUnidad() == null && (actual == null || !actual.containsKey(h.getIdActividad().getId()))) {
+                leer = true;
+                break;
+            }
+        }
+        if (!leer) return actual;
+        try {
+            Map<Integer, Actividad> nuevo = new HashMap<>();
+            for (Actividad a : actividadDAO.getAllActividades()) {
+                nuevo.put(a.getId(), a);
+            }
+            catalogo = nuevo;
+            return nuevo;
+        } catch (Exception e) {
+            LOG.log(System.Logger.Level.WARNING, "No se pudo leer el catálogo de actividades: {0}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Completa la actividad y la unidad de una huella recuperada del diario con el catálogo de la BBDD.
+     *
+     * @param huella      Huella a completar.
+     * @param actividades Catálogo por id, o null si no se pudo leer.
+     * @return true si la huella está completa.
+     */
+    private static boolean completar(Huella huella, Map<Integer, Actividad> actividades) {
+        if (huella.getUnidad() != null) return true;
+        Actividad a = (actividades != null) ? actividades.get(huella.getIdActividad().getId()) : null;
+        if (a == null) return false;
+        huella.setIdActividad(a);
+        huella.setUnidad(a.getIdCategoria().getUnidad());
+        return true;
+    }
+
+    /**
+     * Crea una huella a partir de una entrada recuperada del diario.
+     * <p>
+     * Usuario y actividad se crean solo con su id; la actividad y la unidad se completan
+     * con el catálogo antes de mostrarla o insertarla.
+     *
+     * @param entrada Entrada del diario.
+     * @return Huella equivalente, sin id.
+     */
+    private static Huella reconstruir(DiarioHuellas.Entrada entrada) {
+        Usuario usuario = new Usuario();
+        usuario.setId(entrada.idUsuario());
+        Actividad actividad = new Actividad();
+        actividad.setId(entrada.idActividad());
+        return new Huella(usuario, actividad, entrada.valor(), null,
+                Instant.ofEpochSecond(entrada.fechaEpochSegundos()));
+    }
+}
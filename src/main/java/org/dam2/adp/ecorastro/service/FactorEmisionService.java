@@ -0,0 +1,143 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.FactorEmisionDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.model.FactorEmision;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.IndiceFactores;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Servicio que gestiona las versiones de los factores de emisión.
+ * <p>
+ * Mantiene cargado el {@link IndiceFactores} con el que se calcula el impacto de cada huella
+ * según su fecha. Al corregir un factor para un periodo, solo se recalculan las huellas de esa
+ * categoría cuyas fechas caen en el periodo: el rango se parte en tramos que se actualizan en
+ * paralelo, cada uno en su propia transacción. Al terminar se publica {@link FactoresRecalculados}
+ * para que las vistas y cachés rehagan los totales afectados.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class FactorEmisionService {
+
+    /** Días que abarca cada tramo del recálculo. */
+    private static final int DIAS_POR_TRAMO = 90;
+
+    /** Hilos que recalculan tramos a la vez. */
+    private static final int PARALELISMO = 4;
+
+    private final FactorEmisionDAO factorEmisionDAO;
+    private final HuellaDAO huellaDAO;
+    private final EventBus eventBus;
+
+    /**
+     * Crea el servicio.
+     *
+     * @param factorEmisionDAO DAO de versiones de factores.
+     * @param huellaDAO        DAO con el que se recalculan las huellas.
+     * @param eventBus         Bus donde se publican los recálculos.
+     */
+    public FactorEmisionService(FactorEmisionDAO factorEmisionDAO, HuellaDAO huellaDAO, EventBus eventBus) {
+        this.factorEmisionDAO = factorEmisionDAO;
+        this.huellaDAO = huellaDAO;
+        this.eventBus = eventBus;
+    }
+
+    /**
+     * Carga (o recarga) el índice de factores desde la BBDD.
+     */
+    public void cargar() {
+        IndiceFactores.getInstance().cargar(factorEmisionDAO.getAllFactores());
+    }
+
+    /**
+     * Corrige el factor de una categoría para un periodo y recalcula las huellas afectadas.
+     *
+     * @param idCategoria Id de la categoría.
+     * @param desde       Primer día del periodo.
+     * @param hasta       Último día del periodo, o null si el factor sigue vigente.
+     * @param factor      Nuevo factor.
+     * @return true si se guardó el factor y se recalcularon todas las huellas del periodo.
+     */
+    public boolean corregirFactor(int idCategoria, LocalDate desde, LocalDate hasta, double factor) {
+        if (desde == null || factor < 0 || (hasta != null && hasta.isBefore(desde))) {
+            return false;
+        }
+        if (!factorEmisionDAO.registrarFactor(idCategoria, desde, hasta, factor)) {
+            return false;
+        }
+        cargar();
+        return recalcular(idCategoria, desde, hasta, factor);
+    }
+
+    /**
+     * Vuelve a aplicar todas las versiones de factores a las huellas.
+     * <p>
+     * Se usa tras rellenar el impacto de filas antiguas, que se calcula con el factor actual de la categoría.
+     *
+     * @return true si todos los periodos se recalcularon.
+     */
+    public boolean recalcularTodo() {
+        boolean correcto = true;
+        for (FactorEmision f : factorEmisionDAO.getAllFactores()) {
+            correcto &= recalcular(f.getIdCategoria().getId(), f.getValidoDesde(), f.getValidoHasta(), f.getFactor());
+        }
+        return correcto;
+    }
+
+    /**
+     * Recalcula en paralelo, por tramos, el impacto de las huellas de una categoría en un periodo.
+     *
+     * @param idCategoria Id de la categoría.
+     * @param desde       Primer día.
+     * @param hasta       Último día, o null para llegar hasta hoy.
+     * @param factor      Factor vigente en todo el periodo.
+     * @return true si todos los tramos se actualizaron.
+     */
+    private boolean recalcular(int idCategoria, LocalDate desde, LocalDate hasta, double factor) {
+        LocalDate fin = (hasta != null && hasta.isBefore(LocalDate.now())) ? hasta : LocalDate.now();
+        if (fin.isBefore(desde)) {
+            return true; // Periodo futuro: todavía no hay huellas que recalcular
+        }
+
+        List<Callable<Integer>> tramos = new ArrayList<>();
+        int diaFin = FechaUtil.claveDia(fin);
+        for (int dia = FechaUtil.claveDia(desde); dia <= diaFin; dia += DIAS_POR_TRAMO) {
+            int inicioTramo = dia;
+            int finTramo = Math.min(diaFin, dia + DIAS_POR_TRAMO - 1);
+            tramos.add(() -> huellaDAO.recalcularImpactoCategoria(idCategoria, inicioTramo, finTramo, factor));
+        }
+
+        boolean correcto = true;
+        ExecutorService hilos = Executors.newFixedThreadPool(Math.min(PARALELISMO, tramos.size()));
+        try {
+            for (Future<Integer> tramo : hilos.invokeAll(tramos)) {
+                try {
+                    tramo.get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    correcto = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        eventBus.publicar(new FactoresRecalculados(idCategoria, desde, fin));
+        return correcto;
+    }
+}
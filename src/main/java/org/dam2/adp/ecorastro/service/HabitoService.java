@@ -1,13 +1,16 @@
 package org.dam2.adp.ecorastro.service;
 
 import org.dam2.adp.ecorastro.DAO.HabitoDAO;
-import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.HabitoCambiado;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
 import org.dam2.adp.ecorastro.model.Actividad;
 import org.dam2.adp.ecorastro.model.Habito;
 import org.dam2.adp.ecorastro.model.HabitoId;
 import org.dam2.adp.ecorastro.model.Usuario;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -15,12 +18,76 @@ import java.util.List;
  * <p>
  * Actúa como intermediario entre los controladores y la capa de acceso a datos (DAO).
  * Permite crear, eliminar y consultar hábitos recurrentes.
+ * Los cambios confirmados se publican en el {@link EventBus} como {@link HabitoCambiado}.
+ * Con un {@link SincronizacionService}, las consultas se leen de la réplica local una vez descargada.
+ * <p>
+ * Los hábitos del último usuario consultado (el de la sesión) se guardan en memoria hasta que cambia
+ * alguno, se sincroniza la réplica o se cierra la sesión ({@link #vaciarCache()}).
  *
  * @author Antonio Delgado Portero
  * @version 1.0
  */
 public class HabitoService {
-    private final HabitoDAO habitoDAO = new HabitoDAO();
+    private final HabitoDAO habitoDAO;
+    private final EventBus eventBus;
+    private final SincronizacionService sincronizacion;
+
+    /** Hábitos del último usuario consultado, o null si no hay ninguno en memoria. */
+    private List<Habito> habitosEnCache;
+    private int idUsuarioEnCache;
+
+    /** Número de invalidaciones, para no guardar una lectura que se solapa con un cambio. */
+    private long generacion;
+
+    public HabitoService() {
+        this(new HabitoDAO(), new EventBus());
+    }
+
+    /**
+     * Crea el servicio con un DAO compartido.
+     *
+     * @param habitoDAO DAO de hábitos.
+     * @param eventBus  Bus donde se publican los cambios de hábitos.
+     */
+    public HabitoService(HabitoDAO habitoDAO, EventBus eventBus) {
+        this(habitoDAO, eventBus, null);
+    }
+
+    /**
+     * Crea el servicio leyendo de la réplica local cuando esté disponible.
+     *
+     * @param habitoDAO      DAO de hábitos del servidor.
+     * @param eventBus       Bus donde se publican los cambios de hábitos.
+     * @param sincronizacion Sincronización con la réplica local (puede ser null).
+     */
+    public HabitoService(HabitoDAO habitoDAO, EventBus eventBus, SincronizacionService sincronizacion) {
+        this.habitoDAO = habitoDAO;
+        this.eventBus = eventBus;
+        this.sincronizacion = sincronizacion;
+        eventBus.suscribir(HabitoCambiado.class, e -> vaciarCache());
+        eventBus.suscribir(ReplicaSincronizada.class, e -> vaciarCache());
+    }
+
+    /**
+     * Descarta los hábitos guardados en memoria (al cerrar sesión).
+     */
+    public synchronized void vaciarCache() {
+        habitosEnCache = null;
+        generacion++;
+    }
+
+    /**
+     * Elige de dónde leer los hábitos de un usuario: la réplica si ya está descargada, o el servidor.
+     *
+     * @param idUsuario Id del usuario.
+     * @return El DAO con el que leer.
+     */
+    private HabitoDAO lecturas(int idUsuario) {
+        if (sincronizacion != null && sincronizacion.isReplicaLista(idUsuario)) {
+            return sincronizacion.getHabitoLocalDAO();
+        }
+        return habitoDAO;
+    }
 
     /**
      * Añade un nuevo hábito al sistema.
@@ -42,11 +109,17 @@ public class HabitoService {
 
             habito.setIdUsuario(usuario);
             habito.setIdActividad(actividad);
+            // La clave compuesta se rellena para que los suscriptores puedan identificar el hábito
+            habito.getId().setIdUsuario(usuario.getId());
+            habito.getId().setIdActividad(actividad.getId());
 
             habito.setFrecuencia(frecuencia);
             habito.setTipo(tipo);
             habito.setUltimaFecha(Instant.now());
             insertado = habitoDAO.addHabito(habito);
+            if (insertado) {
+                eventBus.publicar(new HabitoCambiado(habito, false));
+            }
 
         }
         return insertado;
@@ -59,17 +132,35 @@ public class HabitoService {
      * @return true si se eliminó correctamente, false en caso contrario.
      */
     public boolean deleteHabito(Habito habito) {
-        return habitoDAO.deleteHabito(habito);
+        boolean eliminado = habitoDAO.deleteHabito(habito);
+        if (eliminado) {
+            eventBus.publicar(new HabitoCambiado(habito, true));
+        }
+        return eliminado;
     }
 
     /**
      * Obtiene todos los hábitos registrados por un usuario específico.
+     * <p>
+     * Si son los del usuario en memoria se devuelven sin consultar la BBDD.
      *
      * @param idUsuario El ID del usuario.
      * @return Lista de hábitos del usuario.
      */
     public List<Habito> getHabitosByUsuario(int idUsuario) {
-        return habitoDAO.getHabitosByUsuario(idUsuario);
+        long generacionInicial;
+        synchronized (this) {
+            if (habitosEnCache != null && idUsuarioEnCache == idUsuario) return new ArrayList<>(habitosEnCache);
+            generacionInicial = generacion;
+        }
+        List<Habito> habitos = lecturas(idUsuario).getHabitosByUsuario(idUsuario);
+        synchronized (this) {
+            if (generacion == generacionInicial) {
+                habitosEnCache = List.copyOf(habitos);
+                idUsuarioEnCache = idUsuario;
+            }
+        }
+        return habitos;
     }
 
     /**
@@ -91,6 +182,6 @@ public class HabitoService {
      * @return El hábito más frecuente o null si no tiene hábitos.
      */
     public Habito getHabitoMasFrecuente(int idUsuario) {
-        return habitoDAO.getHabitoMasFrecuente(idUsuario);
+        return lecturas(idUsuario).getHabitoMasFrecuente(idUsuario);
     }
 }
\ No newline at end of file
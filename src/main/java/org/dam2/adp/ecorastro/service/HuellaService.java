@@ -2,37 +2,170 @@ package org.dam2.adp.ecorastro.service;
 
 import org.dam2.adp.ecorastro.DAO.ActividadDAO;
 import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
 import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
 import org.dam2.adp.ecorastro.model.Huella;
 import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.IndiceFactores;
+import org.dam2.adp.ecorastro.util.Resolucion;
 
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZoneOffset;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Servicio que gestiona la lógica de negocio relacionada con las huellas de carbono.
  * <p>
  * Adapta las llamadas a la versión 3.0 de {@link HuellaDAO}, distinguiendo explícitamente
  * entre datos de usuario individual y datos agregados de la comunidad.
+ * <p>
+ * Cada escritura confirmada se publica en el {@link EventBus} para que las vistas abiertas
+ * y las cachés se actualicen sin recargar todo el historial.
+ * <p>
+ * Si se configura una {@link EscrituraDiferidaHuellas}, las nuevas huellas se anotan en el diario
+ * local y se insertan en la BBDD en segundo plano; mientras tanto se incluyen en el historial del usuario.
+ * <p>
+ * Con un {@link SincronizacionService}, las consultas del propio usuario y el catálogo se leen
+ * de la réplica local, y las ediciones y borrados pasan por la sincronización (que los guarda
+ * en local si no hay conexión). Las estadísticas de comunidad siguen consultando el servidor.
+ * <p>
+ * Los totales, desgloses y evoluciones del usuario de la sesión se responden desde una
+ * {@link CacheAnalitica} en memoria cuando está cargada ({@link #precargarAnalitica(int)}).
+ * <p>
+ * Con unos {@link AcumuladosComunidad}, el total, los usuarios activos y las medias históricas de
+ * la comunidad se leen de memoria; cada escritura hecha aquí se les suma o resta.
  *
  * @author Antonio Delgado Portero
  * @version 3.0 (Adaptado a DAO con Nomenclatura Explícita)
  */
 public class HuellaService {
 
+    private static final System.Logger LOG = System.getLogger(HuellaService.class.getName());
+
     private final HuellaDAO huellaDAO;
     private final ActividadDAO actividadDAO;
+    private final EventBus eventBus;
+
+    /** Escritura diferida de nuevas huellas, o null para insertarlas directamente en la BBDD. */
+    private final EscrituraDiferidaHuellas escrituraDiferida;
+
+    /** Sincronización con la réplica local, o null para trabajar solo contra el servidor. */
+    private final SincronizacionService sincronizacion;
+
+    /** Catálogo de actividades en memoria. Se carga en el primer acceso y se comparte entre pantallas. */
+    private volatile List<Actividad> catalogoActividades;
+
+    /** Historial del usuario de la sesión por columnas, para las consultas analíticas. */
+    private final CacheAnalitica analitica;
+
+    /** Acumulados de la comunidad en memoria, o null para consultarlos siempre en la BBDD. */
+    private final AcumuladosComunidad comunidad;
+
+    /** Sketches de usuarios activos por periodo, o null para contarlos siempre en la BBDD. */
+    private final ContadorUsuariosActivos usuariosActivos;
 
     public HuellaService() {
-        this.huellaDAO = new HuellaDAO();
-        this.actividadDAO = new ActividadDAO();
+        this(new HuellaDAO(), new ActividadDAO(), new EventBus(), null, null, null, null);
+    }
+
+    /**
+     * Crea el servicio con sus colaboradores (los construye {@link org.dam2.adp.ecorastro.util.RegistroServicios}).
+     * Los opcionales a null dejan el servicio trabajando directamente contra la BBDD.
+     *
+     * @param huellaDAO         DAO de huellas del servidor.
+     * @param actividadDAO      DAO de actividades del servidor.
+     * @param eventBus          Bus donde se publican los cambios de huellas.
+     * @param escrituraDiferida Cola de escritura con diario local (puede ser null).
+     * @param sincronizacion    Sincronización con la réplica local (puede ser null).
+     * @param comunidad         Acumulados de la comunidad en memoria (puede ser null).
+     * @param usuariosActivos   Contador de usuarios activos por periodo (puede ser null).
+     */
+    public HuellaService(HuellaDAO huellaDAO, ActividadDAO actividadDAO, EventBus eventBus,
+                         EscrituraDiferidaHuellas escrituraDiferida, SincronizacionService sincronizacion,
+                         AcumuladosComunidad comunidad, ContadorUsuariosActivos usuariosActivos) {
+        this.huellaDAO = huellaDAO;
+        this.actividadDAO = actividadDAO;
+        this.eventBus = eventBus;
+        this.escrituraDiferida = escrituraDiferida;
+        this.sincronizacion = sincronizacion;
+        this.analitica = new CacheAnalitica(eventBus, this::getHuellasPorUsuario, this::calcularImpacto);
+        this.comunidad = comunidad;
+        this.usuariosActivos = usuariosActivos;
+    }
+
+    /**
+     * Carga en memoria el historial del usuario para las consultas analíticas.
+     * <p>
+     * Se llama tras iniciar sesión (en segundo plano): las consultas siguientes no van a la BBDD.
+     *
+     * @param idUsuario Id del usuario de la sesión.
+     */
+    public void precargarAnalitica(int idUsuario) {
+        analitica.activar(idUsuario);
+    }
+
+    /**
+     * Descarta el historial en memoria (al cerrar sesión).
+     */
+    public void vaciarAnalitica() {
+        analitica.vaciar();
+    }
+
+    /**
+     * Elige de dónde leer los datos de un usuario: la réplica local si ya está descargada
+     * o, si no, el servidor (pidiendo de paso la primera sincronización).
+     *
+     * @param idUsuario Id del usuario.
+     * @return El DAO con el que leer.
+     */
+    private HuellaDAO lecturas(int idUsuario) {
+        if (sincronizacion == null) return huellaDAO;
+        if (sincronizacion.isReplicaLista(idUsuario)) return sincronizacion.getHuellaLocalDAO();
+        sincronizacion.solicitarSincronizacion();
+        return huellaDAO;
     }
 
 
+    /**
+     * Devuelve el catálogo de actividades.
+     * <p>
+     * El catálogo apenas cambia, así que se consulta una sola vez y se reutiliza.
+     *
+     * @return Lista inmodificable de actividades (con su categoría cargada).
+     */
     public List<Actividad> getAllActividades() {
+        List<Actividad> catalogo = catalogoActividades;
+        if (catalogo == null) {
+            catalogo = List.copyOf(leerCatalogo());
+            catalogoActividades = catalogo;
+        }
+        return catalogo;
+    }
+
+    /**
+     * Lee el catálogo de la réplica local si ya está descargado; si no, del servidor.
+     *
+     * @return Actividades con su categoría.
+     */
+    private List<Actividad> leerCatalogo() {
+        if (sincronizacion != null) {
+            try {
+                List<Actividad> local = sincronizacion.getActividadLocalDAO().getAllActividades();
+                if (!local.isEmpty()) return local;
+            } catch (Exception e) {
+                LOG.log(System.Logger.Level.WARNING, "Catálogo local no disponible: {0}", e.getMessage());
+            }
+        }
         return actividadDAO.getAllActividades();
     }
 
@@ -44,50 +177,190 @@ public class HuellaService {
         }
 
         String unidad = actividad.getIdCategoria().getUnidad();
-        Instant instant = fecha.atStartOfDay().toInstant(ZoneOffset.UTC);
+        Instant instant = FechaUtil.aInstante(fecha);
 
         Huella huella = new Huella(usuario, actividad, valorConsumo, unidad, instant);
-        return huellaDAO.addHuella(huella);
+        aplicarFactorVigente(huella);
+        boolean insertada = (escrituraDiferida != null)
+                ? escrituraDiferida.encolar(huella)
+                : huellaDAO.addHuella(huella);
+        if (insertada) {
+            if (comunidad != null) comunidad.sumar(huella, calcularImpacto(huella));
+            eventBus.publicar(new HuellaCreada(huella));
+        }
+        return insertada;
     }
 
     public boolean updateHuella(Huella huella) {
         if (huella == null || huella.getValor() <= 0 || huella.getFecha() == null) {
             return false;
         }
-        return huellaDAO.updateHuella(huella);
+        if (!consolidar(huella)) return false;
+        // La actividad o la fecha pueden haber cambiado: el factor es el vigente en la nueva fecha,
+        // tanto si se guarda en el servidor como si queda pendiente en la réplica
+        aplicarFactorVigente(huella);
+        // Las huellas archivadas no están en la réplica: se editan directamente en el servidor
+        if (huellaDAO.isArchivada(huella)) return actualizarArchivada(huella);
+        Huella anterior = getVersionGuardada(huella);
+        boolean actualizada;
+        if (sincronizacion != null) {
+            actualizada = sincronizacion.actualizarHuella(huella); // Publica el evento correspondiente
+        } else {
+            actualizada = huellaDAO.updateHuella(huella);
+            if (actualizada) {
+                eventBus.publicar(new HuellaActualizada(huella));
+            }
+        }
+        if (actualizada && anterior != null) {
+            comunidad.restar(anterior, calcularImpacto(anterior));
+            comunidad.sumar(huella, calcularImpacto(huella));
+        }
+        return actualizada;
+    }
+
+    /**
+     * Guarda la edición de una huella archivada, que vuelve a la BBDD con un id nuevo.
+     * <p>
+     * Como cambia de id, para las vistas y cachés es una huella que desaparece y otra que aparece:
+     * se publican {@link HuellaEliminada} con la versión archivada y {@link HuellaCreada} con la nueva.
+     * La huella recibida conserva su id antiguo para que las vistas la encuentren al quitarla.
+     *
+     * @param huella Huella archivada ya editada.
+     * @return true si se ha guardado.
+     */
+    private boolean actualizarArchivada(Huella huella) {
+        Huella anterior = huellaDAO.getHuellaArchivada(huella.getId(), huella.getIdUsuario().getId());
+        if (anterior == null) return false;
+        Huella nueva = new Huella(huella.getIdUsuario(), huella.getIdActividad(), huella.getValor(),
+                huella.getUnidad(), huella.getFecha());
+        aplicarFactorVigente(nueva);
+        if (!huellaDAO.sustituirArchivada(anterior.getId(), nueva)) return false;
+        eventBus.publicar(new HuellaEliminada(anterior));
+        eventBus.publicar(new HuellaCreada(nueva));
+        if (comunidad != null) {
+            comunidad.restar(anterior, calcularImpacto(anterior));
+            comunidad.sumar(nueva, calcularImpacto(nueva));
+        }
+        return true;
+    }
+
+    /**
+     * Fija en la huella el factor de su categoría vigente en su día, y con él su impacto.
+     *
+     * @param huella Huella con actividad (y categoría) y fecha.
+     */
+    private static void aplicarFactorVigente(Huella huella) {
+        Categoria categoria = huella.getIdActividad().getIdCategoria();
+        if (categoria == null) return;
+        huella.aplicarFactorEmision(IndiceFactores.getInstance()
+                .getFactor(categoria.getId(), huella.getDia(), categoria.getFactorEmision()));
     }
 
     public boolean deleteHuella(Huella huella) {
         if (huella == null) return false;
-        return huellaDAO.deleteHuella(huella);
+        if (!consolidar(huella)) return false;
+        boolean eliminada;
+        if (sincronizacion != null && !huellaDAO.isArchivada(huella)) {
+            eliminada = sincronizacion.eliminarHuella(huella);
+        } else {
+            eliminada = huellaDAO.deleteHuella(huella);
+            if (eliminada) {
+                eventBus.publicar(new HuellaEliminada(huella));
+            }
+        }
+        if (eliminada && comunidad != null) {
+            comunidad.restar(huella, calcularImpacto(huella));
+        }
+        return eliminada;
+    }
+
+    /**
+     * Lee la versión guardada en el servidor de una huella que se va a editar, para restarla de
+     * los acumulados de la comunidad.
+     *
+     * @return La versión guardada, o null si no hay acumulados o no se puede leer
+     *         (la diferencia se corregirá en la siguiente reconciliación).
+     */
+    private Huella getVersionGuardada(Huella huella) {
+        if (comunidad == null || !comunidad.isListo() || huella.getId() == null) return null;
+        try {
+            return huellaDAO.getHuellaById(huella.getId());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Asegura que una huella existe en la BBDD antes de editarla o borrarla.
+     * <p>
+     * Si aún está en la cola de escritura diferida, se vuelca la cola en ese momento.
+     *
+     * @param huella La huella a consolidar.
+     * @return false si la huella estaba pendiente y no se pudo volcar.
+     */
+    private boolean consolidar(Huella huella) {
+        if (huella.getId() == null && escrituraDiferida != null && escrituraDiferida.isPendiente(huella)) {
+            return escrituraDiferida.vaciar() && huella.getId() != null;
+        }
+        return true;
     }
 
     /**
      * Recupera el historial completo de huellas de un usuario.
+     * <p>
+     * Incluye las huellas anotadas en el diario que aún no se han volcado a la BBDD.
      */
     public List<Huella> getHuellasPorUsuario(int idUsuario) {
-        return huellaDAO.getHistorialHuellasUsuario(idUsuario);
+        List<Huella> huellas = lecturas(idUsuario).getHistorialHuellasUsuario(idUsuario);
+        if (escrituraDiferida != null) {
+            huellas = new ArrayList<>(huellas);
+            huellas.addAll(escrituraDiferida.getPendientes(idUsuario));
+        }
+        return huellas;
     }
 
     /**
      * Recupera huellas filtradas por rango de fechas.
+     * <p>
+     * Incluye las huellas pendientes de volcar que caen dentro del rango.
      */
     public List<Huella> getHuellasPorFecha(int idUsuario, LocalDate fechaInicio, LocalDate fechaFin) {
-
-        return huellaDAO.getHuellasUsuarioPorRangoFecha(idUsuario, fechaInicio, fechaFin);
+        List<Huella> huellas = lecturas(idUsuario).getHuellasUsuarioPorRangoFecha(idUsuario, fechaInicio, fechaFin);
+        if (escrituraDiferida != null) {
+            int diaInicio = FechaUtil.claveDia(fechaInicio);
+            int diaFin = FechaUtil.claveDia(fechaFin);
+            huellas = new ArrayList<>(huellas);
+            for (Huella h : escrituraDiferida.getPendientes(idUsuario)) {
+                if (h.getDia() >= diaInicio && h.getDia() <= diaFin) {
+                    huellas.add(h);
+                }
+            }
+        }
+        return huellas;
     }
 
 
 
+    /**
+     * Impacto de una huella en kg de CO2.
+     * <p>
+     * Usa el impacto guardado con la huella; solo lo calcula con el catálogo en filas antiguas
+     * que aún no se han rellenado.
+     */
     public double calcularImpacto(Huella huella) {
-        if (huella == null || huella.getIdActividad() == null) return 0.0;
-        return huella.getValor() * huella.getIdActividad().getIdCategoria().getFactorEmision();
+        if (huella == null) return 0.0;
+        if (huella.getImpactoKg() != null) return huella.getImpactoKg();
+        if (huella.getIdActividad() == null || huella.getFecha() == null) return 0.0;
+        Categoria categoria = huella.getIdActividad().getIdCategoria();
+        return huella.getValor() * IndiceFactores.getInstance()
+                .getFactor(categoria.getId(), huella.getDia(), categoria.getFactorEmision());
     }
 
     /**
      * KPI GLOBAL: Impacto total histórico de toda la comunidad.
      */
     public double getTotalImpactoComunidad() {
+        if (comunidad != null && comunidad.isListo()) return comunidad.getTotal();
         return huellaDAO.getTotalImpactoComunidad();
     }
 
@@ -95,16 +368,29 @@ public class HuellaService {
      * KPI PERSONAL: Impacto total de un usuario en un periodo específico.
      */
     public double getTotalImpactoUsuarioFecha(int idUsuario, LocalDate fechaInicio, LocalDate fechaFin) {
-        // Adaptado al nuevo DAO
-        return huellaDAO.getTotalImpactoUsuarioPorRangoFecha(idUsuario, fechaInicio, fechaFin);
+        int diaInicio = FechaUtil.claveDia(fechaInicio);
+        int diaFin = FechaUtil.claveDia(fechaFin);
+        Double total = analitica.consultar(idUsuario, c -> c.total(diaInicio, diaFin));
+        if (total != null) return total;
+        return lecturas(idUsuario).getTotalImpactoUsuarioPorRangoFecha(idUsuario, fechaInicio, fechaFin);
     }
 
     /**
      * GRÁFICO: Distribución del impacto por categorías para un usuario.
      */
     public Map<String, Double> getImpactoPorCategoriaUsuario(int idUsuario, LocalDate inicio, LocalDate fin) {
-        // Adaptado al nuevo DAO
-        return huellaDAO.getImpactoUsuarioPorCategoria(idUsuario, inicio, fin);
+        Map<Integer, Double> porActividad = analitica.consultar(idUsuario,
+                c -> c.porActividad(FechaUtil.claveDia(inicio), FechaUtil.claveDia(fin)));
+        if (porActividad != null) {
+            Map<Integer, String> categorias = new HashMap<>();
+            getAllActividades().forEach(a -> categorias.put(a.getId(), a.getIdCategoria().getNombre()));
+            if (categorias.keySet().containsAll(porActividad.keySet())) {
+                Map<String, Double> porCategoria = new HashMap<>();
+                porActividad.forEach((idActividad, impacto) -> porCategoria.merge(categorias.get(idActividad), impacto, Double::sum));
+                return porCategoria;
+            }
+        }
+        return lecturas(idUsuario).getImpactoUsuarioPorCategoria(idUsuario, inicio, fin);
     }
 
     /**
@@ -119,14 +405,53 @@ public class HuellaService {
         // Vamos 11 meses atrás para tener un total de 12 meses (11 pasados + actual)
         LocalDate inicio = fin.minusMonths(11).withDayOfMonth(1);
 
-        return huellaDAO.getEvolucionRangoFechaUsuario(idUsuario, inicio, fin);
+        Map<Integer, Double> porMes = analitica.consultar(idUsuario,
+                c -> c.porMes(FechaUtil.claveDia(inicio), FechaUtil.claveDia(fin)));
+        if (porMes != null) {
+            List<Object[]> evolucion = new ArrayList<>(porMes.size());
+            porMes.forEach((claveMes, impacto) -> {
+                YearMonth mes = FechaUtil.aMes(claveMes);
+                evolucion.add(new Object[]{mes.getYear(), mes.getMonthValue(), impacto});
+            });
+            return evolucion;
+        }
+        return lecturas(idUsuario).getEvolucionRangoFechaUsuario(idUsuario, inicio, fin);
+    }
+
+    /**
+     * Serie temporal del impacto de un usuario, por días, semanas, meses o años.
+     * <p>
+     * Con la caché analítica cargada se agrupa en memoria; si no, en la BBDD.
+     *
+     * @param idUsuario  Id del usuario.
+     * @param resolucion Tamaño de los tramos.
+     * @param inicio     Primer día (incluido).
+     * @param fin        Último día (incluido).
+     * @return Clave de día del inicio de cada tramo con huellas → impacto, en orden.
+     */
+    public Map<Integer, Double> getSerieUsuario(int idUsuario, Resolucion resolucion, LocalDate inicio, LocalDate fin) {
+        int diaInicio = FechaUtil.claveDia(inicio);
+        int diaFin = FechaUtil.claveDia(fin);
+        Map<Integer, Double> serie = analitica.consultar(idUsuario, c -> switch (resolucion) {
+            case DIA -> c.porDia(diaInicio, diaFin);
+            case SEMANA -> c.porSemana(diaInicio, diaFin);
+            case MES, ANIO -> c.porMes(diaInicio, diaFin);
+        });
+        if (serie == null) return lecturas(idUsuario).getSerieUsuario(idUsuario, resolucion, diaInicio, diaFin);
+        if (resolucion == Resolucion.DIA || resolucion == Resolucion.SEMANA) return serie;
+
+        // Las claves de mes pasan a ser el primer día del mes (o del año)
+        Map<Integer, Double> porTramo = new TreeMap<>();
+        serie.forEach((claveMes, impacto) -> porTramo.merge(
+                resolucion.inicioTramo((int) FechaUtil.aMes(claveMes).atDay(1).toEpochDay()), impacto, Double::sum));
+        return porTramo;
     }
 
     /**
      * ESTADÍSTICA GLOBAL: Media de impacto por categoría (Histórico).
      */
     public Map<String, Double> getMediaImpactoPorCategoria() {
-        // Adaptado al nuevo DAO
+        if (comunidad != null && comunidad.isListo()) return comunidad.getMediaPorCategoria();
         return huellaDAO.getMediaImpactoComunidadPorCategoriaHistorico();
     }
 
@@ -144,7 +469,23 @@ public class HuellaService {
      * Ej: "Puesto 5 de [300]".
      */
     public Long getTotalUsuariosActivos() {
-        return huellaDAO.countUsuariosActivosComunidad();
+        if (comunidad != null && comunidad.isListo()) return comunidad.getUsuariosActivos();
+        return getUsuariosActivos(LocalDate.of(1970, 1, 1), LocalDate.now());
+    }
+
+    /**
+     * Número de usuarios con alguna huella en un rango de fechas.
+     * <p>
+     * Si hay contador de usuarios activos y ya está listo, es una estimación a partir de sus
+     * sketches (error típico del 1,6 %) que no recorre la tabla de huellas; si no, se cuenta en la BBDD.
+     *
+     * @param fechaInicio Primer día (incluido).
+     * @param fechaFin    Último día (incluido).
+     * @return Número de usuarios activos.
+     */
+    public long getUsuariosActivos(LocalDate fechaInicio, LocalDate fechaFin) {
+        if (usuariosActivos != null && usuariosActivos.isListo()) return usuariosActivos.contar(fechaInicio, fechaFin);
+        return huellaDAO.countUsuariosActivosComunidadPorRangoFecha(fechaInicio, fechaFin);
     }
 
     /**
@@ -175,6 +516,12 @@ public class HuellaService {
      * @return La media real del resto de la comunidad.
      */
     public double getMediaComunidadSinUsuario(int idUsuario) {
+        if (comunidad != null && comunidad.isListo()) {
+            long numUsuarios = comunidad.getUsuariosActivos();
+            if (numUsuarios <= 1) return 0.0;
+            return (comunidad.getTotal() - comunidad.getTotalUsuario(idUsuario)) / (numUsuarios - 1);
+        }
+
         double totalGlobal = huellaDAO.getTotalImpactoComunidad();
 
 
@@ -183,7 +530,7 @@ public class HuellaService {
                 LocalDate.of(1970, 1, 1),
                 LocalDate.now().plusDays(1)
         );
-        long numUsuarios = huellaDAO.countUsuariosActivosComunidad();
+        long numUsuarios = getTotalUsuariosActivos();
 
         if (numUsuarios <= 1) {
             return 0.0;
@@ -0,0 +1,163 @@
+package org.dam2.adp.ecorastro.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Última versión calculada del panel de Inicio de cada usuario, guardada en disco para mostrarla
+ * nada más iniciar sesión mientras se recalcula en segundo plano.
+ * <p>
+ * El panel anota aquí cada cálculo nuevo ({@link #actualizar}); las instantáneas pendientes se
+ * escriben al cerrar sesión y al cerrar la aplicación ({@link #guardar}), una por usuario, en
+ * archivos binarios de pocos bytes. Un archivo ilegible o de otra versión se ignora: el panel
+ * simplemente se calcula como si no hubiera instantánea.
+ * <p>
+ * Formato: número mágico, versión, id del usuario, día del cálculo (época), total del mes, total
+ * histórico, media y mediana de la comunidad, usuarios activos, ranking, percentil y consejo (UTF).
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class InstantaneasInicio implements AutoCloseable {
+
+    /** Número mágico de la cabecera ("ECOI"). */
+    private static final int MAGICO = 0x45434F49;
+    private static final int VERSION = 1;
+
+    /**
+     * Datos del panel de Inicio en un momento dado.
+     *
+     * @param fecha          Día en que se calcularon.
+     * @param totalMes       Impacto del usuario en el mes del cálculo, en kg CO₂.
+     * @param historico      Impacto histórico del usuario.
+     * @param mediaComunidad Media histórica del resto de usuarios.
+     * @param mediana        Mediana histórica de la comunidad, o NaN si no había resúmenes.
+     * @param totalUsuarios  Usuarios activos.
+     * @param ranking        Posición del usuario.
+     * @param percentil      Percentil estimado del usuario, o NaN si la posición es exacta.
+     * @param consejo        Consejo del día mostrado.
+     */
+    public record Instantanea(LocalDate fecha, double totalMes, double historico, double mediaComunidad,
+                              double mediana, long totalUsuarios, long ranking, double percentil,
+                              String consejo) {
+    }
+
+    private final Path directorio;
+
+    /** Instantáneas calculadas en esta ejecución y aún no escritas, por id de usuario. */
+    private final Map<Integer, Instantanea> pendientes = new HashMap<>();
+
+    /**
+     * Crea el almacén.
+     *
+     * @param directorio Directorio de los archivos (se crea al guardar si no existe).
+     */
+    public InstantaneasInicio(Path directorio) {
+        this.directorio = directorio;
+    }
+
+    /**
+     * Última instantánea conocida de un usuario: la de esta ejecución o, si no hay, la del disco.
+     *
+     * @param idUsuario Id del usuario.
+     * @return La instantánea, o vacío si no hay ninguna legible.
+     */
+    public Optional<Instantanea> leer(int idUsuario) {
+        synchronized (this) {
+            Instantanea pendiente = pendientes.get(idUsuario);
+            if (pendiente != null) return Optional.of(pendiente);
+        }
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(ruta(idUsuario))))) {
+            if (entrada.readInt() != MAGICO || entrada.readInt() != VERSION || entrada.readInt() != idUsuario) {
+                return Optional.empty();
+            }
+            return Optional.of(new Instantanea(LocalDate.ofEpochDay(entrada.readLong()),
+                    entrada.readDouble(), entrada.readDouble(), entrada.readDouble(), entrada.readDouble(),
+                    entrada.readLong(), entrada.readLong(), entrada.readDouble(), entrada.readUTF()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Anota el último cálculo del panel de un usuario; se escribirá en el próximo {@link #guardar}.
+     *
+     * @param idUsuario   Id del usuario.
+     * @param instantanea Datos calculados.
+     */
+    public synchronized void actualizar(int idUsuario, Instantanea instantanea) {
+        pendientes.put(idUsuario, instantanea);
+    }
+
+    /**
+     * Escribe en disco las instantáneas pendientes, sustituyendo cada archivo de forma atómica.
+     */
+    public synchronized void guardar() {
+        if (pendientes.isEmpty()) return;
+        try {
+            Files.createDirectories(directorio);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        pendientes.entrySet().removeIf(e -> escribir(e.getKey(), e.getValue()));
+    }
+
+    @Override
+    public void close() {
+        guardar();
+    }
+
+    /**
+     * Escribe la instantánea de un usuario.
+     *
+     * @return true si se ha escrito.
+     */
+    private boolean escribir(int idUsuario, Instantanea i) {
+        Path destino = ruta(idUsuario);
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporal)))) {
+            salida.writeInt(MAGICO);
+            salida.writeInt(VERSION);
+            salida.writeInt(idUsuario);
+            salida.writeLong(i.fecha().toEpochDay());
+            salida.writeDouble(i.totalMes());
+            salida.writeDouble(i.historico());
+            salida.writeDouble(i.mediaComunidad());
+            salida.writeDouble(i.mediana());
+            salida.writeLong(i.totalUsuarios());
+            salida.writeLong(i.ranking());
+            salida.writeDouble(i.percentil());
+            salida.writeUTF(i.consejo() != null ? i.consejo() : "");
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        try {
+            Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private Path ruta(int idUsuario) {
+        return directorio.resolve("inicio-" + idUsuario + ".bin");
+    }
+}
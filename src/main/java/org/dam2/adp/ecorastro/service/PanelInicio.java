@@ -0,0 +1,153 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
+
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Datos del panel de Inicio: totales del usuario, comparación con la comunidad, posición y consejo.
+ * <p>
+ * El cálculo no toca la interfaz, así que puede hacerse en cualquier hilo. Al iniciar sesión se
+ * adelanta con {@link #precalcular}; la primera llamada a {@link #obtener} recoge ese resultado
+ * (esperándolo si aún está en camino) en lugar de repetir las consultas, siempre que sea del mismo
+ * usuario y no haya cambiado ninguna huella entretanto.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class PanelInicio {
+
+    private static final String[] CATEGORIAS = {"Energía", "Transporte", "Agua", "Residuos", "Alimentación"};
+
+    private record Precalculo(int idUsuario, long generacion, CompletableFuture<InstantaneasInicio.Instantanea> datos) {
+    }
+
+    private final HuellaService huellaService;
+    private final RecomendacionService recomendacionService;
+    private final PercentilesComunidad percentiles;
+
+    /** Cálculo adelantado pendiente de recoger, o null. */
+    private Precalculo precalculo;
+
+    /** Número de cambios de huellas, para descartar un cálculo adelantado que ya no vale. */
+    private long generacion;
+
+    /**
+     * Crea el panel y lo suscribe a los cambios que invalidan un cálculo adelantado.
+     *
+     * @param huellaService        Servicio de huellas.
+     * @param recomendacionService Servicio de recomendaciones.
+     * @param percentiles          Resúmenes de percentiles de la comunidad.
+     * @param eventBus             Bus de eventos.
+     */
+    public PanelInicio(HuellaService huellaService, RecomendacionService recomendacionService,
+                       PercentilesComunidad percentiles, EventBus eventBus) {
+        this.huellaService = huellaService;
+        this.recomendacionService = recomendacionService;
+        this.percentiles = percentiles;
+        eventBus.suscribir(HuellaCreada.class, e -> vaciar());
+        eventBus.suscribir(HuellaActualizada.class, e -> vaciar());
+        eventBus.suscribir(HuellaEliminada.class, e -> vaciar());
+        eventBus.suscribir(ReplicaSincronizada.class, e -> vaciar());
+        eventBus.suscribir(FactoresRecalculados.class, e -> vaciar());
+    }
+
+    /**
+     * Empieza a calcular el panel de un usuario en segundo plano.
+     * <p>
+     * Antes carga su historial en la caché analítica, de la que salen sus totales.
+     *
+     * @param idUsuario Usuario de la sesión.
+     * @param ejecutor  Ejecutor en el que calcular.
+     * @return El cálculo en curso.
+     */
+    public CompletableFuture<InstantaneasInicio.Instantanea> precalcular(int idUsuario, Executor ejecutor) {
+        long generacionInicial;
+        synchronized (this) {
+            generacionInicial = generacion;
+        }
+        CompletableFuture<InstantaneasInicio.Instantanea> datos = CompletableFuture.supplyAsync(() -> {
+            huellaService.precargarAnalitica(idUsuario);
+            return calcular(idUsuario);
+        }, ejecutor);
+        synchronized (this) {
+            precalculo = new Precalculo(idUsuario, generacionInicial, datos);
+        }
+        return datos;
+    }
+
+    /**
+     * Datos actuales del panel: el cálculo adelantado si sigue valiendo, o uno nuevo.
+     *
+     * @param idUsuario Usuario de la sesión.
+     * @return Los datos del panel.
+     */
+    public InstantaneasInicio.Instantanea obtener(int idUsuario) {
+        Precalculo p;
+        synchronized (this) {
+            p = precalculo;
+            precalculo = null;
+            if (p != null && (p.idUsuario() != idUsuario || p.generacion() != generacion)) p = null;
+        }
+        if (p != null) {
+            try {
+                InstantaneasInicio.Instantanea datos = p.datos().join();
+                if (LocalDate.now().equals(datos.fecha())) return datos;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        return calcular(idUsuario);
+    }
+
+    /**
+     * Descarta el cálculo adelantado (al cerrar sesión o al cambiar las huellas).
+     */
+    public synchronized void vaciar() {
+        precalculo = null;
+        generacion++;
+    }
+
+    /**
+     * Consulta todos los datos del panel.
+     * <p>
+     * La media de la comunidad excluye al propio usuario para que la comparación sea justa
+     * (Promedio vs Promedio) y no (Promedio vs Suma Total). La posición se estima con el percentil
+     * de su total histórico; si aún no hay resúmenes se calcula con la consulta exacta.
+     *
+     * @param idUsuario Usuario de la sesión.
+     * @return Los datos calculados.
+     */
+    private InstantaneasInicio.Instantanea calcular(int idUsuario) {
+        LocalDate hoy = LocalDate.now();
+        double totalMes = huellaService.getTotalImpactoUsuarioFecha(idUsuario,
+                hoy.with(TemporalAdjusters.firstDayOfMonth()), hoy.with(TemporalAdjusters.lastDayOfMonth()));
+        double historico = huellaService.getTotalImpactoUsuarioFecha(idUsuario,
+                LocalDate.of(1970, 1, 1), hoy.plusDays(1));
+        double media = huellaService.getMediaComunidadSinUsuario(idUsuario);
+        Double mediana = percentiles.getMediana(PercentilesComunidad.HISTORICO, PercentilesComunidad.TODAS);
+
+        Long totalUsuarios = huellaService.getTotalUsuariosActivos();
+        Double percentil = (historico > 0.001)
+                ? percentiles.getPercentil(PercentilesComunidad.HISTORICO, PercentilesComunidad.TODAS, historico)
+                : null;
+        Long ranking = (percentil != null)
+                ? Math.min(totalUsuarios, (long) Math.floor(percentil * totalUsuarios) + 1)
+                : huellaService.getRankingUsuario(idUsuario);
+
+        String categoriaRandom = CATEGORIAS[(int) (Math.random() * CATEGORIAS.length)];
+        String consejo = recomendacionService.generarConsejo(categoriaRandom);
+
+        return new InstantaneasInicio.Instantanea(hoy, totalMes, historico, media,
+                (mediana != null) ? mediana : Double.NaN, totalUsuarios, ranking,
+                (percentil != null) ? percentil : Double.NaN, consejo);
+    }
+}
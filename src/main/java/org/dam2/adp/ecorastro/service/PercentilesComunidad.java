@@ -0,0 +1,373 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.DAO.SketchPercentilesDAO;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.SketchPercentiles;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.TDigest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Posición de un usuario frente a la comunidad ("estás en el top X %") y medianas, sin recorrer
+ * las huellas de todos los usuarios en cada consulta.
+ * <p>
+ * Para cada mes y para el historial completo guarda un {@link TDigest} de los totales por usuario,
+ * otro por categoría, en la tabla {@code sketch_percentiles}. Se leen de memoria o de la BBDD y solo
+ * se reconstruyen (con una consulta agrupada por usuario) cuando han quedado desfasados:
+ * <ul>
+ * <li>su mes ha recibido huellas nuevas, editadas o borradas desde este equipo,</li>
+ * <li>son del mes en curso o del historial (que cambian con las huellas de cualquier equipo),</li>
+ * <li>o se han recalculado los factores de emisión.</li>
+ * </ul>
+ * Salvo tras un recálculo de factores, no se reconstruyen más de una vez cada
+ * {@code -Decorastro.percentiles.refrescoMinutos} minutos (10 por defecto). Un t-digest no permite
+ * quitar el total anterior de un usuario, por eso los cambios no se aplican uno a uno.
+ * <p>
+ * Un resumen desfasado se sigue devolviendo mientras se reconstruye en segundo plano, para que
+ * las consultas (que pueden llegar desde el hilo de la interfaz) no esperen a la BBDD. Solo se
+ * calcula en el momento si el periodo aún no tiene ningún resumen.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class PercentilesComunidad {
+
+    /** Periodo del historial completo. */
+    public static final int HISTORICO = 0;
+
+    /** Periodo de un rango que no es un mes completo ni el historial: no tiene resúmenes. */
+    public static final int SIN_PERIODO = -1;
+
+    /** Categoría que representa el total de todas. */
+    public static final int TODAS = 0;
+
+    private static final Duration REFRESCO = Duration.ofMinutes(Long.getLong("ecorastro.percentiles.refrescoMinutos", 10));
+
+    private static final LocalDate INICIO_HISTORICO = LocalDate.of(1970, 1, 1);
+
+    private final HuellaDAO huellaDAO;
+    private final SketchPercentilesDAO sketchDAO;
+    private final Executor reconstrucciones;
+
+    /** Resúmenes ya leídos, por periodo. */
+    private final Map<Integer, Distribucion> cargadas = new ConcurrentHashMap<>();
+
+    /** Periodos con cambios desde su último cálculo. */
+    private final Set<Integer> modificados = ConcurrentHashMap.newKeySet();
+
+    /** Periodos con una reconstrucción en segundo plano pendiente o en curso. */
+    private final Set<Integer> enReconstruccion = ConcurrentHashMap.newKeySet();
+
+    /** Último recálculo de factores: los resúmenes anteriores no valen. */
+    private volatile Instant factoresCambiados = Instant.EPOCH;
+
+    /**
+     * Crea el servicio reconstruyendo los resúmenes desfasados en el hilo que los pide.
+     *
+     * @param huellaDAO DAO de huellas del servidor.
+     * @param sketchDAO DAO de los resúmenes guardados.
+     * @param eventBus  Bus de eventos.
+     */
+    public PercentilesComunidad(HuellaDAO huellaDAO, SketchPercentilesDAO sketchDAO, EventBus eventBus) {
+        this(huellaDAO, sketchDAO, eventBus, Runnable::run);
+    }
+
+    /**
+     * Crea el servicio y lo suscribe a los cambios de huellas y de factores.
+     *
+     * @param huellaDAO        DAO de huellas del servidor.
+     * @param sketchDAO        DAO de los resúmenes guardados.
+     * @param eventBus         Bus de eventos.
+     * @param reconstrucciones Ejecutor en el que reconstruir los resúmenes desfasados.
+     */
+    public PercentilesComunidad(HuellaDAO huellaDAO, SketchPercentilesDAO sketchDAO, EventBus eventBus,
+                                Executor reconstrucciones) {
+        this.huellaDAO = huellaDAO;
+        this.sketchDAO = sketchDAO;
+        this.reconstrucciones = reconstrucciones;
+        eventBus.suscribir(HuellaCreada.class, e -> marcar(e.huella()));
+        eventBus.suscribir(HuellaActualizada.class, e -> marcar(e.huella()));
+        eventBus.suscribir(HuellaEliminada.class, e -> marcar(e.huella()));
+        eventBus.suscribir(FactoresRecalculados.class, e -> factoresCambiados = Instant.now());
+    }
+
+    /**
+     * Periodo con resúmenes que corresponde a un rango de fechas.
+     *
+     * @param inicio Primer día del rango.
+     * @param fin    Último día del rango.
+     * @return La clave de mes si el rango es un mes completo, {@link #HISTORICO} si cubre todo el
+     *         historial hasta hoy, o {@link #SIN_PERIODO}.
+     */
+    public static int getPeriodo(LocalDate inicio, LocalDate fin) {
+        if (!inicio.isAfter(INICIO_HISTORICO) && !fin.isBefore(LocalDate.now())) return HISTORICO;
+        if (inicio.getDayOfMonth() == 1 && fin.equals(inicio.withDayOfMonth(inicio.lengthOfMonth()))) {
+            return FechaUtil.claveMes(inicio);
+        }
+        return SIN_PERIODO;
+    }
+
+    /**
+     * Fracción de los usuarios de un periodo con un total menor que el dado.
+     *
+     * @param periodo     Clave de mes o {@link #HISTORICO}.
+     * @param idCategoria Id de la categoría, o {@link #TODAS}.
+     * @param valor       Total (kg CO₂) a situar.
+     * @return Fracción entre 0 y 1 (0 = el que menos emite), o null si no hay datos.
+     */
+    public Double getPercentil(int periodo, int idCategoria, double valor) {
+        Distribucion d = getDistribucion(periodo);
+        TDigest digest = (d != null) ? d.get(idCategoria) : null;
+        if (digest == null) return null;
+        synchronized (digest) {
+            double percentil = digest.cdf(valor);
+            return Double.isNaN(percentil) ? null : percentil;
+        }
+    }
+
+    /**
+     * Mediana de los totales por usuario de un periodo.
+     *
+     * @param periodo     Clave de mes o {@link #HISTORICO}.
+     * @param idCategoria Id de la categoría, o {@link #TODAS}.
+     * @return La mediana (kg CO₂), o null si no hay datos.
+     */
+    public Double getMediana(int periodo, int idCategoria) {
+        Distribucion d = getDistribucion(periodo);
+        TDigest digest = (d != null) ? d.get(idCategoria) : null;
+        return (digest != null) ? mediana(digest) : null;
+    }
+
+    /**
+     * Medianas de los totales por usuario de cada categoría (entre los usuarios con huellas en ella).
+     *
+     * @param periodo Clave de mes o {@link #HISTORICO}.
+     * @return Nombre de la categoría → mediana (vacío si no hay datos).
+     */
+    public Map<String, Double> getMedianasPorCategoria(int periodo) {
+        Map<String, Double> medianas = new HashMap<>();
+        Distribucion d = getDistribucion(periodo);
+        if (d != null) {
+            d.categorias.forEach((id, digest) -> medianas.put(d.nombres.get(id), mediana(digest)));
+        }
+        return medianas;
+    }
+
+    /**
+     * Número de usuarios con huellas en un periodo, según sus resúmenes.
+     *
+     * @param periodo Clave de mes o {@link #HISTORICO}.
+     * @return Usuarios, o 0 si no hay datos.
+     */
+    public long getUsuarios(int periodo) {
+        Distribucion d = getDistribucion(periodo);
+        if (d == null) return 0;
+        synchronized (d.total) {
+            return d.total.size();
+        }
+    }
+
+    /**
+     * Recalcula y guarda los resúmenes de un periodo.
+     *
+     * @param periodo Clave de mes o {@link #HISTORICO}.
+     * @return false si no se pudieron leer los totales.
+     */
+    public boolean reconstruir(int periodo) {
+        return construir(periodo) != null;
+    }
+
+    private Distribucion getDistribucion(int periodo) {
+        if (periodo == SIN_PERIODO) return null;
+        Distribucion d = cargadas.get(periodo);
+        if (d == null) {
+            SketchPercentiles guardado = sketchDAO.getSketch(periodo);
+            if (guardado != null) {
+                try {
+                    d = Distribucion.deBytes(guardado.getDatos(), guardado.getCalculado());
+                    cargadas.put(periodo, d);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Resúmenes del periodo " + periodo + " dañados, se recalculan: " + e.getMessage());
+                }
+            }
+        }
+        if (d == null) {
+            return construir(periodo);
+        }
+        if (isDesfasada(periodo, d)) {
+            reconstruirEnSegundoPlano(periodo);
+            // Con el ejecutor del propio hilo la reconstrucción ya ha terminado
+            d = cargadas.getOrDefault(periodo, d);
+        }
+        return d;
+    }
+
+    /**
+     * Encarga la reconstrucción de un periodo si no hay ya una pendiente.
+     */
+    private void reconstruirEnSegundoPlano(int periodo) {
+        if (!enReconstruccion.add(periodo)) return;
+        try {
+            reconstrucciones.execute(() -> {
+                try {
+                    construir(periodo);
+                } finally {
+                    enReconstruccion.remove(periodo);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            enReconstruccion.remove(periodo);
+        }
+    }
+
+    private boolean isDesfasada(int periodo, Distribucion d) {
+        if (d.calculado.isBefore(factoresCambiados)) return true;
+        if (d.calculado.plus(REFRESCO).isAfter(Instant.now())) return false;
+        return modificados.contains(periodo) || periodo == HISTORICO || periodo == FechaUtil.claveMes(LocalDate.now());
+    }
+
+    /**
+     * Consulta los totales por usuario y categoría del periodo y crea sus resúmenes.
+     * Se sincroniza para que dos pantallas no lancen a la vez la misma reconstrucción.
+     */
+    private synchronized Distribucion construir(int periodo) {
+        modificados.remove(periodo);
+        int diaInicio;
+        int diaFin;
+        if (periodo == HISTORICO) {
+            diaInicio = Integer.MIN_VALUE;
+            diaFin = Integer.MAX_VALUE;
+        } else {
+            LocalDate inicio = FechaUtil.aMes(periodo).atDay(1);
+            diaInicio = FechaUtil.claveDia(inicio);
+            diaFin = FechaUtil.claveDia(inicio.withDayOfMonth(inicio.lengthOfMonth()));
+        }
+
+        Map<Integer, Double> porUsuario = new HashMap<>();
+        Map<Integer, Map<Integer, Double>> porCategoria = new HashMap<>();
+        Map<Integer, String> nombres = new HashMap<>();
+        try {
+            for (Object[] fila : huellaDAO.getTotalesUsuarioPorCategoria(diaInicio, diaFin)) {
+                int idUsuario = (Integer) fila[0];
+                int idCategoria = (Integer) fila[1];
+                double impacto = (fila[3] != null) ? ((Number) fila[3]).doubleValue() : 0.0;
+                porUsuario.merge(idUsuario, impacto, Double::sum);
+                porCategoria.computeIfAbsent(idCategoria, c -> new HashMap<>()).merge(idUsuario, impacto, Double::sum);
+                nombres.putIfAbsent(idCategoria, (String) fila[2]);
+            }
+        } catch (Exception e) {
+            modificados.add(periodo);
+            System.err.println("No se pudieron calcular los percentiles del periodo " + periodo + ": " + e.getMessage());
+            return null;
+        }
+
+        Distribucion d = new Distribucion(Instant.now());
+        porUsuario.values().forEach(d.total::anadir);
+        porCategoria.forEach((idCategoria, totales) -> {
+            TDigest digest = new TDigest();
+            totales.values().forEach(digest::anadir);
+            d.categorias.put(idCategoria, digest);
+        });
+        d.nombres.putAll(nombres);
+
+        cargadas.put(periodo, d);
+        sketchDAO.guardar(new SketchPercentiles(periodo, d.aBytes(), d.calculado));
+        return d;
+    }
+
+    private void marcar(Huella h) {
+        modificados.add(HISTORICO);
+        if (h.getMes() != null) modificados.add(h.getMes());
+    }
+
+    private static Double mediana(TDigest digest) {
+        synchronized (digest) {
+            double mediana = digest.cuantil(0.5);
+            return Double.isNaN(mediana) ? null : mediana;
+        }
+    }
+
+    /**
+     * Resúmenes de un periodo: el total por usuario y el de cada categoría.
+     */
+    private static final class Distribucion {
+
+        private final Instant calculado;
+        private final TDigest total = new TDigest();
+        private final Map<Integer, TDigest> categorias = new HashMap<>();
+        private final Map<Integer, String> nombres = new HashMap<>();
+
+        private Distribucion(Instant calculado) {
+            this.calculado = calculado;
+        }
+
+        private TDigest get(int idCategoria) {
+            return (idCategoria == TODAS) ? total : categorias.get(idCategoria);
+        }
+
+        private byte[] aBytes() {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (DataOutputStream salida = new DataOutputStream(buffer)) {
+                escribir(salida, total);
+                salida.writeInt(categorias.size());
+                for (Map.Entry<Integer, TDigest> e : categorias.entrySet()) {
+                    salida.writeInt(e.getKey());
+                    salida.writeUTF(nombres.get(e.getKey()));
+                    escribir(salida, e.getValue());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buffer.toByteArray();
+        }
+
+        private static Distribucion deBytes(byte[] bytes, Instant calculado) {
+            Distribucion d = new Distribucion(calculado);
+            try (DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                d.total.fusionar(leer(entrada));
+                int numCategorias = entrada.readInt();
+                for (int i = 0; i < numCategorias; i++) {
+                    int id = entrada.readInt();
+                    d.nombres.put(id, entrada.readUTF());
+                    d.categorias.put(id, leer(entrada));
+                }
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Resúmenes de percentiles dañados", e);
+            }
+            return d;
+        }
+
+        private static void escribir(DataOutputStream salida, TDigest digest) throws IOException {
+            byte[] bytes = digest.aBytes();
+            salida.writeInt(bytes.length);
+            salida.write(bytes);
+        }
+
+        private static TDigest leer(DataInputStream entrada) throws IOException {
+            byte[] bytes = new byte[entrada.readInt()];
+            entrada.readFully(bytes);
+            return TDigest.deBytes(bytes);
+        }
+    }
+}
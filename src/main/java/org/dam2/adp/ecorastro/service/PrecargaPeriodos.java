@@ -0,0 +1,248 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
+import org.dam2.adp.ecorastro.model.Huella;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Datos de los periodos de la pantalla de Análisis, con precarga especulativa de los periodos vecinos.
+ * <p>
+ * Tras cargar un periodo, la pantalla pide precargar el anterior y el siguiente: se consultan en un
+ * único hilo de baja prioridad y se guardan en una caché LRU de {@value #PERIODOS_EN_CACHE} periodos,
+ * así que avanzar o retroceder un mes (o una semana, o un día) no espera a la BBDD.
+ * <p>
+ * La precarga nunca compite con la pantalla: usa como mucho una conexión a la vez, cede el paso
+ * mientras haya una carga en primer plano ({@link #obtener}) y cada nueva petición de precarga
+ * cancela la anterior entre consulta y consulta, porque el usuario ya ha saltado a otro periodo.
+ * Cualquier cambio de huellas o de factores vacía la caché y descarta las cargas en curso.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class PrecargaPeriodos implements AutoCloseable {
+
+    private static final int PERIODOS_EN_CACHE = 6;
+
+    /** Espera entre comprobaciones mientras hay una carga en primer plano. */
+    private static final long ESPERA_CEDER_MS = 25;
+
+    /**
+     * Rango de fechas de un periodo.
+     *
+     * @param inicio Primer día (incluido).
+     * @param fin    Último día (incluido).
+     */
+    public record Periodo(LocalDate inicio, LocalDate fin) {
+
+        /**
+         * Mes natural que contiene un día.
+         *
+         * @param dia Día del mes.
+         * @return Del día 1 al último día del mes.
+         */
+        public static Periodo mesDe(LocalDate dia) {
+            return new Periodo(dia.withDayOfMonth(1), dia.withDayOfMonth(dia.lengthOfMonth()));
+        }
+    }
+
+    /**
+     * Datos de un periodo ya consultados.
+     *
+     * @param huellas        Huellas del usuario en el periodo (para la exportación).
+     * @param total          Impacto total del usuario, en kg CO₂.
+     * @param porCategoria   Impacto del usuario por categoría.
+     * @param mediaComunidad Impacto medio de la comunidad por categoría.
+     */
+    public record DatosPeriodo(List<Huella> huellas, double total, Map<String, Double> porCategoria,
+                               Map<String, Double> mediaComunidad) {
+    }
+
+    private record Clave(int idUsuario, Periodo periodo) {
+    }
+
+    private final HuellaService huellaService;
+    private final ExecutorService hilo;
+
+    /** Periodos consultados, en orden de último acceso. */
+    private final Map<Clave, DatosPeriodo> periodos = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Clave, DatosPeriodo> mayor) {
+            return size() > PERIODOS_EN_CACHE;
+        }
+    };
+
+    /** Número de invalidaciones, para descartar cargas que se solapan con un cambio. */
+    private long generacion;
+
+    /** Última petición de precarga; las anteriores se abandonan. */
+    private final AtomicLong peticion = new AtomicLong();
+
+    /** Cargas en primer plano en curso. */
+    private final AtomicInteger primerPlano = new AtomicInteger();
+
+    /**
+     * Crea la precarga y la suscribe a los cambios que invalidan los datos.
+     *
+     * @param huellaService Servicio de huellas.
+     * @param eventBus      Bus de eventos.
+     */
+    public PrecargaPeriodos(HuellaService huellaService, EventBus eventBus) {
+        this.huellaService = huellaService;
+        this.hilo = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ecorastro-precarga");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        eventBus.suscribir(HuellaCreada.class, e -> vaciar());
+        eventBus.suscribir(HuellaActualizada.class, e -> vaciar());
+        eventBus.suscribir(HuellaEliminada.class, e -> vaciar());
+        eventBus.suscribir(ReplicaSincronizada.class, e -> vaciar());
+        eventBus.suscribir(FactoresRecalculados.class, e -> vaciar());
+    }
+
+    /**
+     * Datos de un periodo: de la caché si ya se precargó, si no se consultan en este hilo.
+     * <p>
+     * Mientras dura la consulta la precarga en segundo plano se detiene entre consultas.
+     *
+     * @param idUsuario Id del usuario.
+     * @param periodo   Periodo a cargar.
+     * @return Los datos del periodo.
+     */
+    public DatosPeriodo obtener(int idUsuario, Periodo periodo) {
+        Clave clave = new Clave(idUsuario, periodo);
+        long generacionInicial;
+        synchronized (this) {
+            DatosPeriodo guardado = periodos.get(clave);
+            if (guardado != null) return guardado;
+            generacionInicial = generacion;
+        }
+        primerPlano.incrementAndGet();
+        try {
+            DatosPeriodo datos = consultar(idUsuario, periodo, null);
+            guardar(clave, datos, generacionInicial);
+            return datos;
+        } finally {
+            primerPlano.decrementAndGet();
+        }
+    }
+
+    /**
+     * Precarga en segundo plano los periodos indicados que no estén ya en la caché.
+     * <p>
+     * Abandona cualquier precarga anterior que siga pendiente.
+     *
+     * @param idUsuario Id del usuario.
+     * @param vecinos   Periodos a precargar, en orden de preferencia.
+     */
+    public void precargar(int idUsuario, List<Periodo> vecinos) {
+        long miPeticion = peticion.incrementAndGet();
+        hilo.execute(() -> {
+            for (Periodo periodo : vecinos) {
+                Clave clave = new Clave(idUsuario, periodo);
+                long generacionInicial;
+                synchronized (this) {
+                    if (periodos.containsKey(clave)) continue;
+                    generacionInicial = generacion;
+                }
+                try {
+                    DatosPeriodo datos = consultar(idUsuario, periodo, miPeticion);
+                    if (datos == null) return; // Cancelada
+                    guardar(clave, datos, generacionInicial);
+                } catch (RuntimeException e) {
+                    // Es especulativa: si falla, el periodo se consultará al pedirlo
+                    e.printStackTrace();
+                    return;
+                }
+            }
+        });
+    }
+
+    /**
+     * Abandona la precarga pendiente, por ejemplo al salir de la pantalla.
+     */
+    public void cancelar() {
+        peticion.incrementAndGet();
+    }
+
+    /**
+     * Descarta todos los periodos guardados y las cargas en curso.
+     */
+    public synchronized void vaciar() {
+        periodos.clear();
+        generacion++;
+    }
+
+    /**
+     * Indica si un periodo está en la caché (para las pruebas).
+     *
+     * @param idUsuario Id del usuario.
+     * @param periodo   Periodo.
+     * @return true si está guardado.
+     */
+    synchronized boolean contiene(int idUsuario, Periodo periodo) {
+        return periodos.containsKey(new Clave(idUsuario, periodo));
+    }
+
+    @Override
+    public void close() {
+        cancelar();
+        hilo.shutdownNow();
+    }
+
+    /**
+     * Consulta un periodo. Para la precarga, antes de cada consulta se cede el paso a las cargas en
+     * primer plano y se comprueba que la petición siga vigente.
+     *
+     * @param peticionPrecarga Petición de precarga, o null para una carga en primer plano.
+     * @return Los datos, o null si la precarga se ha cancelado.
+     */
+    private DatosPeriodo consultar(int idUsuario, Periodo p, Long peticionPrecarga) {
+        if (!turno(peticionPrecarga)) return null;
+        List<Huella> huellas = huellaService.getHuellasPorFecha(idUsuario, p.inicio(), p.fin());
+        if (!turno(peticionPrecarga)) return null;
+        double total = huellaService.getTotalImpactoUsuarioFecha(idUsuario, p.inicio(), p.fin());
+        if (!turno(peticionPrecarga)) return null;
+        Map<String, Double> porCategoria = huellaService.getImpactoPorCategoriaUsuario(idUsuario, p.inicio(), p.fin());
+        if (!turno(peticionPrecarga)) return null;
+        Map<String, Double> media = huellaService.getMediaImpactoPorCategoriaFechas(p.inicio(), p.fin());
+        return new DatosPeriodo(List.copyOf(huellas), total, Map.copyOf(porCategoria), Map.copyOf(media));
+    }
+
+    /**
+     * Espera a que no haya cargas en primer plano.
+     *
+     * @return false si la precarga se ha abandonado mientras tanto.
+     */
+    private boolean turno(Long peticionPrecarga) {
+        if (peticionPrecarga == null) return true;
+        while (primerPlano.get() > 0) {
+            if (peticion.get() != peticionPrecarga) return false;
+            try {
+                Thread.sleep(ESPERA_CEDER_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return peticion.get() == peticionPrecarga;
+    }
+
+    private synchronized void guardar(Clave clave, DatosPeriodo datos, long generacionInicial) {
+        if (generacion == generacionInicial) periodos.put(clave, datos);
+    }
+}
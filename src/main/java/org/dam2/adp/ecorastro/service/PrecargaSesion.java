@@ -0,0 +1,73 @@
+package org.dam2.adp.ecorastro.service;
+
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Precarga, nada más iniciar sesión, de los datos con los que trabaja el usuario.
+ * <p>
+ * Mientras se carga la ventana principal, cada consulta va en su propio hilo virtual y deja su
+ * resultado en la caché de sesión correspondiente:
+ * <ul>
+ * <li>Catálogo de actividades, en {@link HuellaService}.</li>
+ * <li>Hábitos del usuario, en {@link HabitoService}.</li>
+ * <li>Huellas y desgloses del mes actual, en {@link PrecargaPeriodos}.</li>
+ * <li>Historial analítico y datos del panel de Inicio, en {@link PanelInicio}.</li>
+ * </ul>
+ * Así la primera pantalla se pinta sin esperar a ninguna consulta propia. Un fallo en una
+ * precarga no afecta a las demás: esos datos se consultarán al pedirlos.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class PrecargaSesion {
+
+    private final HuellaService huellaService;
+    private final HabitoService habitoService;
+    private final PrecargaPeriodos precargaPeriodos;
+    private final PanelInicio panelInicio;
+
+    /**
+     * Crea la precarga con las cachés a rellenar.
+     *
+     * @param huellaService    Servicio de huellas (catálogo).
+     * @param habitoService    Servicio de hábitos.
+     * @param precargaPeriodos Periodos de Análisis.
+     * @param panelInicio      Panel de Inicio.
+     */
+    public PrecargaSesion(HuellaService huellaService, HabitoService habitoService,
+                          PrecargaPeriodos precargaPeriodos, PanelInicio panelInicio) {
+        this.huellaService = huellaService;
+        this.habitoService = habitoService;
+        this.precargaPeriodos = precargaPeriodos;
+        this.panelInicio = panelInicio;
+    }
+
+    /**
+     * Lanza en paralelo todas las precargas de un usuario y vuelve sin esperarlas.
+     *
+     * @param idUsuario Usuario que acaba de iniciar sesión.
+     * @return Se completa cuando han terminado todas (con o sin error).
+     */
+    public CompletableFuture<Void> lanzar(int idUsuario) {
+        ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor();
+        CompletableFuture<?>[] tareas = {
+                CompletableFuture.runAsync(huellaService::getAllActividades, hilos),
+                CompletableFuture.runAsync(() -> habitoService.getHabitosByUsuario(idUsuario), hilos),
+                CompletableFuture.runAsync(() ->
+                        precargaPeriodos.obtener(idUsuario, PrecargaPeriodos.Periodo.mesDe(LocalDate.now())), hilos),
+                panelInicio.precalcular(idUsuario, hilos)
+        };
+        // Las tareas ya enviadas terminan; el ejecutor se libera cuando acaban
+        hilos.shutdown();
+        for (CompletableFuture<?> tarea : tareas) {
+            tarea.exceptionally(e -> {
+                e.printStackTrace();
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(tareas).handle((r, e) -> null);
+    }
+}
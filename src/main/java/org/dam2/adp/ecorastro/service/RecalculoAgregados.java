@@ -0,0 +1,467 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.util.ArchivoHuellas;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.SegmentoHuellas;
+import org.hibernate.Session;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Proceso por lotes que recalcula la tabla {@code agregado_mensual} (impacto por usuario, mes y
+ * categoría) para todos los usuarios.
+ * <p>
+ * Los usuarios se reparten en rangos de ids (particiones). Cada partición se procesa en un
+ * {@link ForkJoinPool} con su propia sesión: lee sus huellas por streaming, las agrega en memoria y
+ * sustituye sus agregados en una única transacción (borrado del rango más inserción por lotes).
+ * <p>
+ * Las particiones terminadas se anotan en un archivo de punto de control; si el proceso se
+ * interrumpe o alguna partición falla, al relanzarlo solo se repiten las que faltan. El archivo se
+ * borra cuando termina sin fallos.
+ * <p>
+ * Si se le da un {@link ArchivoHuellas}, las huellas archivadas de cada usuario se suman a las de
+ * la BBDD, igual que en las consultas de {@link org.dam2.adp.ecorastro.DAO.HuellaDAO}.
+ * <p>
+ * Uso desde línea de comandos: {@code RecalculoAgregados [paralelismo] [usuariosPorParticion]}; el
+ * archivo se abre desde {@code -Decorastro.archivo.ruta} si se indica.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class RecalculoAgregados {
+
+    private static final String ESQUEMA = "ecorastro_db.";
+
+    private static final String SQL_RANGO_USUARIOS = "SELECT MIN(id_usuario), MAX(id_usuario) FROM " + ESQUEMA + "usuario";
+
+    private static final String SQL_HUELLAS_PARTICION =
+            "SELECT h.id_usuario, h.mes, h.fecha, a.id_categoria, " +
+                    "COALESCE(h.impacto_kg, h.valor * COALESCE(h.factor_emision, c.factor_emision)) " +
+                    "FROM " + ESQUEMA + "huella h " +
+                    "JOIN " + ESQUEMA + "actividad a ON a.id_actividad = h.id_actividad " +
+                    "JOIN " + ESQUEMA + "categoria c ON c.id_categoria = a.id_categoria " +
+                    "WHERE h.id_usuario BETWEEN ? AND ?";
+
+    private static final String SQL_CATALOGO =
+            "SELECT a.id_actividad, a.id_categoria, c.factor_emision FROM " + ESQUEMA + "actividad a " +
+                    "JOIN " + ESQUEMA + "categoria c ON c.id_categoria = a.id_categoria";
+
+    private static final String SQL_BORRAR_PARTICION =
+            "DELETE FROM " + ESQUEMA + "agregado_mensual WHERE id_usuario BETWEEN ? AND ?";
+
+    private static final String SQL_INSERTAR =
+            "INSERT INTO " + ESQUEMA + "agregado_mensual (id_usuario, mes, id_categoria, impacto_kg, num_huellas, calculado) " +
+                    "VALUES (?, ?, ?, ?, ?, ?)";
+
+    /** Filas por cada {@code executeBatch}. */
+    private static final int TAM_LOTE = 1_000;
+
+    /** Filas que se piden a la vez a BBDD distintas de MySQL. */
+    private static final int FILAS_POR_LECTURA = 10_000;
+
+    /** Ubicación por defecto del punto de control. */
+    private static final Path RUTA_PUNTO_CONTROL =
+            Path.of(System.getProperty("user.home"), ".ecorastro", "recalculo-agregados.ckpt");
+
+    /**
+     * Estado del proceso, notificado tras cada partición y devuelto al terminar.
+     *
+     * @param particionesHechas   Particiones terminadas (incluidas las de ejecuciones anteriores).
+     * @param particionesFallidas Particiones que han fallado en esta ejecución.
+     * @param particionesTotales  Número total de particiones.
+     * @param huellas             Huellas leídas en esta ejecución.
+     * @param agregados           Agregados escritos en esta ejecución.
+     */
+    public record Progreso(int particionesHechas, int particionesFallidas, int particionesTotales,
+                           long huellas, long agregados) {
+    }
+
+    /** Rango de ids de usuario, ambos incluidos. */
+    private record Particion(int desde, int hasta) {
+    }
+
+    /** Grupo de agregación. */
+    private record Clave(int idUsuario, int mes, int idCategoria) {
+    }
+
+    /** Categoría y factor actual de una actividad, para las huellas archivadas. */
+    private record ActividadCatalogo(int idCategoria, double factorCategoria) {
+    }
+
+    /** Suma de un grupo. */
+    private static final class Suma {
+        double impacto;
+        int huellas;
+    }
+
+    private final Supplier<Connection> conexion;
+    private final int paralelismo;
+    private final int usuariosPorParticion;
+    private final Path puntoControl;
+    private final ArchivoHuellas archivo;
+
+    /** Catálogo de actividades, cargado al empezar si hay archivo. */
+    private Map<Integer, ActividadCatalogo> catalogo = Map.of();
+
+    private final AtomicInteger hechas = new AtomicInteger();
+    private final AtomicInteger fallidas = new AtomicInteger();
+    private final AtomicLong huellasLeidas = new AtomicLong();
+    private final AtomicLong agregadosEscritos = new AtomicLong();
+
+    /**
+     * Crea el proceso.
+     *
+     * @param conexion             Proveedor de la conexión (debe admitir varias sesiones a la vez).
+     * @param paralelismo          Particiones que se procesan a la vez.
+     * @param usuariosPorParticion Ids de usuario por partición.
+     * @param puntoControl         Archivo de punto de control.
+     */
+    public RecalculoAgregados(Supplier<Connection> conexion, int paralelismo, int usuariosPorParticion, Path puntoControl) {
+        this(conexion, paralelismo, usuariosPorParticion, puntoControl, null);
+    }
+
+    /**
+     * Crea el proceso sumando también las huellas archivadas.
+     *
+     * @param conexion             Proveedor de la conexión (debe admitir varias sesiones a la vez).
+     * @param paralelismo          Particiones que se procesan a la vez.
+     * @param usuariosPorParticion Ids de usuario por partición.
+     * @param puntoControl         Archivo de punto de control.
+     * @param archivo              Archivo de huellas antiguas, o null si no hay.
+     */
+    public RecalculoAgregados(Supplier<Connection> conexion, int paralelismo, int usuariosPorParticion, Path puntoControl,
+                              ArchivoHuellas archivo) {
+        if (paralelismo < 1 || usuariosPorParticion < 1) {
+            throw new IllegalArgumentException("El paralelismo y el tamaño de partición deben ser positivos");
+        }
+        this.conexion = conexion;
+        this.paralelismo = paralelismo;
+        this.usuariosPorParticion = usuariosPorParticion;
+        this.puntoControl = puntoControl;
+        this.archivo = archivo;
+    }
+
+    /**
+     * Recalcula los agregados de todos los usuarios, continuando desde el punto de control si existe.
+     *
+     * @param progreso Receptor del progreso; se llama desde los hilos del proceso.
+     * @return El estado final.
+     * @throws IOException Si no se puede leer o escribir el punto de control.
+     */
+    public Progreso ejecutar(Consumer<Progreso> progreso) throws IOException {
+        List<Particion> particiones = getParticiones();
+        if (archivo != null && archivo.getNumFilas() > 0) {
+            catalogo = getCatalogo();
+        }
+        Set<Integer> terminadas = leerPuntoControl();
+        List<Particion> pendientes = new ArrayList<>();
+        for (Particion p : particiones) {
+            if (!terminadas.contains(p.desde())) pendientes.add(p);
+        }
+        hechas.set(particiones.size() - pendientes.size());
+
+        ForkJoinPool pool = new ForkJoinPool(paralelismo);
+        try {
+            pool.invoke(new Tarea(pendientes, 0, pendientes.size(), particiones.size(), progreso));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        Progreso fin = estado(particiones.size());
+        if (fin.particionesFallidas() == 0) {
+            Files.deleteIfExists(puntoControl);
+        }
+        return fin;
+    }
+
+    /**
+     * Divide las particiones pendientes hasta llegar a una por tarea. Nunca se serializa.
+     */
+    @SuppressWarnings("serial")
+    private class Tarea extends RecursiveAction {
+        private final List<Particion> particiones;
+        private final int desde;
+        private final int hasta;
+        private final int totales;
+        private final Consumer<Progreso> progreso;
+
+        Tarea(List<Particion> particiones, int desde, int hasta, int totales, Consumer<Progreso> progreso) {
+            this.particiones = particiones;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.totales = totales;
+            this.progreso = progreso;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde > 1) {
+                int medio = (desde + hasta) >>> 1;
+                invokeAll(new Tarea(particiones, desde, medio, totales, progreso),
+                        new Tarea(particiones, medio, hasta, totales, progreso));
+            } else if (hasta > desde) {
+                Particion p = particiones.get(desde);
+                if (procesar(p)) {
+                    anotarPuntoControl(p);
+                    hechas.incrementAndGet();
+                } else {
+                    fallidas.incrementAndGet();
+                }
+                progreso.accept(estado(totales));
+            }
+        }
+    }
+
+    /**
+     * Recalcula una partición.
+     *
+     * @return false si ha fallado (queda como estaba).
+     */
+    private boolean procesar(Particion p) {
+        try (Session session = conexion.get().getSession()) {
+            session.doWork(con -> {
+                boolean mysql = con.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+                Map<Clave, Suma> sumas = new HashMap<>();
+                long leidas = 0;
+
+                try (PreparedStatement ps = con.prepareStatement(SQL_HUELLAS_PARTICION,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    // En MySQL, Integer.MIN_VALUE hace que el resultado llegue por streaming en lugar de cargarse entero
+                    ps.setFetchSize(mysql ? Integer.MIN_VALUE : FILAS_POR_LECTURA);
+                    ps.setInt(1, p.desde());
+                    ps.setInt(2, p.hasta());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            int mes = rs.getInt(2);
+                            if (rs.wasNull()) {
+                                Timestamp fecha = rs.getTimestamp(3);
+                                if (fecha == null) continue;
+                                mes = FechaUtil.claveMes(fecha.toInstant());
+                            }
+                            Suma suma = sumas.computeIfAbsent(new Clave(rs.getInt(1), mes, rs.getInt(4)), c -> new Suma());
+                            suma.impacto += rs.getDouble(5);
+                            suma.huellas++;
+                            leidas++;
+                        }
+                    }
+                }
+                leidas += sumarArchivadas(p, sumas);
+
+                boolean autoCommit = con.getAutoCommit();
+                con.setAutoCommit(false);
+                try (PreparedStatement borrar = con.prepareStatement(SQL_BORRAR_PARTICION);
+                     PreparedStatement insertar = con.prepareStatement(SQL_INSERTAR)) {
+                    borrar.setInt(1, p.desde());
+                    borrar.setInt(2, p.hasta());
+                    borrar.executeUpdate();
+
+                    Timestamp ahora = Timestamp.from(Instant.now());
+                    int enLote = 0;
+                    for (Map.Entry<Clave, Suma> e : sumas.entrySet()) {
+                        insertar.setInt(1, e.getKey().idUsuario());
+                        insertar.setInt(2, e.getKey().mes());
+                        insertar.setInt(3, e.getKey().idCategoria());
+                        insertar.setDouble(4, e.getValue().impacto);
+                        insertar.setInt(5, e.getValue().huellas);
+                        insertar.setTimestamp(6, ahora);
+                        insertar.addBatch();
+                        if (++enLote == TAM_LOTE) {
+                            insertar.executeBatch();
+                            enLote = 0;
+                        }
+                    }
+                    if (enLote > 0) insertar.executeBatch();
+                    con.commit();
+                } catch (SQLException | RuntimeException e) {
+                    con.rollback();
+                    throw e;
+                } finally {
+                    con.setAutoCommit(autoCommit);
+                }
+
+                huellasLeidas.addAndGet(leidas);
+                agregadosEscritos.addAndGet(sumas.size());
+            });
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Suma a los grupos las huellas archivadas de los usuarios de una partición.
+     * <p>
+     * El impacto se calcula como en {@link #SQL_HUELLAS_PARTICION}: el guardado o, si no hay,
+     * el valor por el factor de la huella o, en su defecto, el actual de la categoría.
+     *
+     * @return Número de huellas archivadas sumadas.
+     */
+    private long sumarArchivadas(Particion p, Map<Clave, Suma> sumas) {
+        if (catalogo.isEmpty()) return 0;
+        long leidas = 0;
+        for (long id = p.desde(); id <= p.hasta(); id++) {
+            for (SegmentoHuellas.Fila f : archivo.getFilas((int) id, Integer.MIN_VALUE, Integer.MAX_VALUE)) {
+                ActividadCatalogo actividad = catalogo.get(f.idActividad());
+                if (actividad == null) continue;
+                double impacto = !Double.isNaN(f.impacto()) ? f.impacto()
+                        : f.valor() * (!Double.isNaN(f.factor()) ? f.factor() : actividad.factorCategoria());
+                int mes = FechaUtil.claveMes(LocalDate.ofEpochDay(f.dia()));
+                Suma suma = sumas.computeIfAbsent(new Clave(f.idUsuario(), mes, actividad.idCategoria()), c -> new Suma());
+                suma.impacto += impacto;
+                suma.huellas++;
+                leidas++;
+            }
+        }
+        return leidas;
+    }
+
+    /**
+     * Carga la categoría y el factor de cada actividad.
+     */
+    private Map<Integer, ActividadCatalogo> getCatalogo() {
+        Map<Integer, ActividadCatalogo> actividades = new HashMap<>();
+        try (Session session = conexion.get().getSession()) {
+            session.doWork(con -> {
+                try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(SQL_CATALOGO)) {
+                    while (rs.next()) {
+                        actividades.put(rs.getInt(1), new ActividadCatalogo(rs.getInt(2), rs.getDouble(3)));
+                    }
+                }
+            });
+        }
+        return actividades;
+    }
+
+    /**
+     * Reparte el rango de ids de usuario en particiones.
+     */
+    private List<Particion> getParticiones() {
+        List<Particion> particiones = new ArrayList<>();
+        try (Session session = conexion.get().getSession()) {
+            session.doWork(con -> {
+                try (Statement st = con.createStatement(); ResultSet rs = st.executeQuery(SQL_RANGO_USUARIOS)) {
+                    if (!rs.next()) return;
+                    int min = rs.getInt(1);
+                    if (rs.wasNull()) return;
+                    int max = rs.getInt(2);
+                    for (long desde = min; desde <= max; desde += usuariosPorParticion) {
+                        particiones.add(new Particion((int) desde, (int) Math.min(max, desde + usuariosPorParticion - 1)));
+                    }
+                }
+            });
+        }
+        return particiones;
+    }
+
+    private Progreso estado(int totales) {
+        return new Progreso(hechas.get(), fallidas.get(), totales, huellasLeidas.get(), agregadosEscritos.get());
+    }
+
+    // ==========================================
+    // PUNTO DE CONTROL
+    // ==========================================
+
+    /**
+     * Lee las particiones ya terminadas (por su primer id). La primera línea guarda el tamaño de
+     * partición; si no coincide con el actual, el punto de control no sirve y se empieza de cero.
+     */
+    private Set<Integer> leerPuntoControl() throws IOException {
+        Set<Integer> terminadas = new HashSet<>();
+        if (!Files.exists(puntoControl)) {
+            return terminadas;
+        }
+        List<String> lineas = Files.readAllLines(puntoControl, StandardCharsets.UTF_8);
+        if (lineas.isEmpty() || !lineas.get(0).equals(cabeceraPuntoControl())) {
+            Files.delete(puntoControl);
+            return terminadas;
+        }
+        for (String linea : lineas.subList(1, lineas.size())) {
+            // Una línea a medio escribir (proceso cortado) se ignora
+            try {
+                terminadas.add(Integer.parseInt(linea.trim()));
+            } catch (NumberFormatException ignorada) {
+            }
+        }
+        return terminadas;
+    }
+
+    private synchronized void anotarPuntoControl(Particion p) {
+        try {
+            if (!Files.exists(puntoControl)) {
+                Files.createDirectories(puntoControl.toAbsolutePath().getParent());
+                Files.writeString(puntoControl, cabeceraPuntoControl() + "\n", StandardCharsets.UTF_8);
+            }
+            Files.writeString(puntoControl, p.desde() + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String cabeceraPuntoControl() {
+        return "usuariosPorParticion=" + usuariosPorParticion;
+    }
+
+    /**
+     * Recalcula los agregados de la BBDD principal.
+     *
+     * @param args {@code [paralelismo] [usuariosPorParticion]} (por defecto, los núcleos de la CPU y 500).
+     */
+    public static void main(String[] args) {
+        ArchivoHuellas archivo = null;
+        try {
+            int paralelismo = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+            int usuariosPorParticion = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+            String rutaArchivo = System.getProperty("ecorastro.archivo.ruta");
+            archivo = (rutaArchivo != null) ? new ArchivoHuellas(Path.of(rutaArchivo)) : null;
+            RecalculoAgregados recalculo = new RecalculoAgregados(Connection::getInstance, paralelismo,
+                    usuariosPorParticion, RUTA_PUNTO_CONTROL, archivo);
+
+            long inicio = System.nanoTime();
+            Progreso fin = recalculo.ejecutar(p -> System.out.printf("Particiones %d/%d (%d fallidas), %d huellas, %d agregados%n",
+                    p.particionesHechas(), p.particionesTotales(), p.particionesFallidas(), p.huellas(), p.agregados()));
+            System.out.printf("Terminado en %d ms%n", (System.nanoTime() - inicio) / 1_000_000);
+            if (fin.particionesFallidas() > 0) {
+                System.err.println("Hay particiones fallidas: vuelva a lanzar el proceso para reintentarlas");
+                System.exit(1);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Uso: RecalculoAgregados [paralelismo] [usuariosPorParticion]");
+            System.exit(2);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            if (archivo != null) archivo.close();
+            Connection.cerrarSiIniciada();
+        }
+    }
+}
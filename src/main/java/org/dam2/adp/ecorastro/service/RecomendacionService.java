@@ -17,9 +17,22 @@ import java.util.Random;
  */
 public class RecomendacionService {
 
-    private final RecomendacionDAO recomendacionDAO = new RecomendacionDAO();
+    private final RecomendacionDAO recomendacionDAO;
     private final Random random = new Random();
 
+    public RecomendacionService() {
+        this(new RecomendacionDAO());
+    }
+
+    /**
+     * Crea el servicio con un DAO compartido.
+     *
+     * @param recomendacionDAO DAO de recomendaciones.
+     */
+    public RecomendacionService(RecomendacionDAO recomendacionDAO) {
+        this.recomendacionDAO = recomendacionDAO;
+    }
+
     /**
      * Genera un consejo aleatorio relacionado con una categoría específica.
      * <p>
@@ -0,0 +1,133 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.util.Resolucion;
+import org.dam2.adp.ecorastro.util.Submuestreo;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Series temporales del impacto de un usuario para los gráficos de evolución.
+ * <p>
+ * La resolución se elige según la longitud del rango: diaria hasta unos cuatro años, semanal hasta
+ * veinte, mensual hasta cien y anual por encima. Los tramos se agrupan en la BBDD (o en la caché
+ * analítica), nunca cargando las huellas, y los tramos sin huellas se rellenan con 0. Si aun así
+ * salen más puntos de los que caben en el gráfico, se reducen con LTTB ({@link Submuestreo#lttb}),
+ * que conserva los picos.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class SeriesTemporalesService {
+
+    /** Puntos máximos que se envían a un gráfico. */
+    public static final int MAX_PUNTOS = 300;
+
+    private static final long MAX_DIAS_DIARIA = 4 * 366;
+    private static final long MAX_DIAS_SEMANAL = 20 * 366;
+    private static final long MAX_DIAS_MENSUAL = 100 * 366;
+
+    private final HuellaService huellaService;
+
+    /**
+     * Punto de una serie.
+     *
+     * @param inicio Primer día del tramo.
+     * @param valor  Impacto del tramo (kg CO₂).
+     */
+    public record Punto(LocalDate inicio, double valor) {
+    }
+
+    /**
+     * Serie lista para dibujar.
+     *
+     * @param resolucion Tamaño de los tramos.
+     * @param puntos     Puntos en orden (vacía si no hay huellas en el rango).
+     */
+    public record Serie(Resolucion resolucion, List<Punto> puntos) {
+    }
+
+    /**
+     * Crea el servicio.
+     *
+     * @param huellaService Servicio de huellas del que se leen los tramos agrupados.
+     */
+    public SeriesTemporalesService(HuellaService huellaService) {
+        this.huellaService = huellaService;
+    }
+
+    /**
+     * Serie del impacto de un usuario con como mucho {@value #MAX_PUNTOS} puntos.
+     *
+     * @param idUsuario Id del usuario.
+     * @param inicio    Primer día (incluido).
+     * @param fin       Último día (incluido); los días futuros no se dibujan.
+     * @return La serie.
+     */
+    public Serie getSerie(int idUsuario, LocalDate inicio, LocalDate fin) {
+        return getSerie(idUsuario, inicio, fin, MAX_PUNTOS);
+    }
+
+    /**
+     * Serie del impacto de un usuario.
+     *
+     * @param idUsuario Id del usuario.
+     * @param inicio    Primer día (incluido).
+     * @param fin       Último día (incluido); los días futuros no se dibujan.
+     * @param maxPuntos Puntos máximos (al menos 3).
+     * @return La serie.
+     */
+    public Serie getSerie(int idUsuario, LocalDate inicio, LocalDate fin, int maxPuntos) {
+        LocalDate hoy = LocalDate.now();
+        if (fin.isAfter(hoy)) fin = hoy;
+        if (fin.isBefore(inicio)) return new Serie(Resolucion.DIA, List.of());
+
+        Resolucion resolucion = elegirResolucion(inicio, fin);
+        Map<Integer, Double> tramos = null;
+        if (resolucion != Resolucion.DIA) {
+            // Los rangos largos ("todo el historial") empiezan en el primer mes con huellas
+            Map<Integer, Double> porMes = huellaService.getSerieUsuario(idUsuario, Resolucion.MES, inicio, fin);
+            if (porMes.isEmpty()) return new Serie(resolucion, List.of());
+            LocalDate primerMes = LocalDate.ofEpochDay(porMes.keySet().iterator().next());
+            if (primerMes.isAfter(inicio)) inicio = primerMes;
+            resolucion = elegirResolucion(inicio, fin);
+            if (resolucion == Resolucion.MES) tramos = porMes;
+        }
+        if (tramos == null) tramos = huellaService.getSerieUsuario(idUsuario, resolucion, inicio, fin);
+
+        List<LocalDate> inicios = new ArrayList<>();
+        for (LocalDate t = resolucion.inicioTramo(inicio); !t.isAfter(fin); t = resolucion.siguiente(t)) {
+            inicios.add(t);
+        }
+        double[] x = new double[inicios.size()];
+        double[] y = new double[inicios.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = inicios.get(i).toEpochDay();
+            y[i] = tramos.getOrDefault((int) x[i], 0.0);
+        }
+
+        List<Punto> puntos = new ArrayList<>();
+        for (int i : Submuestreo.lttb(x, y, maxPuntos)) {
+            puntos.add(new Punto(inicios.get(i), y[i]));
+        }
+        return new Serie(resolucion, puntos);
+    }
+
+    /**
+     * Resolución de un rango según su longitud.
+     *
+     * @param inicio Primer día.
+     * @param fin    Último día.
+     * @return La resolución más fina que no da series excesivas.
+     */
+    static Resolucion elegirResolucion(LocalDate inicio, LocalDate fin) {
+        long dias = ChronoUnit.DAYS.between(inicio, fin) + 1;
+        if (dias <= MAX_DIAS_DIARIA) return Resolucion.DIA;
+        if (dias <= MAX_DIAS_SEMANAL) return Resolucion.SEMANA;
+        if (dias <= MAX_DIAS_MENSUAL) return Resolucion.MES;
+        return Resolucion.ANIO;
+    }
+}
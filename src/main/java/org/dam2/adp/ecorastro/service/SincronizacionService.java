@@ -0,0 +1,600 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HabitoDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.DAO.ReplicaDAO;
+import org.dam2.adp.ecorastro.DAO.ResultadoEscritura;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.HabitoCambiado;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.CambioPendiente;
+import org.dam2.adp.ecorastro.model.EstadoReplica;
+import org.dam2.adp.ecorastro.model.Habito;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.SessionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Sincroniza la réplica local (BBDD embebida) con el servidor MySQL.
+ * <p>
+ * La réplica guarda las huellas y hábitos del usuario de la sesión y el catálogo de actividades,
+ * de modo que las pantallas leen de disco local y siguen funcionando sin conexión.
+ * <ul>
+ * <li><b>Bajada:</b> solo se piden las huellas con {@code modificado} posterior a la última sincronización
+ * (con un margen por desfase de relojes); los borrados se detectan comparando ids. Los hábitos,
+ * al ser pocos, se sustituyen enteros.</li>
+ * <li><b>Subida:</b> las ediciones y borrados hechos sin conexión se guardan como {@link CambioPendiente}
+ * y se envían en la siguiente sincronización.</li>
+ * <li><b>Conflictos:</b> las escrituras usan la versión de la huella. Si otro equipo la cambió,
+ * se fusiona campo a campo contra la base común (fusión a tres bandas); si ambos cambiaron
+ * el mismo campo, gana el cambio más reciente. Un borrado no se aplica sobre una huella
+ * editada después en el servidor.</li>
+ * </ul>
+ * Las nuevas huellas siguen entrando por {@link HuellaService#addHuella} (y su escritura diferida);
+ * la réplica las recibe a través de los eventos una vez tienen id.
+ * <p>
+ * La sincronización completa corre en el hilo del planificador. Las llamadas al servidor se hacen
+ * sin cerrojo; solo la lectura y la fusión sobre la réplica (y sus cambios pendientes) se hacen con
+ * {@link #cerrojoReplica}, así que una edición no espera a que termine una sincronización en curso.
+ * Si una huella se vuelve a editar mientras se sube su cambio pendiente, el resultado de esa subida
+ * no se aplica y el cambio nuevo se sube en la siguiente.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class SincronizacionService implements AutoCloseable {
+
+    /** Margen hacia atrás al pedir cambios, por si el reloj de otro equipo va retrasado. */
+    private static final Duration MARGEN_RELOJ = Duration.ofMinutes(5);
+
+    /** Intervalo de la sincronización periódica. */
+    private static final long PERIODO_SEGUNDOS = 60;
+
+    /** Reintentos de fusión si el servidor sigue cambiando mientras se escribe. */
+    private static final int MAX_INTENTOS_FUSION = 3;
+
+    private final HuellaDAO huellaDAO;
+    private final HabitoDAO habitoDAO;
+    private final ActividadDAO actividadDAO;
+
+    private final ReplicaDAO replicaDAO;
+    private final HuellaDAO huellaLocalDAO;
+    private final HabitoDAO habitoLocalDAO;
+    private final ActividadDAO actividadLocalDAO;
+
+    private final EventBus eventBus;
+    private final ScheduledExecutorService planificador;
+
+    /** Protege la réplica y sus cambios pendientes. Nunca se mantiene durante una llamada al servidor. */
+    private final Object cerrojoReplica = new Object();
+
+    /** Usuarios cuyos datos ya están en la réplica. */
+    private final Set<Integer> replicasListas = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Crea el servicio de sincronización.
+     *
+     * @param huellaDAO    DAO de huellas del servidor.
+     * @param habitoDAO    DAO de hábitos del servidor.
+     * @param actividadDAO DAO de actividades del servidor.
+     * @param replica      Proveedor de la conexión con la réplica local.
+     * @param eventBus     Bus de eventos; se escucha para mantener la réplica al día y se publican las bajadas.
+     */
+    public SincronizacionService(HuellaDAO huellaDAO, HabitoDAO habitoDAO, ActividadDAO actividadDAO,
+                                 Supplier<Connection> replica, EventBus eventBus) {
+        this.huellaDAO = huellaDAO;
+        this.habitoDAO = habitoDAO;
+        this.actividadDAO = actividadDAO;
+        this.replicaDAO = new ReplicaDAO(replica);
+        this.huellaLocalDAO = new HuellaDAO(replica, huellaDAO.getArchivo());
+        this.habitoLocalDAO = new HabitoDAO(replica);
+        this.actividadLocalDAO = new ActividadDAO(replica);
+        this.eventBus = eventBus;
+        this.planificador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "ecorastro-sincronizacion");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+
+        eventBus.suscribir(HuellaCreada.class, e -> reflejarHuella(e.huella()));
+        eventBus.suscribir(HuellaActualizada.class, e -> reflejarHuella(e.huella()));
+        eventBus.suscribir(HuellaEliminada.class, e -> reflejar(() -> replicaDAO.borrarHuellas(List.of(e.huella().getId())), e.huella().getId() != null));
+        eventBus.suscribir(HabitoCambiado.class, e -> reflejar(() -> {
+            if (e.eliminado()) replicaDAO.borrarHabito(e.habito());
+            else replicaDAO.guardarHabitos(List.of(e.habito()));
+        }, true));
+    }
+
+    /** DAO de huellas sobre la réplica. */
+    public HuellaDAO getHuellaLocalDAO() {
+        return huellaLocalDAO;
+    }
+
+    /** DAO de hábitos sobre la réplica. */
+    public HabitoDAO getHabitoLocalDAO() {
+        return habitoLocalDAO;
+    }
+
+    /** DAO de actividades sobre la réplica. */
+    public ActividadDAO getActividadLocalDAO() {
+        return actividadLocalDAO;
+    }
+
+    /**
+     * Arranca la sincronización periódica del usuario de la sesión.
+     */
+    public void iniciar() {
+        planificador.scheduleWithFixedDelay(this::sincronizarUsuarioActual, PERIODO_SEGUNDOS, PERIODO_SEGUNDOS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Pide una sincronización en segundo plano del usuario de la sesión.
+     */
+    public void solicitarSincronizacion() {
+        if (!planificador.isShutdown()) {
+            planificador.execute(this::sincronizarUsuarioActual);
+        }
+    }
+
+    /**
+     * Indica si los datos de un usuario ya están en la réplica y pueden leerse de ella.
+     *
+     * @param idUsuario Id del usuario.
+     * @return true si ya se descargaron al menos una vez.
+     */
+    public boolean isReplicaLista(int idUsuario) {
+        if (replicasListas.contains(idUsuario)) return true;
+        try {
+            if (replicaDAO.getEstado(idUsuario) != null) {
+                replicasListas.add(idUsuario);
+                return true;
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudo abrir la réplica local: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Sube los cambios pendientes y descarga los del servidor para un usuario.
+     *
+     * @param usuario Usuario de la sesión.
+     * @return true si la sincronización se completó; false si no hay conexión o falló.
+     */
+    public boolean sincronizar(Usuario usuario) {
+        int idUsuario = usuario.getId();
+        Instant inicio = Instant.now();
+        try {
+            if (!subirCambiosPendientes()) {
+                return false;
+            }
+
+            // Lecturas del servidor, sin cerrojo
+            EstadoReplica estado;
+            synchronized (cerrojoReplica) {
+                estado = replicaDAO.getEstado(idUsuario);
+            }
+            Instant desde = (estado == null) ? Instant.EPOCH : estado.getUltimaSincronizacion().minus(MARGEN_RELOJ);
+            List<Actividad> catalogo = actividadDAO.getAllActividades();
+            List<Huella> remotas = huellaDAO.getHuellasUsuarioModificadasDesde(idUsuario, desde);
+            List<Integer> idsServidor = huellaDAO.getIdsHuellasUsuario(idUsuario);
+            List<Habito> habitosServidor = habitoDAO.getHabitosByUsuario(idUsuario);
+
+            List<Huella> modificadas;
+            Set<Integer> borradas;
+            boolean habitosCambiados;
+            synchronized (cerrojoReplica) {
+                replicaDAO.guardarCatalogo(catalogo);
+                replicaDAO.guardarUsuario(usuario);
+                Set<Integer> conCambiosLocales = replicaDAO.getCambiosPendientes().stream()
+                        .map(CambioPendiente::getIdRegistro)
+                        .collect(Collectors.toSet());
+
+                // 1. Huellas nuevas o modificadas, sin pisar las que tienen cambios locales sin subir
+                //    ni reescribir las que ya estaban al día (entran por el margen de reloj)
+                Map<Integer, Long> versionesLocales = replicaDAO.getVersionesHuellas(idUsuario);
+                modificadas = remotas.stream()
+                        .filter(h -> !conCambiosLocales.contains(h.getId()))
+                        .filter(h -> !Objects.equals(versionesLocales.get(h.getId()), h.getVersion()))
+                        .toList();
+                replicaDAO.guardarHuellas(modificadas);
+
+                // 2. Huellas borradas en el servidor
+                borradas = new HashSet<>(versionesLocales.keySet());
+                borradas.removeAll(idsServidor);
+                borradas.removeAll(conCambiosLocales);
+                replicaDAO.borrarHuellas(borradas);
+
+                // 3. Hábitos
+                habitosCambiados = !mismaLista(habitosServidor, habitoLocalDAO.getHabitosByUsuario(idUsuario));
+                if (habitosCambiados) {
+                    replicaDAO.reemplazarHabitos(idUsuario, habitosServidor);
+                }
+
+                replicaDAO.guardarEstado(new EstadoReplica(idUsuario, inicio));
+            }
+            replicasListas.add(idUsuario);
+
+            if (estado == null || !modificadas.isEmpty() || !borradas.isEmpty() || habitosCambiados) {
+                eventBus.publicar(new ReplicaSincronizada(idUsuario));
+            }
+            return true;
+        } catch (Exception e) {
+            System.err.println("Sincronización aplazada: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Guarda la edición de una huella: en el servidor si hay conexión (fusionando si hubo
+     * cambios concurrentes) o solo en la réplica si no la hay, para subirla más tarde.
+     *
+     * @param huella Huella editada, con la versión que tenía al leerla.
+     * @return true si el cambio quedó guardado (en el servidor o en local).
+     */
+    public boolean actualizarHuella(Huella huella) {
+        CambioPendiente pendiente;
+        Huella base;
+        synchronized (cerrojoReplica) {
+            pendiente = leerCambioPendiente(huella.getId());
+            base = (pendiente != null) ? baseDe(pendiente) : leerHuellaLocal(huella.getId());
+        }
+        Instant momentoLocal = Instant.now();
+
+        if (base == null) {
+            // La huella no está en la réplica: solo se puede escribir directamente en el servidor
+            boolean actualizada = huellaDAO.actualizarHuellaVersionada(huella) == ResultadoEscritura.CORRECTO;
+            if (actualizada) eventBus.publicar(new HuellaActualizada(huella));
+            return actualizada;
+        }
+
+        if (pendiente != null) {
+            // Hay cambios anteriores sin subir: se encadena este sobre ellos
+            huella.setVersion(pendiente.getVersionBase());
+        }
+
+        ResultadoEscritura resultado = subirActualizacion(huella, base, momentoLocal);
+        switch (resultado) {
+            case CORRECTO -> {
+                synchronized (cerrojoReplica) {
+                    replicaDAO.guardarHuellas(List.of(huella));
+                    replicaDAO.borrarCambioPendiente(huella.getId());
+                }
+                eventBus.publicar(new HuellaActualizada(huella));
+                return true;
+            }
+            case ERROR -> {
+                // Sin conexión: se guarda en local y se anota para subirlo después
+                synchronized (cerrojoReplica) {
+                    replicaDAO.guardarHuellas(List.of(huella));
+                    CambioPendiente cambio = (pendiente != null) ? pendiente : new CambioPendiente(CambioPendiente.ACTUALIZACION, base);
+                    cambio.setModificado(momentoLocal);
+                    replicaDAO.guardarCambioPendiente(cambio);
+                }
+                eventBus.publicar(new HuellaActualizada(huella));
+                return true;
+            }
+            case NO_ENCONTRADO -> {
+                synchronized (cerrojoReplica) {
+                    replicaDAO.borrarHuellas(List.of(huella.getId()));
+                    replicaDAO.borrarCambioPendiente(huella.getId());
+                }
+                eventBus.publicar(new HuellaEliminada(huella));
+                return false;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Borra una huella en el servidor, o solo en la réplica si no hay conexión.
+     * <p>
+     * Si la huella se editó en el servidor después de leerla, no se borra y se recupera su estado actual.
+     *
+     * @param huella Huella a borrar.
+     * @return true si quedó borrada (en el servidor o en local).
+     */
+    public boolean eliminarHuella(Huella huella) {
+        CambioPendiente pendiente;
+        synchronized (cerrojoReplica) {
+            pendiente = leerCambioPendiente(huella.getId());
+        }
+        long versionBase = (pendiente != null) ? pendiente.getVersionBase() : huella.getVersion();
+
+        ResultadoEscritura resultado = huellaDAO.eliminarHuellaVersionada(huella.getId(), versionBase);
+        switch (resultado) {
+            case CORRECTO, NO_ENCONTRADO -> {
+                synchronized (cerrojoReplica) {
+                    replicaDAO.borrarHuellas(List.of(huella.getId()));
+                    replicaDAO.borrarCambioPendiente(huella.getId());
+                }
+                eventBus.publicar(new HuellaEliminada(huella));
+                return true;
+            }
+            case ERROR -> {
+                synchronized (cerrojoReplica) {
+                    Huella base = (pendiente != null) ? baseDe(pendiente) : leerHuellaLocal(huella.getId());
+                    if (base == null) return false;
+                    CambioPendiente cambio = new CambioPendiente(CambioPendiente.BORRADO, base);
+                    replicaDAO.guardarCambioPendiente(cambio);
+                    replicaDAO.borrarHuellas(List.of(huella.getId()));
+                }
+                eventBus.publicar(new HuellaEliminada(huella));
+                return true;
+            }
+            default -> {
+                restaurarDesdeServidor(huella.getId());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Detiene la sincronización periódica.
+     */
+    @Override
+    public void close() {
+        planificador.shutdownNow();
+    }
+
+    /**
+     * Sube los cambios hechos sin conexión, en orden.
+     *
+     * @return false si se perdió la conexión y hay que dejarlo para más tarde.
+     */
+    private boolean subirCambiosPendientes() {
+        List<CambioPendiente> cambios;
+        synchronized (cerrojoReplica) {
+            cambios = replicaDAO.getCambiosPendientes();
+        }
+        for (CambioPendiente cambio : cambios) {
+            int id = cambio.getIdRegistro();
+
+            if (CambioPendiente.BORRADO.equals(cambio.getTipo())) {
+                ResultadoEscritura resultado = huellaDAO.eliminarHuellaVersionada(id, cambio.getVersionBase());
+                if (resultado == ResultadoEscritura.ERROR) return false;
+                if (resultado == ResultadoEscritura.CONFLICTO) {
+                    restaurarDesdeServidor(id); // La edición remota prevalece sobre un borrado obsoleto
+                }
+                aplicarSiSigueIgual(cambio, () -> { });
+                continue;
+            }
+
+            Huella local;
+            synchronized (cerrojoReplica) {
+                local = huellaLocalDAO.getHuellaById(id);
+            }
+            if (local == null) {
+                aplicarSiSigueIgual(cambio, () -> { });
+                continue;
+            }
+            local.setVersion(cambio.getVersionBase());
+            ResultadoEscritura resultado = subirActualizacion(local, baseDe(cambio), cambio.getModificado());
+            switch (resultado) {
+                case ERROR -> {
+                    return false;
+                }
+                case CORRECTO -> {
+                    if (aplicarSiSigueIgual(cambio, () -> replicaDAO.guardarHuellas(List.of(local)))) {
+                        eventBus.publicar(new HuellaActualizada(local));
+                    }
+                }
+                case NO_ENCONTRADO -> {
+                    if (aplicarSiSigueIgual(cambio, () -> replicaDAO.borrarHuellas(List.of(id)))) {
+                        eventBus.publicar(new HuellaEliminada(local));
+                    }
+                }
+                default -> {
+                    // Sigue en conflicto: se reintentará en la próxima sincronización
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Aplica en la réplica el resultado de subir un cambio pendiente y lo da por subido, salvo que
+     * la huella se haya vuelto a editar (o el cambio ya no exista) mientras se subía.
+     *
+     * @param subido Cambio pendiente tal como se leyó antes de subirlo.
+     * @param cambio Escritura sobre la réplica.
+     * @return true si se ha aplicado.
+     */
+    private boolean aplicarSiSigueIgual(CambioPendiente subido, Runnable cambio) {
+        synchronized (cerrojoReplica) {
+            CambioPendiente actual = leerCambioPendiente(subido.getIdRegistro());
+            if (actual == null || !Objects.equals(actual.getModificado(), subido.getModificado())) {
+                return false;
+            }
+            cambio.run();
+            replicaDAO.borrarCambioPendiente(subido.getIdRegistro());
+            return true;
+        }
+    }
+
+    /**
+     * Escribe una edición en el servidor, fusionando con la versión remota si ha cambiado.
+     *
+     * @param mia          Huella con los cambios locales y la versión sobre la que se hicieron.
+     * @param base         Estado común del que partieron ambos lados.
+     * @param momentoLocal Momento del cambio local, para desempatar.
+     * @return Resultado final de la escritura.
+     */
+    private ResultadoEscritura subirActualizacion(Huella mia, Huella base, Instant momentoLocal) {
+        for (int intento = 0; intento < MAX_INTENTOS_FUSION; intento++) {
+            ResultadoEscritura resultado = huellaDAO.actualizarHuellaVersionada(mia);
+            if (resultado != ResultadoEscritura.CONFLICTO) {
+                return resultado;
+            }
+
+            Huella remota;
+            try {
+                remota = huellaDAO.getHuellaById(mia.getId());
+            } catch (Exception e) {
+                return ResultadoEscritura.ERROR;
+            }
+            if (remota == null) {
+                return ResultadoEscritura.NO_ENCONTRADO;
+            }
+            fusionar(base, mia, remota, momentoLocal);
+            base = remota;
+        }
+        return ResultadoEscritura.CONFLICTO;
+    }
+
+    /**
+     * Fusión a tres bandas: cada campo toma el lado que lo cambió respecto a la base;
+     * si cambiaron ambos, gana el más reciente. El resultado queda en {@code mia},
+     * con la versión remota para poder escribirlo.
+     *
+     * @param base         Estado común.
+     * @param mia          Versión local (se modifica).
+     * @param remota       Versión actual del servidor.
+     * @param momentoLocal Momento del cambio local.
+     */
+    static void fusionar(Huella base, Huella mia, Huella remota, Instant momentoLocal) {
+        boolean ganaLocal = remota.getModificado() == null || !momentoLocal.isBefore(remota.getModificado());
+
+        if (elegirRemoto(base.getValor(), mia.getValor(), remota.getValor(), ganaLocal)) {
+            mia.setValor(remota.getValor());
+        }
+        if (elegirRemoto(base.getFecha(), mia.getFecha(), remota.getFecha(), ganaLocal)) {
+            mia.setFecha(remota.getFecha());
+        }
+        if (elegirRemoto(base.getIdActividad().getId(), mia.getIdActividad().getId(), remota.getIdActividad().getId(), ganaLocal)) {
+            mia.setIdActividad(remota.getIdActividad());
+            mia.setUnidad(remota.getUnidad());
+        }
+        mia.setVersion(remota.getVersion());
+    }
+
+    /**
+     * Decide si un campo debe tomar el valor remoto.
+     *
+     * @return true si solo cambió en remoto, o si cambió en ambos lados y gana el remoto.
+     */
+    private static boolean elegirRemoto(Object base, Object mio, Object remoto, boolean ganaLocal) {
+        boolean cambioLocal = !Objects.equals(base, mio);
+        boolean cambioRemoto = !Objects.equals(base, remoto);
+        if (!cambioRemoto) return false;
+        if (!cambioLocal) return true;
+        return !ganaLocal;
+    }
+
+    /**
+     * Reconstruye la huella base guardada en un cambio pendiente.
+     */
+    private static Huella baseDe(CambioPendiente cambio) {
+        Actividad actividad = new Actividad();
+        actividad.setId(cambio.getIdActividadBase());
+        Huella base = new Huella(null, actividad, cambio.getValorBase(), null, cambio.getFechaBase());
+        base.setId(cambio.getIdRegistro());
+        base.setVersion(cambio.getVersionBase());
+        return base;
+    }
+
+    /**
+     * Vuelve a copiar en la réplica el estado del servidor de una huella.
+     */
+    private void restaurarDesdeServidor(int idHuella) {
+        try {
+            Huella remota = huellaDAO.getHuellaById(idHuella);
+            if (remota != null) {
+                synchronized (cerrojoReplica) {
+                    replicaDAO.guardarHuellas(List.of(remota));
+                }
+                eventBus.publicar(new HuellaActualizada(remota));
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudo recuperar la huella " + idHuella + ": " + e.getMessage());
+        }
+    }
+
+    private CambioPendiente leerCambioPendiente(int idHuella) {
+        try {
+            return replicaDAO.getCambioPendiente(idHuella);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private Huella leerHuellaLocal(int idHuella) {
+        try {
+            return huellaLocalDAO.getHuellaById(idHuella);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Compara dos listas de hábitos por clave, frecuencia y tipo.
+     */
+    private static boolean mismaLista(List<Habito> a, List<Habito> b) {
+        return firmas(a).equals(firmas(b));
+    }
+
+    private static Set<String> firmas(List<Habito> habitos) {
+        Set<String> firmas = new HashSet<>();
+        for (Habito h : habitos) {
+            firmas.add(h.getId().getIdUsuario() + "/" + h.getId().getIdActividad() + "/" + h.getFrecuencia() + "/" + h.getTipo());
+        }
+        return firmas;
+    }
+
+    /**
+     * Copia en la réplica una huella ya guardada en el servidor.
+     */
+    private void reflejarHuella(Huella huella) {
+        reflejar(() -> replicaDAO.guardarHuellas(List.of(huella)), huella.getId() != null);
+    }
+
+    /**
+     * Aplica en la réplica un cambio confirmado en el servidor. Si falla (por ejemplo, porque la réplica
+     * aún no tiene el catálogo), la siguiente sincronización lo corregirá.
+     *
+     * @param cambio   Escritura sobre la réplica.
+     * @param aplicable Si es false no se hace nada (p.ej. huella sin id aún).
+     */
+    private void reflejar(Runnable cambio, boolean aplicable) {
+        if (!aplicable) return;
+        try {
+            synchronized (cerrojoReplica) {
+                cambio.run();
+            }
+        } catch (Exception e) {
+            System.err.println("No se pudo actualizar la réplica local: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Tarea periódica: sincroniza el usuario de la sesión, si lo hay.
+     */
+    private void sincronizarUsuarioActual() {
+        Usuario usuario = SessionManager.getInstance().getUsuarioActual();
+        if (usuario != null) {
+            sincronizar(usuario);
+        }
+    }
+}
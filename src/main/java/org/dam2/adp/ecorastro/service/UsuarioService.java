@@ -13,7 +13,20 @@ import org.dam2.adp.ecorastro.util.PasswordUtil;
  * @version 1.0
  */
 public class UsuarioService {
-    private final UsuarioDAO usuarioDAO = new UsuarioDAO();
+    private final UsuarioDAO usuarioDAO;
+
+    public UsuarioService() {
+        this(new UsuarioDAO());
+    }
+
+    /**
+     * Crea el servicio con un DAO compartido.
+     *
+     * @param usuarioDAO DAO de usuarios.
+     */
+    public UsuarioService(UsuarioDAO usuarioDAO) {
+        this.usuarioDAO = usuarioDAO;
+    }
 
     /**
      * Registra un nuevo usuario en el sistema.
@@ -93,8 +106,4 @@ public class UsuarioService {
         return usuarioDAO.getUsuarioById(id);
     }
 
-    public Long countUsuariosActivos() {
-        return usuarioDAO.countUsuariosActivos();
-    }
-
 }
\ No newline at end of file
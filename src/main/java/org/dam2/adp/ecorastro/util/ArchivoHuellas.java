@@ -0,0 +1,303 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Archivo local de huellas antiguas, formado por un {@link SegmentoHuellas} por mes.
+ * <p>
+ * Cada segmento es inmutable: al añadir o quitar filas de un mes se escribe una nueva generación
+ * ({@code huellas-AAAAMM-gN.seg}) y se sustituye la abierta. Las generaciones antiguas no se borran
+ * mientras puedan seguir proyectadas en memoria; se limpian al abrir el archivo en el siguiente arranque.
+ * <p>
+ * Las consultas descartan los segmentos cuyo rango de días no se solapa con el pedido y, dentro
+ * de cada segmento, solo descomprimen el bloque del usuario consultado.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class ArchivoHuellas implements AutoCloseable {
+
+    private static final Pattern NOMBRE_SEGMENTO = Pattern.compile("huellas-(\\d{6})-g(\\d+)\\.seg");
+
+    private final Path directorio;
+
+    /** Segmento vigente de cada mes. */
+    private final TreeMap<Integer, SegmentoHuellas> segmentos = new TreeMap<>();
+
+    /** Generación vigente de cada mes. */
+    private final Map<Integer, Integer> generaciones = new HashMap<>();
+
+    /** Segmentos sustituidos que siguen abiertos hasta cerrar el archivo. */
+    private final List<SegmentoHuellas> sustituidos = new ArrayList<>();
+
+    /**
+     * Abre (o crea) el archivo en un directorio.
+     *
+     * @param directorio Directorio de los segmentos.
+     * @throws IOException Si el directorio no puede crearse o leerse.
+     */
+    public ArchivoHuellas(Path directorio) throws IOException {
+        this.directorio = directorio;
+        Files.createDirectories(directorio);
+
+        Map<Integer, Path> vigentes = new HashMap<>();
+        List<Path> obsoletos = new ArrayList<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, "huellas-*.seg")) {
+            for (Path archivo : archivos) {
+                Matcher m = NOMBRE_SEGMENTO.matcher(archivo.getFileName().toString());
+                if (!m.matches()) continue;
+                int mes = Integer.parseInt(m.group(1));
+                int generacion = Integer.parseInt(m.group(2));
+                Integer actual = generaciones.get(mes);
+                if (actual == null || generacion > actual) {
+                    if (actual != null) obsoletos.add(vigentes.get(mes));
+                    generaciones.put(mes, generacion);
+                    vigentes.put(mes, archivo);
+                } else {
+                    obsoletos.add(archivo);
+                }
+            }
+        }
+        for (Path obsoleto : obsoletos) {
+            Files.deleteIfExists(obsoleto);
+        }
+        for (Map.Entry<Integer, Path> e : vigentes.entrySet()) {
+            segmentos.put(e.getKey(), SegmentoHuellas.abrir(e.getValue()));
+        }
+    }
+
+    /**
+     * Filas archivadas de un usuario en un rango de días.
+     *
+     * @param idUsuario Id del usuario.
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Filas del rango, ordenadas por mes y día.
+     */
+    public synchronized List<SegmentoHuellas.Fila> getFilas(int idUsuario, int diaInicio, int diaFin) {
+        List<SegmentoHuellas.Fila> filas = new ArrayList<>();
+        for (SegmentoHuellas s : enRango(diaInicio, diaFin)) {
+            for (SegmentoHuellas.Fila f : s.getFilas(idUsuario)) {
+                if (f.dia() >= diaInicio && f.dia() <= diaFin) filas.add(f);
+            }
+        }
+        return filas;
+    }
+
+    /**
+     * Impacto archivado en un rango de días.
+     *
+     * @param idUsuario Id del usuario, o null para toda la comunidad.
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Impacto total en kg de CO2.
+     */
+    public synchronized double sumarImpacto(Integer idUsuario, int diaInicio, int diaFin) {
+        double total = 0;
+        for (SegmentoHuellas s : enRango(diaInicio, diaFin)) {
+            total += s.sumarImpacto(idUsuario, diaInicio, diaFin);
+        }
+        return total;
+    }
+
+    /**
+     * Impacto archivado de un usuario agrupado por actividad.
+     *
+     * @param idUsuario Id del usuario.
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Id de actividad → impacto.
+     */
+    public Map<Integer, Double> getImpactoPorActividad(int idUsuario, int diaInicio, int diaFin) {
+        Map<Integer, Double> impactos = new HashMap<>();
+        for (SegmentoHuellas.Fila f : getFilas(idUsuario, diaInicio, diaFin)) {
+            if (!Double.isNaN(f.impacto())) impactos.merge(f.idActividad(), f.impacto(), Double::sum);
+        }
+        return impactos;
+    }
+
+    /**
+     * Impacto archivado de un usuario agrupado por mes.
+     *
+     * @param idUsuario Id del usuario.
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Clave de mes → impacto, en orden de mes.
+     */
+    public synchronized Map<Integer, Double> getImpactoPorMes(int idUsuario, int diaInicio, int diaFin) {
+        Map<Integer, Double> impactos = new TreeMap<>();
+        for (SegmentoHuellas s : enRango(diaInicio, diaFin)) {
+            double impacto = s.sumarImpacto(idUsuario, diaInicio, diaFin);
+            if (impacto != 0) impactos.put(s.getMes(), impacto);
+        }
+        return impactos;
+    }
+
+    /**
+     * Indica si una huella está archivada.
+     * <p>
+     * Recorre todos los meses (la fecha de la huella puede haberse editado), pero solo
+     * descomprime el bloque de su usuario en los segmentos donde tiene filas.
+     *
+     * @param idHuella  Id de la huella.
+     * @param idUsuario Id de su usuario.
+     * @return true si algún segmento la contiene.
+     */
+    public synchronized boolean contiene(int idHuella, int idUsuario) {
+        return buscarMes(idHuella, idUsuario) != null;
+    }
+
+    /**
+     * Añade filas al segmento de un mes (las que ya estuvieran archivadas con el mismo id se sustituyen).
+     *
+     * @param mes   Clave de mes.
+     * @param filas Filas a archivar; todas deben ser de ese mes.
+     * @throws IOException Si no se puede escribir el segmento.
+     */
+    public synchronized void anadir(int mes, Collection<SegmentoHuellas.Fila> filas) throws IOException {
+        Map<Integer, SegmentoHuellas.Fila> porId = new LinkedHashMap<>();
+        SegmentoHuellas actual = segmentos.get(mes);
+        if (actual != null) {
+            actual.getTodas().forEach(f -> porId.put(f.id(), f));
+        }
+        filas.forEach(f -> porId.put(f.id(), f));
+        sustituir(mes, porId.values());
+    }
+
+    /**
+     * Quita una huella del archivo.
+     *
+     * @param idHuella  Id de la huella.
+     * @param idUsuario Id de su usuario.
+     * @return true si estaba archivada y se ha quitado.
+     * @throws IOException Si no se puede reescribir el segmento.
+     */
+    public synchronized boolean eliminar(int idHuella, int idUsuario) throws IOException {
+        Integer mes = buscarMes(idHuella, idUsuario);
+        if (mes == null) return false;
+        List<SegmentoHuellas.Fila> restantes = new ArrayList<>(segmentos.get(mes).getTodas());
+        restantes.removeIf(f -> f.id() == idHuella);
+        sustituir(mes, restantes);
+        return true;
+    }
+
+    /**
+     * Quita todas las huellas archivadas de un usuario, reescribiendo solo los segmentos que tienen alguna.
+     *
+     * @param idUsuario Id del usuario.
+     * @return Número de huellas quitadas.
+     * @throws IOException Si no se puede reescribir algún segmento.
+     */
+    public synchronized int eliminarUsuario(int idUsuario) throws IOException {
+        int quitadas = 0;
+        for (SegmentoHuellas s : new ArrayList<>(segmentos.values())) {
+            int delUsuario = s.getFilas(idUsuario).size();
+            if (delUsuario == 0) continue;
+            List<SegmentoHuellas.Fila> restantes = new ArrayList<>(s.getTodas());
+            restantes.removeIf(f -> f.idUsuario() == idUsuario);
+            sustituir(s.getMes(), restantes);
+            quitadas += delUsuario;
+        }
+        return quitadas;
+    }
+
+    /**
+     * Recorre todas las filas archivadas, segmento a segmento.
+     *
+     * @param accion Acción para cada fila.
+     */
+    public synchronized void recorrer(Consumer<SegmentoHuellas.Fila> accion) {
+        for (SegmentoHuellas s : segmentos.values()) {
+            s.getTodas().forEach(accion);
+        }
+    }
+
+    /**
+     * Recorre las filas archivadas de un rango de días, saltando los segmentos que no se solapan.
+     *
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @param accion    Acción a ejecutar con cada fila.
+     */
+    public synchronized void recorrer(int diaInicio, int diaFin, Consumer<SegmentoHuellas.Fila> accion) {
+        for (SegmentoHuellas s : enRango(diaInicio, diaFin)) {
+            for (SegmentoHuellas.Fila f : s.getTodas()) {
+                if (f.dia() >= diaInicio && f.dia() <= diaFin) accion.accept(f);
+            }
+        }
+    }
+
+    /**
+     * Número total de filas archivadas.
+     *
+     * @return Suma de las filas de todos los segmentos.
+     */
+    public synchronized long getNumFilas() {
+        return segmentos.values().stream().mapToLong(SegmentoHuellas::getNumFilas).sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        List<SegmentoHuellas> abiertos = new ArrayList<>(segmentos.values());
+        abiertos.addAll(sustituidos);
+        for (SegmentoHuellas s : abiertos) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        segmentos.clear();
+        sustituidos.clear();
+    }
+
+    /**
+     * Mes del segmento que contiene una huella, o null si no está archivada.
+     */
+    private Integer buscarMes(int idHuella, int idUsuario) {
+        for (SegmentoHuellas s : segmentos.values()) {
+            if (s.getFilas(idUsuario).stream().anyMatch(f -> f.id() == idHuella)) return s.getMes();
+        }
+        return null;
+    }
+
+    /**
+     * Segmentos que pueden tener filas en un rango de días.
+     */
+    private List<SegmentoHuellas> enRango(int diaInicio, int diaFin) {
+        int mesInicio = FechaUtil.claveMes(LocalDate.ofEpochDay(diaInicio));
+        int mesFin = FechaUtil.claveMes(LocalDate.ofEpochDay(diaFin));
+        List<SegmentoHuellas> resultado = new ArrayList<>();
+        for (SegmentoHuellas s : segmentos.subMap(mesInicio, true, mesFin, true).values()) {
+            if (s.solapa(diaInicio, diaFin)) resultado.add(s);
+        }
+        return resultado;
+    }
+
+    /**
+     * Escribe una nueva generación del segmento de un mes y la pone en uso.
+     */
+    private void sustituir(int mes, Collection<SegmentoHuellas.Fila> filas) throws IOException {
+        int generacion = generaciones.getOrDefault(mes, 0) + 1;
+        Path ruta = directorio.resolve("huellas-" + mes + "-g" + generacion + ".seg");
+        SegmentoHuellas.escribir(ruta, mes, filas);
+        SegmentoHuellas nuevo = SegmentoHuellas.abrir(ruta);
+        generaciones.put(mes, generacion);
+        SegmentoHuellas anterior = segmentos.put(mes, nuevo);
+        if (anterior != null) sustituidos.add(anterior);
+    }
+}
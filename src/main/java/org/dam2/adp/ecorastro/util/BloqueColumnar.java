@@ -0,0 +1,307 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Codificación por columnas de bloques de filas, usada por las copias de seguridad.
+ * <p>
+ * Cada columna se guarda con un mapa de nulos y sus valores no nulos codificados según su tipo:
+ * <ul>
+ * <li>Enteros, fechas e instantes: diferencia con el valor anterior en zigzag + varint
+ * (ids consecutivos y fechas ordenadas ocupan uno o dos bytes).</li>
+ * <li>Claves ajenas y textos: diccionario de valores distintos más el índice de cada fila.</li>
+ * <li>Decimales: los 8 bytes del double.</li>
+ * </ul>
+ * El bloque entero se comprime con Deflate y se escribe con su número de filas, longitudes y
+ * CRC32 del contenido sin comprimir; un bloque de 0 filas marca el final de la tabla.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public final class BloqueColumnar {
+
+    /** Tipo de una columna y, con él, su codificación. */
+    public enum Tipo {
+        /** Integer con valores cercanos entre filas (ids, claves de día). */
+        ENTERO,
+        /** Long con valores cercanos entre filas (versiones). */
+        LARGO,
+        /** Integer con pocos valores distintos (claves ajenas). */
+        CLAVE,
+        /** Double. */
+        DECIMAL,
+        /** String. */
+        TEXTO,
+        /** Instant, con precisión de microsegundos. */
+        INSTANTE,
+        /** LocalDate. */
+        FECHA
+    }
+
+    private BloqueColumnar() {
+    }
+
+    /**
+     * Codifica, comprime y escribe un bloque.
+     *
+     * @param salida Flujo de salida.
+     * @param tipos  Tipo de cada columna.
+     * @param filas  Filas del bloque (cada una con un valor por columna, que puede ser null).
+     * @throws IOException Si falla la escritura.
+     */
+    public static void escribir(DataOutputStream salida, Tipo[] tipos, List<Object[]> filas) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream datos = new DataOutputStream(buffer);
+        for (int c = 0; c < tipos.length; c++) {
+            codificarColumna(datos, tipos[c], filas, c);
+        }
+        byte[] original = buffer.toByteArray();
+        byte[] comprimido = comprimir(original);
+
+        CRC32 crc = new CRC32();
+        crc.update(original);
+        salida.writeInt(filas.size());
+        salida.writeInt(original.length);
+        salida.writeInt(comprimido.length);
+        salida.writeLong(crc.getValue());
+        salida.write(comprimido);
+    }
+
+    /**
+     * Escribe la marca de fin de tabla.
+     *
+     * @param salida Flujo de salida.
+     * @throws IOException Si falla la escritura.
+     */
+    public static void escribirFin(DataOutputStream salida) throws IOException {
+        salida.writeInt(0);
+    }
+
+    /**
+     * Lee y decodifica el siguiente bloque.
+     *
+     * @param entrada Flujo de entrada.
+     * @param tipos   Tipo de cada columna.
+     * @return Las filas del bloque, o null si se ha llegado al final de la tabla.
+     * @throws IOException Si falla la lectura o el bloque está dañado.
+     */
+    public static List<Object[]> leer(DataInputStream entrada, Tipo[] tipos) throws IOException {
+        int numFilas = entrada.readInt();
+        if (numFilas == 0) return null;
+        int longitudOriginal = entrada.readInt();
+        int longitudComprimida = entrada.readInt();
+        long crcEsperado = entrada.readLong();
+        byte[] comprimido = entrada.readNBytes(longitudComprimida);
+        if (comprimido.length != longitudComprimida) {
+            throw new IOException("Copia de seguridad truncada");
+        }
+
+        byte[] original = descomprimir(comprimido, longitudOriginal);
+        CRC32 crc = new CRC32();
+        crc.update(original);
+        if (crc.getValue() != crcEsperado) {
+            throw new IOException("Bloque dañado: la suma de comprobación no coincide");
+        }
+
+        Object[][] filas = new Object[numFilas][tipos.length];
+        ByteBuffer datos = ByteBuffer.wrap(original);
+        for (int c = 0; c < tipos.length; c++) {
+            decodificarColumna(datos, tipos[c], filas, c);
+        }
+        return Arrays.asList(filas);
+    }
+
+    // ==========================================
+    // CODIFICACIÓN DE COLUMNAS
+    // ==========================================
+
+    private static void codificarColumna(DataOutputStream out, Tipo tipo, List<Object[]> filas, int c) throws IOException {
+        byte[] nulos = new byte[(filas.size() + 7) / 8];
+        for (int i = 0; i < filas.size(); i++) {
+            if (filas.get(i)[c] == null) nulos[i >> 3] |= (byte) (1 << (i & 7));
+        }
+        out.write(nulos);
+
+        switch (tipo) {
+            case ENTERO, LARGO, INSTANTE, FECHA -> {
+                long anterior = 0;
+                for (Object[] fila : filas) {
+                    if (fila[c] == null) continue;
+                    long valor = aLong(tipo, fila[c]);
+                    escribirVarLong(out, zigzag(valor - anterior));
+                    anterior = valor;
+                }
+            }
+            case DECIMAL -> {
+                for (Object[] fila : filas) {
+                    if (fila[c] != null) out.writeDouble(((Number) fila[c]).doubleValue());
+                }
+            }
+            case CLAVE, TEXTO -> {
+                Map<Object, Integer> diccionario = new HashMap<>();
+                List<Object> valores = new ArrayList<>();
+                for (Object[] fila : filas) {
+                    if (fila[c] != null && diccionario.putIfAbsent(fila[c], valores.size()) == null) {
+                        valores.add(fila[c]);
+                    }
+                }
+                escribirVarLong(out, valores.size());
+                for (Object valor : valores) {
+                    if (tipo == Tipo.CLAVE) {
+                        escribirVarLong(out, zigzag(((Number) valor).longValue()));
+                    } else {
+                        byte[] texto = ((String) valor).getBytes(StandardCharsets.UTF_8);
+                        escribirVarLong(out, texto.length);
+                        out.write(texto);
+                    }
+                }
+                for (Object[] fila : filas) {
+                    if (fila[c] != null) escribirVarLong(out, diccionario.get(fila[c]));
+                }
+            }
+        }
+    }
+
+    private static void decodificarColumna(ByteBuffer in, Tipo tipo, Object[][] filas, int c) {
+        byte[] nulos = new byte[(filas.length + 7) / 8];
+        in.get(nulos);
+
+        switch (tipo) {
+            case ENTERO, LARGO, INSTANTE, FECHA -> {
+                long anterior = 0;
+                for (int i = 0; i < filas.length; i++) {
+                    if (esNulo(nulos, i)) continue;
+                    anterior += deszigzag(leerVarLong(in));
+                    filas[i][c] = deLong(tipo, anterior);
+                }
+            }
+            case DECIMAL -> {
+                for (int i = 0; i < filas.length; i++) {
+                    if (!esNulo(nulos, i)) filas[i][c] = in.getDouble();
+                }
+            }
+            case CLAVE, TEXTO -> {
+                Object[] valores = new Object[(int) leerVarLong(in)];
+                for (int v = 0; v < valores.length; v++) {
+                    if (tipo == Tipo.CLAVE) {
+                        valores[v] = (int) deszigzag(leerVarLong(in));
+                    } else {
+                        byte[] texto = new byte[(int) leerVarLong(in)];
+                        in.get(texto);
+                        valores[v] = new String(texto, StandardCharsets.UTF_8);
+                    }
+                }
+                for (int i = 0; i < filas.length; i++) {
+                    if (!esNulo(nulos, i)) filas[i][c] = valores[(int) leerVarLong(in)];
+                }
+            }
+        }
+    }
+
+    private static long aLong(Tipo tipo, Object valor) {
+        return switch (tipo) {
+            case INSTANTE -> {
+                Instant instante = (Instant) valor;
+                yield Math.addExact(Math.multiplyExact(instante.getEpochSecond(), 1_000_000L), instante.getNano() / 1_000);
+            }
+            case FECHA -> ((LocalDate) valor).toEpochDay();
+            default -> ((Number) valor).longValue();
+        };
+    }
+
+    private static Object deLong(Tipo tipo, long valor) {
+        return switch (tipo) {
+            case ENTERO -> (int) valor;
+            case INSTANTE -> Instant.ofEpochSecond(Math.floorDiv(valor, 1_000_000L), Math.floorMod(valor, 1_000_000L) * 1_000);
+            case FECHA -> LocalDate.ofEpochDay(valor);
+            default -> valor;
+        };
+    }
+
+    private static boolean esNulo(byte[] nulos, int i) {
+        return (nulos[i >> 3] & (1 << (i & 7))) != 0;
+    }
+
+    private static long zigzag(long valor) {
+        return (valor << 1) ^ (valor >> 63);
+    }
+
+    private static long deszigzag(long valor) {
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+    private static void escribirVarLong(DataOutputStream out, long valor) throws IOException {
+        while ((valor & ~0x7FL) != 0) {
+            out.writeByte((int) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        out.writeByte((int) valor);
+    }
+
+    private static long leerVarLong(ByteBuffer in) {
+        long valor = 0;
+        for (int desplazamiento = 0; ; desplazamiento += 7) {
+            byte b = in.get();
+            valor |= (long) (b & 0x7F) << desplazamiento;
+            if ((b & 0x80) == 0) return valor;
+        }
+    }
+
+    // ==========================================
+    // COMPRESIÓN
+    // ==========================================
+
+    private static byte[] comprimir(byte[] datos) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(datos);
+            deflater.finish();
+            ByteArrayOutputStream salida = new ByteArrayOutputStream(datos.length / 2 + 64);
+            byte[] trozo = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                salida.write(trozo, 0, deflater.deflate(trozo));
+            }
+            return salida.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] descomprimir(byte[] comprimido, int longitudOriginal) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(comprimido);
+            byte[] original = new byte[longitudOriginal];
+            int leidos = 0;
+            while (leidos < longitudOriginal && !inflater.finished()) {
+                int n = inflater.inflate(original, leidos, longitudOriginal - leidos);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                leidos += n;
+            }
+            if (leidos != longitudOriginal) {
+                throw new IOException("Bloque dañado: longitud descomprimida incorrecta");
+            }
+            return original;
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque dañado: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.dam2.adp.ecorastro.util;
+
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import org.dam2.adp.ecorastro.controller.VistaRefrescable;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Caché de vistas FXML indexada por nombre de archivo.
+ * <p>
+ * Guarda el nodo raíz ya cargado junto a su controlador, de forma que volver a una pantalla
+ * no obliga a parsear de nuevo el FXML ni a crear un controlador nuevo.
+ * Solo se cachean las vistas cuyo controlador implementa {@link VistaRefrescable}; al
+ * reutilizarlas se llama a {@link VistaRefrescable#refrescar()} para recargar los datos.
+ * <p>
+ * Opcionalmente las entradas se guardan mediante {@link SoftReference}, permitiendo que la JVM
+ * las libere si hay presión de memoria. En ese caso la vista se vuelve a cargar en el siguiente acceso.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class CacheVistas {
+
+    /** Ruta base de los archivos FXML. */
+    private static final String RUTA_VISTAS = "/org/dam2/adp/ecorastro/view/";
+
+    /**
+     * Vista ya cargada junto a su controlador.
+     *
+     * @param raiz        Nodo raíz de la vista.
+     * @param controlador Controlador asociado.
+     * @param nueva       true si la vista se acaba de cargar, false si procede de la caché.
+     */
+    public record VistaCacheada(Parent raiz, Object controlador, boolean nueva) {
+    }
+
+    /** Entradas de la caché: referencia fuerte o suave según la configuración. */
+    private final Map<String, Supplier<VistaCacheada>> vistas = new HashMap<>();
+
+    /** Vistas cargadas por adelantado que aún no se han mostrado. */
+    private final Set<String> precargadas = new HashSet<>();
+
+    /** Indica si las entradas se guardan con referencias suaves. */
+    private final boolean referenciasSuaves;
+
+    /**
+     * Crea una caché de vistas.
+     *
+     * @param referenciasSuaves true para permitir que el recolector libere vistas bajo presión de memoria.
+     */
+    public CacheVistas(boolean referenciasSuaves) {
+        this.referenciasSuaves = referenciasSuaves;
+    }
+
+    /**
+     * Obtiene una vista, reutilizándola si está en caché.
+     * <p>
+     * Si la vista está cacheada se refrescan sus datos; si no, se carga el FXML y,
+     * cuando el controlador es refrescable, se guarda para próximos accesos.
+     *
+     * @param fxml Nombre del archivo FXML (sin ruta).
+     * @return La vista cargada o recuperada.
+     * @throws IOException Si el FXML no existe o no puede cargarse.
+     */
+    public VistaCacheada obtener(String fxml) throws IOException {
+        Supplier<VistaCacheada> entrada = vistas.get(fxml);
+        VistaCacheada cacheada = (entrada != null) ? entrada.get() : null;
+
+        if (cacheada != null) {
+            // Una vista precargada se acaba de crear con datos actuales: se muestra como nueva y sin refrescar
+            if (precargadas.remove(fxml)) {
+                return new VistaCacheada(cacheada.raiz(), cacheada.controlador(), true);
+            }
+            ((VistaRefrescable) cacheada.controlador()).refrescar();
+            return new VistaCacheada(cacheada.raiz(), cacheada.controlador(), false);
+        }
+
+        precargadas.remove(fxml);
+        URL recurso = CacheVistas.class.getResource(RUTA_VISTAS + fxml);
+        if (recurso == null) {
+            throw new IOException("No se encuentra la vista: " + RUTA_VISTAS + fxml);
+        }
+
+        FXMLLoader loader = RegistroServicios.getInstance().crearLoader(recurso);
+        Parent raiz = loader.load();
+        VistaCacheada cargada = new VistaCacheada(raiz, loader.getController(), true);
+
+        if (cargada.controlador() instanceof VistaRefrescable) {
+            guardar(fxml, cargada);
+        } else {
+            vistas.remove(fxml);
+        }
+        return cargada;
+    }
+
+    /**
+     * Carga una vista por adelantado, sin mostrarla, si aún no está en la caché.
+     * <p>
+     * El siguiente {@link #obtener} la devuelve como nueva y sin refrescar sus datos.
+     *
+     * @param fxml Nombre del archivo FXML (sin ruta).
+     * @throws IOException Si el FXML no existe o no puede cargarse.
+     */
+    public void precargar(String fxml) throws IOException {
+        Supplier<VistaCacheada> entrada = vistas.get(fxml);
+        if (entrada != null && entrada.get() != null) return;
+        if (obtener(fxml).controlador() instanceof VistaRefrescable) {
+            precargadas.add(fxml);
+        }
+    }
+
+    /**
+     * Guarda una entrada respetando el tipo de referencia configurado.
+     *
+     * @param fxml  Clave de la vista.
+     * @param vista Vista a guardar.
+     */
+    private void guardar(String fxml, VistaCacheada vista) {
+        if (referenciasSuaves) {
+            SoftReference<VistaCacheada> referencia = new SoftReference<>(vista);
+            vistas.put(fxml, referencia::get);
+        } else {
+            vistas.put(fxml, () -> vista);
+        }
+    }
+
+    /**
+     * Elimina una vista concreta de la caché.
+     *
+     * @param fxml Nombre del archivo FXML.
+     */
+    public void invalidar(String fxml) {
+        precargadas.remove(fxml);
+        liberar(vistas.remove(fxml));
+    }
+
+    /**
+     * Vacía la caché por completo, liberando los recursos de cada controlador.
+     */
+    public void limpiar() {
+        vistas.values().forEach(this::liberar);
+        vistas.clear();
+        precargadas.clear();
+    }
+
+    /**
+     * Libera el controlador de una entrada, si sigue disponible.
+     *
+     * @param entrada Entrada de la caché (puede ser null).
+     */
+    private void liberar(Supplier<VistaCacheada> entrada) {
+        VistaCacheada vista = (entrada != null) ? entrada.get() : null;
+        if (vista != null) {
+            ((VistaRefrescable) vista.controlador()).liberar();
+        }
+    }
+}
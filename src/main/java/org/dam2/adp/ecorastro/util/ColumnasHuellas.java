@@ -0,0 +1,254 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Huellas de un usuario guardadas por columnas en arrays primitivos, ordenadas por día.
+ * <p>
+ * Un rango de días se localiza con dos búsquedas binarias sobre {@code dias} y se agrega con los
+ * núcleos vectoriales de {@link KernelesImpacto}, sin crear objetos por fila. Las altas se insertan en su posición
+ * (desplazando el resto) para mantener el orden.
+ * <p>
+ * No es segura para varios hilos: quien la use debe sincronizar el acceso.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class ColumnasHuellas {
+
+    private int[] ids;
+    private int[] dias;
+    private short[] actividades;
+    private double[] valores;
+    private double[] impactos;
+    private int tamano;
+
+    /**
+     * Crea las columnas vacías.
+     *
+     * @param capacidad Filas previstas.
+     */
+    public ColumnasHuellas(int capacidad) {
+        int n = Math.max(16, capacidad);
+        ids = new int[n];
+        dias = new int[n];
+        actividades = new short[n];
+        valores = new double[n];
+        impactos = new double[n];
+    }
+
+    /**
+     * Número de huellas.
+     *
+     * @return Filas guardadas.
+     */
+    public int size() {
+        return tamano;
+    }
+
+    /**
+     * Añade una huella en su posición según el día.
+     *
+     * @param id          Id de la huella (0 si aún no tiene).
+     * @param dia         Clave de día.
+     * @param idActividad Id de la actividad.
+     * @param valor       Valor del consumo.
+     * @param impacto     Impacto en kg de CO2.
+     */
+    public void anadir(int id, int dia, short idActividad, double valor, double impacto) {
+        if (tamano == dias.length) crecer();
+        int pos = primeraPosicionDespuesDe(dia);
+        int desplazar = tamano - pos;
+        if (desplazar > 0) {
+            System.arraycopy(ids, pos, ids, pos + 1, desplazar);
+            System.arraycopy(dias, pos, dias, pos + 1, desplazar);
+            System.arraycopy(actividades, pos, actividades, pos + 1, desplazar);
+            System.arraycopy(valores, pos, valores, pos + 1, desplazar);
+            System.arraycopy(impactos, pos, impactos, pos + 1, desplazar);
+        }
+        ids[pos] = id;
+        dias[pos] = dia;
+        actividades[pos] = idActividad;
+        valores[pos] = valor;
+        impactos[pos] = impacto;
+        tamano++;
+    }
+
+    /**
+     * Quita una huella por su id.
+     *
+     * @param id Id de la huella.
+     * @return false si no estaba.
+     */
+    public boolean eliminar(int id) {
+        for (int i = 0; i < tamano; i++) {
+            if (ids[i] == id) {
+                quitar(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Quita una huella que se añadió sin id (pendiente de guardar) buscándola por sus datos.
+     *
+     * @param dia         Clave de día.
+     * @param idActividad Id de la actividad.
+     * @param valor       Valor del consumo.
+     * @return false si no había ninguna igual sin id.
+     */
+    public boolean eliminarSinId(int dia, short idActividad, double valor) {
+        for (int i = primeraPosicionDesde(dia), fin = primeraPosicionDespuesDe(dia); i < fin; i++) {
+            if (ids[i] == 0 && actividades[i] == idActividad && valores[i] == valor) {
+                quitar(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Impacto total de un rango de días.
+     *
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Suma del impacto.
+     */
+    public double total(int diaInicio, int diaFin) {
+        return KernelesImpacto.suma(impactos, primeraPosicionDesde(diaInicio), primeraPosicionDespuesDe(diaFin));
+    }
+
+    /**
+     * Impacto de un rango de días agrupado por actividad.
+     *
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Id de actividad → impacto.
+     */
+    public Map<Integer, Double> porActividad(int diaInicio, int diaFin) {
+        int desde = primeraPosicionDesde(diaInicio);
+        int hasta = primeraPosicionDespuesDe(diaFin);
+        double[] sumas = KernelesImpacto.sumaPorCategoria(impactos, actividades, desde, hasta);
+        // Solo las actividades que aparecen en el rango, aunque sumen 0
+        Map<Integer, Double> resultado = new HashMap<>();
+        for (int i = desde; i < hasta; i++) {
+            resultado.putIfAbsent((int) actividades[i], sumas[actividades[i]]);
+        }
+        return resultado;
+    }
+
+    /**
+     * Impacto de un rango de días agrupado por mes (solo los meses con huellas).
+     *
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Clave de mes → impacto, en orden.
+     */
+    public Map<Integer, Double> porMes(int diaInicio, int diaFin) {
+        return agruparPorTramos(diaInicio, diaFin,
+                dia -> (int) YearMonth.from(LocalDate.ofEpochDay(dia)).atEndOfMonth().toEpochDay(),
+                dia -> FechaUtil.claveMes(LocalDate.ofEpochDay(dia)));
+    }
+
+    /**
+     * Impacto de un rango de días agrupado por semana (de lunes a domingo).
+     *
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Clave de día del lunes de cada semana → impacto, en orden.
+     */
+    public Map<Integer, Double> porSemana(int diaInicio, int diaFin) {
+        return agruparPorTramos(diaInicio, diaFin, dia -> lunes(dia) + 6, ColumnasHuellas::lunes);
+    }
+
+    /**
+     * Impacto de un rango de días agrupado por día (solo los días con huellas).
+     *
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Clave de día → impacto, en orden.
+     */
+    public Map<Integer, Double> porDia(int diaInicio, int diaFin) {
+        return agruparPorTramos(diaInicio, diaFin, dia -> dia, dia -> dia);
+    }
+
+    private void quitar(int i) {
+        int desplazar = tamano - i - 1;
+        System.arraycopy(ids, i + 1, ids, i, desplazar);
+        System.arraycopy(dias, i + 1, dias, i, desplazar);
+        System.arraycopy(actividades, i + 1, actividades, i, desplazar);
+        System.arraycopy(valores, i + 1, valores, i, desplazar);
+        System.arraycopy(impactos, i + 1, impactos, i, desplazar);
+        tamano--;
+    }
+
+    /**
+     * Parte un rango de días en tramos consecutivos (meses, semanas o días) y suma cada uno.
+     *
+     * @param ultimoDia Último día del tramo que contiene un día.
+     * @param clave     Clave del tramo que contiene un día.
+     */
+    private Map<Integer, Double> agruparPorTramos(int diaInicio, int diaFin, IntUnaryOperator ultimoDia, IntUnaryOperator clave) {
+        int i = primeraPosicionDesde(diaInicio);
+        int fin = primeraPosicionDespuesDe(diaFin);
+        int[] limites = new int[Math.min(fin - i, 64) + 1];
+        int[] claves = new int[limites.length - 1];
+        int numTramos = 0;
+        limites[0] = i;
+        while (i < fin) {
+            if (numTramos == claves.length) {
+                limites = Arrays.copyOf(limites, limites.length * 2);
+                claves = Arrays.copyOf(claves, claves.length * 2);
+            }
+            claves[numTramos] = clave.applyAsInt(dias[i]);
+            i = Math.min(fin, primeraPosicionDespuesDe(ultimoDia.applyAsInt(dias[i])));
+            limites[++numTramos] = i;
+        }
+
+        double[] sumas = KernelesImpacto.sumaPorTramos(impactos, Arrays.copyOf(limites, numTramos + 1));
+        Map<Integer, Double> resultado = new TreeMap<>();
+        for (int k = 0; k < numTramos; k++) resultado.put(claves[k], sumas[k]);
+        return resultado;
+    }
+
+    private static int lunes(int dia) {
+        return dia - (LocalDate.ofEpochDay(dia).getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+    }
+
+    /**
+     * Primera posición con día mayor o igual que el indicado.
+     */
+    private int primeraPosicionDesde(int dia) {
+        int bajo = 0, alto = tamano;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (dias[medio] < dia) bajo = medio + 1;
+            else alto = medio;
+        }
+        return bajo;
+    }
+
+    /**
+     * Primera posición con día estrictamente mayor que el indicado.
+     */
+    private int primeraPosicionDespuesDe(int dia) {
+        return (dia == Integer.MAX_VALUE) ? tamano : primeraPosicionDesde(dia + 1);
+    }
+
+    private void crecer() {
+        int n = dias.length * 2;
+        ids = Arrays.copyOf(ids, n);
+        dias = Arrays.copyOf(dias, n);
+        actividades = Arrays.copyOf(actividades, n);
+        valores = Arrays.copyOf(valores, n);
+        impactos = Arrays.copyOf(impactos, n);
+    }
+}
@@ -0,0 +1,273 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Diario local de solo-añadir para las huellas pendientes de guardar en la BBDD.
+ * <p>
+ * Cada huella se escribe como un registro de tamaño fijo en un archivo proyectado en memoria
+ * ({@link MappedByteBuffer}) y se fuerza a disco antes de confirmar, de modo que sobrevive
+ * a un cierre inesperado o a una caída de la BBDD. Al volver a abrir el diario se recuperan
+ * los registros que aún no se habían volcado.
+ * <p>
+ * Formato del archivo:
+ * <ul>
+ * <li>Cabecera de {@value #TAM_CABECERA} bytes: número mágico y versión.</li>
+ * <li>Registros de {@value #TAM_REGISTRO} bytes: estado, id de usuario, id de actividad,
+ * CRC32 de los datos, valor y fecha (segundos desde epoch).</li>
+ * </ul>
+ * Un registro con CRC incorrecto (escritura a medias) marca el final del diario.
+ * Cuando todos los registros están volcados, el diario se compacta y vuelve a empezar desde el principio.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class DiarioHuellas implements AutoCloseable {
+
+    /** Número mágico de la cabecera ("ECOJ"). */
+    private static final int MAGICO = 0x45434F4A;
+    private static final int VERSION = 1;
+
+    static final int TAM_CABECERA = 16;
+    static final int TAM_REGISTRO = 32;
+
+    /** Registros que caben en el archivo al crearlo. */
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    private static final byte ESTADO_LIBRE = 0;
+    private static final byte ESTADO_PENDIENTE = 1;
+    private static final byte ESTADO_VOLCADO = 2;
+
+    /**
+     * Huella guardada en el diario.
+     *
+     * @param posicion           Índice del registro dentro del diario.
+     * @param idUsuario          Id del usuario.
+     * @param idActividad        Id de la actividad.
+     * @param valor              Valor del consumo.
+     * @param fechaEpochSegundos Fecha de la huella en segundos desde epoch.
+     */
+    public record Entrada(int posicion, int idUsuario, int idActividad, double valor, long fechaEpochSegundos) {
+    }
+
+    private final Path ruta;
+    private final FileChannel canal;
+    private MappedByteBuffer mapa;
+
+    /** Número de registros que caben en la región proyectada. */
+    private int capacidad;
+
+    /** Índice del siguiente registro libre. */
+    private int siguiente;
+
+    /** Registros escritos que aún no se han marcado como volcados. */
+    private int numPendientes;
+
+    /**
+     * Abre (o crea) el diario en la ruta indicada y localiza el final de los registros válidos.
+     *
+     * @param ruta Ruta del archivo del diario.
+     * @throws IOException Si el archivo no puede crearse o no es un diario válido.
+     */
+    public DiarioHuellas(Path ruta) throws IOException {
+        this.ruta = ruta;
+        if (ruta.getParent() != null) {
+            Files.createDirectories(ruta.getParent());
+        }
+        canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long tamano = canal.size();
+        capacidad = (int) Math.max(CAPACIDAD_INICIAL, (tamano - TAM_CABECERA) / TAM_REGISTRO);
+        proyectar();
+
+        if (tamano == 0) {
+            mapa.putInt(0, MAGICO);
+            mapa.putInt(4, VERSION);
+            mapa.force();
+        } else if (mapa.getInt(0) != MAGICO) {
+            canal.close();
+            throw new IOException("El archivo no es un diario de huellas: " + ruta);
+        }
+
+        localizarFinal();
+    }
+
+    /**
+     * Añade una huella al diario y la fuerza a disco.
+     *
+     * @param idUsuario          Id del usuario.
+     * @param idActividad        Id de la actividad.
+     * @param valor              Valor del consumo.
+     * @param fechaEpochSegundos Fecha en segundos desde epoch.
+     * @return La entrada escrita, con su posición.
+     * @throws IOException Si no se puede ampliar el archivo.
+     */
+    public synchronized Entrada anadir(int idUsuario, int idActividad, double valor, long fechaEpochSegundos) throws IOException {
+        if (siguiente == capacidad) {
+            if (numPendientes == 0) {
+                compactar();
+            } else {
+                capacidad *= 2;
+                proyectar();
+            }
+        }
+
+        int posicion = siguiente;
+        int base = desplazamiento(posicion);
+        mapa.putInt(base + 4, idUsuario);
+        mapa.putInt(base + 8, idActividad);
+        mapa.putDouble(base + 16, valor);
+        mapa.putLong(base + 24, fechaEpochSegundos);
+        mapa.putInt(base + 12, crc(base));
+        // El estado se escribe el último: un registro a medias nunca queda marcado como pendiente válido
+        mapa.put(base, ESTADO_PENDIENTE);
+        mapa.force();
+
+        siguiente++;
+        numPendientes++;
+        return new Entrada(posicion, idUsuario, idActividad, valor, fechaEpochSegundos);
+    }
+
+    /**
+     * Devuelve las entradas que aún no se han volcado a la BBDD, en orden de escritura.
+     *
+     * @return Lista de entradas pendientes.
+     */
+    public synchronized List<Entrada> getPendientes() {
+        List<Entrada> pendientes = new ArrayList<>();
+        for (int i = 0; i < siguiente; i++) {
+            int base = desplazamiento(i);
+            if (mapa.get(base) == ESTADO_PENDIENTE) {
+                pendientes.add(new Entrada(i, mapa.getInt(base + 4), mapa.getInt(base + 8),
+                        mapa.getDouble(base + 16), mapa.getLong(base + 24)));
+            }
+        }
+        return pendientes;
+    }
+
+    /**
+     * Marca unas entradas como volcadas. Si ya no queda ninguna pendiente, compacta el diario.
+     *
+     * @param posiciones Posiciones de las entradas guardadas en la BBDD.
+     */
+    public synchronized void marcarVolcadas(Collection<Integer> posiciones) {
+        for (int posicion : posiciones) {
+            int base = desplazamiento(posicion);
+            if (posicion < siguiente && mapa.get(base) == ESTADO_PENDIENTE) {
+                mapa.put(base, ESTADO_VOLCADO);
+                numPendientes--;
+            }
+        }
+        if (numPendientes == 0) {
+            compactar();
+        }
+        mapa.force();
+    }
+
+    /**
+     * Ruta del archivo del diario.
+     *
+     * @return La ruta con la que se abrió.
+     */
+    public Path getRuta() {
+        return ruta;
+    }
+
+    /**
+     * Número de entradas pendientes de volcar.
+     *
+     * @return Entradas pendientes.
+     */
+    public synchronized int getNumPendientes() {
+        return numPendientes;
+    }
+
+    /**
+     * Fuerza los cambios a disco y cierra el archivo.
+     *
+     * @throws IOException Si falla el cierre del canal.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        mapa.force();
+        canal.close();
+    }
+
+    /**
+     * Recorre los registros desde el principio hasta el primero libre o corrupto.
+     */
+    private void localizarFinal() {
+        siguiente = 0;
+        numPendientes = 0;
+        while (siguiente < capacidad) {
+            int base = desplazamiento(siguiente);
+            byte estado = mapa.get(base);
+            if (estado == ESTADO_LIBRE || mapa.getInt(base + 12) != crc(base)) {
+                break;
+            }
+            if (estado == ESTADO_PENDIENTE) {
+                numPendientes++;
+            }
+            siguiente++;
+        }
+        // Limpia una posible escritura a medias para que no se confunda con datos válidos
+        if (siguiente < capacidad && mapa.get(desplazamiento(siguiente)) != ESTADO_LIBRE) {
+            borrar(siguiente, siguiente + 1);
+            mapa.force();
+        }
+    }
+
+    /**
+     * Borra todos los registros usados y vuelve a escribir desde el principio.
+     */
+    private void compactar() {
+        borrar(0, siguiente);
+        siguiente = 0;
+    }
+
+    /**
+     * Pone a cero un rango de registros.
+     *
+     * @param desde Primer registro (incluido).
+     * @param hasta Último registro (excluido).
+     */
+    private void borrar(int desde, int hasta) {
+        byte[] ceros = new byte[TAM_REGISTRO];
+        for (int i = desde; i < hasta; i++) {
+            mapa.put(desplazamiento(i), ceros);
+        }
+    }
+
+    /**
+     * Proyecta en memoria la cabecera y {@link #capacidad} registros, ampliando el archivo si hace falta.
+     */
+    private void proyectar() throws IOException {
+        mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, TAM_CABECERA + (long) capacidad * TAM_REGISTRO);
+    }
+
+    /**
+     * Calcula el CRC32 de los datos de un registro (todo salvo el estado y el propio CRC).
+     *
+     * @param base Desplazamiento del registro.
+     * @return El CRC de sus datos.
+     */
+    private int crc(int base) {
+        CRC32 crc = new CRC32();
+        crc.update(mapa.slice(base + 4, 8));
+        crc.update(mapa.slice(base + 16, 16));
+        return (int) crc.getValue();
+    }
+
+    private static int desplazamiento(int posicion) {
+        return TAM_CABECERA + posicion * TAM_REGISTRO;
+    }
+}
@@ -0,0 +1,123 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Locale;
+
+/**
+ * Conversión entre instantes y días/meses de calendario para las huellas.
+ * <p>
+ * Toda la aplicación usa una única zona horaria ({@link #ZONA}) para decidir a qué día pertenece
+ * una huella: al guardarla, al calcular sus claves {@code dia} y {@code mes} y al mostrarla.
+ * Así las consultas por rango comparan enteros ya guardados en lugar de convertir fechas en cada fila.
+ * <p>
+ * Claves:
+ * <ul>
+ * <li><b>dia</b>: días desde el 1970-01-01 ({@link LocalDate#toEpochDay()}).</li>
+ * <li><b>mes</b>: año * 100 + mes (ej. 202403 para marzo de 2024), ordenable y legible.</li>
+ * </ul>
+ * <p>
+ * Las huellas guardadas antes de existir las claves se grabaron a medianoche UTC
+ * ({@link #ZONA_HISTORICA}); sus claves se derivan de la fecha UTC para no adelantarlas un día
+ * en las zonas al oeste de UTC.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public final class FechaUtil {
+
+    /** Zona horaria de referencia, fijada al arrancar (se puede cambiar con {@code -Decorastro.zona}). */
+    public static final ZoneId ZONA = ZoneId.of(System.getProperty("ecorastro.zona", ZoneId.systemDefault().getId()));
+
+    /** Zona con la que se guardaron las huellas anteriores a las claves de día y mes. */
+    public static final ZoneId ZONA_HISTORICA = ZoneOffset.UTC;
+
+    /** Idioma de los nombres de días y meses que se muestran. */
+    public static final Locale LOCALE = Locale.of("es", "ES");
+
+    private FechaUtil() {
+    }
+
+    /**
+     * Instante con el que se guarda una huella de un día concreto (medianoche en {@link #ZONA}).
+     *
+     * @param fecha Día de la huella.
+     * @return Inicio de ese día.
+     */
+    public static Instant aInstante(LocalDate fecha) {
+        return fecha.atStartOfDay(ZONA).toInstant();
+    }
+
+    /**
+     * Día de calendario al que pertenece un instante.
+     *
+     * @param instante Instante guardado.
+     * @return Fecha en {@link #ZONA}.
+     */
+    public static LocalDate aFecha(Instant instante) {
+        return instante.atZone(ZONA).toLocalDate();
+    }
+
+    /**
+     * Día de calendario de una huella guardada antes de existir las claves de día y mes.
+     *
+     * @param instante Instante guardado (medianoche UTC).
+     * @return Fecha en {@link #ZONA_HISTORICA}.
+     */
+    public static LocalDate aFechaHistorica(Instant instante) {
+        return instante.atZone(ZONA_HISTORICA).toLocalDate();
+    }
+
+    /**
+     * Clave de día de un instante.
+     *
+     * @param instante Instante guardado.
+     * @return Días desde epoch en {@link #ZONA}.
+     */
+    public static int claveDia(Instant instante) {
+        return claveDia(aFecha(instante));
+    }
+
+    /**
+     * Clave de día de una fecha.
+     *
+     * @param fecha Fecha.
+     * @return Días desde epoch.
+     */
+    public static int claveDia(LocalDate fecha) {
+        return (int) fecha.toEpochDay();
+    }
+
+    /**
+     * Clave de mes de un instante.
+     *
+     * @param instante Instante guardado.
+     * @return Año * 100 + mes en {@link #ZONA}.
+     */
+    public static int claveMes(Instant instante) {
+        return claveMes(aFecha(instante));
+    }
+
+    /**
+     * Clave de mes de una fecha.
+     *
+     * @param fecha Fecha.
+     * @return Año * 100 + mes.
+     */
+    public static int claveMes(LocalDate fecha) {
+        return fecha.getYear() * 100 + fecha.getMonthValue();
+    }
+
+    /**
+     * Mes correspondiente a una clave de mes.
+     *
+     * @param claveMes Año * 100 + mes.
+     * @return El mes.
+     */
+    public static YearMonth aMes(int claveMes) {
+        return YearMonth.of(claveMes / 100, claveMes % 100);
+    }
+}
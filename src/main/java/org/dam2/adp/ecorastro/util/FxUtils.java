@@ -0,0 +1,27 @@
+package org.dam2.adp.ecorastro.util;
+
+import javafx.application.Platform;
+
+/**
+ * Utilidades para trabajar con el hilo de aplicación de JavaFX.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class FxUtils {
+
+    /**
+     * Ejecuta una acción en el hilo de JavaFX.
+     * <p>
+     * Si ya se está en ese hilo se ejecuta inmediatamente; si no, se encola con {@link Platform#runLater}.
+     *
+     * @param accion La acción que modifica la interfaz.
+     */
+    public static void ejecutarEnFx(Runnable accion) {
+        if (Platform.isFxApplicationThread()) {
+            accion.run();
+        } else {
+            Platform.runLater(accion);
+        }
+    }
+}
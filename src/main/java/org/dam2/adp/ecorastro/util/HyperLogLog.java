@@ -0,0 +1,150 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.util.Arrays;
+
+/**
+ * Estimador HyperLogLog del número de elementos distintos de un conjunto.
+ * <p>
+ * Usa 2^{@value #PRECISION} registros de un byte (4 KB), con un error típico del 1,6 %. Dos
+ * sketches se fusionan con el máximo de cada registro, así que el de un rango de fechas es la
+ * fusión de los de sus días o meses. Añadir el mismo elemento varias veces no cambia nada.
+ * <p>
+ * No es segura para varios hilos: quien la use debe sincronizar el acceso.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public final class HyperLogLog {
+
+    /** Bits del hash que eligen el registro. */
+    public static final int PRECISION = 12;
+
+    /** Número de registros (y de bytes serializados). */
+    public static final int NUM_REGISTROS = 1 << PRECISION;
+
+    private static final double ALFA = 0.7213 / (1 + 1.079 / NUM_REGISTROS);
+
+    private final byte[] registros;
+
+    /**
+     * Crea un sketch vacío.
+     */
+    public HyperLogLog() {
+        this.registros = new byte[NUM_REGISTROS];
+    }
+
+    private HyperLogLog(byte[] registros) {
+        this.registros = registros;
+    }
+
+    /**
+     * Reconstruye un sketch serializado con {@link #aBytes()}.
+     *
+     * @param bytes Registros serializados.
+     * @return El sketch.
+     * @throws IllegalArgumentException Si la longitud no corresponde a esta precisión.
+     */
+    public static HyperLogLog deBytes(byte[] bytes) {
+        if (bytes.length != NUM_REGISTROS) {
+            throw new IllegalArgumentException("Sketch de " + bytes.length + " bytes, se esperaban " + NUM_REGISTROS);
+        }
+        return new HyperLogLog(bytes.clone());
+    }
+
+    /**
+     * Añade un id.
+     *
+     * @param id Id del elemento (por ejemplo, de un usuario).
+     * @return true si algún registro ha cambiado.
+     */
+    public boolean anadir(int id) {
+        long hash = mezclar(id);
+        int indice = (int) (hash >>> (64 - PRECISION));
+        // Posición del primer 1 en el resto del hash (el bit centinela limita el máximo)
+        byte rango = (byte) (Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1);
+        if (rango > registros[indice]) {
+            registros[indice] = rango;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Fusiona otro sketch en este.
+     *
+     * @param otro Sketch a fusionar.
+     * @return true si algún registro ha cambiado.
+     */
+    public boolean fusionar(HyperLogLog otro) {
+        boolean cambiado = false;
+        for (int i = 0; i < NUM_REGISTROS; i++) {
+            if (otro.registros[i] > registros[i]) {
+                registros[i] = otro.registros[i];
+                cambiado = true;
+            }
+        }
+        return cambiado;
+    }
+
+    /**
+     * Estima el número de elementos distintos.
+     *
+     * @return La estimación redondeada.
+     */
+    public long estimar() {
+        double suma = 0;
+        int vacios = 0;
+        for (byte r : registros) {
+            suma += 1.0 / (1L << r);
+            if (r == 0) vacios++;
+        }
+        double estimacion = ALFA * NUM_REGISTROS * NUM_REGISTROS / suma;
+        // Con pocos elementos el conteo lineal de registros vacíos es mucho más preciso
+        if (estimacion <= 2.5 * NUM_REGISTROS && vacios > 0) {
+            estimacion = NUM_REGISTROS * Math.log((double) NUM_REGISTROS / vacios);
+        }
+        return Math.round(estimacion);
+    }
+
+    /**
+     * Indica si no se ha añadido nada.
+     *
+     * @return true si todos los registros están a 0.
+     */
+    public boolean isVacio() {
+        for (byte r : registros) {
+            if (r != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Serializa los registros.
+     *
+     * @return Copia de los {@value #NUM_REGISTROS} registros.
+     */
+    public byte[] aBytes() {
+        return registros.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof HyperLogLog otro && Arrays.equals(registros, otro.registros);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(registros);
+    }
+
+    /**
+     * Hash de 64 bits bien repartido de un entero (finalizador de SplitMix64), para que ids
+     * consecutivos caigan en registros independientes.
+     */
+    private static long mezclar(int id) {
+        long z = id + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
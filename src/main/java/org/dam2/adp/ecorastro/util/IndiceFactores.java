@@ -0,0 +1,103 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.dam2.adp.ecorastro.model.FactorEmision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Índice en memoria de las versiones de factores de emisión (Singleton).
+ * <p>
+ * Para cada categoría guarda sus intervalos de validez ordenados por día de inicio, de modo que
+ * el factor vigente en una fecha se localiza con una búsqueda binaria (O(log n)).
+ * El contenido se sustituye entero con {@link #cargar(List)}: las consultas trabajan siempre sobre
+ * una instantánea inmutable y no necesitan sincronizarse.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class IndiceFactores {
+
+    private static IndiceFactores instance;
+
+    /**
+     * Intervalos de una categoría, ordenados y sin solapes.
+     *
+     * @param desde   Primer día de cada intervalo (clave de día).
+     * @param hasta   Último día de cada intervalo (incluido; {@link Integer#MAX_VALUE} si no tiene fin).
+     * @param factor  Factor de cada intervalo.
+     */
+    private record Intervalos(int[] desde, int[] hasta, double[] factor) {
+    }
+
+    /** Instantánea actual: id de categoría → intervalos. */
+    private volatile Map<Integer, Intervalos> intervalos = Map.of();
+
+    private IndiceFactores() {
+    }
+
+    /**
+     * Obtiene la instancia única del índice.
+     *
+     * @return La instancia de IndiceFactores.
+     */
+    public static synchronized IndiceFactores getInstance() {
+        if (instance == null) {
+            instance = new IndiceFactores();
+        }
+        return instance;
+    }
+
+    /**
+     * Sustituye el contenido del índice.
+     *
+     * @param factores Todas las versiones de factores (con su categoría inicializada o al menos su id).
+     */
+    public void cargar(List<FactorEmision> factores) {
+        Map<Integer, List<FactorEmision>> porCategoria = new HashMap<>();
+        for (FactorEmision f : factores) {
+            porCategoria.computeIfAbsent(f.getIdCategoria().getId(), k -> new ArrayList<>()).add(f);
+        }
+
+        Map<Integer, Intervalos> nuevo = new HashMap<>();
+        porCategoria.forEach((idCategoria, lista) -> {
+            lista.sort(Comparator.comparing(FactorEmision::getValidoDesde));
+            int n = lista.size();
+            int[] desde = new int[n];
+            int[] hasta = new int[n];
+            double[] factor = new double[n];
+            for (int i = 0; i < n; i++) {
+                FactorEmision f = lista.get(i);
+                desde[i] = FechaUtil.claveDia(f.getValidoDesde());
+                hasta[i] = (f.getValidoHasta() != null) ? FechaUtil.claveDia(f.getValidoHasta()) : Integer.MAX_VALUE;
+                factor[i] = f.getFactor();
+            }
+            nuevo.put(idCategoria, new Intervalos(desde, hasta, factor));
+        });
+        intervalos = Map.copyOf(nuevo);
+    }
+
+    /**
+     * Factor vigente de una categoría en un día.
+     *
+     * @param idCategoria Id de la categoría.
+     * @param dia         Clave de día (ver {@link FechaUtil#claveDia(java.time.LocalDate)}).
+     * @param porDefecto  Factor a usar si ninguna versión cubre ese día (el factor actual de la categoría).
+     * @return El factor vigente.
+     */
+    public double getFactor(int idCategoria, int dia, double porDefecto) {
+        Intervalos i = intervalos.get(idCategoria);
+        if (i == null) return porDefecto;
+
+        int pos = Arrays.binarySearch(i.desde(), dia);
+        if (pos < 0) pos = -pos - 2; // Último intervalo que empieza antes de "dia"
+        if (pos >= 0 && dia <= i.hasta()[pos]) {
+            return i.factor()[pos];
+        }
+        return porDefecto;
+    }
+}
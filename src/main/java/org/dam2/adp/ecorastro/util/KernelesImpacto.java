@@ -0,0 +1,169 @@
+package org.dam2.adp.ecorastro.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.Arrays;
+
+/**
+ * Núcleos de agregación de impacto sobre arrays primitivos, vectorizados con la Vector API.
+ * <p>
+ * Las sumas procesan tantos elementos por instrucción como quepan en los registros SIMD de la
+ * CPU y terminan la cola con un bucle escalar. Tienen su versión escalar equivalente, que se usa
+ * si la CPU no permite vectorizarlas o si se arranca con {@code -Decorastro.simd=false}. La suma por
+ * categoría es siempre escalar: acumula cada valor en su categoría en una sola pasada.
+ * <p>
+ * Las sumas vectoriales suman en otro orden que las escalares, así que el resultado puede diferir
+ * en el último decimal.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public final class KernelesImpacto {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+    /** Especie de shorts con tantos carriles como la de doubles, o null si no existe. */
+    private static final VectorSpecies<Short> SHORTS = especieShorts();
+
+    /** Si se usan los núcleos vectoriales. */
+    private static final boolean SIMD = DOUBLES.length() > 1
+            && Boolean.parseBoolean(System.getProperty("ecorastro.simd", "true"));
+
+    private KernelesImpacto() {
+    }
+
+    /**
+     * Suma un tramo de un array.
+     *
+     * @param v     Valores.
+     * @param desde Primera posición (incluida).
+     * @param hasta Última posición (excluida).
+     * @return La suma.
+     */
+    public static double suma(double[] v, int desde, int hasta) {
+        return SIMD ? sumaVectorial(v, desde, hasta) : sumaEscalar(v, desde, hasta);
+    }
+
+    /**
+     * Suma los valores de un tramo cuya categoría es la indicada.
+     *
+     * @param v          Valores.
+     * @param categorias Categoría de cada valor.
+     * @param categoria  Categoría a sumar.
+     * @param desde      Primera posición (incluida).
+     * @param hasta      Última posición (excluida).
+     * @return La suma.
+     */
+    public static double sumaSi(double[] v, short[] categorias, short categoria, int desde, int hasta) {
+        return (SIMD && SHORTS != null)
+                ? sumaSiVectorial(v, categorias, categoria, desde, hasta)
+                : sumaSiEscalar(v, categorias, categoria, desde, hasta);
+    }
+
+    /**
+     * Suma los valores de un tramo agrupados por categoría.
+     *
+     * @param v          Valores.
+     * @param categorias Categoría de cada valor (no negativa).
+     * @param desde      Primera posición (incluida).
+     * @param hasta      Última posición (excluida).
+     * @return Array indexado por categoría con su suma (de longitud máxima categoría + 1).
+     */
+    public static double[] sumaPorCategoria(double[] v, short[] categorias, int desde, int hasta) {
+        // Una sola pasada escalar: sumar con máscara por cada categoría recorre el tramo una vez por categoría
+        double[] resultado = new double[16];
+        int max = -1;
+        for (int i = desde; i < hasta; i++) {
+            short c = categorias[i];
+            if (c >= resultado.length) resultado = Arrays.copyOf(resultado, Math.max(c + 1, resultado.length * 2));
+            if (c > max) max = c;
+            resultado[c] += v[i];
+        }
+        return (resultado.length == max + 1) ? resultado : Arrays.copyOf(resultado, max + 1);
+    }
+
+    /**
+     * Suma cada tramo consecutivo de un array ordenado (días, semanas o meses).
+     *
+     * @param v       Valores.
+     * @param limites Posiciones de corte: el tramo k va de {@code limites[k]} a {@code limites[k + 1]}.
+     * @return La suma de cada tramo ({@code limites.length - 1} elementos).
+     */
+    public static double[] sumaPorTramos(double[] v, int[] limites) {
+        double[] resultado = new double[Math.max(0, limites.length - 1)];
+        for (int k = 0; k < resultado.length; k++) {
+            resultado[k] = suma(v, limites[k], limites[k + 1]);
+        }
+        return resultado;
+    }
+
+    // ==========================================
+    // VERSIONES VECTORIALES
+    // ==========================================
+
+    private static double sumaVectorial(double[] v, int desde, int hasta) {
+        int i = desde;
+        int limite = desde + DOUBLES.loopBound(hasta - desde);
+        DoubleVector acumulado = DoubleVector.zero(DOUBLES);
+        for (; i < limite; i += DOUBLES.length()) {
+            acumulado = acumulado.add(DoubleVector.fromArray(DOUBLES, v, i));
+        }
+        double total = acumulado.reduceLanes(VectorOperators.ADD);
+        for (; i < hasta; i++) total += v[i];
+        return total;
+    }
+
+    private static double sumaSiVectorial(double[] v, short[] categorias, short categoria, int desde, int hasta) {
+        int i = desde;
+        int limite = desde + DOUBLES.loopBound(hasta - desde);
+        DoubleVector acumulado = DoubleVector.zero(DOUBLES);
+        for (; i < limite; i += DOUBLES.length()) {
+            VectorMask<Double> mascara = ShortVector.fromArray(SHORTS, categorias, i)
+                    .compare(VectorOperators.EQ, categoria)
+                    .cast(DOUBLES);
+            acumulado = acumulado.add(DoubleVector.fromArray(DOUBLES, v, i), mascara);
+        }
+        double total = acumulado.reduceLanes(VectorOperators.ADD);
+        for (; i < hasta; i++) {
+            if (categorias[i] == categoria) total += v[i];
+        }
+        return total;
+    }
+
+    // ==========================================
+    // VERSIONES ESCALARES
+    // ==========================================
+
+    static double sumaEscalar(double[] v, int desde, int hasta) {
+        double total = 0;
+        for (int i = desde; i < hasta; i++) total += v[i];
+        return total;
+    }
+
+    static double sumaSiEscalar(double[] v, short[] categorias, short categoria, int desde, int hasta) {
+        double total = 0;
+        for (int i = desde; i < hasta; i++) {
+            if (categorias[i] == categoria) total += v[i];
+        }
+        return total;
+    }
+
+    /**
+     * La máscara de comparar shorts debe tener los mismos carriles que los doubles; si la forma
+     * necesaria no existe (registros de 128 bits: 2 doubles → 32 bits de shorts) se usa la versión escalar.
+     */
+    private static VectorSpecies<Short> especieShorts() {
+        int bits = DOUBLES.length() * Short.SIZE;
+        for (VectorShape forma : VectorShape.values()) {
+            if (forma != VectorShape.S_Max_BIT && forma.vectorBitSize() == bits) {
+                return VectorSpecies.of(short.class, forma);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,87 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de uso de la aplicación (aciertos de cachés, precargas desperdiciadas...).
+ * <p>
+ * Cada contador se identifica por un nombre con puntos ("navegacion.precarga.aciertos") y se crea
+ * al incrementarlo por primera vez. Son baratos y seguros para varios hilos; al cerrar la aplicación
+ * se escribe un resumen en el registro de la aplicación ({@link System.Logger} de
+ * {@link RegistroServicios}, nivel INFO), que puede redirigirse o silenciarse con la configuración
+ * de {@code java.util.logging}.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class Metricas {
+
+    private static Metricas instance;
+
+    private final Map<String, LongAdder> contadores = new ConcurrentHashMap<>();
+
+    /**
+     * Crea un conjunto de contadores vacío (las pruebas usan uno propio).
+     */
+    Metricas() {
+    }
+
+    /**
+     * Obtiene la instancia única de la aplicación.
+     *
+     * @return Los contadores compartidos.
+     */
+    public static synchronized Metricas getInstance() {
+        if (instance == null) {
+            instance = new Metricas();
+        }
+        return instance;
+    }
+
+    /**
+     * Suma uno a un contador.
+     *
+     * @param nombre Nombre del contador.
+     */
+    public void incrementar(String nombre) {
+        contadores.computeIfAbsent(nombre, n -> new LongAdder()).increment();
+    }
+
+    /**
+     * Valor actual de un contador.
+     *
+     * @param nombre Nombre del contador.
+     * @return El valor, o 0 si nunca se ha incrementado.
+     */
+    public long get(String nombre) {
+        LongAdder contador = contadores.get(nombre);
+        return (contador != null) ? contador.sum() : 0;
+    }
+
+    /**
+     * Fracción de aciertos entre dos contadores.
+     *
+     * @param aciertos Contador de aciertos.
+     * @param fallos   Contador de fallos.
+     * @return aciertos / (aciertos + fallos), o NaN si ambos son 0.
+     */
+    public double tasa(String aciertos, String fallos) {
+        double a = get(aciertos);
+        double total = a + get(fallos);
+        return (total > 0) ? a / total : Double.NaN;
+    }
+
+    /**
+     * Copia de todos los contadores, ordenados por nombre.
+     *
+     * @return Valor de cada contador.
+     */
+    public Map<String, Long> instantanea() {
+        Map<String, Long> copia = new TreeMap<>();
+        contadores.forEach((nombre, contador) -> copia.put(nombre, contador.sum()));
+        return copia;
+    }
+}
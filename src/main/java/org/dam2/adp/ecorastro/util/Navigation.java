@@ -1,15 +1,12 @@
 package org.dam2.adp.ecorastro.util;
 
 
-import javafx.application.Application;
-import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 import org.dam2.adp.ecorastro.controller.MainController;
 
 import java.io.IOException;
-import java.net.URL;
 
 /**
  * Utilidades para la navegación entre escenas en la aplicación.
@@ -26,6 +23,9 @@ public class Navigation {
 
     private static final String CUSTOM_CSS_PATH = "/css/style.css";
 
+    /** Caché de las escenas completas (login, registro) que se reutilizan entre cambios de escena. */
+    private static final CacheVistas cacheEscenas = new CacheVistas(false);
+
     /**
      * Establece el escenario principal de la aplicación.
      *
@@ -60,10 +60,22 @@ public class Navigation {
         }
     }
 
+    /**
+     * Avisa de que el usuario probablemente va a abrir una vista (el ratón está sobre su acceso),
+     * para que se precarguen sus datos.
+     *
+     * @param fxml El archivo FXML de la vista.
+     */
+    public static void anticipar(String fxml) {
+        if (mainController != null) {
+            mainController.anticiparVista(fxml);
+        }
+    }
+
     /**
      * Cambia la escena actual por una nueva.
      * <p>
-     * Carga un nuevo archivo FXML y reemplaza la escena del escenario principal.
+     * Carga el archivo FXML (o lo reutiliza si ya estaba en caché) y reemplaza la escena del escenario principal.
      * Ajusta el tamaño y propiedades de la ventana según la vista (Login vs Main).
      *
      * @param fxml El archivo FXML de la escena a cargar.
@@ -73,20 +85,9 @@ public class Navigation {
             return;
         }
         try {
-
-            String ruta = "/org/dam2/adp/ecorastro/view/" + fxml;
-
-            URL resource = Navigation.class.getResource(ruta);
-
-            if (resource == null) {
-                System.err.println(" ERROR: No se encuentra: " + ruta);
-                System.err.println("   Verifica que el archivo " + fxml + " está en src/main/resources/org/dam2/adp/ecorastro/view/");
-                return;
-            }
-
-            FXMLLoader loader = new FXMLLoader(resource);
-            Parent root = loader.load();
-            Scene scene = new Scene(root);
+            Parent root = cacheEscenas.obtener(fxml).raiz();
+            // Un nodo raíz solo puede pertenecer a una escena: si ya tenía una, se reutiliza
+            Scene scene = (root.getScene() != null) ? root.getScene() : new Scene(root);
 
             primaryStage.setScene(scene);
 
@@ -102,6 +103,8 @@ public class Navigation {
             primaryStage.show();
         } catch (IOException e) {
             e.printStackTrace();
+            System.err.println(" ERROR: No se pudo cargar la escena " + fxml);
+            System.err.println("   Verifica que el archivo " + fxml + " está en src/main/resources/org/dam2/adp/ecorastro/view/");
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,189 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Precarga por intención de navegación: al pasar el ratón por un acceso a una vista se empiezan a
+ * consultar sus datos iniciales en segundo plano, y al abrirla el controlador los recoge en lugar
+ * de consultarlos otra vez.
+ * <p>
+ * Cada vista registra la carga de sus datos ({@link #registrar}). {@link #anticipar} la lanza una
+ * sola vez por vista y, cuando termina, ejecuta en el hilo de JavaFX una acción de seguimiento
+ * (cargar el FXML). {@link #recoger} entrega los datos una única vez, esperando si aún están en
+ * camino; pasados {@value #VIGENCIA_MS} ms se consideran caducados y se consulta de nuevo.
+ * <p>
+ * En {@link Metricas} se cuentan las precargas lanzadas, las navegaciones que encontraron su
+ * precarga ({@value #ACIERTOS}), las que no ({@value #FALLOS}) y las precargas que nadie usó
+ * ({@value #DESPERDICIADAS}).
+ * <p>
+ * Se usa desde el hilo de JavaFX; solo la carga de los datos va a otro hilo.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class PrecargaNavegacion {
+
+    /** Tiempo durante el que unos datos precargados se consideran actuales. */
+    public static final long VIGENCIA_MS = 10_000;
+
+    public static final String LANZADAS = "navegacion.precarga.lanzadas";
+    public static final String ACIERTOS = "navegacion.precarga.aciertos";
+    public static final String FALLOS = "navegacion.precarga.fallos";
+    public static final String DESPERDICIADAS = "navegacion.precarga.desperdiciadas";
+
+    /**
+     * Precarga en curso o terminada de una vista.
+     */
+    private static final class Anticipo {
+        final int idUsuario;
+        final long creado;
+        final CompletableFuture<Object> datos;
+        /** Se ha navegado a la vista: ya no cuenta como desperdiciada aunque no se recojan los datos. */
+        boolean navegado;
+
+        Anticipo(int idUsuario, long creado, CompletableFuture<Object> datos) {
+            this.idUsuario = idUsuario;
+            this.creado = creado;
+            this.datos = datos;
+        }
+    }
+
+    private final Executor ejecutor;
+    private final Metricas metricas;
+    private final Map<String, IntFunction<?>> cargas = new HashMap<>();
+    private final Map<String, Anticipo> anticipos = new HashMap<>();
+
+    /**
+     * Crea la precarga.
+     *
+     * @param ejecutor Ejecutor en el que se cargan los datos.
+     * @param metricas Contadores de aciertos y desperdicios.
+     */
+    public PrecargaNavegacion(Executor ejecutor, Metricas metricas) {
+        this.ejecutor = ejecutor;
+        this.metricas = metricas;
+    }
+
+    /**
+     * Registra la carga de los datos iniciales de una vista.
+     *
+     * @param vista Archivo FXML de la vista.
+     * @param carga Consulta de los datos a partir del id del usuario.
+     */
+    public void registrar(String vista, IntFunction<?> carga) {
+        cargas.put(vista, carga);
+    }
+
+    /**
+     * Empieza a cargar los datos de una vista si no se están cargando ya.
+     *
+     * @param vista       Archivo FXML de la vista.
+     * @param idUsuario   Usuario de la sesión.
+     * @param alTerminar  Acción a ejecutar en el hilo de JavaFX cuando los datos estén listos, si para
+     *                    entonces nadie los ha recogido ni se ha navegado a otra vista (puede ser null).
+     */
+    public void anticipar(String vista, int idUsuario, Runnable alTerminar) {
+        IntFunction<?> carga = cargas.get(vista);
+        if (carga == null) return;
+        long ahora = System.currentTimeMillis();
+        caducar(ahora);
+        Anticipo existente = anticipos.get(vista);
+        if (existente != null && existente.idUsuario == idUsuario) return;
+
+        Anticipo anticipo = new Anticipo(idUsuario, ahora,
+                CompletableFuture.supplyAsync(() -> carga.apply(idUsuario), ejecutor));
+        anticipos.put(vista, anticipo);
+        metricas.incrementar(LANZADAS);
+        if (alTerminar != null) {
+            anticipo.datos.thenRun(() -> FxUtils.ejecutarEnFx(() -> {
+                if (anticipos.get(vista) == anticipo && !anticipo.navegado) alTerminar.run();
+            }));
+        }
+    }
+
+    /**
+     * Anota que se ha abierto una vista: cuenta un acierto si estaba precargada (o un fallo si no) y
+     * da por desperdiciadas las precargas de las demás vistas.
+     *
+     * @param vista Archivo FXML de la vista abierta.
+     */
+    public void alNavegar(String vista) {
+        caducar(System.currentTimeMillis());
+        Iterator<Map.Entry<String, Anticipo>> it = anticipos.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Anticipo> entrada = it.next();
+            if (entrada.getKey().equals(vista) || entrada.getValue().navegado) continue;
+            metricas.incrementar(DESPERDICIADAS);
+            it.remove();
+        }
+        if (!cargas.containsKey(vista)) return;
+        Anticipo anticipo = anticipos.get(vista);
+        if (anticipo != null) {
+            anticipo.navegado = true;
+            metricas.incrementar(ACIERTOS);
+        } else {
+            metricas.incrementar(FALLOS);
+        }
+    }
+
+    /**
+     * Entrega los datos precargados de una vista (una sola vez) o los consulta directamente.
+     *
+     * @param vista     Archivo FXML de la vista.
+     * @param idUsuario Usuario de la sesión.
+     * @param directa   Consulta a usar si no hay datos precargados vigentes o su carga falló.
+     * @param <T>       Tipo de los datos; debe coincidir con el de la carga registrada para la vista.
+     * @return Los datos.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T recoger(String vista, int idUsuario, Supplier<T> directa) {
+        caducar(System.currentTimeMillis());
+        Anticipo anticipo = anticipos.get(vista);
+        if (anticipo == null || anticipo.idUsuario != idUsuario) return directa.get();
+        anticipos.remove(vista);
+        try {
+            return (T) anticipo.datos.join();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return directa.get();
+        }
+    }
+
+    /**
+     * Descarta todas las precargas (al cerrar sesión); las no usadas cuentan como desperdiciadas.
+     */
+    public void descartar() {
+        anticipos.values().forEach(a -> {
+            if (!a.navegado) metricas.incrementar(DESPERDICIADAS);
+        });
+        anticipos.clear();
+    }
+
+    /**
+     * Fracción de navegaciones que encontraron su vista precargada.
+     *
+     * @return Tasa de aciertos, o NaN si aún no se ha navegado a ninguna vista con precarga.
+     */
+    public double getTasaAciertos() {
+        return metricas.tasa(ACIERTOS, FALLOS);
+    }
+
+    /**
+     * Quita las precargas caducadas, contando como desperdiciadas las que nadie abrió.
+     */
+    private void caducar(long ahora) {
+        Iterator<Anticipo> it = anticipos.values().iterator();
+        while (it.hasNext()) {
+            Anticipo a = it.next();
+            if (ahora - a.creado <= VIGENCIA_MS) continue;
+            if (!a.navegado) metricas.incrementar(DESPERDICIADAS);
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package org.dam2.adp.ecorastro.util;
+
+import javafx.fxml.FXMLLoader;
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.FactorEmisionDAO;
+import org.dam2.adp.ecorastro.DAO.HabitoDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.DAO.RecomendacionDAO;
+import org.dam2.adp.ecorastro.DAO.SketchPercentilesDAO;
+import org.dam2.adp.ecorastro.DAO.SketchUsuariosDAO;
+import org.dam2.adp.ecorastro.DAO.UsuarioDAO;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.service.ArchivadorHuellas;
+import org.dam2.adp.ecorastro.service.EscrituraDiferidaHuellas;
+import org.dam2.adp.ecorastro.service.FactorEmisionService;
+import org.dam2.adp.ecorastro.service.SincronizacionService;
+import org.dam2.adp.ecorastro.service.HabitoService;
+import org.dam2.adp.ecorastro.service.AcumuladosComunidad;
+import org.dam2.adp.ecorastro.service.CalendarioImpacto;
+import org.dam2.adp.ecorastro.service.ContadorUsuariosActivos;
+import org.dam2.adp.ecorastro.service.HuellaService;
+import org.dam2.adp.ecorastro.service.InstantaneasInicio;
+import org.dam2.adp.ecorastro.service.PanelInicio;
+import org.dam2.adp.ecorastro.service.PercentilesComunidad;
+import org.dam2.adp.ecorastro.service.PrecargaPeriodos;
+import org.dam2.adp.ecorastro.service.PrecargaSesion;
+import org.dam2.adp.ecorastro.service.RecomendacionService;
+import org.dam2.adp.ecorastro.service.SeriesTemporalesService;
+import org.dam2.adp.ecorastro.service.UsuarioService;
+
+import java.lang.reflect.Constructor;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registro ligero de dependencias de la aplicación (Singleton).
+ * <p>
+ * Crea al arrancar una única instancia de cada DAO y servicio, junto con el bus de eventos
+ * y el ejecutor compartido para tareas en segundo plano, y las inyecta en los controladores FXML
+ * mediante {@link #crearControlador(Class)}, que se usa como {@code controllerFactory}.
+ * De este modo todas las pantallas comparten los mismos servicios y sus cachés.
+ * <p>
+ * Salvo que se arranque con {@code -Decorastro.huellas.escrituraDiferida=false}, las nuevas huellas se
+ * guardan mediante {@link EscrituraDiferidaHuellas} con el diario en {@code ~/.ecorastro/huellas.diario}.
+ * Del mismo modo, salvo con {@code -Decorastro.replica=false}, los datos del usuario se leen de la
+ * réplica local que mantiene {@link SincronizacionService}.
+ * Con {@code -Decorastro.archivo.horizonteMeses=N} las huellas de más de N meses se mueven al
+ * {@link ArchivoHuellas} de {@code ~/.ecorastro/archivo} (o de {@code -Decorastro.archivo.ruta}).
+ * El archivo es local, así que el archivado solo se hace si además se arranca con
+ * {@code -Decorastro.archivo.monocliente=true}: si otros clientes usan la misma BBDD, dejarían de ver
+ * las huellas archivadas.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class RegistroServicios {
+
+    private static RegistroServicios instance;
+
+    /** Registro donde se resumen las métricas de la sesión al cerrar. */
+    private static final System.Logger LOG = System.getLogger(RegistroServicios.class.getName());
+
+    /** Ruta del diario local de huellas pendientes. */
+    private static final Path RUTA_DIARIO_HUELLAS = Path.of(System.getProperty("user.home"), ".ecorastro", "huellas.diario");
+
+    /** Directorio de las instantáneas del panel de Inicio. */
+    private static final Path RUTA_INSTANTANEAS = Path.of(System.getProperty("user.home"), ".ecorastro", "inicio");
+
+    /** Directorio del archivo de huellas antiguas. */
+    private static final Path RUTA_ARCHIVO_HUELLAS = Path.of(System.getProperty("ecorastro.archivo.ruta",
+            Path.of(System.getProperty("user.home"), ".ecorastro", "archivo").toString()));
+
+    /** Componentes registrados, indexados por su tipo. */
+    private final Map<Class<?>, Object> componentes = new HashMap<>();
+
+    /** Ejecutor compartido para tareas en segundo plano. */
+    private final ExecutorService ejecutor;
+
+    /** Escritura diferida de huellas, o null si está desactivada o no se pudo abrir el diario. */
+    private final EscrituraDiferidaHuellas escrituraDiferida;
+
+    /** Sincronización con la réplica local, o null si está desactivada. */
+    private final SincronizacionService sincronizacion;
+
+    /** Archivo de huellas antiguas, o null si no se pudo abrir. */
+    private final ArchivoHuellas archivoHuellas;
+
+    /** Acumulados de la comunidad en memoria. */
+    private final AcumuladosComunidad comunidad;
+
+    /** Sketches de usuarios activos por día y mes. */
+    private final ContadorUsuariosActivos usuariosActivos;
+
+    /** Periodos de Análisis precargados en segundo plano. */
+    private final PrecargaPeriodos precargaPeriodos;
+
+    /** Últimos datos del panel de Inicio de cada usuario. */
+    private final InstantaneasInicio instantaneasInicio;
+
+    /**
+     * Constructor privado para implementar el patrón Singleton.
+     * <p>
+     * Cablea los DAOs y los servicios que dependen de ellos.
+     */
+    private RegistroServicios() {
+        archivoHuellas = abrirArchivoHuellas();
+        HuellaDAO huellaDAO = registrar(HuellaDAO.class, new HuellaDAO(Connection::getInstance, archivoHuellas));
+        ActividadDAO actividadDAO = registrar(ActividadDAO.class, new ActividadDAO());
+        HabitoDAO habitoDAO = registrar(HabitoDAO.class, new HabitoDAO());
+        UsuarioDAO usuarioDAO = registrar(UsuarioDAO.class, new UsuarioDAO(Connection::getInstance, archivoHuellas));
+        RecomendacionDAO recomendacionDAO = registrar(RecomendacionDAO.class, new RecomendacionDAO());
+        FactorEmisionDAO factorEmisionDAO = registrar(FactorEmisionDAO.class, new FactorEmisionDAO());
+
+        EventBus eventBus = registrar(EventBus.class, new EventBus());
+
+        escrituraDiferida = crearEscrituraDiferida(huellaDAO, actividadDAO, eventBus);
+
+        sincronizacion = Boolean.parseBoolean(System.getProperty("ecorastro.replica", "true"))
+                ? new SincronizacionService(huellaDAO, habitoDAO, actividadDAO, Connection::getReplica, eventBus)
+                : null;
+
+        ejecutor = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+                crearFactoriaHilos("ecorastro-bg"));
+        registrar(ExecutorService.class, ejecutor);
+
+        comunidad = registrar(AcumuladosComunidad.class, new AcumuladosComunidad(huellaDAO, eventBus));
+        usuariosActivos = registrar(ContadorUsuariosActivos.class,
+                new ContadorUsuariosActivos(new SketchUsuariosDAO(), huellaDAO, eventBus));
+        PercentilesComunidad percentiles = registrar(PercentilesComunidad.class,
+                new PercentilesComunidad(huellaDAO, new SketchPercentilesDAO(), eventBus, ejecutor));
+        HuellaService huellaService = registrar(HuellaService.class,
+                new HuellaService(huellaDAO, actividadDAO, eventBus, escrituraDiferida, sincronizacion, comunidad,
+                        usuariosActivos));
+        SessionManager.getInstance().alCerrarSesion(huellaService::vaciarAnalitica);
+        registrar(SeriesTemporalesService.class, new SeriesTemporalesService(huellaService));
+        registrar(CalendarioImpacto.class, new CalendarioImpacto(huellaService, eventBus));
+        precargaPeriodos = registrar(PrecargaPeriodos.class, new PrecargaPeriodos(huellaService, eventBus));
+        SessionManager.getInstance().alCerrarSesion(precargaPeriodos::vaciar);
+        instantaneasInicio = registrar(InstantaneasInicio.class, new InstantaneasInicio(RUTA_INSTANTANEAS));
+        SessionManager.getInstance().alCerrarSesion(instantaneasInicio::guardar);
+        HabitoService habitoService = registrar(HabitoService.class, new HabitoService(habitoDAO, eventBus, sincronizacion));
+        SessionManager.getInstance().alCerrarSesion(habitoService::vaciarCache);
+        registrar(UsuarioService.class, new UsuarioService(usuarioDAO));
+        RecomendacionService recomendacionService = registrar(RecomendacionService.class,
+                new RecomendacionService(recomendacionDAO));
+        PanelInicio panelInicio = registrar(PanelInicio.class,
+                new PanelInicio(huellaService, recomendacionService, percentiles, eventBus));
+        SessionManager.getInstance().alCerrarSesion(panelInicio::vaciar);
+        registrar(PrecargaSesion.class, new PrecargaSesion(huellaService, habitoService, precargaPeriodos, panelInicio));
+        FactorEmisionService factorEmisionService = registrar(FactorEmisionService.class,
+                new FactorEmisionService(factorEmisionDAO, huellaDAO, eventBus));
+
+        // Datos iniciales de las vistas que se precargan al pasar el ratón por sus accesos
+        PrecargaNavegacion precargaNavegacion = registrar(PrecargaNavegacion.class,
+                new PrecargaNavegacion(ejecutor, Metricas.getInstance()));
+        precargaNavegacion.registrar("historial_huellas.fxml", huellaService::getHuellasPorUsuario);
+        precargaNavegacion.registrar("mis_habitos.fxml", habitoService::getHabitosByUsuario);
+        precargaNavegacion.registrar("analisis.fxml",
+                id -> precargaPeriodos.obtener(id, PrecargaPeriodos.Periodo.mesDe(LocalDate.now())));
+
+        // Índice de factores y huellas antiguas sin claves de día y mes, sin categoría o sin impacto.
+        // El impacto rellenado usa el factor actual, así que después se reaplican las versiones; el
+        // recálculo avisa además a los agregados en memoria, que así cuentan las categorías rellenadas.
+        // Con las claves de día ya rellenas y si hay horizonte configurado, se archivan las huellas
+        // más antiguas (antes se crean los sketches de usuarios activos si aún no existen, porque
+        // se construyen desde la BBDD).
+        // Cada paso falla por separado; solo se saltan los que dependen de uno fallido. El volcado
+        // periódico de sketches empieza cuando ya están reconstruidos, para no crear la tabla a medias.
+        ejecutor.submit(() -> {
+            paso("carga de factores", factorEmisionService::cargar);
+            boolean claves = paso("claves de fecha", huellaDAO::rellenarClavesFecha);
+            paso("impacto y categoría de huellas antiguas", () -> {
+                int categorias = huellaDAO.rellenarCategorias();
+                if (huellaDAO.rellenarImpacto() > 0 || categorias > 0) {
+                    factorEmisionService.recalcularTodo();
+                }
+            });
+            paso("sketches de usuarios activos", usuariosActivos::reconstruirSiVacio);
+            if (usuariosActivos.isListo()) {
+                usuariosActivos.iniciar();
+            }
+            int horizonteMeses = Integer.getInteger("ecorastro.archivo.horizonteMeses", 0);
+            if (!Boolean.getBoolean("ecorastro.archivo.monocliente")) {
+                if (horizonteMeses > 0) {
+                    LOG.log(System.Logger.Level.WARNING, "Archivado desactivado: requiere -Decorastro.archivo.monocliente=true");
+                }
+            } else if (claves && usuariosActivos.isListo()) {
+                paso("archivado", () -> new ArchivadorHuellas(huellaDAO).archivar(horizonteMeses));
+            }
+        });
+
+        if (sincronizacion != null) {
+            registrar(SincronizacionService.class, sincronizacion);
+            ejecutor.submit(sincronizacion.getHuellaLocalDAO()::rellenarClavesFecha);
+            ejecutor.submit(sincronizacion.getHuellaLocalDAO()::rellenarImpacto);
+            ejecutor.submit(sincronizacion.getHuellaLocalDAO()::rellenarCategorias);
+            sincronizacion.iniciar();
+        }
+        comunidad.iniciar();
+    }
+
+    /**
+     * Ejecuta un paso del arranque en segundo plano sin que su fallo detenga los siguientes.
+     *
+     * @param nombre Descripción del paso para el registro de errores.
+     * @param paso   Paso a ejecutar.
+     * @return true si ha terminado sin excepción.
+     */
+    private static boolean paso(String nombre, Runnable paso) {
+        try {
+            paso.run();
+            return true;
+        } catch (Exception e) {
+            LOG.log(System.Logger.Level.ERROR, "Fallo en el arranque (" + nombre + ")", e);
+            return false;
+        }
+    }
+
+    /**
+     * Obtiene la instancia única del registro.
+     *
+     * @return La instancia Singleton de RegistroServicios.
+     */
+    public static synchronized RegistroServicios getInstance() {
+        if (instance == null) {
+            instance = new RegistroServicios();
+        }
+        return instance;
+    }
+
+    /**
+     * Registra (o sustituye) un componente.
+     *
+     * @param tipo      Tipo con el que se podrá recuperar.
+     * @param instancia Instancia a registrar.
+     * @param <T>       Tipo del componente.
+     * @return La misma instancia, para encadenar el cableado.
+     */
+    public synchronized <T> T registrar(Class<T> tipo, T instancia) {
+        componentes.put(tipo, instancia);
+        return instancia;
+    }
+
+    /**
+     * Recupera un componente registrado.
+     *
+     * @param tipo Tipo del componente.
+     * @param <T>  Tipo del componente.
+     * @return La instancia registrada.
+     * @throws IllegalStateException Si no hay ningún componente de ese tipo.
+     */
+    public synchronized <T> T get(Class<T> tipo) {
+        Object componente = componentes.get(tipo);
+        if (componente == null) {
+            throw new IllegalStateException("No hay ningún componente registrado para " + tipo.getName());
+        }
+        return tipo.cast(componente);
+    }
+
+    /**
+     * Devuelve el ejecutor compartido para tareas en segundo plano.
+     *
+     * @return El ejecutor de la aplicación.
+     */
+    public ExecutorService getEjecutor() {
+        return ejecutor;
+    }
+
+    /**
+     * Crea un controlador FXML inyectando sus dependencias por constructor.
+     * <p>
+     * Se elige el constructor público con más parámetros y cada parámetro se resuelve
+     * con los componentes registrados.
+     *
+     * @param tipo Clase del controlador declarada en el FXML.
+     * @return La instancia del controlador.
+     */
+    public Object crearControlador(Class<?> tipo) {
+        Constructor<?> constructor = Arrays.stream(tipo.getConstructors())
+                .max(Comparator.comparingInt(Constructor::getParameterCount))
+                .orElseThrow(() -> new IllegalStateException("El controlador " + tipo.getName() + " no tiene constructor público"));
+
+        Object[] argumentos = Arrays.stream(constructor.getParameterTypes())
+                .map(this::get)
+                .toArray();
+
+        try {
+            return constructor.newInstance(argumentos);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("No se pudo crear el controlador " + tipo.getName(), e);
+        }
+    }
+
+    /**
+     * Crea un {@link FXMLLoader} que obtiene sus controladores de este registro.
+     *
+     * @param recurso URL del archivo FXML.
+     * @return El loader configurado.
+     */
+    public FXMLLoader crearLoader(URL recurso) {
+        FXMLLoader loader = new FXMLLoader(recurso);
+        loader.setControllerFactory(this::crearControlador);
+        return loader;
+    }
+
+    /**
+     * Detiene el ejecutor compartido y la escritura diferida.
+     * <p>
+     * Debe llamarse al cerrar la aplicación. Las huellas aún no volcadas quedan en el diario
+     * y se guardarán en el siguiente arranque.
+     */
+    public void cerrar() {
+        ejecutor.shutdownNow();
+        if (escrituraDiferida != null) {
+            escrituraDiferida.close();
+        }
+        if (sincronizacion != null) {
+            sincronizacion.close();
+        }
+        comunidad.close();
+        usuariosActivos.close();
+        precargaPeriodos.close();
+        instantaneasInicio.close();
+        if (archivoHuellas != null) {
+            archivoHuellas.close();
+        }
+        Map<String, Long> metricas = Metricas.getInstance().instantanea();
+        if (!metricas.isEmpty()) {
+            LOG.log(System.Logger.Level.INFO, "Métricas de la sesión: {0}", metricas);
+        }
+    }
+
+    /**
+     * Abre el diario de huellas y crea la escritura diferida.
+     *
+     * @return La escritura diferida, o null si está desactivada o el diario no puede abrirse
+     *         (en ese caso las huellas se insertan directamente en la BBDD).
+     */
+    private static EscrituraDiferidaHuellas crearEscrituraDiferida(HuellaDAO huellaDAO, ActividadDAO actividadDAO, EventBus eventBus) {
+        if (!Boolean.parseBoolean(System.getProperty("ecorastro.huellas.escrituraDiferida", "true"))) {
+            return null;
+        }
+        try {
+            return new EscrituraDiferidaHuellas(new DiarioHuellas(RUTA_DIARIO_HUELLAS), huellaDAO, actividadDAO, eventBus);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.ERROR, "No se pudo abrir el diario de huellas, se guardarán directamente", e);
+            return null;
+        }
+    }
+
+    /**
+     * Abre el archivo de huellas antiguas.
+     *
+     * @return El archivo, o null si no puede abrirse (las consultas usarán solo la BBDD).
+     */
+    private static ArchivoHuellas abrirArchivoHuellas() {
+        try {
+            return new ArchivoHuellas(RUTA_ARCHIVO_HUELLAS);
+        } catch (IOException e) {
+            LOG.log(System.Logger.Level.ERROR, "No se pudo abrir el archivo de huellas", e);
+            return null;
+        }
+    }
+
+    /**
+     * Crea una factoría de hilos demonio con nombre, para que no impidan cerrar la aplicación.
+     *
+     * @param prefijo Prefijo del nombre de los hilos.
+     * @return La factoría de hilos.
+     */
+    private static ThreadFactory crearFactoriaHilos(String prefijo) {
+        AtomicInteger contador = new AtomicInteger();
+        return r -> {
+            Thread hilo = new Thread(r, prefijo + "-" + contador.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Tamaño de los tramos de una serie temporal.
+ * <p>
+ * Cada tramo se identifica por la clave de día ({@link FechaUtil#claveDia(LocalDate)}) de su primer
+ * día: el propio día, el lunes de la semana, el día 1 del mes o el 1 de enero.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public enum Resolucion {
+
+    DIA("diaria", ChronoUnit.DAYS),
+    SEMANA("semanal", ChronoUnit.WEEKS),
+    MES("mensual", ChronoUnit.MONTHS),
+    ANIO("anual", ChronoUnit.YEARS);
+
+    private final String nombre;
+    private final ChronoUnit unidad;
+
+    Resolucion(String nombre, ChronoUnit unidad) {
+        this.nombre = nombre;
+        this.unidad = unidad;
+    }
+
+    /**
+     * Nombre para mostrar ("diaria", "semanal"...).
+     *
+     * @return El nombre.
+     */
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Primer día del tramo que contiene una fecha.
+     *
+     * @param fecha Fecha cualquiera.
+     * @return Inicio de su tramo.
+     */
+    public LocalDate inicioTramo(LocalDate fecha) {
+        return switch (this) {
+            case DIA -> fecha;
+            case SEMANA -> fecha.minusDays(fecha.getDayOfWeek().getValue() - 1L);
+            case MES -> fecha.withDayOfMonth(1);
+            case ANIO -> fecha.with(TemporalAdjusters.firstDayOfYear());
+        };
+    }
+
+    /**
+     * Clave de día del primer día del tramo que contiene un día.
+     *
+     * @param dia Clave de día.
+     * @return Clave de día del inicio de su tramo.
+     */
+    public int inicioTramo(int dia) {
+        return (this == DIA) ? dia : (int) inicioTramo(LocalDate.ofEpochDay(dia)).toEpochDay();
+    }
+
+    /**
+     * Inicio del tramo siguiente.
+     *
+     * @param inicioTramo Inicio de un tramo.
+     * @return Inicio del tramo que le sigue.
+     */
+    public LocalDate siguiente(LocalDate inicioTramo) {
+        return inicioTramo.plus(1, unidad);
+    }
+}
@@ -0,0 +1,399 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.dam2.adp.ecorastro.model.Huella;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Segmento de archivo con las huellas de un mes, en formato columnar comprimido y de solo lectura.
+ * <p>
+ * El archivo se proyecta en memoria al abrirlo; la cabecera y el índice de usuarios se leen
+ * directamente del mapa y solo se descomprime el bloque del usuario consultado.
+ * <p>
+ * Formato:
+ * <ul>
+ * <li>Cabecera de {@value #TAM_CABECERA} bytes: número mágico, versión, mes (año * 100 + mes),
+ * número de filas, día mínimo y máximo, número de usuarios, número de unidades e impacto total.</li>
+ * <li>Diccionario de unidades: longitud (short) y texto UTF-8 de cada una.</li>
+ * <li>Índice de usuarios ordenado por id, {@value #TAM_ENTRADA} bytes por usuario: id, filas,
+ * día mínimo y máximo, desplazamiento y longitud de su bloque, e impacto total del usuario.</li>
+ * <li>Un bloque comprimido (Deflate) por usuario con sus filas por columnas: ids, actividades,
+ * días, fechas, valores, factores, impactos, versiones e índice de unidad.</li>
+ * </ul>
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public class SegmentoHuellas implements AutoCloseable {
+
+    /** Número mágico de la cabecera ("ECOS"). */
+    private static final int MAGICO = 0x45434F53;
+    private static final int VERSION = 1;
+
+    static final int TAM_CABECERA = 48;
+    static final int TAM_ENTRADA = 40;
+
+    /** Bytes por fila dentro de un bloque sin comprimir. */
+    private static final int BYTES_POR_FILA = 3 * Integer.BYTES + 5 * Long.BYTES + 1;
+
+    /**
+     * Huella archivada.
+     *
+     * @param id                 Id original de la huella.
+     * @param idUsuario          Id del usuario.
+     * @param idActividad        Id de la actividad.
+     * @param dia                Clave de día.
+     * @param fechaEpochSegundos Fecha en segundos desde epoch.
+     * @param valor              Valor del consumo.
+     * @param factor             Factor de emisión aplicado (NaN si no se había calculado).
+     * @param impacto            Impacto en kg de CO2 (NaN si no se había calculado).
+     * @param version            Versión de la fila al archivarla.
+     * @param unidad             Unidad de medida.
+     */
+    public record Fila(int id, int idUsuario, int idActividad, int dia, long fechaEpochSegundos,
+                       double valor, double factor, double impacto, long version, String unidad) {
+
+        /**
+         * Crea la fila archivada de una huella.
+         *
+         * @param h Huella con usuario y actividad (al menos sus ids).
+         * @return La fila equivalente.
+         */
+        public static Fila de(Huella h) {
+            return new Fila(h.getId(), h.getIdUsuario().getId(), h.getIdActividad().getId(), h.getDia(),
+                    h.getFecha().getEpochSecond(), h.getValor(),
+                    h.getFactorEmision() != null ? h.getFactorEmision() : Double.NaN,
+                    h.getImpactoKg() != null ? h.getImpactoKg() : Double.NaN,
+                    h.getVersion(), h.getUnidad());
+        }
+    }
+
+    private final FileChannel canal;
+    private final MappedByteBuffer mapa;
+
+    private final int mes;
+    private final int numFilas;
+    private final int minDia;
+    private final int maxDia;
+    private final double impactoTotal;
+    private final String[] unidades;
+
+    /** Ids de usuario del índice, ordenados (para la búsqueda binaria). */
+    private final int[] usuarios;
+    /** Desplazamiento de la entrada de cada usuario en el mapa. */
+    private final int inicioIndice;
+
+    private SegmentoHuellas(FileChannel canal, MappedByteBuffer mapa) throws IOException {
+        this.canal = canal;
+        this.mapa = mapa;
+        if (mapa.getInt(0) != MAGICO || mapa.getInt(4) != VERSION) {
+            throw new IOException("No es un segmento de huellas válido");
+        }
+        mes = mapa.getInt(8);
+        numFilas = mapa.getInt(12);
+        minDia = mapa.getInt(16);
+        maxDia = mapa.getInt(20);
+        int numUsuarios = mapa.getInt(24);
+        int numUnidades = mapa.getInt(28);
+        impactoTotal = mapa.getDouble(32);
+
+        int pos = TAM_CABECERA;
+        unidades = new String[numUnidades];
+        for (int i = 0; i < numUnidades; i++) {
+            int longitud = mapa.getShort(pos);
+            byte[] texto = new byte[longitud];
+            mapa.get(pos + 2, texto);
+            unidades[i] = new String(texto, StandardCharsets.UTF_8);
+            pos += 2 + longitud;
+        }
+
+        inicioIndice = pos;
+        usuarios = new int[numUsuarios];
+        for (int i = 0; i < numUsuarios; i++) {
+            usuarios[i] = mapa.getInt(entrada(i));
+        }
+    }
+
+    /**
+     * Abre un segmento y lo proyecta en memoria.
+     *
+     * @param ruta Ruta del archivo.
+     * @return El segmento abierto.
+     * @throws IOException Si no se puede leer o no es un segmento válido.
+     */
+    public static SegmentoHuellas abrir(Path ruta) throws IOException {
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ);
+        try {
+            return new SegmentoHuellas(canal, canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Escribe un segmento nuevo con las filas de un mes.
+     * <p>
+     * Se escribe en un archivo temporal que después se renombra, para no dejar nunca un segmento a medias.
+     *
+     * @param destino Ruta del segmento.
+     * @param mes     Mes (año * 100 + mes).
+     * @param filas   Filas del mes.
+     * @throws IOException Si falla la escritura.
+     */
+    public static void escribir(Path destino, int mes, Collection<Fila> filas) throws IOException {
+        Map<Integer, List<Fila>> porUsuario = new TreeMap<>();
+        Map<String, Integer> diccionario = new LinkedHashMap<>();
+        int minDia = Integer.MAX_VALUE;
+        int maxDia = Integer.MIN_VALUE;
+        double impactoTotal = 0;
+        for (Fila f : filas) {
+            porUsuario.computeIfAbsent(f.idUsuario(), k -> new ArrayList<>()).add(f);
+            diccionario.putIfAbsent(f.unidad(), diccionario.size());
+            minDia = Math.min(minDia, f.dia());
+            maxDia = Math.max(maxDia, f.dia());
+            if (!Double.isNaN(f.impacto())) impactoTotal += f.impacto();
+        }
+
+        // Bloques comprimidos de cada usuario
+        List<byte[]> bloques = new ArrayList<>();
+        for (List<Fila> lista : porUsuario.values()) {
+            lista.sort(Comparator.comparingInt(Fila::dia).thenComparingInt(Fila::id));
+            bloques.add(comprimir(columnas(lista, diccionario)));
+        }
+
+        int tamDiccionario = 0;
+        List<byte[]> textos = new ArrayList<>();
+        for (String unidad : diccionario.keySet()) {
+            byte[] texto = unidad.getBytes(StandardCharsets.UTF_8);
+            textos.add(texto);
+            tamDiccionario += 2 + texto.length;
+        }
+        int inicioBloques = TAM_CABECERA + tamDiccionario + porUsuario.size() * TAM_ENTRADA;
+        int tamBloques = bloques.stream().mapToInt(b -> b.length).sum();
+
+        ByteBuffer buffer = ByteBuffer.allocate(inicioBloques + tamBloques);
+        buffer.putInt(MAGICO).putInt(VERSION).putInt(mes).putInt(filas.size())
+                .putInt(filas.isEmpty() ? 0 : minDia).putInt(filas.isEmpty() ? 0 : maxDia)
+                .putInt(porUsuario.size()).putInt(diccionario.size())
+                .putDouble(impactoTotal).putLong(0);
+        for (byte[] texto : textos) {
+            buffer.putShort((short) texto.length).put(texto);
+        }
+
+        long desplazamiento = inicioBloques;
+        int i = 0;
+        for (Map.Entry<Integer, List<Fila>> e : porUsuario.entrySet()) {
+            List<Fila> lista = e.getValue();
+            byte[] bloque = bloques.get(i++);
+            double impactoUsuario = lista.stream().mapToDouble(Fila::impacto).filter(d -> !Double.isNaN(d)).sum();
+            buffer.putInt(e.getKey()).putInt(lista.size())
+                    .putInt(lista.get(0).dia()).putInt(lista.get(lista.size() - 1).dia())
+                    .putLong(desplazamiento).putInt(bloque.length).putInt(0)
+                    .putDouble(impactoUsuario);
+            desplazamiento += bloque.length;
+        }
+        for (byte[] bloque : bloques) {
+            buffer.put(bloque);
+        }
+        buffer.flip();
+
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (FileChannel salida = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) salida.write(buffer);
+            salida.force(true);
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getMes() {
+        return mes;
+    }
+
+    public int getNumFilas() {
+        return numFilas;
+    }
+
+    public int getMinDia() {
+        return minDia;
+    }
+
+    public int getMaxDia() {
+        return maxDia;
+    }
+
+    /**
+     * Indica si el segmento puede tener filas en un rango de días.
+     *
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return false si el rango queda fuera de [mínimo, máximo] del segmento.
+     */
+    public boolean solapa(int diaInicio, int diaFin) {
+        return numFilas > 0 && diaInicio <= maxDia && diaFin >= minDia;
+    }
+
+    /**
+     * Filas de un usuario.
+     *
+     * @param idUsuario Id del usuario.
+     * @return Sus filas ordenadas por día (vacía si no tiene ninguna).
+     */
+    public List<Fila> getFilas(int idUsuario) {
+        int i = Arrays.binarySearch(usuarios, idUsuario);
+        return (i < 0) ? List.of() : leerBloque(i);
+    }
+
+    /**
+     * Todas las filas del segmento.
+     *
+     * @return Filas agrupadas por usuario.
+     */
+    public List<Fila> getTodas() {
+        List<Fila> todas = new ArrayList<>(numFilas);
+        for (int i = 0; i < usuarios.length; i++) {
+            todas.addAll(leerBloque(i));
+        }
+        return todas;
+    }
+
+    /**
+     * Suma el impacto de un rango de días.
+     * <p>
+     * Si el rango cubre todo el segmento (o todos los días del usuario) se usan los totales
+     * precalculados sin descomprimir nada.
+     *
+     * @param idUsuario Id del usuario, o null para todos.
+     * @param diaInicio Primer día (incluido).
+     * @param diaFin    Último día (incluido).
+     * @return Impacto total en kg de CO2.
+     */
+    public double sumarImpacto(Integer idUsuario, int diaInicio, int diaFin) {
+        if (!solapa(diaInicio, diaFin)) return 0;
+        if (idUsuario == null) {
+            if (diaInicio <= minDia && diaFin >= maxDia) return impactoTotal;
+            double total = 0;
+            for (int i = 0; i < usuarios.length; i++) total += sumarImpactoUsuario(i, diaInicio, diaFin);
+            return total;
+        }
+        int i = Arrays.binarySearch(usuarios, idUsuario);
+        return (i < 0) ? 0 : sumarImpactoUsuario(i, diaInicio, diaFin);
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+
+    private double sumarImpactoUsuario(int i, int diaInicio, int diaFin) {
+        int base = entrada(i);
+        int min = mapa.getInt(base + 8);
+        int max = mapa.getInt(base + 12);
+        if (diaInicio > max || diaFin < min) return 0;
+        if (diaInicio <= min && diaFin >= max) return mapa.getDouble(base + 32);
+        double total = 0;
+        for (Fila f : leerBloque(i)) {
+            if (f.dia() >= diaInicio && f.dia() <= diaFin && !Double.isNaN(f.impacto())) total += f.impacto();
+        }
+        return total;
+    }
+
+    private int entrada(int i) {
+        return inicioIndice + i * TAM_ENTRADA;
+    }
+
+    /**
+     * Descomprime el bloque de un usuario del índice.
+     *
+     * @param i Posición del usuario en el índice.
+     * @return Sus filas.
+     */
+    private List<Fila> leerBloque(int i) {
+        int base = entrada(i);
+        int idUsuario = mapa.getInt(base);
+        int n = mapa.getInt(base + 4);
+        int desplazamiento = (int) mapa.getLong(base + 16);
+        int longitud = mapa.getInt(base + 24);
+
+        byte[] datos = new byte[n * BYTES_POR_FILA];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(mapa.slice(desplazamiento, longitud));
+            int leidos = 0;
+            while (leidos < datos.length && !inflater.finished()) {
+                leidos += inflater.inflate(datos, leidos, datos.length - leidos);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Segmento de huellas dañado (mes " + mes + ")", e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer b = ByteBuffer.wrap(datos);
+        int cId = 0, cActividad = 4 * n, cDia = 8 * n, cFecha = 12 * n, cValor = 20 * n,
+                cFactor = 28 * n, cImpacto = 36 * n, cVersion = 44 * n, cUnidad = 52 * n;
+        List<Fila> filas = new ArrayList<>(n);
+        for (int k = 0; k < n; k++) {
+            filas.add(new Fila(
+                    b.getInt(cId + 4 * k), idUsuario, b.getInt(cActividad + 4 * k), b.getInt(cDia + 4 * k),
+                    b.getLong(cFecha + 8 * k), b.getDouble(cValor + 8 * k), b.getDouble(cFactor + 8 * k),
+                    b.getDouble(cImpacto + 8 * k), b.getLong(cVersion + 8 * k), unidades[b.get(cUnidad + k)]));
+        }
+        return filas;
+    }
+
+    /**
+     * Dispone las filas de un usuario por columnas.
+     */
+    private static byte[] columnas(List<Fila> filas, Map<String, Integer> diccionario) {
+        int n = filas.size();
+        ByteBuffer b = ByteBuffer.allocate(n * BYTES_POR_FILA);
+        for (Fila f : filas) b.putInt(f.id());
+        for (Fila f : filas) b.putInt(f.idActividad());
+        for (Fila f : filas) b.putInt(f.dia());
+        for (Fila f : filas) b.putLong(f.fechaEpochSegundos());
+        for (Fila f : filas) b.putDouble(f.valor());
+        for (Fila f : filas) b.putDouble(f.factor());
+        for (Fila f : filas) b.putDouble(f.impacto());
+        for (Fila f : filas) b.putLong(f.version());
+        for (Fila f : filas) b.put((byte) (int) diccionario.get(f.unidad()));
+        return b.array();
+    }
+
+    private static byte[] comprimir(byte[] datos) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(datos);
+            deflater.finish();
+            byte[] salida = new byte[datos.length + 64];
+            int longitud = 0;
+            while (!deflater.finished()) {
+                if (longitud == salida.length) salida = Arrays.copyOf(salida, salida.length * 2);
+                longitud += deflater.deflate(salida, longitud, salida.length - longitud);
+            }
+            return Arrays.copyOf(salida, longitud);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -3,7 +3,9 @@ package org.dam2.adp.ecorastro.util;
 import org.dam2.adp.ecorastro.model.Usuario;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Gestiona la sesión del usuario y otros datos de sesión.
@@ -20,6 +22,9 @@ public class SessionManager {
     private Usuario usuarioActual;
     private final Map<String, Object> sessionData = new HashMap<>();
 
+    /** Acciones que se ejecutan al cerrar sesión (por ejemplo, vaciar cachés del usuario). */
+    private final List<Runnable> alCerrar = new CopyOnWriteArrayList<>();
+
     private SessionManager() {}
 
     /**
@@ -81,11 +86,21 @@ public class SessionManager {
         sessionData.remove(key);
     }
 
+    /**
+     * Registra una acción que se ejecutará cada vez que se cierre la sesión.
+     *
+     * @param accion la acción a ejecutar.
+     */
+    public void alCerrarSesion(Runnable accion) {
+        alCerrar.add(accion);
+    }
+
     /**
      * Cierra la sesión actual, eliminando todos los datos.
      */
     public void cerrarSesion() {
         usuarioActual = null;
         sessionData.clear();
+        alCerrar.forEach(Runnable::run);
     }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package org.dam2.adp.ecorastro.util;
+
+/**
+ * Reducción de series temporales a pocos puntos para dibujarlas sin perder su forma.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public final class Submuestreo {
+
+    private Submuestreo() {
+    }
+
+    /**
+     * Elige los puntos de una serie con el algoritmo LTTB (Largest-Triangle-Three-Buckets).
+     * <p>
+     * Conserva el primero y el último y reparte el resto en {@code umbral - 2} cubos; de cada cubo se
+     * queda con el punto que forma el triángulo más grande con el último elegido y la media del
+     * cubo siguiente, así que los picos y valles se mantienen aunque se descarte casi toda la serie.
+     *
+     * @param x      Abscisas, en orden creciente.
+     * @param y      Ordenadas.
+     * @param umbral Número de puntos a conservar (al menos 3).
+     * @return Posiciones de los puntos elegidos, en orden (todas si la serie ya es más corta).
+     * @throws IllegalArgumentException Si el umbral es menor que 3 o las longitudes no coinciden.
+     */
+    public static int[] lttb(double[] x, double[] y, int umbral) {
+        if (x.length != y.length) throw new IllegalArgumentException("Longitudes distintas: " + x.length + " y " + y.length);
+        if (umbral < 3) throw new IllegalArgumentException("El umbral debe ser al menos 3: " + umbral);
+        int n = x.length;
+        if (umbral >= n) {
+            int[] todos = new int[n];
+            for (int i = 0; i < n; i++) todos[i] = i;
+            return todos;
+        }
+
+        int[] elegidos = new int[umbral];
+        double anchoCubo = (double) (n - 2) / (umbral - 2);
+        int anterior = 0;
+        for (int cubo = 0; cubo < umbral - 2; cubo++) {
+            // Media del cubo siguiente (el último "cubo" es el punto final)
+            int inicioSiguiente = (int) ((cubo + 1) * anchoCubo) + 1;
+            int finSiguiente = Math.min((int) ((cubo + 2) * anchoCubo) + 1, n);
+            double mediaX = 0;
+            double mediaY = 0;
+            for (int j = inicioSiguiente; j < finSiguiente; j++) {
+                mediaX += x[j];
+                mediaY += y[j];
+            }
+            int enSiguiente = finSiguiente - inicioSiguiente;
+            mediaX /= enSiguiente;
+            mediaY /= enSiguiente;
+
+            int inicio = (int) (cubo * anchoCubo) + 1;
+            int fin = inicioSiguiente;
+            int mejor = inicio;
+            double areaMaxima = -1;
+            for (int j = inicio; j < fin; j++) {
+                double area = Math.abs((x[anterior] - mediaX) * (y[j] - y[anterior])
+                        - (x[anterior] - x[j]) * (mediaY - y[anterior]));
+                if (area > areaMaxima) {
+                    areaMaxima = area;
+                    mejor = j;
+                }
+            }
+            elegidos[cubo + 1] = mejor;
+            anterior = mejor;
+        }
+        elegidos[umbral - 1] = n - 1;
+        return elegidos;
+    }
+}
@@ -0,0 +1,286 @@
+package org.dam2.adp.ecorastro.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Resumen t-digest de una distribución de valores, para estimar cuantiles y percentiles.
+ * <p>
+ * Agrupa los valores ordenados en centroides (media y peso) que son más pequeños cuanto más cerca
+ * están de los extremos, así que los percentiles altos y bajos (los "top 5 %") son los más precisos.
+ * El tamaño no depende del número de valores: unos {@code compresion} centroides como máximo.
+ * Los valores nuevos se acumulan en un búfer y se funden con los centroides al llenarse.
+ * <p>
+ * No es segura para varios hilos: quien la use debe sincronizar el acceso.
+ *
+ * @author Antonio Delgado Portero
+ * @version 1.0
+ */
+public final class TDigest {
+
+    /** Compresión por defecto: error por debajo del 1 % en los percentiles centrales. */
+    public static final double COMPRESION = 100;
+
+    private final double compresion;
+
+    private double[] medias;
+    private double[] pesos;
+    private int numCentroides;
+
+    private final double[] bufferMedias;
+    private final double[] bufferPesos;
+    private int numBuffer;
+
+    private double total;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Crea un resumen vacío con la compresión por defecto.
+     */
+    public TDigest() {
+        this(COMPRESION);
+    }
+
+    /**
+     * Crea un resumen vacío.
+     *
+     * @param compresion Número aproximado de centroides.
+     */
+    public TDigest(double compresion) {
+        this.compresion = compresion;
+        int capacidad = (int) Math.ceil(compresion) * 2 + 10;
+        this.medias = new double[capacidad];
+        this.pesos = new double[capacidad];
+        this.bufferMedias = new double[capacidad * 5];
+        this.bufferPesos = new double[capacidad * 5];
+    }
+
+    /**
+     * Añade un valor.
+     *
+     * @param valor Valor a añadir (los NaN se ignoran).
+     */
+    public void anadir(double valor) {
+        anadir(valor, 1);
+    }
+
+    private void anadir(double valor, double peso) {
+        if (Double.isNaN(valor)) return;
+        if (numBuffer == bufferMedias.length) comprimir();
+        bufferMedias[numBuffer] = valor;
+        bufferPesos[numBuffer] = peso;
+        numBuffer++;
+        total += peso;
+        min = Math.min(min, valor);
+        max = Math.max(max, valor);
+    }
+
+    /**
+     * Añade todos los valores resumidos en otro t-digest.
+     *
+     * @param otro Resumen a fusionar.
+     */
+    public void fusionar(TDigest otro) {
+        otro.comprimir();
+        for (int i = 0; i < otro.numCentroides; i++) {
+            anadir(otro.medias[i], otro.pesos[i]);
+        }
+        if (otro.total > 0) {
+            min = Math.min(min, otro.min);
+            max = Math.max(max, otro.max);
+        }
+    }
+
+    /**
+     * Número de valores añadidos.
+     *
+     * @return Peso total.
+     */
+    public long size() {
+        return Math.round(total);
+    }
+
+    /**
+     * Estima el valor por debajo del cual queda una fracción de los datos.
+     *
+     * @param q Fracción entre 0 y 1 (0,5 para la mediana).
+     * @return El cuantil, o NaN si no hay datos.
+     */
+    public double cuantil(double q) {
+        comprimir();
+        if (numCentroides == 0) return Double.NaN;
+        if (numCentroides == 1) return medias[0];
+        double objetivo = Math.max(0, Math.min(1, q)) * total;
+
+        // Cola izquierda: entre el mínimo y el centro del primer centroide
+        if (objetivo < pesos[0] / 2) {
+            return min + (medias[0] - min) * objetivo / (pesos[0] / 2);
+        }
+        double acumulado = 0;
+        for (int i = 0; i < numCentroides - 1; i++) {
+            double centro = acumulado + pesos[i] / 2;
+            double centroSiguiente = acumulado + pesos[i] + pesos[i + 1] / 2;
+            if (objetivo <= centroSiguiente) {
+                return medias[i] + (medias[i + 1] - medias[i]) * (objetivo - centro) / (centroSiguiente - centro);
+            }
+            acumulado += pesos[i];
+        }
+        // Cola derecha: entre el centro del último centroide y el máximo
+        int u = numCentroides - 1;
+        double centroUltimo = total - pesos[u] / 2;
+        return medias[u] + (max - medias[u]) * Math.min(1, (objetivo - centroUltimo) / (pesos[u] / 2));
+    }
+
+    /**
+     * Estima la fracción de los datos que queda por debajo de un valor.
+     *
+     * @param valor Valor a situar.
+     * @return Fracción entre 0 y 1, o NaN si no hay datos.
+     */
+    public double cdf(double valor) {
+        comprimir();
+        if (numCentroides == 0) return Double.NaN;
+        if (valor <= min) return 0;
+        if (valor >= max) return 1;
+        if (numCentroides == 1) return (valor - min) / (max - min);
+
+        if (valor < medias[0]) {
+            return (pesos[0] / 2) * (valor - min) / (medias[0] - min) / total;
+        }
+        double acumulado = 0;
+        for (int i = 0; i < numCentroides - 1; i++) {
+            if (valor < medias[i + 1]) {
+                double centro = acumulado + pesos[i] / 2;
+                double centroSiguiente = acumulado + pesos[i] + pesos[i + 1] / 2;
+                double hueco = medias[i + 1] - medias[i];
+                double fraccion = (hueco > 0) ? (valor - medias[i]) / hueco : 0;
+                return (centro + (centroSiguiente - centro) * fraccion) / total;
+            }
+            acumulado += pesos[i];
+        }
+        int u = numCentroides - 1;
+        double centroUltimo = total - pesos[u] / 2;
+        return (centroUltimo + (pesos[u] / 2) * (valor - medias[u]) / (max - medias[u])) / total;
+    }
+
+    // ==========================================
+    // SERIALIZACIÓN
+    // ==========================================
+
+    /**
+     * Serializa el resumen.
+     *
+     * @return Compresión, extremos y centroides.
+     */
+    public byte[] aBytes() {
+        comprimir();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(32 + numCentroides * 16);
+        try (DataOutputStream salida = new DataOutputStream(buffer)) {
+            salida.writeDouble(compresion);
+            salida.writeDouble(min);
+            salida.writeDouble(max);
+            salida.writeInt(numCentroides);
+            for (int i = 0; i < numCentroides; i++) {
+                salida.writeDouble(medias[i]);
+                salida.writeDouble(pesos[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Reconstruye un resumen serializado con {@link #aBytes()}.
+     *
+     * @param bytes Resumen serializado.
+     * @return El resumen.
+     * @throws IllegalArgumentException Si los datos no son válidos.
+     */
+    public static TDigest deBytes(byte[] bytes) {
+        try (DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            TDigest digest = new TDigest(entrada.readDouble());
+            double min = entrada.readDouble();
+            double max = entrada.readDouble();
+            int n = entrada.readInt();
+            if (n < 0 || n > digest.medias.length) throw new IllegalArgumentException("Número de centroides no válido: " + n);
+            for (int i = 0; i < n; i++) {
+                digest.medias[i] = entrada.readDouble();
+                digest.pesos[i] = entrada.readDouble();
+                digest.total += digest.pesos[i];
+            }
+            digest.numCentroides = n;
+            digest.min = min;
+            digest.max = max;
+            return digest;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Resumen t-digest dañado", e);
+        }
+    }
+
+    // ==========================================
+    // COMPRESIÓN
+    // ==========================================
+
+    /**
+     * Funde el búfer con los centroides: se ordenan todos por media y se van uniendo mientras el
+     * centroide resultante no supere el tamaño permitido en su posición (función de escala k1).
+     */
+    private void comprimir() {
+        if (numBuffer == 0) return;
+        int n = numCentroides + numBuffer;
+        double[] todasMedias = Arrays.copyOf(medias, n);
+        double[] todosPesos = Arrays.copyOf(pesos, n);
+        System.arraycopy(bufferMedias, 0, todasMedias, numCentroides, numBuffer);
+        System.arraycopy(bufferPesos, 0, todosPesos, numCentroides, numBuffer);
+        numBuffer = 0;
+
+        Integer[] orden = new Integer[n];
+        for (int i = 0; i < n; i++) orden[i] = i;
+        Arrays.sort(orden, (a, b) -> Double.compare(todasMedias[a], todasMedias[b]));
+
+        int salida = 0;
+        double media = todasMedias[orden[0]];
+        double peso = todosPesos[orden[0]];
+        double pesoAnterior = 0;
+        double kIzquierda = escala(0);
+        for (int j = 1; j < n; j++) {
+            int i = orden[j];
+            double propuesto = peso + todosPesos[i];
+            if (escala((pesoAnterior + propuesto) / total) - kIzquierda <= 1) {
+                media += (todasMedias[i] - media) * todosPesos[i] / propuesto;
+                peso = propuesto;
+            } else {
+                salida = guardarCentroide(salida, media, peso);
+                pesoAnterior += peso;
+                kIzquierda = escala(pesoAnterior / total);
+                media = todasMedias[i];
+                peso = todosPesos[i];
+            }
+        }
+        numCentroides = guardarCentroide(salida, media, peso);
+    }
+
+    private int guardarCentroide(int posicion, double media, double peso) {
+        if (posicion == medias.length) {
+            medias = Arrays.copyOf(medias, posicion * 2);
+            pesos = Arrays.copyOf(pesos, posicion * 2);
+        }
+        medias[posicion] = media;
+        pesos[posicion] = peso;
+        return posicion + 1;
+    }
+
+    /**
+     * Función de escala k1: crece deprisa cerca de 0 y de 1, así que allí caben menos valores por centroide.
+     */
+    private double escala(double q) {
+        return compresion / (2 * Math.PI) * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1);
+    }
+}
@@ -0,0 +1,122 @@
+package org.dam2.adp.ecorastro.connection;
+
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Habito;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Recomendacion;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la copia de seguridad entre dos BBDD H2 en memoria.
+ */
+class CopiaSeguridadTest {
+
+    @TempDir
+    Path dir;
+
+    private Connection origen;
+    private Connection destino;
+    private Usuario usuario;
+    private Actividad coche;
+
+    @BeforeEach
+    void setUp() {
+        origen = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:copia-" + UUID.randomUUID()));
+        destino = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:copia-" + UUID.randomUUID()));
+
+        try (Session session = origen.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            Recomendacion recomendacion = new Recomendacion();
+            recomendacion.setIdCategoria(transporte);
+            recomendacion.setDescripcion("Usa la bici");
+            session.persist(recomendacion);
+
+            usuario = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(usuario);
+            session.persist(new Habito(usuario, coche, 3, "semanal"));
+            session.getTransaction().commit();
+        }
+
+        HuellaDAO huellaDAO = new HuellaDAO(() -> origen);
+        for (int i = 0; i < 50; i++) {
+            assertTrue(huellaDAO.addHuella(new Huella(usuario, coche, i + 1, "km",
+                    FechaUtil.aInstante(LocalDate.of(2024, 1, 1).plusDays(i)))));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        origen.close();
+        destino.close();
+    }
+
+    @Test
+    void testExportarYRestaurarConservaLosDatos() throws IOException {
+        Path archivo = dir.resolve("copia.ecob");
+        CopiaSeguridad copia = new CopiaSeguridad(() -> origen);
+        assertEquals(55, copia.exportar(archivo));
+        assertEquals(55, new CopiaSeguridad(() -> destino).restaurar(archivo));
+
+        HuellaDAO restaurado = new HuellaDAO(() -> destino);
+        List<Huella> huellas = restaurado.getHistorialHuellasUsuario(usuario.getId());
+        List<Huella> originales = new HuellaDAO(() -> origen).getHistorialHuellasUsuario(usuario.getId());
+        assertEquals(originales.size(), huellas.size());
+        for (int i = 0; i < huellas.size(); i++) {
+            Huella a = originales.get(i);
+            Huella b = huellas.get(i);
+            assertEquals(a.getId(), b.getId());
+            assertEquals(a.getFecha(), b.getFecha());
+            assertEquals(a.getValor(), b.getValor());
+            assertEquals(a.getImpactoKg(), b.getImpactoKg());
+            assertEquals(a.getVersion(), b.getVersion());
+        }
+        assertEquals("Transporte", huellas.get(0).getIdActividad().getIdCategoria().getNombre());
+
+        // Los ids nuevos continúan tras los restaurados
+        Huella nueva = new Huella(usuario, coche, 1, "km", FechaUtil.aInstante(LocalDate.of(2024, 6, 1)));
+        assertTrue(restaurado.addHuella(nueva));
+        assertTrue(nueva.getId() > originales.get(0).getId());
+    }
+
+    @Test
+    void testRechazaUnaCopiaDaniada() throws IOException {
+        Path archivo = dir.resolve("copia.ecob");
+        new CopiaSeguridad(() -> origen).exportar(archivo);
+        try (RandomAccessFile raf = new RandomAccessFile(archivo.toFile(), "rw")) {
+            long posicion = raf.length() - 12; // Dentro del último bloque de huellas
+            raf.seek(posicion);
+            int original = raf.read();
+            raf.seek(posicion);
+            raf.write(original ^ 0x5A);
+        }
+        assertThrows(IOException.class, () -> new CopiaSeguridad(() -> destino).restaurar(archivo));
+    }
+}
@@ -0,0 +1,58 @@
+package org.dam2.adp.ecorastro.event;
+
+import org.dam2.adp.ecorastro.model.Huella;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventBusTest {
+
+    private EventBus eventBus;
+
+    @BeforeEach
+    void setUp() {
+        eventBus = new EventBus();
+    }
+
+    @Test
+    void testPublicarEntregaSoloAlTipoSuscrito() {
+        // 1. PREPARACIÓN
+        List<EventoDominio> recibidos = new ArrayList<>();
+        eventBus.suscribir(HuellaCreada.class, recibidos::add);
+        Huella huella = new Huella();
+
+        // 2. EJECUCIÓN
+        eventBus.publicar(new HuellaCreada(huella));
+        eventBus.publicar(new HuellaEliminada(huella));
+
+        // 3. VERIFICACIÓN
+        assertEquals(1, recibidos.size(), "Solo debe recibir el evento del tipo suscrito");
+        assertSame(huella, ((HuellaCreada) recibidos.get(0)).huella());
+    }
+
+    @Test
+    void testCancelarSuscripcion() {
+        List<EventoDominio> recibidos = new ArrayList<>();
+        EventBus.Suscripcion suscripcion = eventBus.suscribir(HuellaCreada.class, recibidos::add);
+
+        suscripcion.cancelar();
+        eventBus.publicar(new HuellaCreada(new Huella()));
+
+        assertTrue(recibidos.isEmpty(), "Tras cancelar no debe recibir más eventos");
+    }
+
+    @Test
+    void testErrorEnSuscriptorNoCortaLaEntrega() {
+        List<EventoDominio> recibidos = new ArrayList<>();
+        eventBus.suscribir(HuellaCreada.class, e -> { throw new IllegalStateException("fallo de prueba"); });
+        eventBus.suscribir(HuellaCreada.class, recibidos::add);
+
+        eventBus.publicar(new HuellaCreada(new Huella()));
+
+        assertEquals(1, recibidos.size(), "El segundo suscriptor debe recibir el evento aunque el primero falle");
+    }
+}
@@ -0,0 +1,44 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import javafx.scene.chart.XYChart;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EnlaceGraficosTest {
+
+    @Test
+    void testReutilizaDatosYMantieneElOrden() {
+        XYChart.Series<String, Number> serie = new XYChart.Series<>();
+        Comparator<String> orden = Comparator.naturalOrder();
+
+        EnlaceGraficos.enlazar(serie, Map.of("Transporte", 5.0, "Agua", 1.0), orden);
+        XYChart.Data<String, Number> agua = serie.getData().get(0);
+        XYChart.Data<String, Number> transporte = serie.getData().get(1);
+        assertEquals("Agua", agua.getXValue());
+
+        // Mismas categorías: solo cambian los valores, los objetos son los mismos
+        boolean estructura = EnlaceGraficos.sincronizar(serie.getData(), Map.of("Transporte", 7.0, "Agua", 2.0), orden,
+                XYChart.Data::getXValue, XYChart.Data::setYValue, XYChart.Data::new);
+        assertFalse(estructura);
+        assertSame(agua, serie.getData().get(0));
+        assertEquals(7.0, transporte.getYValue());
+
+        // Entra Energía entre las dos y sale Agua
+        EnlaceGraficos.enlazar(serie, Map.of("Transporte", 3.0, "Energía", 4.0), orden);
+        assertEquals(List.of("Energía", "Transporte"), serie.getData().stream().map(XYChart.Data::getXValue).toList());
+        assertSame(transporte, serie.getData().get(1));
+        assertEquals(3.0, transporte.getYValue());
+    }
+
+    @Test
+    void testClaseCategoria() {
+        assertEquals("categoria-alimentacion", EnlaceGraficos.claseCategoria("Alimentación"));
+        assertEquals("categoria-energia", EnlaceGraficos.claseCategoria("Energía"));
+        assertEquals("categoria-transporte-publico", EnlaceGraficos.claseCategoria(" Transporte público "));
+    }
+}
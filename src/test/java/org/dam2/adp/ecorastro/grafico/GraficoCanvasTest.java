@@ -0,0 +1,58 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import javafx.geometry.Rectangle2D;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraficoCanvasTest {
+
+    @Test
+    void testHitTesting() {
+        // Líneas: 5 puntos en 400 px de datos, uno cada 100 px a partir del margen izquierdo
+        double izquierda = GraficoLineas.MARGEN_IZQUIERDO;
+        assertEquals(0, GraficoLineas.indiceEn(izquierda + 10, 400, 5));
+        assertEquals(2, GraficoLineas.indiceEn(izquierda + 190, 400, 5));
+        assertEquals(4, GraficoLineas.indiceEn(izquierda + 401, 400, 5));
+        assertEquals(-1, GraficoLineas.indiceEn(5, 400, 5));
+        assertEquals(-1, GraficoLineas.indiceEn(izquierda + 10, 400, 0));
+
+        // Barras: 4 columnas de 100 px
+        izquierda = GraficoBarras.MARGEN_IZQUIERDO;
+        assertEquals(0, GraficoBarras.indiceEn(izquierda + 99, 400, 4));
+        assertEquals(1, GraficoBarras.indiceEn(izquierda + 100, 400, 4));
+        assertEquals(-1, GraficoBarras.indiceEn(izquierda + 400, 400, 4));
+
+        // Donut: tres sectores de 90º, 90º y 180º empezando a las 12 en punto
+        double[] valores = {1, 1, 2};
+        assertEquals(0, GraficoDonut.indiceEn(40, -40, 100, valores, 4)); // Arriba a la derecha
+        assertEquals(1, GraficoDonut.indiceEn(40, 40, 100, valores, 4));  // Abajo a la derecha
+        assertEquals(2, GraficoDonut.indiceEn(-80, 0, 100, valores, 4));  // Izquierda
+        assertEquals(-1, GraficoDonut.indiceEn(10, 0, 100, valores, 4));  // Hueco central
+        assertEquals(-1, GraficoDonut.indiceEn(110, 0, 100, valores, 4)); // Fuera
+    }
+
+    @Test
+    void testActualizarValorSoloInvalidaSuFranja() {
+        GraficoLineas grafico = new GraficoLineas();
+        grafico.resize(462, 200); // 400 px de datos
+        grafico.layout();
+        grafico.setDatos(List.of("a", "b", "c", "d", "e"), new double[]{1, 2, 3, 2, 1});
+        grafico.layout();
+        assertNull(grafico.getZonaSucia());
+
+        // Cambiar el punto central sin salirse de la escala solo ensucia de su vecino izquierdo al derecho
+        grafico.actualizarValor(2, 1.5);
+        Rectangle2D zona = grafico.getZonaSucia();
+        assertNotNull(zona);
+        assertTrue(zona.getMinX() >= GraficoLineas.MARGEN_IZQUIERDO + 100 - 5);
+        assertTrue(zona.getMaxX() <= GraficoLineas.MARGEN_IZQUIERDO + 300 + 5);
+        grafico.layout();
+
+        // Un valor por encima de la escala la cambia y obliga a repintar todo
+        grafico.actualizarValor(2, 50);
+        assertEquals(new Rectangle2D(0, 0, 462, 200), grafico.getZonaSucia());
+    }
+}
@@ -0,0 +1,27 @@
+package org.dam2.adp.ecorastro.grafico;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MapaCalorAnualTest {
+
+    @Test
+    void testCeldasYNiveles() {
+        // 2024 empieza en lunes: el 1 de enero está en la primera celda y el 31 de diciembre (martes) en la semana 53
+        assertEquals(LocalDate.of(2024, 1, 1), MapaCalorAnual.diaEn(2024, 26 + 5, 16 + 5));
+        assertEquals(LocalDate.of(2024, 12, 31), MapaCalorAnual.diaEn(2024, 26 + 52 * 14 + 5, 16 + 14 + 5));
+        // 2023 empieza en domingo: la celda del lunes de la primera semana es de 2022
+        assertNull(MapaCalorAnual.diaEn(2023, 26 + 5, 16 + 5));
+        assertEquals(LocalDate.of(2023, 1, 1), MapaCalorAnual.diaEn(2023, 26 + 5, 16 + 6 * 14 + 5));
+        assertNull(MapaCalorAnual.diaEn(2024, 26 + 13, 16 + 5)); // Hueco entre celdas
+        assertNull(MapaCalorAnual.diaEn(2024, 3, 3));
+
+        assertEquals(0, MapaCalorAnual.nivel(0, 10));
+        assertEquals(1, MapaCalorAnual.nivel(0.01, 10));
+        assertEquals(2, MapaCalorAnual.nivel(5, 10));
+        assertEquals(MapaCalorAnual.NIVELES, MapaCalorAnual.nivel(10, 10));
+    }
+}
@@ -0,0 +1,31 @@
+package org.dam2.adp.ecorastro.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HuellaTest {
+
+    @Test
+    void testImpactoSeCalculaConElFactor() {
+        Huella huella = new Huella(null, null, 10, "km", Instant.now());
+        assertNull(huella.getImpactoKg());
+
+        huella.aplicarFactorEmision(0.2);
+
+        assertEquals(0.2, huella.getFactorEmision(), 1e-9);
+        assertEquals(2.0, huella.getImpactoKg(), 1e-9);
+    }
+
+    @Test
+    void testCambiarValorRecalculaImpacto() {
+        Huella huella = new Huella(null, null, 10, "km", Instant.now());
+        huella.aplicarFactorEmision(0.5);
+
+        huella.setValor(30);
+
+        assertEquals(15.0, huella.getImpactoKg(), 1e-9);
+    }
+}
@@ -0,0 +1,151 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de los acumulados de comunidad frente a las consultas a la BBDD (H2 en memoria).
+ */
+class AcumuladosComunidadTest {
+
+    private Connection conexion;
+    private AcumuladosComunidad comunidad;
+    private HuellaService conAcumulados;
+    private HuellaService sinAcumulados;
+    private Usuario ana;
+    private Usuario bea;
+    private Actividad coche;
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:comunidad-" + UUID.randomUUID()));
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            ana = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(ana);
+            bea = new Usuario("Bea", "bea@email.com", "hash");
+            session.persist(bea);
+            session.getTransaction().commit();
+        }
+
+        HuellaDAO huellaDAO = new HuellaDAO(() -> conexion);
+        ActividadDAO actividadDAO = new ActividadDAO(() -> conexion);
+        EventBus eventBus = new EventBus();
+        comunidad = new AcumuladosComunidad(huellaDAO, eventBus);
+        conAcumulados = new HuellaService(huellaDAO, actividadDAO, eventBus, null, null, comunidad, null);
+        sinAcumulados = new HuellaService(huellaDAO, actividadDAO, eventBus, null, null, null, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        comunidad.close();
+        conexion.close();
+    }
+
+    @Test
+    void testSiembraYSigueLasEscrituras() {
+        LocalDate ayer = LocalDate.now().minusDays(1);
+        assertTrue(conAcumulados.addHuella(ana, coche, 100, ayer)); // Antes de sembrar: no se acumula
+        assertTrue(comunidad.reconciliar());
+        assertEquals(20.0, comunidad.getTotal(), 1e-9);
+        assertEquals(1, comunidad.getUsuariosActivos());
+
+        assertTrue(conAcumulados.addHuella(bea, coche, 50, ayer));
+        assertTrue(conAcumulados.addHuella(bea, coche, 150, ayer));
+        assertIgualQueLaBBDD();
+        assertEquals(10.0 + 30.0, comunidad.getTotalUsuario(bea.getId()), 1e-9);
+
+        Huella editada = conAcumulados.getHuellasPorUsuario(ana.getId()).get(0);
+        editada.setValor(200);
+        assertTrue(conAcumulados.updateHuella(editada));
+        assertIgualQueLaBBDD();
+
+        for (Huella h : conAcumulados.getHuellasPorUsuario(bea.getId())) {
+            assertTrue(conAcumulados.deleteHuella(h));
+        }
+        assertIgualQueLaBBDD();
+        assertEquals(1, comunidad.getUsuariosActivos());
+        assertEquals(0.0, conAcumulados.getMediaComunidadSinUsuario(ana.getId()));
+    }
+
+    @Test
+    void testRellenarCategoriasDeHuellasAntiguas() {
+        HuellaDAO huellaDAO = new HuellaDAO(() -> conexion);
+        Huella h = new Huella(ana, coche, 100, "km", FechaUtil.aInstante(LocalDate.now()));
+        assertTrue(huellaDAO.addHuella(h));
+        assertEquals(coche.getIdCategoria().getId(), h.getIdCategoria().getId(), "Se copia al escribir");
+
+        // Fila guardada antes de existir la columna
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            session.createNativeMutationQuery("UPDATE ecorastro_db.huella SET id_categoria = NULL").executeUpdate();
+            session.getTransaction().commit();
+        }
+        assertTrue(huellaDAO.getAcumuladosComunidad().isEmpty());
+
+        assertEquals(1, huellaDAO.rellenarCategorias());
+        assertEquals(0, huellaDAO.rellenarCategorias());
+        Object[] fila = huellaDAO.getAcumuladosComunidad().get(0);
+        assertEquals("Transporte", fila[2]);
+        assertEquals(20.0, (Double) fila[3], 1e-9);
+    }
+
+    @Test
+    void testRellenarClavesDeHuellasAntiguasConLaFechaUtc() {
+        HuellaDAO huellaDAO = new HuellaDAO(() -> conexion);
+        LocalDate dia = LocalDate.of(2024, 3, 1);
+        Huella h = new Huella(ana, coche, 100, "km", FechaUtil.aInstante(dia));
+        assertTrue(huellaDAO.addHuella(h));
+
+        // Fila guardada antes de existir las claves: medianoche UTC y sin dia ni mes
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            session.createNativeMutationQuery("UPDATE ecorastro_db.huella SET dia = NULL, mes = NULL, fecha = :fecha")
+                    .setParameter("fecha", dia.atStartOfDay(ZoneOffset.UTC).toInstant())
+                    .executeUpdate();
+            session.getTransaction().commit();
+        }
+
+        assertEquals(1, huellaDAO.rellenarClavesFecha());
+        Huella rellenada = huellaDAO.getHuellaById(h.getId());
+        assertEquals(FechaUtil.claveDia(dia), rellenada.getDia());
+        assertEquals(202403, rellenada.getMes());
+    }
+
+    private void assertIgualQueLaBBDD() {
+        assertEquals(sinAcumulados.getTotalImpactoComunidad(), conAcumulados.getTotalImpactoComunidad(), 1e-9);
+        assertEquals(sinAcumulados.getTotalUsuariosActivos(), conAcumulados.getTotalUsuariosActivos());
+        assertEquals(sinAcumulados.getMediaComunidadSinUsuario(ana.getId()),
+                conAcumulados.getMediaComunidadSinUsuario(ana.getId()), 1e-9);
+        assertEquals(sinAcumulados.getMediaImpactoPorCategoria().get("Transporte"),
+                conAcumulados.getMediaImpactoPorCategoria().get("Transporte"), 1e-9);
+    }
+}
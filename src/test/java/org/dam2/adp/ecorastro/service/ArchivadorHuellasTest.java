@@ -0,0 +1,258 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.DAO.UsuarioDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.EventoDominio;
+import org.dam2.adp.ecorastro.event.HuellaActualizada;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.event.HuellaEliminada;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.ArchivoHuellas;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del archivado de huellas antiguas sobre una BBDD H2 en memoria.
+ */
+class ArchivadorHuellasTest {
+
+    @TempDir
+    Path dir;
+
+    private Connection conexion;
+    private ArchivoHuellas archivo;
+    private HuellaDAO huellaDAO;
+
+    private Actividad coche;
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:archivo-" + UUID.randomUUID()));
+        archivo = new ArchivoHuellas(dir);
+        huellaDAO = new HuellaDAO(() -> conexion, archivo);
+
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            usuario = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(usuario);
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        archivo.close();
+        conexion.close();
+    }
+
+    private Huella crearHuella(LocalDate fecha, double valor) {
+        Huella h = new Huella(usuario, coche, valor, "km", FechaUtil.aInstante(fecha));
+        assertTrue(huellaDAO.addHuella(h));
+        return h;
+    }
+
+    @Test
+    void testLasConsultasIncluyenLasHuellasArchivadas() {
+        LocalDate hoy = LocalDate.now();
+        Huella antigua = crearHuella(hoy.minusYears(2), 10);
+        crearHuella(hoy.minusYears(2).plusDays(1), 5);
+        Huella reciente = crearHuella(hoy, 20);
+
+        LocalDate inicio = hoy.minusYears(3);
+        double totalAntes = huellaDAO.getTotalImpactoUsuarioPorRangoFecha(usuario.getId(), inicio, hoy);
+        int mesesAntes = huellaDAO.getEvolucionRangoFechaUsuario(usuario.getId(), inicio, hoy).size();
+
+        assertEquals(2, new ArchivadorHuellas(huellaDAO).archivar(12));
+        assertEquals(List.of(reciente.getId()), huellaDAO.getIdsHuellasUsuario(usuario.getId()), "Solo la reciente queda en la BBDD");
+        assertEquals(2, archivo.getNumFilas());
+
+        List<Huella> historial = huellaDAO.getHistorialHuellasUsuario(usuario.getId());
+        assertEquals(3, historial.size());
+        assertEquals(reciente.getId(), historial.get(0).getId(), "Se mantiene el orden por fecha descendente");
+        assertEquals("Transporte", historial.get(2).getIdActividad().getIdCategoria().getNombre());
+
+        assertEquals(totalAntes, huellaDAO.getTotalImpactoUsuarioPorRangoFecha(usuario.getId(), inicio, hoy), 1e-9);
+        assertEquals(totalAntes, huellaDAO.getImpactoUsuarioPorCategoria(usuario.getId(), inicio, hoy).get("Transporte"), 1e-9);
+        assertEquals(mesesAntes, huellaDAO.getEvolucionRangoFechaUsuario(usuario.getId(), inicio, hoy).size());
+        assertEquals(totalAntes, huellaDAO.getTotalImpactoComunidadPorRangoFecha(inicio, hoy), 1e-9);
+
+        assertTrue(huellaDAO.isArchivada(antigua));
+        assertFalse(huellaDAO.isArchivada(reciente));
+    }
+
+    @Test
+    void testLasConsultasDeComunidadIncluyenLasHuellasArchivadas() {
+        LocalDate hoy = LocalDate.now();
+        crearHuella(hoy.minusYears(2), 100);
+        crearHuella(hoy, 1);
+        Usuario berto;
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            berto = new Usuario("Berto", "berto@email.com", "hash");
+            session.persist(berto);
+            session.getTransaction().commit();
+        }
+        assertTrue(huellaDAO.addHuella(new Huella(berto, coche, 50, "km", FechaUtil.aInstante(hoy))));
+
+        LocalDate inicio = hoy.minusYears(3);
+        Long rankingAna = huellaDAO.getRankingUsuarioEnComunidad(usuario.getId());
+        Long rankingBerto = huellaDAO.getRankingUsuarioEnComunidad(berto.getId());
+        Long activos = huellaDAO.countUsuariosActivosComunidadPorRangoFecha(hoy.minusYears(2), hoy.minusYears(2));
+        double media = huellaDAO.getMediaImpactoComunidadPorCategoriaRangoFecha(inicio, hoy).get("Transporte");
+
+        assertEquals(1, new ArchivadorHuellas(huellaDAO).archivar(12));
+        assertEquals(rankingAna, huellaDAO.getRankingUsuarioEnComunidad(usuario.getId()));
+        assertEquals(rankingBerto, huellaDAO.getRankingUsuarioEnComunidad(berto.getId()));
+        assertEquals(2L, rankingAna, "Ana emite más que Berto contando su huella archivada");
+        assertEquals(activos, huellaDAO.countUsuariosActivosComunidadPorRangoFecha(hoy.minusYears(2), hoy.minusYears(2)));
+        assertEquals(1L, activos);
+        assertEquals(media, huellaDAO.getMediaImpactoComunidadPorCategoriaRangoFecha(inicio, hoy).get("Transporte"), 1e-9);
+    }
+
+    /** Archiva una huella antigua y borra su actividad, que ya no tiene filas en la BBDD que la retengan. */
+    private void archivarYBorrarActividad() {
+        crearHuella(LocalDate.now().minusYears(2), 10);
+        assertEquals(1, new ArchivadorHuellas(huellaDAO).archivar(12));
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            session.remove(session.get(Actividad.class, coche.getId()));
+            session.getTransaction().commit();
+        }
+    }
+
+    @Test
+    void testAcumuladosOmitenArchivadasConActividadDesconocida() {
+        archivarYBorrarActividad();
+
+        assertTrue(huellaDAO.getAcumuladosComunidad().isEmpty());
+    }
+
+    @Test
+    void testTotalesPorCategoriaOmitenArchivadasConActividadDesconocida() {
+        archivarYBorrarActividad();
+
+        assertTrue(huellaDAO.getTotalesUsuarioPorCategoria(0, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void testConsultasDeUsuarioOmitenArchivadasConActividadDesconocida() {
+        archivarYBorrarActividad();
+        LocalDate hoy = LocalDate.now();
+
+        assertTrue(huellaDAO.getHistorialHuellasUsuario(usuario.getId()).isEmpty());
+        assertTrue(huellaDAO.getImpactoUsuarioPorCategoria(usuario.getId(), hoy.minusYears(3), hoy).isEmpty());
+        assertTrue(huellaDAO.getMediaImpactoComunidadPorCategoriaRangoFecha(hoy.minusYears(3), hoy).isEmpty());
+    }
+
+    @Test
+    void testEliminarUsuarioPurgaSusHuellasArchivadas() throws Exception {
+        LocalDate hoy = LocalDate.now();
+        crearHuella(hoy.minusYears(2), 10);
+        Usuario berto;
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            berto = new Usuario("Berto", "berto@email.com", "hash");
+            session.persist(berto);
+            session.getTransaction().commit();
+        }
+        assertTrue(huellaDAO.addHuella(new Huella(berto, coche, 50, "km", FechaUtil.aInstante(hoy.minusYears(2)))));
+        assertEquals(2, new ArchivadorHuellas(huellaDAO).archivar(12));
+
+        assertTrue(new UsuarioDAO(() -> conexion, archivo).deleteUsuario(usuario));
+        assertEquals(1, archivo.getNumFilas());
+        assertTrue(huellaDAO.getHistorialHuellasUsuario(usuario.getId()).isEmpty());
+        assertEquals(10.0, huellaDAO.getTotalImpactoComunidadPorRangoFecha(hoy.minusYears(3), hoy), 1e-9);
+
+        try (ArchivoHuellas reabierto = new ArchivoHuellas(dir)) {
+            assertEquals(1, reabierto.getNumFilas(), "La purga sobrevive al reabrir el archivo");
+        }
+    }
+
+    @Test
+    void testEditarYBorrarHuellasArchivadas() throws Exception {
+        LocalDate hoy = LocalDate.now();
+        Huella antigua = crearHuella(hoy.minusYears(2), 10);
+        Huella otra = crearHuella(hoy.minusYears(2), 5);
+        new ArchivadorHuellas(huellaDAO).archivar(12);
+
+        List<Huella> archivadas = huellaDAO.getHistorialHuellasUsuario(usuario.getId());
+        Huella aBorrar = archivadas.stream().filter(h -> h.getId().equals(otra.getId())).findFirst().orElseThrow();
+        assertTrue(huellaDAO.deleteHuella(aBorrar));
+        assertFalse(huellaDAO.isArchivada(aBorrar));
+
+        Huella aEditar = archivadas.stream().filter(h -> h.getId().equals(antigua.getId())).findFirst().orElseThrow();
+        aEditar.setValor(30);
+        assertTrue(huellaDAO.updateHuella(aEditar));
+        assertEquals(1, huellaDAO.getIdsHuellasUsuario(usuario.getId()).size(), "Vuelve a la BBDD");
+        assertEquals(0, archivo.getNumFilas());
+        assertEquals(6.0, huellaDAO.getTotalImpactoUsuarioPorRangoFecha(usuario.getId(), hoy.minusYears(3), hoy), 1e-9);
+
+        try (ArchivoHuellas reabierto = new ArchivoHuellas(dir)) {
+            assertEquals(0, reabierto.getNumFilas(), "Al reabrir se usa la última generación de cada mes");
+        }
+    }
+
+    @Test
+    void testEditarArchivadaEsBajaYAltaYNoPierdeDatosSiFalla() {
+        LocalDate hoy = LocalDate.now();
+        Huella antigua = crearHuella(hoy.minusYears(2), 10);
+        new ArchivadorHuellas(huellaDAO).archivar(12);
+        EventBus eventBus = new EventBus();
+        List<EventoDominio> eventos = new ArrayList<>();
+        eventBus.suscribir(HuellaEliminada.class, eventos::add);
+        eventBus.suscribir(HuellaCreada.class, eventos::add);
+        eventBus.suscribir(HuellaActualizada.class, eventos::add);
+        HuellaService huellaService = new HuellaService(huellaDAO, new ActividadDAO(() -> conexion), eventBus, null, null, null, null);
+
+        // Si la inserción falla, la huella sigue archivada
+        Huella aEditar = huellaDAO.getHistorialHuellasUsuario(usuario.getId()).get(0);
+        Actividad inexistente = new Actividad();
+        inexistente.setId(9_999);
+        aEditar.setIdActividad(inexistente);
+        assertFalse(huellaService.updateHuella(aEditar));
+        assertEquals(1, archivo.getNumFilas());
+        assertTrue(eventos.isEmpty());
+
+        aEditar.setIdActividad(coche);
+        aEditar.setValor(30);
+        assertTrue(huellaService.updateHuella(aEditar));
+        assertEquals(0, archivo.getNumFilas());
+        assertEquals(antigua.getId(), aEditar.getId(), "La huella de la vista conserva el id archivado");
+        assertEquals(2, eventos.size());
+        HuellaEliminada baja = assertInstanceOf(HuellaEliminada.class, eventos.get(0));
+        HuellaCreada alta = assertInstanceOf(HuellaCreada.class, eventos.get(1));
+        assertEquals(antigua.getId(), baja.huella().getId());
+        assertEquals(huellaDAO.getIdsHuellasUsuario(usuario.getId()), List.of(alta.huella().getId()));
+        assertEquals(6.0, alta.huella().getImpactoKg(), 1e-9);
+    }
+}
@@ -0,0 +1,79 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del impacto diario por año del calendario sobre una BBDD H2 en memoria.
+ */
+class CalendarioImpactoTest {
+
+    private Connection conexion;
+    private HuellaService huellaService;
+    private CalendarioImpacto calendario;
+    private Usuario ana;
+    private Actividad coche;
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:calendario-" + UUID.randomUUID()));
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            ana = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(ana);
+            session.getTransaction().commit();
+        }
+        EventBus eventBus = new EventBus();
+        huellaService = new HuellaService(new HuellaDAO(() -> conexion), new ActividadDAO(() -> conexion), eventBus, null, null, null, null);
+        calendario = new CalendarioImpacto(huellaService, eventBus);
+    }
+
+    @AfterEach
+    void tearDown() {
+        conexion.close();
+    }
+
+    @Test
+    void testImpactoDiarioConCacheEInvalidacion() {
+        assertTrue(huellaService.addHuella(ana, coche, 10, LocalDate.of(2024, 2, 29)));
+        assertTrue(huellaService.addHuella(ana, coche, 20, LocalDate.of(2024, 2, 29)));
+        assertTrue(huellaService.addHuella(ana, coche, 50, LocalDate.of(2023, 12, 31)));
+
+        double[] anio2024 = calendario.getImpactoDiario(ana.getId(), 2024);
+        assertEquals(366, anio2024.length);
+        assertEquals(6.0, anio2024[59], 1e-9); // 29 de febrero
+        assertEquals(6.0, java.util.Arrays.stream(anio2024).sum(), 1e-9);
+        assertEquals(10.0, calendario.getImpactoDiario(ana.getId(), 2023)[364], 1e-9);
+
+        // La copia devuelta no altera la caché; un alta en 2024 invalida solo ese año
+        anio2024[59] = -1;
+        assertEquals(6.0, calendario.getImpactoDiario(ana.getId(), 2024)[59], 1e-9);
+        assertTrue(huellaService.addHuella(ana, coche, 5, LocalDate.of(2024, 1, 1)));
+        assertEquals(1.0, calendario.getImpactoDiario(ana.getId(), 2024)[0], 1e-9);
+    }
+}
@@ -0,0 +1,139 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.DAO.SketchUsuariosDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.HuellaCreada;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del conteo de usuarios activos con sketches sobre una BBDD H2 en memoria.
+ */
+class ContadorUsuariosActivosTest {
+
+    private Connection conexion;
+    private HuellaDAO huellaDAO;
+    private EventBus eventBus;
+    private ContadorUsuariosActivos contador;
+    private Actividad coche;
+    private final List<Usuario> usuarios = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:sketches-" + UUID.randomUUID()));
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            for (int i = 0; i < 20; i++) {
+                Usuario u = new Usuario("Usuario " + i, "u" + i + "@email.com", "hash");
+                session.persist(u);
+                usuarios.add(u);
+            }
+            session.getTransaction().commit();
+        }
+
+        huellaDAO = new HuellaDAO(() -> conexion);
+        eventBus = new EventBus();
+        contador = new ContadorUsuariosActivos(new SketchUsuariosDAO(() -> conexion), huellaDAO, eventBus);
+    }
+
+    @AfterEach
+    void tearDown() {
+        contador.close();
+        conexion.close();
+    }
+
+    @Test
+    void testReconstruyeYSigueLasAltas() {
+        // El usuario i tiene una huella el día i de enero de 2024 (i = 0..19 → del 1 al 20)
+        for (int i = 0; i < usuarios.size(); i++) {
+            assertTrue(huellaDAO.addHuella(huella(usuarios.get(i), LocalDate.of(2024, 1, 1).plusDays(i))));
+        }
+        assertTrue(contador.reconstruirSiVacio() > 0);
+        assertEquals(0, contador.reconstruirSiVacio()); // Ya no está vacío
+
+        LocalDate inicio = LocalDate.of(2024, 1, 1);
+        assertEquals(20, contador.contar(inicio, LocalDate.of(2024, 1, 31)));
+        assertEquals(5, contador.contar(LocalDate.of(2024, 1, 6), LocalDate.of(2024, 1, 10)));
+
+        // Alta nueva en febrero de un usuario que ya estaba activo en enero
+        Huella nueva = huella(usuarios.get(0), LocalDate.of(2024, 2, 3));
+        assertTrue(huellaDAO.addHuella(nueva));
+        eventBus.publicar(new HuellaCreada(nueva));
+        assertEquals(1, contador.contar(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29)));
+        assertTrue(contador.volcar());
+        assertEquals(20, contador.contar(inicio, LocalDate.of(2024, 2, 29)));
+        assertEquals(contador.contarExacto(inicio, LocalDate.of(2024, 2, 29)),
+                contador.contar(inicio, LocalDate.of(2024, 2, 29)));
+    }
+
+    @Test
+    void testElServicioCuentaConLosSketchesCuandoEstanListos() {
+        HuellaService huellaService = new HuellaService(huellaDAO, new ActividadDAO(() -> conexion), eventBus,
+                null, null, null, contador);
+        LocalDate inicio = LocalDate.of(2024, 1, 1);
+        LocalDate fin = LocalDate.of(2024, 1, 31);
+        assertTrue(huellaDAO.addHuella(huella(usuarios.get(0), inicio)));
+
+        assertFalse(contador.isListo());
+        assertEquals(1, huellaService.getUsuariosActivos(inicio, fin), "Sin sketches se cuenta en la BBDD");
+
+        contador.reconstruirSiVacio();
+        assertTrue(contador.isListo());
+        // Alta sin evento: solo la vería el conteo exacto
+        assertTrue(huellaDAO.addHuella(huella(usuarios.get(1), inicio)));
+        assertEquals(1, huellaService.getUsuariosActivos(inicio, fin));
+        assertEquals(2, contador.contarExacto(inicio, fin));
+    }
+
+    @Test
+    void testNoVuelcaAntesDeReconstruir() {
+        LocalDate dia = LocalDate.of(2024, 1, 1);
+        assertTrue(huellaDAO.addHuella(huella(usuarios.get(0), dia)));
+        Huella nueva = huella(usuarios.get(1), dia);
+        assertTrue(huellaDAO.addHuella(nueva));
+        eventBus.publicar(new HuellaCreada(nueva));
+
+        assertFalse(contador.volcar());
+        assertTrue(contador.reconstruirSiVacio() > 0, "La tabla sigue vacía y se reconstruye entera");
+        assertEquals(2, contador.contar(dia, dia));
+    }
+
+    @Test
+    void testPeriodos() {
+        assertEquals(List.of("D" + FechaUtil.claveDia(LocalDate.of(2024, 1, 31)), "M202402",
+                        "D" + FechaUtil.claveDia(LocalDate.of(2024, 3, 1))),
+                ContadorUsuariosActivos.getPeriodos(LocalDate.of(2024, 1, 31), LocalDate.of(2024, 3, 1)));
+    }
+
+    private Huella huella(Usuario u, LocalDate fecha) {
+        return new Huella(u, coche, 10, "km", FechaUtil.aInstante(fecha));
+    }
+}
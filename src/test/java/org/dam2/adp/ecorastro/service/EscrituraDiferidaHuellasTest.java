@@ -0,0 +1,105 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.DiarioHuellas;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la escritura diferida de huellas sobre una BBDD H2 en memoria.
+ */
+class EscrituraDiferidaHuellasTest {
+
+    @TempDir
+    Path dir;
+
+    private Connection conexion;
+    private Actividad coche;
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:diferida-" + UUID.randomUUID()));
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            usuario = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(usuario);
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        conexion.close();
+    }
+
+    @Test
+    void testEntradaConActividadDesconocidaSeDescartaSinBloquearLaCola() throws Exception {
+        Path ruta = dir.resolve("huellas.diario");
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            diario.anadir(usuario.getId(), 9_999, 5.0, 1_700_000_000L);
+            diario.anadir(usuario.getId(), coche.getId(), 10.0, 1_700_000_000L);
+        }
+
+        HuellaDAO huellaDAO = new HuellaDAO(() -> conexion);
+        try (EscrituraDiferidaHuellas escritura = new EscrituraDiferidaHuellas(new DiarioHuellas(ruta), huellaDAO,
+                new ActividadDAO(() -> conexion), new EventBus())) {
+            assertTrue(escritura.vaciar());
+            assertTrue(escritura.getPendientes(usuario.getId()).isEmpty());
+        }
+
+        assertEquals(1, huellaDAO.getIdsHuellasUsuario(usuario.getId()).size());
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            assertEquals(0, diario.getNumPendientes(), "La entrada descartada no vuelve a recuperarse");
+        }
+        List<String> descartadas = Files.readAllLines(dir.resolve("huellas.diario.descartadas"));
+        assertEquals(2, descartadas.size(), "Cabecera y la huella descartada");
+        assertTrue(descartadas.get(1).startsWith(usuario.getId() + ";9999;5.0;"));
+    }
+
+    @Test
+    void testIsPendienteHastaQueSeVuelca() throws Exception {
+        HuellaDAO huellaDAO = new HuellaDAO(() -> conexion);
+        try (EscrituraDiferidaHuellas escritura = new EscrituraDiferidaHuellas(
+                new DiarioHuellas(dir.resolve("huellas.diario")), huellaDAO, new ActividadDAO(() -> conexion), new EventBus())) {
+            Huella huella = new Huella(usuario, coche, 10, "km", Instant.now());
+            Huella igual = new Huella(usuario, coche, 10, "km", huella.getFecha());
+            assertTrue(escritura.encolar(huella));
+            assertTrue(escritura.isPendiente(huella));
+            assertFalse(escritura.isPendiente(igual), "Se compara por identidad");
+
+            assertTrue(escritura.vaciar());
+            assertFalse(escritura.isPendiente(huella));
+            assertNotNull(huella.getId());
+        }
+    }
+}
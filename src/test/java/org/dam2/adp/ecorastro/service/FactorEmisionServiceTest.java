@@ -0,0 +1,109 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.FactorEmisionDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.IndiceFactores;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la corrección de factores sobre una BBDD H2 en memoria.
+ */
+class FactorEmisionServiceTest {
+
+    private Connection conexion;
+    private HuellaDAO huellaDAO;
+    private FactorEmisionService factorEmisionService;
+    private final List<FactoresRecalculados> avisos = new ArrayList<>();
+
+    private Categoria transporte;
+    private Actividad coche;
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:factores-" + UUID.randomUUID()));
+        huellaDAO = new HuellaDAO(() -> conexion);
+        EventBus eventBus = new EventBus();
+        eventBus.suscribir(FactoresRecalculados.class, avisos::add);
+        factorEmisionService = new FactorEmisionService(new FactorEmisionDAO(() -> conexion), huellaDAO, eventBus);
+
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            usuario = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(usuario);
+            session.getTransaction().commit();
+        }
+        factorEmisionService.cargar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        IndiceFactores.getInstance().cargar(List.of());
+        conexion.close();
+    }
+
+    private Huella crearHuella(LocalDate fecha, double valor) {
+        Huella h = new Huella(usuario, coche, valor, "km", FechaUtil.aInstante(fecha));
+        assertTrue(huellaDAO.addHuella(h));
+        return h;
+    }
+
+    @Test
+    void testCorregirUnPeriodoSoloRecalculaSusHuellas() {
+        LocalDate hoy = LocalDate.now();
+        Huella antigua = crearHuella(hoy.minusYears(2), 10);
+        Huella corregida = crearHuella(hoy.minusMonths(6), 10);
+        Huella reciente = crearHuella(hoy, 10);
+        assertEquals(2.0, corregida.getImpactoKg(), 1e-9);
+
+        assertTrue(factorEmisionService.corregirFactor(transporte.getId(),
+                hoy.minusYears(1), hoy.minusMonths(1), 0.5));
+
+        assertEquals(2.0, huellaDAO.getHuellaById(antigua.getId()).getImpactoKg(), 1e-9);
+        assertEquals(5.0, huellaDAO.getHuellaById(corregida.getId()).getImpactoKg(), 1e-9);
+        assertEquals(2.0, huellaDAO.getHuellaById(reciente.getId()).getImpactoKg(), 1e-9);
+        assertTrue(huellaDAO.getHuellaById(corregida.getId()).getVersion() > corregida.getVersion(),
+                "El recálculo cambia la versión para que la réplica lo descargue");
+        assertEquals(1, avisos.size());
+    }
+
+    @Test
+    void testLasNuevasHuellasUsanElFactorDeSuFecha() {
+        LocalDate hoy = LocalDate.now();
+        assertTrue(factorEmisionService.corregirFactor(transporte.getId(), hoy.minusYears(1), hoy.minusMonths(1), 0.5));
+        assertTrue(factorEmisionService.corregirFactor(transporte.getId(), hoy.minusDays(10), null, 0.4));
+
+        assertEquals(5.0, crearHuella(hoy.minusMonths(6), 10).getImpactoKg(), 1e-9);
+        assertEquals(4.0, crearHuella(hoy, 10).getImpactoKg(), 1e-9);
+        assertEquals(2.0, crearHuella(hoy.minusYears(3), 10).getImpactoKg(), 1e-9, "Conserva el factor original");
+    }
+}
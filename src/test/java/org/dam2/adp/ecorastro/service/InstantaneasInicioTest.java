@@ -0,0 +1,59 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstantaneasInicioTest {
+
+    @TempDir
+    Path dir;
+
+    private static InstantaneasInicio.Instantanea ejemplo(double totalMes) {
+        return new InstantaneasInicio.Instantanea(LocalDate.of(2026, 3, 14), totalMes, 820.5, 640.0,
+                Double.NaN, 42, 7, 0.15, "Apaga las luces");
+    }
+
+    @Test
+    void testSeGuardaAlCerrarYSeLeeEnLaSiguienteEjecucion() {
+        // 1. PREPARACIÓN
+        InstantaneasInicio almacen = new InstantaneasInicio(dir.resolve("inicio"));
+        almacen.actualizar(3, ejemplo(12.0));
+        almacen.actualizar(3, ejemplo(15.5));
+        // Antes de guardar se entrega la de memoria
+        assertEquals(15.5, almacen.leer(3).orElseThrow().totalMes());
+
+        // 2. EJECUCIÓN
+        almacen.close();
+        Optional<InstantaneasInicio.Instantanea> leida = new InstantaneasInicio(dir.resolve("inicio")).leer(3);
+
+        // 3. VERIFICACIÓN (NaN se compara bien dentro del record)
+        assertEquals(Optional.of(ejemplo(15.5)), leida);
+        assertTrue(new InstantaneasInicio(dir.resolve("inicio")).leer(4).isEmpty());
+    }
+
+    @Test
+    void testArchivoIlegibleSeIgnora() throws IOException {
+        InstantaneasInicio almacen = new InstantaneasInicio(dir);
+        almacen.actualizar(3, ejemplo(1.0));
+        almacen.guardar();
+
+        // Truncado
+        Path archivo = dir.resolve("inicio-3.bin");
+        byte[] bytes = Files.readAllBytes(archivo);
+        Files.write(archivo, Arrays.copyOf(bytes, 20));
+        assertTrue(new InstantaneasInicio(dir).leer(3).isEmpty());
+
+        // De otro usuario
+        Files.write(dir.resolve("inicio-5.bin"), bytes);
+        assertTrue(new InstantaneasInicio(dir).leer(5).isEmpty());
+    }
+}
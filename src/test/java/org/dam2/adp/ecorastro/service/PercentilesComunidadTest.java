@@ -0,0 +1,155 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.DAO.SketchPercentilesDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.FactoresRecalculados;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de los percentiles de la comunidad sobre una BBDD H2 en memoria.
+ */
+class PercentilesComunidadTest {
+
+    private static final int ENERO = 202401;
+
+    private Connection conexion;
+    private HuellaDAO huellaDAO;
+    private EventBus eventBus;
+    private Actividad coche;
+    private final List<Usuario> usuarios = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:percentiles-" + UUID.randomUUID()));
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            for (int i = 0; i < 10; i++) {
+                Usuario u = new Usuario("Usuario " + i, "u" + i + "@email.com", "hash");
+                session.persist(u);
+                usuarios.add(u);
+            }
+            session.getTransaction().commit();
+        }
+        huellaDAO = new HuellaDAO(() -> conexion);
+        eventBus = new EventBus();
+
+        // El usuario i tiene i + 1 trayectos de 10 km en enero de 2024: totales de 2, 4, ..., 20 kg
+        for (int i = 0; i < usuarios.size(); i++) {
+            for (int j = 0; j <= i; j++) {
+                assertTrue(huellaDAO.addHuella(huella(usuarios.get(i), LocalDate.of(2024, 1, 1 + j))));
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        conexion.close();
+    }
+
+    @Test
+    void testPercentilesYMedianasPersistidos() {
+        PercentilesComunidad percentiles = new PercentilesComunidad(huellaDAO, new SketchPercentilesDAO(() -> conexion), eventBus);
+        int idTransporte = coche.getIdCategoria().getId();
+
+        assertEquals(11.0, percentiles.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9);
+        assertEquals(11.0, percentiles.getMedianasPorCategoria(ENERO).get("Transporte"), 1e-9);
+        assertEquals(0.0, percentiles.getPercentil(ENERO, idTransporte, 2.0));
+        assertEquals(1.0, percentiles.getPercentil(ENERO, PercentilesComunidad.TODAS, 20.0));
+        assertEquals(0.45, percentiles.getPercentil(ENERO, PercentilesComunidad.TODAS, 10.0), 0.05);
+        assertEquals(10, percentiles.getUsuarios(PercentilesComunidad.HISTORICO));
+        assertNull(percentiles.getMediana(202402, PercentilesComunidad.TODAS));
+
+        // Otro equipo lee los resúmenes guardados sin volver a calcularlos
+        assertNotNull(new SketchPercentilesDAO(() -> conexion).getSketch(ENERO));
+        PercentilesComunidad otro = new PercentilesComunidad(huellaDAO, new SketchPercentilesDAO(() -> conexion), new EventBus());
+        assertEquals(11.0, otro.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9);
+    }
+
+    @Test
+    void testRecalculoDeFactoresInvalidaLosResumenes() {
+        PercentilesComunidad percentiles = new PercentilesComunidad(huellaDAO, new SketchPercentilesDAO(() -> conexion), eventBus);
+        assertEquals(11.0, percentiles.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9);
+
+        // Dos usuarios nuevos con 40 kg: con 12 valores la mediana pasa de 11 a (12 + 14) / 2 = 13
+        for (int k = 0; k < 2; k++) {
+            Usuario u = new Usuario("Nuevo " + k, "n" + k + "@email.com", "hash");
+            try (Session session = conexion.getSession()) {
+                session.beginTransaction();
+                session.persist(u);
+                session.getTransaction().commit();
+            }
+            Huella h = huella(u, LocalDate.of(2024, 1, 15));
+            h.setValor(200);
+            assertTrue(huellaDAO.addHuella(h));
+        }
+        assertEquals(11.0, percentiles.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9); // Mes pasado sin cambios locales
+
+        eventBus.publicar(new FactoresRecalculados(coche.getIdCategoria().getId(),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31)));
+        assertEquals(13.0, percentiles.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9);
+        assertEquals(ENERO, PercentilesComunidad.getPeriodo(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31)));
+        assertEquals(PercentilesComunidad.SIN_PERIODO,
+                PercentilesComunidad.getPeriodo(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 7)));
+    }
+
+    @Test
+    void testResumenDesfasadoSeSirveMientrasSeReconstruye() {
+        List<Runnable> tareas = new ArrayList<>();
+        PercentilesComunidad percentiles = new PercentilesComunidad(huellaDAO, new SketchPercentilesDAO(() -> conexion),
+                eventBus, tareas::add);
+        assertEquals(11.0, percentiles.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9);
+        assertTrue(tareas.isEmpty(), "Sin resumen previo se calcula en el momento");
+
+        Usuario u = new Usuario("Nuevo", "nuevo@email.com", "hash");
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            session.persist(u);
+            session.getTransaction().commit();
+        }
+        Huella h = huella(u, LocalDate.of(2024, 1, 15));
+        h.setValor(200);
+        assertTrue(huellaDAO.addHuella(h));
+        eventBus.publicar(new FactoresRecalculados(coche.getIdCategoria().getId(),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31)));
+
+        assertEquals(11.0, percentiles.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9);
+        assertEquals(11.0, percentiles.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9);
+        assertEquals(1, tareas.size(), "Una sola reconstrucción pendiente por periodo");
+
+        tareas.remove(0).run();
+        assertEquals(12.0, percentiles.getMediana(ENERO, PercentilesComunidad.TODAS), 1e-9);
+        assertTrue(tareas.isEmpty());
+    }
+
+    private Huella huella(Usuario u, LocalDate fecha) {
+        return new Huella(u, coche, 10, "km", FechaUtil.aInstante(fecha));
+    }
+}
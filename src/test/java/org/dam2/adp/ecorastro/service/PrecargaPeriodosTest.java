@@ -0,0 +1,88 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la precarga de periodos vecinos sobre una BBDD H2 en memoria.
+ */
+class PrecargaPeriodosTest {
+
+    private Connection conexion;
+    private HuellaService huellaService;
+    private PrecargaPeriodos precarga;
+    private Usuario ana;
+    private Actividad coche;
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:precarga-" + UUID.randomUUID()));
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            ana = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(ana);
+            session.getTransaction().commit();
+        }
+        EventBus eventBus = new EventBus();
+        huellaService = new HuellaService(new HuellaDAO(() -> conexion), new ActividadDAO(() -> conexion), eventBus, null, null, null, null);
+        precarga = new PrecargaPeriodos(huellaService, eventBus);
+    }
+
+    @AfterEach
+    void tearDown() {
+        precarga.close();
+        conexion.close();
+    }
+
+    @Test
+    void testPrecargaVecinosEInvalidacion() throws InterruptedException {
+        assertTrue(huellaService.addHuella(ana, coche, 10, LocalDate.of(2024, 1, 15)));
+        assertTrue(huellaService.addHuella(ana, coche, 20, LocalDate.of(2024, 2, 10)));
+        PrecargaPeriodos.Periodo enero = new PrecargaPeriodos.Periodo(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+        PrecargaPeriodos.Periodo febrero = new PrecargaPeriodos.Periodo(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29));
+        PrecargaPeriodos.Periodo marzo = new PrecargaPeriodos.Periodo(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31));
+
+        PrecargaPeriodos.DatosPeriodo datosFebrero = precarga.obtener(ana.getId(), febrero);
+        assertEquals(4.0, datosFebrero.total(), 1e-9);
+        assertEquals(1, datosFebrero.huellas().size());
+        assertEquals(4.0, datosFebrero.porCategoria().get("Transporte"), 1e-9);
+        assertSame(datosFebrero, precarga.obtener(ana.getId(), febrero));
+
+        precarga.precargar(ana.getId(), List.of(enero, marzo));
+        for (int i = 0; i < 200 && !precarga.contiene(ana.getId(), marzo); i++) Thread.sleep(10);
+        assertTrue(precarga.contiene(ana.getId(), enero));
+        assertTrue(precarga.contiene(ana.getId(), marzo));
+        assertEquals(2.0, precarga.obtener(ana.getId(), enero).total(), 1e-9);
+
+        // Una huella nueva vacía la caché
+        assertTrue(huellaService.addHuella(ana, coche, 5, LocalDate.of(2024, 1, 20)));
+        assertFalse(precarga.contiene(ana.getId(), enero));
+        assertEquals(3.0, precarga.obtener(ana.getId(), enero).total(), 1e-9);
+    }
+}
@@ -0,0 +1,126 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HabitoDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.DAO.RecomendacionDAO;
+import org.dam2.adp.ecorastro.DAO.SketchPercentilesDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Habito;
+import org.dam2.adp.ecorastro.model.Recomendacion;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la precarga al iniciar sesión sobre una BBDD H2 en memoria.
+ */
+class PrecargaSesionTest {
+
+    private Connection conexion;
+    private HuellaService huellaService;
+    private HabitoService habitoService;
+    private PrecargaPeriodos precargaPeriodos;
+    private PanelInicio panelInicio;
+    private final AtomicInteger lecturasHabitos = new AtomicInteger();
+    private Usuario ana;
+    private Actividad coche;
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:sesion-" + UUID.randomUUID()));
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            ana = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(ana);
+            session.getTransaction().commit();
+        }
+        EventBus eventBus = new EventBus();
+        HuellaDAO huellaDAO = new HuellaDAO(() -> conexion);
+        huellaService = new HuellaService(huellaDAO, new ActividadDAO(() -> conexion), eventBus, null, null, null, null);
+        habitoService = new HabitoService(new HabitoDAO(() -> conexion) {
+            @Override
+            public List<Habito> getHabitosByUsuario(int idUsuario) {
+                lecturasHabitos.incrementAndGet();
+                return super.getHabitosByUsuario(idUsuario);
+            }
+        }, eventBus);
+        precargaPeriodos = new PrecargaPeriodos(huellaService, eventBus);
+        RecomendacionService recomendaciones = new RecomendacionService(new RecomendacionDAO() {
+            @Override
+            public List<Recomendacion> getRecomendacionesPorCategoria(String nombreCategoria) {
+                return List.of();
+            }
+        });
+        panelInicio = new PanelInicio(huellaService, recomendaciones,
+                new PercentilesComunidad(huellaDAO, new SketchPercentilesDAO(() -> conexion), eventBus), eventBus);
+    }
+
+    @AfterEach
+    void tearDown() {
+        precargaPeriodos.close();
+        conexion.close();
+    }
+
+    @Test
+    void testLanzarRellenaLasCachesDeSesion() throws Exception {
+        LocalDate hoy = LocalDate.now();
+        assertTrue(huellaService.addHuella(ana, coche, 10, hoy));
+        assertTrue(habitoService.addHabito(ana, coche, 3, "Semanal"));
+
+        new PrecargaSesion(huellaService, habitoService, precargaPeriodos, panelInicio)
+                .lanzar(ana.getId()).get(10, TimeUnit.SECONDS);
+
+        assertTrue(precargaPeriodos.contiene(ana.getId(), PrecargaPeriodos.Periodo.mesDe(hoy)));
+        // Los hábitos ya están en memoria: abrir la pantalla no vuelve a consultar
+        assertEquals(1, lecturasHabitos.get());
+        assertEquals(1, habitoService.getHabitosByUsuario(ana.getId()).size());
+        assertEquals(1, lecturasHabitos.get());
+        assertEquals(2.0, panelInicio.obtener(ana.getId()).totalMes(), 1e-9);
+
+        // Un cambio de hábitos descarta los guardados
+        assertTrue(habitoService.deleteHabito(habitoService.getHabitosByUsuario(ana.getId()).get(0)));
+        assertTrue(habitoService.getHabitosByUsuario(ana.getId()).isEmpty());
+        assertEquals(2, lecturasHabitos.get());
+    }
+
+    @Test
+    void testPanelRecogeElPrecalculoUnaSolaVez() {
+        LocalDate hoy = LocalDate.now();
+        assertTrue(huellaService.addHuella(ana, coche, 10, hoy));
+
+        InstantaneasInicio.Instantanea precalculada = panelInicio.precalcular(ana.getId(), Runnable::run).join();
+        assertSame(precalculada, panelInicio.obtener(ana.getId()));
+        assertNotSame(precalculada, panelInicio.obtener(ana.getId()));
+
+        // Otro usuario, o una huella nueva, invalidan el precálculo
+        panelInicio.precalcular(ana.getId(), Runnable::run);
+        assertTrue(huellaService.addHuella(ana, coche, 5, hoy));
+        assertEquals(3.0, panelInicio.obtener(ana.getId()).totalMes(), 1e-9);
+        assertEquals(3.0, panelInicio.obtener(ana.getId()).historico(), 1e-9);
+    }
+}
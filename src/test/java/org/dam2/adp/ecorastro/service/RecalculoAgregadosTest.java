@@ -0,0 +1,140 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.ArchivoHuellas;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del recálculo de agregados sobre una BBDD H2 en memoria.
+ */
+class RecalculoAgregadosTest {
+
+    @TempDir
+    Path dir;
+
+    private Connection conexion;
+    private Usuario ana;
+    private Usuario carlos;
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:agregados-" + UUID.randomUUID()));
+
+        Actividad coche = new Actividad();
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            ana = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(ana);
+            session.persist(new Usuario("Bea", "bea@email.com", "hash"));
+            carlos = new Usuario("Carlos", "carlos@email.com", "hash");
+            session.persist(carlos);
+            session.getTransaction().commit();
+        }
+
+        // 50 días desde el 1 de enero: 31 en enero (valores 1..31) y 19 en febrero (32..50)
+        HuellaDAO huellaDAO = new HuellaDAO(() -> conexion);
+        for (Usuario u : List.of(ana, carlos)) {
+            for (int i = 0; i < 50; i++) {
+                assertTrue(huellaDAO.addHuella(new Huella(u, coche, i + 1, "km",
+                        FechaUtil.aInstante(LocalDate.of(2024, 1, 1).plusDays(i)))));
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        conexion.close();
+    }
+
+    @Test
+    void testRecalculaTodosLosUsuariosEnParalelo() throws Exception {
+        Path puntoControl = dir.resolve("recalculo.ckpt");
+        List<RecalculoAgregados.Progreso> avisos = new ArrayList<>();
+        RecalculoAgregados.Progreso fin = new RecalculoAgregados(() -> conexion, 2, 1, puntoControl)
+                .ejecutar(p -> {
+                    synchronized (avisos) {
+                        avisos.add(p);
+                    }
+                });
+
+        assertEquals(3, fin.particionesTotales());
+        assertEquals(3, fin.particionesHechas());
+        assertEquals(0, fin.particionesFallidas());
+        assertEquals(100, fin.huellas());
+        assertEquals(4, fin.agregados());
+        assertEquals(3, avisos.size());
+        assertFalse(Files.exists(puntoControl));
+
+        assertEquals(99.2, impacto(ana, 202401), 1e-6);
+        assertEquals(155.8, impacto(carlos, 202402), 1e-6);
+    }
+
+    @Test
+    void testContinuaDesdeElPuntoDeControl() throws Exception {
+        Path puntoControl = dir.resolve("recalculo.ckpt");
+        Files.writeString(puntoControl, "usuariosPorParticion=1\n" + ana.getId() + "\n");
+
+        RecalculoAgregados.Progreso fin = new RecalculoAgregados(() -> conexion, 2, 1, puntoControl).ejecutar(p -> {
+        });
+
+        assertEquals(3, fin.particionesHechas());
+        assertEquals(50, fin.huellas());
+        assertNull(impacto(ana, 202401)); // Su partición ya estaba hecha: no se repite
+        assertEquals(99.2, impacto(carlos, 202401), 1e-6);
+    }
+
+    @Test
+    void testSumaLasHuellasArchivadas() throws Exception {
+        try (ArchivoHuellas archivo = new ArchivoHuellas(dir.resolve("archivo"))) {
+            assertEquals(62, new HuellaDAO(() -> conexion, archivo)
+                    .archivarMes(202401, FechaUtil.claveDia(LocalDate.of(2024, 2, 1))));
+
+            RecalculoAgregados.Progreso fin = new RecalculoAgregados(() -> conexion, 2, 1,
+                    dir.resolve("recalculo.ckpt"), archivo).ejecutar(p -> {
+            });
+
+            assertEquals(100, fin.huellas());
+            assertEquals(99.2, impacto(ana, 202401), 1e-6);
+            assertEquals(155.8, impacto(carlos, 202402), 1e-6);
+        }
+    }
+
+    private Double impacto(Usuario usuario, int mes) {
+        try (Session session = conexion.getSession()) {
+            return session.createQuery("SELECT a.impactoKg FROM AgregadoMensual a " +
+                            "WHERE a.id.idUsuario = :u AND a.id.mes = :m", Double.class)
+                    .setParameter("u", usuario.getId())
+                    .setParameter("m", mes)
+                    .uniqueResult();
+        }
+    }
+}
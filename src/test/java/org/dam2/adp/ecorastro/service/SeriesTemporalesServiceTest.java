@@ -0,0 +1,111 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.Resolucion;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de las series temporales agrupadas en la BBDD (H2 en memoria) y en la caché analítica.
+ */
+class SeriesTemporalesServiceTest {
+
+    private Connection conexion;
+    private HuellaService huellaService;
+    private Usuario ana;
+
+    @BeforeEach
+    void setUp() {
+        conexion = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:series-" + UUID.randomUUID()));
+        Actividad coche;
+        try (Session session = conexion.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            ana = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(ana);
+            session.getTransaction().commit();
+        }
+
+        // Un trayecto de 10 km (2 kg) cada tres días durante seis años, hasta hoy
+        HuellaDAO huellaDAO = new HuellaDAO(() -> conexion);
+        List<Huella> huellas = new ArrayList<>();
+        for (LocalDate dia = LocalDate.now().minusYears(6); !dia.isAfter(LocalDate.now()); dia = dia.plusDays(3)) {
+            huellas.add(new Huella(ana, coche, 10, "km", FechaUtil.aInstante(dia)));
+        }
+        assertTrue(huellaDAO.addHuellas(huellas));
+        huellaService = new HuellaService(huellaDAO, new ActividadDAO(() -> conexion), new EventBus(), null, null, null, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        conexion.close();
+    }
+
+    @Test
+    void testLaBBDDYLaCacheAgrupanIgual() {
+        LocalDate inicio = LocalDate.now().minusYears(2);
+        LocalDate fin = LocalDate.now();
+        for (Resolucion r : Resolucion.values()) {
+            var desdeBBDD = huellaService.getSerieUsuario(ana.getId(), r, inicio, fin);
+            huellaService.precargarAnalitica(ana.getId());
+            var desdeCache = huellaService.getSerieUsuario(ana.getId(), r, inicio, fin);
+            huellaService.vaciarAnalitica();
+
+            assertEquals(desdeBBDD.keySet(), desdeCache.keySet(), r.name());
+            desdeBBDD.forEach((k, v) -> assertEquals(v, desdeCache.get(k), 1e-9, r + " " + LocalDate.ofEpochDay(k)));
+            desdeBBDD.keySet().forEach(k -> assertEquals(r.inicioTramo(k), k.intValue(), "Claves en el inicio del tramo"));
+        }
+    }
+
+    @Test
+    void testResolucionAutomaticaYSubmuestreo() {
+        SeriesTemporalesService series = new SeriesTemporalesService(huellaService);
+        int id = ana.getId();
+        LocalDate hoy = LocalDate.now();
+
+        SeriesTemporalesService.Serie mes = series.getSerie(id, hoy.withDayOfMonth(1), hoy.withDayOfMonth(hoy.lengthOfMonth()));
+        assertEquals(Resolucion.DIA, mes.resolucion());
+        assertEquals(hoy.getDayOfMonth(), mes.puntos().size()); // Los días futuros no se dibujan
+
+        // Tres años diarios: más de mil días reducidos a 300 puntos
+        SeriesTemporalesService.Serie tresAnios = series.getSerie(id, hoy.minusYears(3), hoy);
+        assertEquals(Resolucion.DIA, tresAnios.resolucion());
+        assertEquals(SeriesTemporalesService.MAX_PUNTOS, tresAnios.puntos().size());
+
+        // "Todo el historial" empieza en el primer mes con huellas: seis años de semanas
+        SeriesTemporalesService.Serie historial = series.getSerie(id, LocalDate.of(1970, 1, 1), LocalDate.of(2100, 1, 1));
+        assertEquals(Resolucion.SEMANA, historial.resolucion());
+        assertTrue(historial.puntos().size() <= SeriesTemporalesService.MAX_PUNTOS);
+        assertFalse(historial.puntos().get(0).inicio().isBefore(hoy.minusYears(6).withDayOfMonth(1).minusDays(6)));
+
+        assertEquals(Resolucion.ANIO, SeriesTemporalesService.elegirResolucion(LocalDate.of(1900, 1, 1), hoy));
+        assertTrue(series.getSerie(id, hoy.plusDays(1), hoy.plusDays(10)).puntos().isEmpty());
+    }
+}
@@ -0,0 +1,223 @@
+package org.dam2.adp.ecorastro.service;
+
+import org.dam2.adp.ecorastro.DAO.ActividadDAO;
+import org.dam2.adp.ecorastro.DAO.HabitoDAO;
+import org.dam2.adp.ecorastro.DAO.HuellaDAO;
+import org.dam2.adp.ecorastro.connection.Connection;
+import org.dam2.adp.ecorastro.event.EventBus;
+import org.dam2.adp.ecorastro.event.ReplicaSincronizada;
+import org.dam2.adp.ecorastro.model.Actividad;
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.FactorEmision;
+import org.dam2.adp.ecorastro.model.Huella;
+import org.dam2.adp.ecorastro.model.Usuario;
+import org.dam2.adp.ecorastro.util.FechaUtil;
+import org.dam2.adp.ecorastro.util.IndiceFactores;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la réplica local usando dos BBDD H2 en memoria:
+ * una hace de servidor y otra de réplica del cliente.
+ */
+class SincronizacionServiceTest {
+
+    private Connection servidor;
+    private Connection cliente;
+    private boolean servidorCaido;
+
+    private HuellaDAO huellaServidor;
+    private EventBus eventBus;
+    private SincronizacionService sincronizacion;
+
+    private Usuario usuario;
+    private Actividad coche;
+    private Actividad tren;
+
+    @BeforeEach
+    void setUp() {
+        String sufijo = UUID.randomUUID().toString();
+        servidor = Connection.crear(Connection.ajustesH2("jdbc:h2:mem:servidor-" + sufijo));
+        cliente = Connection.crearReplica("jdbc:h2:mem:cliente-" + sufijo);
+        servidorCaido = false;
+
+        // El proveedor permite simular una caída del servidor
+        huellaServidor = new HuellaDAO(this::conexionServidor);
+        eventBus = new EventBus();
+        sincronizacion = new SincronizacionService(huellaServidor, new HabitoDAO(this::conexionServidor),
+                new ActividadDAO(this::conexionServidor), () -> cliente, eventBus);
+
+        try (Session session = servidor.getSession()) {
+            session.beginTransaction();
+            Categoria transporte = new Categoria();
+            transporte.setNombre("Transporte");
+            transporte.setFactorEmision(0.2);
+            transporte.setUnidad("km");
+            session.persist(transporte);
+
+            coche = new Actividad();
+            coche.setNombre("Coche");
+            coche.setIdCategoria(transporte);
+            session.persist(coche);
+
+            tren = new Actividad();
+            tren.setNombre("Tren");
+            tren.setIdCategoria(transporte);
+            session.persist(tren);
+
+            usuario = new Usuario("Ana", "ana@email.com", "hash");
+            session.persist(usuario);
+            session.getTransaction().commit();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        sincronizacion.close();
+        IndiceFactores.getInstance().cargar(List.of());
+        servidor.close();
+        cliente.close();
+    }
+
+    private Connection conexionServidor() {
+        if (servidorCaido) throw new IllegalStateException("Servidor no disponible");
+        return servidor;
+    }
+
+    private Huella crearEnServidor(Actividad actividad, double valor) {
+        Huella h = new Huella(usuario, actividad, valor, "km", Instant.now().truncatedTo(ChronoUnit.SECONDS));
+        assertTrue(huellaServidor.addHuella(h));
+        return h;
+    }
+
+    @Test
+    void testPrimeraSincronizacionDescargaDatosYCatalogo() {
+        crearEnServidor(coche, 10);
+        crearEnServidor(tren, 20);
+        List<ReplicaSincronizada> avisos = new ArrayList<>();
+        eventBus.suscribir(ReplicaSincronizada.class, avisos::add);
+
+        assertFalse(sincronizacion.isReplicaLista(usuario.getId()));
+        assertTrue(sincronizacion.sincronizar(usuario));
+
+        assertTrue(sincronizacion.isReplicaLista(usuario.getId()));
+        assertEquals(2, sincronizacion.getHuellaLocalDAO().getHistorialHuellasUsuario(usuario.getId()).size());
+        assertEquals(2, sincronizacion.getActividadLocalDAO().getAllActividades().size());
+        assertEquals(1, avisos.size());
+    }
+
+    @Test
+    void testBajadaIncrementalYBorrados() {
+        Huella a = crearEnServidor(coche, 10);
+        Huella b = crearEnServidor(coche, 20);
+        sincronizacion.sincronizar(usuario);
+
+        // Otro equipo edita una y borra otra
+        a.setValor(15);
+        assertTrue(huellaServidor.updateHuella(a));
+        assertTrue(huellaServidor.deleteHuella(b));
+        crearEnServidor(tren, 5);
+
+        assertTrue(sincronizacion.sincronizar(usuario));
+
+        List<Huella> locales = sincronizacion.getHuellaLocalDAO().getHistorialHuellasUsuario(usuario.getId());
+        assertEquals(2, locales.size());
+        Huella aLocal = sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId());
+        assertEquals(15, aLocal.getValor(), 0.001);
+        assertEquals(a.getVersion(), aLocal.getVersion());
+        assertNull(sincronizacion.getHuellaLocalDAO().getHuellaById(b.getId()));
+    }
+
+    @Test
+    void testEdicionSinConexionSeSubeAlReconectar() {
+        Huella a = crearEnServidor(coche, 10);
+        sincronizacion.sincronizar(usuario);
+
+        servidorCaido = true;
+        Huella local = sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId());
+        local.setValor(42);
+        assertTrue(sincronizacion.actualizarHuella(local), "Sin conexión el cambio se guarda en local");
+        assertEquals(42, sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId()).getValor(), 0.001);
+        assertFalse(sincronizacion.sincronizar(usuario));
+
+        servidorCaido = false;
+        assertTrue(sincronizacion.sincronizar(usuario));
+        assertEquals(42, huellaServidor.getHuellaById(a.getId()).getValor(), 0.001);
+    }
+
+    @Test
+    void testEdicionSinConexionUsaElFactorDeLaNuevaFecha() {
+        Huella a = crearEnServidor(coche, 10);
+        sincronizacion.sincronizar(usuario);
+        LocalDate haceUnAno = LocalDate.now().minusYears(1);
+        IndiceFactores.getInstance().cargar(List.of(
+                new FactorEmision(coche.getIdCategoria(), haceUnAno.withDayOfMonth(1), haceUnAno.plusMonths(1), 0.5)));
+        HuellaService huellaService = new HuellaService(huellaServidor, new ActividadDAO(this::conexionServidor),
+                eventBus, null, sincronizacion, null, null);
+
+        servidorCaido = true;
+        Huella local = sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId());
+        local.setFecha(FechaUtil.aInstante(haceUnAno));
+        assertTrue(huellaService.updateHuella(local));
+
+        Huella guardada = sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId());
+        assertEquals(0.5, guardada.getFactorEmision(), 1e-9);
+        assertEquals(5.0, guardada.getImpactoKg(), 1e-9, "No conserva el impacto de la fecha anterior");
+    }
+
+    @Test
+    void testConflictoSeFusionaPorCampos() {
+        Huella a = crearEnServidor(coche, 10);
+        sincronizacion.sincronizar(usuario);
+
+        // En local (sin conexión) se cambia el valor...
+        servidorCaido = true;
+        Huella local = sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId());
+        local.setValor(99);
+        assertTrue(sincronizacion.actualizarHuella(local));
+
+        // ...mientras otro equipo cambia la actividad
+        servidorCaido = false;
+        Huella remota = huellaServidor.getHuellaById(a.getId());
+        remota.setIdActividad(tren);
+        assertTrue(huellaServidor.updateHuella(remota));
+
+        assertTrue(sincronizacion.sincronizar(usuario));
+
+        Huella fusionada = huellaServidor.getHuellaById(a.getId());
+        assertEquals(99, fusionada.getValor(), 0.001, "Se conserva el valor cambiado en local");
+        assertEquals(tren.getId(), fusionada.getIdActividad().getId(), "Se conserva la actividad cambiada en remoto");
+        assertEquals(fusionada.getVersion(), sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId()).getVersion());
+    }
+
+    @Test
+    void testBorradoObsoletoNoPisaUnaEdicionRemota() {
+        Huella a = crearEnServidor(coche, 10);
+        sincronizacion.sincronizar(usuario);
+
+        servidorCaido = true;
+        Huella local = sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId());
+        assertTrue(sincronizacion.eliminarHuella(local));
+        assertNull(sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId()));
+
+        servidorCaido = false;
+        Huella remota = huellaServidor.getHuellaById(a.getId());
+        remota.setValor(11);
+        assertTrue(huellaServidor.updateHuella(remota));
+
+        assertTrue(sincronizacion.sincronizar(usuario));
+        assertNotNull(huellaServidor.getHuellaById(a.getId()));
+        assertEquals(11, sincronizacion.getHuellaLocalDAO().getHuellaById(a.getId()).getValor(), 0.001);
+    }
+}
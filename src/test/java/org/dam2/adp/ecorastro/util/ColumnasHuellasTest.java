@@ -0,0 +1,56 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnasHuellasTest {
+
+    @Test
+    void testAgregadosPorRango() {
+        ColumnasHuellas columnas = new ColumnasHuellas(0);
+        // Se insertan desordenadas: deben quedar ordenadas por día
+        columnas.anadir(3, dia(2024, 2, 5), (short) 1, 10, 3.0);
+        columnas.anadir(1, dia(2024, 1, 10), (short) 1, 10, 1.0);
+        columnas.anadir(4, dia(2024, 2, 6), (short) 2, 10, 4.0);
+        columnas.anadir(2, dia(2024, 1, 31), (short) 2, 10, 2.0);
+
+        assertEquals(4, columnas.size());
+        assertEquals(10.0, columnas.total(Integer.MIN_VALUE, Integer.MAX_VALUE), 1e-9);
+        assertEquals(3.0, columnas.total(dia(2024, 1, 1), dia(2024, 1, 31)), 1e-9);
+
+        Map<Integer, Double> porMes = columnas.porMes(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(Map.of(202401, 3.0, 202402, 7.0), porMes);
+
+        // 5 y 6 de febrero de 2024 son lunes y martes de la misma semana
+        Map<Integer, Double> porSemana = columnas.porSemana(dia(2024, 2, 1), dia(2024, 2, 29));
+        assertEquals(Map.of(dia(2024, 2, 5), 7.0), porSemana);
+
+        assertEquals(Map.of(1, 4.0, 2, 6.0), columnas.porActividad(Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(4, columnas.porDia(Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void testEliminar() {
+        ColumnasHuellas columnas = new ColumnasHuellas(0);
+        for (int i = 1; i <= 40; i++) {
+            columnas.anadir(i, dia(2024, 3, 1) + i, (short) 1, i, i);
+        }
+        columnas.anadir(0, dia(2024, 3, 10), (short) 5, 7.5, 100);
+
+        assertTrue(columnas.eliminar(20));
+        assertFalse(columnas.eliminar(20));
+        assertFalse(columnas.eliminarSinId(dia(2024, 3, 10), (short) 5, 8));
+        assertTrue(columnas.eliminarSinId(dia(2024, 3, 10), (short) 5, 7.5));
+
+        assertEquals(39, columnas.size());
+        assertEquals(820.0 - 20, columnas.total(Integer.MIN_VALUE, Integer.MAX_VALUE), 1e-9);
+    }
+
+    private static int dia(int anio, int mes, int dia) {
+        return FechaUtil.claveDia(LocalDate.of(anio, mes, dia));
+    }
+}
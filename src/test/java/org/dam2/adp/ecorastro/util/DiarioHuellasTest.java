@@ -0,0 +1,104 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiarioHuellasTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testPendientesSobrevivenAlReabrir() throws IOException {
+        // 1. PREPARACIÓN
+        Path ruta = dir.resolve("huellas.diario");
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            diario.anadir(1, 10, 25.5, 1_700_000_000L);
+            diario.anadir(2, 20, 3.0, 1_700_086_400L);
+        }
+
+        // 2. EJECUCIÓN
+        List<DiarioHuellas.Entrada> pendientes;
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            pendientes = diario.getPendientes();
+        }
+
+        // 3. VERIFICACIÓN
+        assertEquals(2, pendientes.size());
+        assertEquals(new DiarioHuellas.Entrada(0, 1, 10, 25.5, 1_700_000_000L), pendientes.get(0));
+        assertEquals(new DiarioHuellas.Entrada(1, 2, 20, 3.0, 1_700_086_400L), pendientes.get(1));
+    }
+
+    @Test
+    void testMarcarVolcadasCompactaElDiario() throws IOException {
+        Path ruta = dir.resolve("huellas.diario");
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            DiarioHuellas.Entrada a = diario.anadir(1, 10, 1.0, 0L);
+            DiarioHuellas.Entrada b = diario.anadir(1, 11, 2.0, 0L);
+
+            diario.marcarVolcadas(List.of(a.posicion()));
+            assertEquals(1, diario.getNumPendientes());
+            assertEquals(List.of(b), diario.getPendientes());
+
+            diario.marcarVolcadas(List.of(b.posicion()));
+            assertEquals(0, diario.getNumPendientes());
+
+            // Tras compactar se vuelve a escribir desde el principio
+            assertEquals(0, diario.anadir(1, 12, 3.0, 0L).posicion());
+        }
+    }
+
+    @Test
+    void testCreceCuandoSeLlena() throws IOException {
+        Path ruta = dir.resolve("huellas.diario");
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            for (int i = 0; i < 3000; i++) {
+                diario.anadir(1, i, i, i);
+            }
+        }
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            List<DiarioHuellas.Entrada> pendientes = diario.getPendientes();
+            assertEquals(3000, pendientes.size());
+            assertEquals(2999, pendientes.get(2999).idActividad());
+        }
+    }
+
+    @Test
+    void testRegistroCorruptoMarcaElFinal() throws IOException {
+        Path ruta = dir.resolve("huellas.diario");
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            diario.anadir(1, 10, 1.0, 0L);
+            diario.anadir(1, 11, 2.0, 0L);
+        }
+
+        // Simula una escritura a medias alterando el valor del segundo registro
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.WRITE)) {
+            long valorSegundo = DiarioHuellas.TAM_CABECERA + DiarioHuellas.TAM_REGISTRO + 16;
+            canal.write(ByteBuffer.wrap(new byte[]{0x7F}), valorSegundo);
+        }
+
+        try (DiarioHuellas diario = new DiarioHuellas(ruta)) {
+            assertEquals(1, diario.getPendientes().size(), "El registro corrupto no debe recuperarse");
+            assertEquals(1, diario.anadir(1, 12, 3.0, 0L).posicion(), "Se debe sobrescribir el registro corrupto");
+        }
+    }
+
+    @Test
+    void testRechazaArchivoAjeno() throws IOException {
+        Path ruta = dir.resolve("otro.bin");
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.wrap("no soy un diario".getBytes()));
+        }
+
+        assertThrows(IOException.class, () -> new DiarioHuellas(ruta));
+    }
+}
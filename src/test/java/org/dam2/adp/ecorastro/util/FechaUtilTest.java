@@ -0,0 +1,48 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.dam2.adp.ecorastro.model.Huella;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FechaUtilTest {
+
+    @Test
+    void testClavesDeDiaYMes() {
+        LocalDate fecha = LocalDate.of(2024, 3, 31);
+
+        assertEquals(fecha, FechaUtil.aFecha(FechaUtil.aInstante(fecha)));
+        assertEquals(fecha.toEpochDay(), FechaUtil.claveDia(FechaUtil.aInstante(fecha)));
+        assertEquals(202403, FechaUtil.claveMes(fecha));
+        assertEquals(YearMonth.of(2024, 3), FechaUtil.aMes(202403));
+    }
+
+    @Test
+    void testLasClavesSonOrdenables() {
+        assertTrue(FechaUtil.claveMes(LocalDate.of(2023, 12, 31)) < FechaUtil.claveMes(LocalDate.of(2024, 1, 1)));
+        assertEquals(1, FechaUtil.claveDia(LocalDate.of(2024, 1, 1)) - FechaUtil.claveDia(LocalDate.of(2023, 12, 31)));
+    }
+
+    @Test
+    void testLasHuellasAntiguasUsanLaFechaUtc() {
+        // Medianoche UTC: en una zona al oeste de UTC aún sería el 29 de febrero
+        Instant medianocheUtc = LocalDate.of(2024, 3, 1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        assertEquals(LocalDate.of(2024, 3, 1), FechaUtil.aFechaHistorica(medianocheUtc));
+        assertEquals(202403, FechaUtil.claveMes(FechaUtil.aFechaHistorica(medianocheUtc)));
+    }
+
+    @Test
+    void testHuellaCalculaSusClavesAlAsignarFecha() {
+        Huella huella = new Huella(null, null, 1, "km", FechaUtil.aInstante(LocalDate.of(2024, 2, 29)));
+        assertEquals(FechaUtil.claveDia(LocalDate.of(2024, 2, 29)), huella.getDia());
+        assertEquals(202402, huella.getMes());
+
+        huella.setFecha(FechaUtil.aInstante(LocalDate.of(2024, 3, 1)));
+        assertEquals(202403, huella.getMes());
+    }
+}
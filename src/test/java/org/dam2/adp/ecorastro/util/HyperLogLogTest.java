@@ -0,0 +1,38 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void testEstimacionDentroDelError() {
+        for (int n : new int[]{10, 1_000, 100_000}) {
+            HyperLogLog hll = new HyperLogLog();
+            for (int id = 1; id <= n; id++) {
+                hll.anadir(id);
+                hll.anadir(id); // Los repetidos no cuentan
+            }
+            assertEquals(n, hll.estimar(), Math.max(1, n * 0.05), "n = " + n);
+        }
+        assertEquals(0, new HyperLogLog().estimar());
+    }
+
+    @Test
+    void testFusionYSerializacion() {
+        HyperLogLog pares = new HyperLogLog();
+        HyperLogLog multiplos3 = new HyperLogLog();
+        for (int id = 0; id < 30_000; id += 2) pares.anadir(id);
+        for (int id = 0; id < 30_000; id += 3) multiplos3.anadir(id);
+
+        HyperLogLog copia = HyperLogLog.deBytes(pares.aBytes());
+        assertEquals(pares, copia);
+        assertTrue(copia.fusionar(multiplos3));
+        assertFalse(copia.fusionar(multiplos3));
+
+        // |pares ∪ múltiplos de 3| = 15000 + 10000 - 5000
+        assertEquals(20_000, copia.estimar(), 1_000);
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.deBytes(new byte[10]));
+    }
+}
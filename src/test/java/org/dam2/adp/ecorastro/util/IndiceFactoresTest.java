@@ -0,0 +1,53 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.dam2.adp.ecorastro.model.Categoria;
+import org.dam2.adp.ecorastro.model.FactorEmision;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceFactoresTest {
+
+    private final IndiceFactores indice = IndiceFactores.getInstance();
+
+    @AfterEach
+    void tearDown() {
+        indice.cargar(List.of());
+    }
+
+    private static int dia(int anio, int mes, int diaMes) {
+        return FechaUtil.claveDia(LocalDate.of(anio, mes, diaMes));
+    }
+
+    @Test
+    void testBuscaElFactorVigenteEnCadaFecha() {
+        Categoria transporte = new Categoria();
+        transporte.setId(1);
+        indice.cargar(List.of(
+                new FactorEmision(transporte, LocalDate.of(2024, 1, 1), null, 0.3),
+                new FactorEmision(transporte, LocalDate.of(2020, 1, 1), LocalDate.of(2022, 12, 31), 0.1),
+                new FactorEmision(transporte, LocalDate.of(2023, 1, 1), LocalDate.of(2023, 12, 31), 0.2)));
+
+        assertEquals(0.1, indice.getFactor(1, dia(2020, 1, 1), 9), 1e-9);
+        assertEquals(0.1, indice.getFactor(1, dia(2022, 12, 31), 9), 1e-9);
+        assertEquals(0.2, indice.getFactor(1, dia(2023, 6, 15), 9), 1e-9);
+        assertEquals(0.3, indice.getFactor(1, dia(2030, 1, 1), 9), 1e-9);
+    }
+
+    @Test
+    void testUsaElFactorPorDefectoFueraDeLosPeriodos() {
+        Categoria energia = new Categoria();
+        energia.setId(2);
+        indice.cargar(List.of(
+                new FactorEmision(energia, LocalDate.of(2020, 1, 1), LocalDate.of(2020, 12, 31), 0.5),
+                new FactorEmision(energia, LocalDate.of(2022, 1, 1), null, 0.7)));
+
+        assertEquals(9, indice.getFactor(2, dia(2019, 12, 31), 9), 1e-9, "Antes del primer periodo");
+        assertEquals(9, indice.getFactor(2, dia(2021, 6, 1), 9), 1e-9, "Hueco entre periodos");
+        assertEquals(9, indice.getFactor(3, dia(2021, 6, 1), 9), 1e-9, "Categoría sin versiones");
+    }
+}
@@ -0,0 +1,59 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KernelesImpactoTest {
+
+    @Test
+    void testCoincideConLaVersionEscalar() {
+        Random random = new Random(42);
+        int n = 10_007; // No múltiplo del número de carriles: se prueba también la cola escalar
+        double[] v = new double[n];
+        short[] pocas = new short[n];
+        short[] muchas = new short[n];
+        for (int i = 0; i < n; i++) {
+            v[i] = random.nextDouble() * 100;
+            pocas[i] = (short) random.nextInt(5);
+            muchas[i] = (short) random.nextInt(40);
+        }
+
+        for (int desde : new int[]{0, 3, 5000}) {
+            assertEquals(KernelesImpacto.sumaEscalar(v, desde, n), KernelesImpacto.suma(v, desde, n), 1e-6);
+            assertEquals(KernelesImpacto.sumaSiEscalar(v, pocas, (short) 2, desde, n),
+                    KernelesImpacto.sumaSi(v, pocas, (short) 2, desde, n), 1e-6);
+            assertArrayEquals(sumaPorCategoriaEsperada(v, pocas, desde, n),
+                    KernelesImpacto.sumaPorCategoria(v, pocas, desde, n), 1e-6);
+            assertArrayEquals(sumaPorCategoriaEsperada(v, muchas, desde, n),
+                    KernelesImpacto.sumaPorCategoria(v, muchas, desde, n), 1e-6);
+        }
+    }
+
+    @Test
+    void testSumaPorCategoriaDimensionaPorLaMayorCategoria() {
+        double[] v = {1, 2, 3, 4};
+        assertArrayEquals(new double[]{0, 0, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 6},
+                KernelesImpacto.sumaPorCategoria(v, new short[]{3, 20, 3, 20}, 0, 4), 1e-9);
+        assertEquals(0, KernelesImpacto.sumaPorCategoria(v, new short[]{1, 1, 1, 1}, 2, 2).length);
+    }
+
+    /** Suma de cada categoría con {@code sumaSiEscalar}, categoría a categoría. */
+    private static double[] sumaPorCategoriaEsperada(double[] v, short[] categorias, int desde, int hasta) {
+        int max = -1;
+        for (int i = desde; i < hasta; i++) max = Math.max(max, categorias[i]);
+        double[] esperado = new double[max + 1];
+        for (short c = 0; c <= max; c++) esperado[c] = KernelesImpacto.sumaSiEscalar(v, categorias, c, desde, hasta);
+        return esperado;
+    }
+
+    @Test
+    void testSumaPorTramos() {
+        double[] v = {1, 2, 3, 4, 5, 6, 7};
+        assertArrayEquals(new double[]{3, 0, 25}, KernelesImpacto.sumaPorTramos(v, new int[]{0, 2, 2, 7}), 1e-9);
+        assertEquals(0, KernelesImpacto.sumaPorTramos(v, new int[]{0}).length);
+        assertEquals(0, KernelesImpacto.suma(v, 4, 4));
+    }
+}
@@ -0,0 +1,58 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrecargaNavegacionTest {
+
+    private Metricas metricas;
+    private PrecargaNavegacion precarga;
+    private AtomicInteger consultas;
+
+    @BeforeEach
+    void setUp() {
+        metricas = new Metricas();
+        // Ejecutor directo: la carga termina dentro de anticipar()
+        precarga = new PrecargaNavegacion(Runnable::run, metricas);
+        consultas = new AtomicInteger();
+        precarga.registrar("historial_huellas.fxml", id -> "huellas-" + id + "-" + consultas.incrementAndGet());
+        precarga.registrar("mis_habitos.fxml", id -> "habitos-" + id);
+    }
+
+    @Test
+    void testAciertoYRecogidaUnica() {
+        precarga.anticipar("historial_huellas.fxml", 7, null);
+        precarga.anticipar("historial_huellas.fxml", 7, null); // Ya en curso: no se repite
+        assertEquals(1, consultas.get());
+        assertEquals(1, metricas.get(PrecargaNavegacion.LANZADAS));
+
+        precarga.alNavegar("historial_huellas.fxml");
+        assertEquals(1, metricas.get(PrecargaNavegacion.ACIERTOS));
+        assertEquals("huellas-7-1", precarga.recoger("historial_huellas.fxml", 7, () -> "directa"));
+        // Los datos se entregan una sola vez
+        assertEquals("directa", precarga.recoger("historial_huellas.fxml", 7, () -> "directa"));
+        assertEquals(1.0, precarga.getTasaAciertos());
+    }
+
+    @Test
+    void testFalloYDesperdicio() {
+        assertTrue(Double.isNaN(precarga.getTasaAciertos()));
+
+        precarga.anticipar("mis_habitos.fxml", 7, null);
+        precarga.alNavegar("historial_huellas.fxml");
+        assertEquals(1, metricas.get(PrecargaNavegacion.FALLOS));
+        assertEquals(1, metricas.get(PrecargaNavegacion.DESPERDICIADAS));
+        assertEquals("directa", precarga.recoger("mis_habitos.fxml", 7, () -> "directa"));
+
+        // Precarga de otro usuario: no se entrega
+        precarga.anticipar("mis_habitos.fxml", 7, null);
+        assertEquals("directa", precarga.recoger("mis_habitos.fxml", 8, () -> "directa"));
+        precarga.descartar();
+        assertEquals(2, metricas.get(PrecargaNavegacion.DESPERDICIADAS));
+        assertEquals(0.0, precarga.getTasaAciertos());
+    }
+}
@@ -0,0 +1,56 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del formato de los segmentos de huellas archivadas.
+ */
+class SegmentoHuellasTest {
+
+    @TempDir
+    Path dir;
+
+    private static SegmentoHuellas.Fila fila(int id, int usuario, int dia, double impacto) {
+        return new SegmentoHuellas.Fila(id, usuario, 3, dia, dia * 86_400L, impacto * 5, 0.2, impacto, 1, id % 2 == 0 ? "km" : "kWh");
+    }
+
+    @Test
+    void testEscribirYLeerPorUsuario() throws Exception {
+        Path ruta = dir.resolve("huellas-202401-g1.seg");
+        SegmentoHuellas.escribir(ruta, 202401, List.of(
+                fila(1, 7, 19_740, 2.0), fila(2, 9, 19_725, 1.0), fila(3, 7, 19_723, 4.0)));
+
+        try (SegmentoHuellas s = SegmentoHuellas.abrir(ruta)) {
+            assertEquals(202401, s.getMes());
+            assertEquals(3, s.getNumFilas());
+            assertEquals(19_723, s.getMinDia());
+            assertEquals(19_740, s.getMaxDia());
+
+            List<SegmentoHuellas.Fila> deSiete = s.getFilas(7);
+            assertEquals(List.of(fila(3, 7, 19_723, 4.0), fila(1, 7, 19_740, 2.0)), deSiete, "Ordenadas por día");
+            assertTrue(s.getFilas(8).isEmpty());
+            assertEquals(3, s.getTodas().size());
+        }
+    }
+
+    @Test
+    void testSumarImpactoPorRango() throws Exception {
+        Path ruta = dir.resolve("huellas-202401-g1.seg");
+        SegmentoHuellas.escribir(ruta, 202401, List.of(
+                fila(1, 7, 19_740, 2.0), fila(2, 9, 19_725, 1.0), fila(3, 7, 19_723, 4.0)));
+
+        try (SegmentoHuellas s = SegmentoHuellas.abrir(ruta)) {
+            assertEquals(7.0, s.sumarImpacto(null, 0, 99_999), 1e-9);
+            assertEquals(6.0, s.sumarImpacto(7, 0, 99_999), 1e-9);
+            assertEquals(2.0, s.sumarImpacto(7, 19_730, 19_750), 1e-9);
+            assertEquals(5.0, s.sumarImpacto(null, 19_720, 19_730), 1e-9);
+            assertEquals(0.0, s.sumarImpacto(null, 19_800, 19_900), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubmuestreoTest {
+
+    @Test
+    void testLttbConservaExtremosYPicos() {
+        int n = 1_461; // Cuatro años de días
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = i;
+            y[i] = 5 + Math.sin(i / 30.0);
+        }
+        y[700] = 100; // Un pico aislado
+
+        int[] elegidos = Submuestreo.lttb(x, y, 300);
+        assertEquals(300, elegidos.length);
+        assertEquals(0, elegidos[0]);
+        assertEquals(n - 1, elegidos[299]);
+        for (int i = 1; i < elegidos.length; i++) {
+            assertTrue(elegidos[i] > elegidos[i - 1], "Posiciones en orden y sin repetir");
+        }
+        assertTrue(java.util.Arrays.stream(elegidos).anyMatch(i -> i == 700), "El pico se conserva");
+
+        assertArrayEquals(new int[]{0, 1, 2}, Submuestreo.lttb(new double[]{0, 1, 2}, new double[]{1, 2, 3}, 300));
+        assertThrows(IllegalArgumentException.class, () -> Submuestreo.lttb(x, y, 2));
+    }
+}
@@ -0,0 +1,58 @@
+package org.dam2.adp.ecorastro.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TDigestTest {
+
+    @Test
+    void testCuantilesYCdfFrenteALosExactos() {
+        Random random = new Random(42);
+        double[] valores = new double[100_000];
+        TDigest digest = new TDigest();
+        for (int i = 0; i < valores.length; i++) {
+            valores[i] = -Math.log(1 - random.nextDouble()) * 50; // Exponencial: cola larga como los totales reales
+            digest.anadir(valores[i]);
+        }
+        Arrays.sort(valores);
+
+        assertEquals(valores.length, digest.size());
+        for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.99}) {
+            double exacto = valores[(int) (q * valores.length)];
+            assertEquals(q, digest.cdf(exacto), 0.005, "cdf del cuantil " + q);
+            // El error del cuantil se mide en posiciones: qué fracción real queda por debajo de él
+            int posicion = Arrays.binarySearch(valores, digest.cuantil(q));
+            double fraccion = (double) ((posicion >= 0) ? posicion : -posicion - 1) / valores.length;
+            assertEquals(q, fraccion, 0.005, "cuantil " + q);
+        }
+        assertEquals(0.0, digest.cdf(valores[0] - 1));
+        assertEquals(1.0, digest.cdf(valores[valores.length - 1] + 1));
+        assertTrue(Double.isNaN(new TDigest().cuantil(0.5)));
+    }
+
+    @Test
+    void testFusionYSerializacion() {
+        TDigest pares = new TDigest();
+        TDigest impares = new TDigest();
+        for (int i = 1; i <= 10_000; i++) {
+            (i % 2 == 0 ? pares : impares).anadir(i);
+        }
+        TDigest copia = TDigest.deBytes(pares.aBytes());
+        assertEquals(pares.cuantil(0.5), copia.cuantil(0.5), 1e-9);
+
+        copia.fusionar(impares);
+        assertEquals(10_000, copia.size());
+        assertEquals(5_000, copia.cuantil(0.5), 50);
+        assertEquals(0.25, copia.cdf(2_500), 0.01);
+
+        // Con pocos valores cada uno es un centroide y la mediana es exacta
+        TDigest pocos = new TDigest();
+        for (double v : new double[]{3, 1, 2}) pocos.anadir(v);
+        assertEquals(2.0, pocos.cuantil(0.5), 1e-9);
+        assertThrows(IllegalArgumentException.class, () -> TDigest.deBytes(new byte[3]));
+    }
+}